@@ -12,3 +12,45 @@ def external_plugin_deps():
         artifact = "org.jgroups:jgroups:3.6.15.Final",
         sha1 = "755afcfc6c8a8ea1e15ef0073417c0b6e8c6d6e4",
     )
+
+    maven_jar(
+        name = "httpclient5",
+        artifact = "org.apache.httpcomponents.client5:httpclient5:5.0.3",
+        sha1 = "c4bc772689d4bb2d4128c5e4966f765a8a76e904",
+    )
+
+    maven_jar(
+        name = "httpcore5",
+        artifact = "org.apache.httpcomponents.core5:httpcore5:5.0.2",
+        sha1 = "ea298cd1ce1d860747149fbb5f6236300219f378",
+    )
+
+    maven_jar(
+        name = "httpcore5-h2",
+        artifact = "org.apache.httpcomponents.core5:httpcore5-h2:5.0.2",
+        sha1 = "7caeb2eebdfb7eca30e7f64e8138d977fc85ab80",
+    )
+
+    maven_jar(
+        name = "jmh-core",
+        artifact = "org.openjdk.jmh:jmh-core:1.23",
+        sha1 = "eb242d3261f3795c8bf09818d17c3241191284a0",
+    )
+
+    maven_jar(
+        name = "jmh-generator-annprocess",
+        artifact = "org.openjdk.jmh:jmh-generator-annprocess:1.23",
+        sha1 = "4ea76227ce15d5389a25c005b9b23f7390928fd3",
+    )
+
+    maven_jar(
+        name = "jopt-simple",
+        artifact = "net.sf.jopt-simple:jopt-simple:4.6",
+        sha1 = "306816fb57cf94f108a43c95731b08934dcae15c",
+    )
+
+    maven_jar(
+        name = "commons-math3",
+        artifact = "org.apache.commons:commons-math3:3.2",
+        sha1 = "ec2544ab27e110d2d431bdad7d538ed509b21e62",
+    )
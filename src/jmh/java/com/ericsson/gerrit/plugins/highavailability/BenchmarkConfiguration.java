@@ -0,0 +1,44 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.config.SitePaths;
+import java.io.IOException;
+import java.nio.file.Paths;
+import org.eclipse.jgit.lib.Config;
+
+/** Build the plugin configuration used by the benchmarks. */
+public final class BenchmarkConfiguration {
+  public static final String PLUGIN_NAME = "high-availability";
+
+  private BenchmarkConfiguration() {}
+
+  /**
+   * Create a configuration from the settings of the plugin.
+   *
+   * @param pluginConfig the settings of the plugin, as they would be in the configuration file.
+   * @return the configuration.
+   * @throws IOException if the site paths cannot be resolved.
+   */
+  public static Configuration create(Config pluginConfig) throws IOException {
+    PluginConfigFactory pluginConfigFactory = mock(PluginConfigFactory.class);
+    when(pluginConfigFactory.getGlobalPluginConfig(PLUGIN_NAME)).thenReturn(pluginConfig);
+    return new Configuration(pluginConfigFactory, PLUGIN_NAME, new SitePaths(Paths.get("site")));
+  }
+}
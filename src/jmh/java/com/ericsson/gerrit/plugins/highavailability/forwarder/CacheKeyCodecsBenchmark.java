@@ -0,0 +1,69 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measure the decoding of the key of each cache eviction message received from another master. */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheKeyCodecsBenchmark {
+  @Param({"accounts", "groups_byinclude", "project_list", "projects"})
+  public String cacheName;
+
+  private CacheKeyCodecs codecs;
+  private String json;
+
+  @Setup
+  public void setUp() {
+    codecs = new CacheKeyCodecs(new Gson(), DynamicMap.emptyMap());
+    switch (cacheName) {
+      case "accounts":
+        json = "{\"id\":1000001}";
+        break;
+      case "groups_byinclude":
+        json = "{\"uuid\":\"7a3bc5c3e5c3b1d6cd3e4b3d1e5a4a9d1b2c3d4e\"}";
+        break;
+      case "project_list":
+        json = "{\"names\":[\"All-Projects\",\"All-Users\"]}";
+        break;
+      default:
+        json = "\"some/project\"";
+    }
+  }
+
+  @Benchmark
+  public Object decode() throws IOException {
+    return codecs.decode(cacheName, json);
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the building of the requests forwarding a message, including the JSON encoding of its
+ * payload, without any network round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpSessionBenchmark {
+  private static final String URL = "http://localhost/plugins/high-availability/index/change/1";
+
+  private HttpSession session;
+  private IndexEvent indexEvent;
+
+  @Setup
+  public void setUp() {
+    session = new HttpSession(new InMemoryHttpClient(), new Gson());
+    indexEvent = new IndexEvent();
+    indexEvent.targetSha = "7a3bc5c3e5c3b1d6cd3e4b3d1e5a4a9d1b2c3d4e";
+  }
+
+  @Benchmark
+  public HttpResult postIndexEvent() throws IOException {
+    return session.post(URL, indexEvent);
+  }
+
+  @Benchmark
+  public HttpResult postCacheKey() throws IOException {
+    return session.post(URL, "{\"id\":1000001}");
+  }
+
+  /** Client consuming the content of the requests and answering them without sending them. */
+  @SuppressWarnings("deprecation")
+  private static class InMemoryHttpClient extends CloseableHttpClient {
+    @Override
+    protected CloseableHttpResponse doExecute(
+        HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+      if (request instanceof HttpEntityEnclosingRequest) {
+        EntityUtils.consume(((HttpEntityEnclosingRequest) request).getEntity());
+      }
+      return new NoContentResponse();
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public HttpParams getParams() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ClientConnectionManager getConnectionManager() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class NoContentResponse extends BasicHttpResponse
+      implements CloseableHttpResponse {
+    NoContentResponse() {
+      super(HttpVersion.HTTP_1_1, HttpStatus.SC_NO_CONTENT, "No Content");
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.ericsson.gerrit.plugins.highavailability.BenchmarkConfiguration.PLUGIN_NAME;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.BenchmarkConfiguration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEvictionMetrics;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.eclipse.jgit.lib.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure forwarding messages end to end with the {@link RestForwarder}, to a stub master running
+ * on the loopback interface which accepts every message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestForwarderBenchmark {
+  private HttpServer stub;
+  private ExecutorService stubExecutor;
+  private ScheduledThreadPoolExecutor forwardingExecutor;
+  private CloseableHttpClient httpClient;
+  private RestForwarder forwarder;
+  private IndexEvent indexEvent;
+
+  @Setup
+  public void setUp() throws Exception {
+    stubExecutor = Executors.newFixedThreadPool(4);
+    stub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    stub.createContext(
+        "/",
+        exchange -> {
+          ByteStreams.exhaust(exchange.getRequestBody());
+          exchange.sendResponseHeaders(204, -1);
+          exchange.close();
+        });
+    stub.setExecutor(stubExecutor);
+    stub.start();
+    String url = "http://localhost:" + stub.getAddress().getPort();
+
+    Configuration cfg = BenchmarkConfiguration.create(new Config());
+    forwardingExecutor = new ScheduledThreadPoolExecutor(4);
+    WorkQueue workQueue = mock(WorkQueue.class);
+    when(workQueue.createQueue(anyInt(), anyString())).thenReturn(forwardingExecutor);
+
+    Gson gson = new Gson();
+    httpClient = new HttpClientProvider(cfg).get();
+    Set<PeerInfo> peers = ImmutableSet.of(new PeerInfo(url));
+    forwarder =
+        new RestForwarder(
+            new HttpSession(httpClient, gson),
+            PLUGIN_NAME,
+            cfg,
+            () -> peers,
+            gson,
+            new CacheKeyCodecs(gson, DynamicMap.emptyMap()),
+            new PeerCircuitBreakers(cfg, workQueue),
+            new PeerDeliveryQueues(cfg, workQueue, () -> peers),
+            new CacheEvictionMetrics(new DisabledMetricMaker()));
+    indexEvent = new IndexEvent();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    httpClient.close();
+    stub.stop(0);
+    stubExecutor.shutdownNow();
+    forwardingExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public boolean indexChange() {
+    return forwarder.indexChange("some/project", 1, indexEvent);
+  }
+
+  @Benchmark
+  public boolean evict() {
+    return forwarder.evict("accounts", "{\"id\":1000001}");
+  }
+}
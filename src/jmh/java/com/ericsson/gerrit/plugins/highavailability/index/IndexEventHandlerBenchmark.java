@@ -0,0 +1,158 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.util.RequestContext;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the queueing of the indexing events, including the merging of the events about an entity
+ * whose forward is still pending. Each invocation queues a burst of events spread over a number of
+ * entities, then runs the queued forwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexEventHandlerBenchmark {
+  private static final int BURST = 1000;
+
+  @Param({"1", "100", "1000"})
+  public int entities;
+
+  private final Queue<Runnable> pending = new ArrayDeque<>();
+  private IndexEventHandler handler;
+  private String[] groups;
+
+  @Setup
+  public void setUp() {
+    handler =
+        new IndexEventHandler(
+            pending::add,
+            "high-availability",
+            new NoopForwarder(),
+            null,
+            new AlwaysInContext(),
+            new IndexForwardingMetrics(new DisabledMetricMaker()));
+    groups = new String[entities];
+    for (int i = 0; i < entities; i++) {
+      groups[i] = "group-" + i;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST)
+  public int queueBurst() {
+    for (int i = 0; i < BURST; i++) {
+      handler.onGroupIndexed(groups[i % entities]);
+    }
+    int forwarded = pending.size();
+    Runnable task;
+    while ((task = pending.poll()) != null) {
+      task.run();
+    }
+    return forwarded;
+  }
+
+  private static class AlwaysInContext extends CurrentRequestContext {
+    AlwaysInContext() {
+      super(null);
+    }
+
+    @Override
+    public void onlyWithContext(Consumer<RequestContext> body) {
+      body.accept(null);
+    }
+  }
+
+  private static class NoopForwarder implements Forwarder {
+    @Override
+    public boolean indexAccount(int accountId, IndexEvent indexEvent) {
+      return true;
+    }
+
+    @Override
+    public boolean indexChange(String projectName, int changeId, IndexEvent indexEvent) {
+      return true;
+    }
+
+    @Override
+    public boolean deleteChangeFromIndex(int changeId, IndexEvent indexEvent) {
+      return true;
+    }
+
+    @Override
+    public boolean indexGroup(String uuid, IndexEvent indexEvent) {
+      return true;
+    }
+
+    @Override
+    public boolean indexProject(String projectName, IndexEvent indexEvent) {
+      return true;
+    }
+
+    @Override
+    public boolean send(Event event) {
+      return true;
+    }
+
+    @Override
+    public boolean evict(String cacheName, Object key) {
+      return true;
+    }
+
+    @Override
+    public boolean evictAll(String cacheName, Collection<?> keys) {
+      return true;
+    }
+
+    @Override
+    public boolean flushCache(String cacheName) {
+      return true;
+    }
+
+    @Override
+    public boolean addToProjectList(String projectName) {
+      return true;
+    }
+
+    @Override
+    public boolean removeFromProjectList(String projectName) {
+      return true;
+    }
+  }
+}
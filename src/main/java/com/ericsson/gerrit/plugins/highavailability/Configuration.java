@@ -14,6 +14,7 @@
 
 package com.ericsson.gerrit.plugins.highavailability;
 
+import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
@@ -53,14 +54,16 @@ public class Configuration {
   static final int DEFAULT_INDEX_MAX_TRIES = 2;
   static final int DEFAULT_INDEX_RETRY_INTERVAL = 30000;
   static final int DEFAULT_THREAD_POOL_SIZE = 4;
-  static final String NUM_STRIPED_LOCKS = "numStripedLocks";
-  static final int DEFAULT_NUM_STRIPED_LOCKS = 10;
 
   private final Main main;
   private final AutoReindex autoReindex;
   private final PeerInfo peerInfo;
   private final JGroups jgroups;
+  private final Forwarder forwarder;
+  private final Broker broker;
   private final Http http;
+  private final Batch batch;
+  private final Journal journal;
   private final Cache cache;
   private final Event event;
   private final Index index;
@@ -74,6 +77,29 @@ public class Configuration {
     STATIC
   }
 
+  public enum ForwarderStrategy {
+    REST,
+    BROKER
+  }
+
+  public enum HttpTransport {
+    BLOCKING,
+    ASYNC,
+    HTTP2
+  }
+
+  public enum ExecutorMode {
+    FIXED,
+    ELASTIC
+  }
+
+  public enum AckPolicy {
+    NONE,
+    ANY,
+    QUORUM,
+    ALL
+  }
+
   @Inject
   Configuration(
       PluginConfigFactory pluginConfigFactory, @PluginName String pluginName, SitePaths site) {
@@ -92,7 +118,11 @@ public class Configuration {
         throw new IllegalArgumentException("Not supported strategy: " + peerInfo.strategy);
     }
     jgroups = new JGroups(site, cfg);
+    forwarder = new Forwarder(cfg);
+    broker = new Broker(cfg);
     http = new Http(cfg);
+    batch = new Batch(cfg);
+    journal = new Journal(cfg);
     cache = new Cache(cfg);
     event = new Event(cfg);
     index = new Index(cfg);
@@ -124,10 +154,26 @@ public class Configuration {
     return jgroups;
   }
 
+  public Forwarder forwarder() {
+    return forwarder;
+  }
+
+  public Broker broker() {
+    return broker;
+  }
+
   public Http http() {
     return http;
   }
 
+  public Batch batch() {
+    return batch;
+  }
+
+  public Journal journal() {
+    return journal;
+  }
+
   public Cache cache() {
     return cache;
   }
@@ -192,10 +238,14 @@ public class Configuration {
     static final boolean DEFAULT_AUTO_REINDEX = false;
     static final long DEFAULT_DELAY = 10L;
     static final long DEFAULT_POLL_INTERVAL = 0L;
+    static final String FLUSH_INTERVAL = "flushInterval";
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 1000L;
 
     private final boolean enabled;
     private final long delaySec;
     private final long pollSec;
+    private final int threadPoolSize;
+    private final long flushIntervalMs;
 
     public AutoReindex(Config cfg) {
       enabled = cfg.getBoolean(AUTO_REINDEX_SECTION, ENABLED, DEFAULT_AUTO_REINDEX);
@@ -210,6 +260,16 @@ public class Configuration {
               POLL_INTERVAL,
               DEFAULT_POLL_INTERVAL,
               TimeUnit.SECONDS);
+      threadPoolSize =
+          getInt(cfg, AUTO_REINDEX_SECTION, THREAD_POOL_SIZE_KEY, DEFAULT_THREAD_POOL_SIZE);
+      flushIntervalMs =
+          ConfigUtil.getTimeUnit(
+              cfg,
+              AUTO_REINDEX_SECTION,
+              null,
+              FLUSH_INTERVAL,
+              DEFAULT_FLUSH_INTERVAL_MS,
+              TimeUnit.MILLISECONDS);
     }
 
     public boolean enabled() {
@@ -223,6 +283,14 @@ public class Configuration {
     public long pollSec() {
       return pollSec;
     }
+
+    public int threadPoolSize() {
+      return threadPoolSize;
+    }
+
+    public long flushIntervalMs() {
+      return flushIntervalMs;
+    }
   }
 
   public static class PeerInfo {
@@ -332,6 +400,83 @@ public class Configuration {
     }
   }
 
+  public static class Forwarder {
+    static final String FORWARDER_SECTION = "forwarder";
+    static final String STRATEGY_KEY = "strategy";
+    static final String EXECUTOR_KEY = "executor";
+    static final String MAX_THREADS_KEY = "maxThreads";
+    static final ForwarderStrategy DEFAULT_FORWARDER_STRATEGY = ForwarderStrategy.REST;
+    static final ExecutorMode DEFAULT_EXECUTOR_MODE = ExecutorMode.FIXED;
+    static final int DEFAULT_MAX_THREADS = 128;
+
+    private final ForwarderStrategy strategy;
+    private final ExecutorMode executor;
+    private final int maxThreads;
+
+    private Forwarder(Config cfg) {
+      strategy = cfg.getEnum(FORWARDER_SECTION, null, STRATEGY_KEY, DEFAULT_FORWARDER_STRATEGY);
+      executor = cfg.getEnum(FORWARDER_SECTION, null, EXECUTOR_KEY, DEFAULT_EXECUTOR_MODE);
+      maxThreads = getInt(cfg, FORWARDER_SECTION, MAX_THREADS_KEY, DEFAULT_MAX_THREADS);
+    }
+
+    public ForwarderStrategy strategy() {
+      return strategy;
+    }
+
+    public ExecutorMode executor() {
+      return executor;
+    }
+
+    public int maxThreads() {
+      return maxThreads;
+    }
+  }
+
+  public static class Broker {
+    static final String BROKER_SECTION = "broker";
+    static final String PARTITIONS_KEY = "partitions";
+    static final String POLL_INTERVAL_KEY = "pollInterval";
+    static final String SEGMENT_SIZE_KEY = "segmentSize";
+    static final String RETENTION_KEY = "retention";
+
+    static final int DEFAULT_PARTITIONS = 8;
+    static final int DEFAULT_POLL_INTERVAL_MS = 1000;
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final long DEFAULT_RETENTION_MS = DAYS.toMillis(7);
+
+    private final int partitions;
+    private final int pollInterval;
+    private final int segmentSize;
+    private final long retention;
+
+    private Broker(Config cfg) {
+      partitions = getInt(cfg, BROKER_SECTION, PARTITIONS_KEY, DEFAULT_PARTITIONS);
+      pollInterval = getInt(cfg, BROKER_SECTION, POLL_INTERVAL_KEY, DEFAULT_POLL_INTERVAL_MS);
+      segmentSize = getInt(cfg, BROKER_SECTION, SEGMENT_SIZE_KEY, DEFAULT_SEGMENT_SIZE);
+      retention =
+          ConfigUtil.getTimeUnit(
+              Strings.nullToEmpty(cfg.getString(BROKER_SECTION, null, RETENTION_KEY)),
+              DEFAULT_RETENTION_MS,
+              MILLISECONDS);
+    }
+
+    public int partitions() {
+      return partitions;
+    }
+
+    public int pollInterval() {
+      return pollInterval;
+    }
+
+    public int segmentSize() {
+      return segmentSize;
+    }
+
+    public long retention() {
+      return retention;
+    }
+  }
+
   public static class Http {
     static final String HTTP_SECTION = "http";
     static final String USER_KEY = "user";
@@ -340,10 +485,22 @@ public class Configuration {
     static final String SOCKET_TIMEOUT_KEY = "socketTimeout";
     static final String MAX_TRIES_KEY = "maxTries";
     static final String RETRY_INTERVAL_KEY = "retryInterval";
+    static final String TRANSPORT_KEY = "transport";
+    static final String MAX_RETRY_INTERVAL_KEY = "maxRetryInterval";
+    static final String CIRCUIT_BREAKER_THRESHOLD_KEY = "circuitBreakerThreshold";
+    static final String MAX_PARKED_MESSAGES_KEY = "maxParkedMessages";
+    static final String ACK_POLICY_KEY = "ackPolicy";
+    static final String PEER_THREAD_POOL_SIZE_KEY = "peerThreadPoolSize";
 
     static final int DEFAULT_TIMEOUT_MS = 5000;
     static final int DEFAULT_MAX_TRIES = 360;
     static final int DEFAULT_RETRY_INTERVAL = 10000;
+    static final int DEFAULT_MAX_RETRY_INTERVAL = 60000;
+    static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+    static final int DEFAULT_MAX_PARKED_MESSAGES = 10000;
+    static final HttpTransport DEFAULT_TRANSPORT = HttpTransport.BLOCKING;
+    static final AckPolicy DEFAULT_ACK_POLICY = AckPolicy.ALL;
+    static final int DEFAULT_PEER_THREAD_POOL_SIZE = 4;
 
     private final String user;
     private final String password;
@@ -351,6 +508,12 @@ public class Configuration {
     private final int socketTimeout;
     private final int maxTries;
     private final int retryInterval;
+    private final HttpTransport transport;
+    private final int maxRetryInterval;
+    private final int circuitBreakerThreshold;
+    private final int maxParkedMessages;
+    private final AckPolicy ackPolicy;
+    private final int peerThreadPoolSize;
 
     private Http(Config cfg) {
       user = Strings.nullToEmpty(cfg.getString(HTTP_SECTION, null, USER_KEY));
@@ -359,6 +522,17 @@ public class Configuration {
       socketTimeout = getInt(cfg, HTTP_SECTION, SOCKET_TIMEOUT_KEY, DEFAULT_TIMEOUT_MS);
       maxTries = getInt(cfg, HTTP_SECTION, MAX_TRIES_KEY, DEFAULT_MAX_TRIES);
       retryInterval = getInt(cfg, HTTP_SECTION, RETRY_INTERVAL_KEY, DEFAULT_RETRY_INTERVAL);
+      transport = cfg.getEnum(HTTP_SECTION, null, TRANSPORT_KEY, DEFAULT_TRANSPORT);
+      maxRetryInterval =
+          getInt(cfg, HTTP_SECTION, MAX_RETRY_INTERVAL_KEY, DEFAULT_MAX_RETRY_INTERVAL);
+      circuitBreakerThreshold =
+          getInt(
+              cfg, HTTP_SECTION, CIRCUIT_BREAKER_THRESHOLD_KEY, DEFAULT_CIRCUIT_BREAKER_THRESHOLD);
+      maxParkedMessages =
+          getInt(cfg, HTTP_SECTION, MAX_PARKED_MESSAGES_KEY, DEFAULT_MAX_PARKED_MESSAGES);
+      ackPolicy = cfg.getEnum(HTTP_SECTION, null, ACK_POLICY_KEY, DEFAULT_ACK_POLICY);
+      peerThreadPoolSize =
+          getInt(cfg, HTTP_SECTION, PEER_THREAD_POOL_SIZE_KEY, DEFAULT_PEER_THREAD_POOL_SIZE);
     }
 
     public String user() {
@@ -384,6 +558,105 @@ public class Configuration {
     public int retryInterval() {
       return retryInterval;
     }
+
+    public HttpTransport transport() {
+      return transport;
+    }
+
+    public int maxRetryInterval() {
+      return maxRetryInterval;
+    }
+
+    public int circuitBreakerThreshold() {
+      return circuitBreakerThreshold;
+    }
+
+    public int maxParkedMessages() {
+      return maxParkedMessages;
+    }
+
+    public AckPolicy ackPolicy() {
+      return ackPolicy;
+    }
+
+    public int peerThreadPoolSize() {
+      return peerThreadPoolSize;
+    }
+  }
+
+  public static class Batch {
+    static final String BATCH_SECTION = "batch";
+    static final String ENABLED_KEY = "enabled";
+    static final String MAX_SIZE_KEY = "maxSize";
+    static final String MAX_DELAY_KEY = "maxDelay";
+
+    static final boolean DEFAULT_BATCH_ENABLED = false;
+    static final int DEFAULT_MAX_SIZE = 100;
+    static final int DEFAULT_MAX_DELAY_MS = 100;
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final int maxDelay;
+
+    private Batch(Config cfg) {
+      enabled = cfg.getBoolean(BATCH_SECTION, ENABLED_KEY, DEFAULT_BATCH_ENABLED);
+      maxSize = getInt(cfg, BATCH_SECTION, MAX_SIZE_KEY, DEFAULT_MAX_SIZE);
+      maxDelay = getInt(cfg, BATCH_SECTION, MAX_DELAY_KEY, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public boolean enabled() {
+      return enabled;
+    }
+
+    public int maxSize() {
+      return maxSize;
+    }
+
+    public int maxDelay() {
+      return maxDelay;
+    }
+  }
+
+  public static class Journal {
+    static final String JOURNAL_SECTION = "journal";
+    static final String ENABLED_KEY = "enabled";
+    static final String SEGMENT_SIZE_KEY = "segmentSize";
+    static final String MAX_SEGMENTS_KEY = "maxSegments";
+    static final String REPLAY_BATCH_SIZE_KEY = "replayBatchSize";
+
+    static final boolean DEFAULT_JOURNAL_ENABLED = false;
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENTS = 16;
+    static final int DEFAULT_REPLAY_BATCH_SIZE = 100;
+
+    private final boolean enabled;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int replayBatchSize;
+
+    private Journal(Config cfg) {
+      enabled = cfg.getBoolean(JOURNAL_SECTION, ENABLED_KEY, DEFAULT_JOURNAL_ENABLED);
+      segmentSize = getInt(cfg, JOURNAL_SECTION, SEGMENT_SIZE_KEY, DEFAULT_SEGMENT_SIZE);
+      maxSegments = getInt(cfg, JOURNAL_SECTION, MAX_SEGMENTS_KEY, DEFAULT_MAX_SEGMENTS);
+      replayBatchSize =
+          getInt(cfg, JOURNAL_SECTION, REPLAY_BATCH_SIZE_KEY, DEFAULT_REPLAY_BATCH_SIZE);
+    }
+
+    public boolean enabled() {
+      return enabled;
+    }
+
+    public int segmentSize() {
+      return segmentSize;
+    }
+
+    public int maxSegments() {
+      return maxSegments;
+    }
+
+    public int replayBatchSize() {
+      return replayBatchSize;
+    }
   }
 
   /** Common parameters to cache, event, index and websession */
@@ -416,14 +689,29 @@ public class Configuration {
   public static class Cache extends Forwarding {
     static final String CACHE_SECTION = "cache";
     static final String PATTERN_KEY = "pattern";
+    static final String BATCH_WINDOW_KEY = "batchWindow";
+    static final long DEFAULT_BATCH_WINDOW_MS = 50L;
+    static final String FLUSH_THRESHOLD_KEY = "flushThreshold";
+    static final int DEFAULT_FLUSH_THRESHOLD = 1000;
 
     private final int threadPoolSize;
     private final List<String> patterns;
+    private final long batchWindowMs;
+    private final int flushThreshold;
 
     private Cache(Config cfg) {
       super(cfg, CACHE_SECTION);
       threadPoolSize = getInt(cfg, CACHE_SECTION, THREAD_POOL_SIZE_KEY, DEFAULT_THREAD_POOL_SIZE);
       patterns = Arrays.asList(cfg.getStringList(CACHE_SECTION, null, PATTERN_KEY));
+      batchWindowMs =
+          ConfigUtil.getTimeUnit(
+              cfg,
+              CACHE_SECTION,
+              null,
+              BATCH_WINDOW_KEY,
+              DEFAULT_BATCH_WINDOW_MS,
+              TimeUnit.MILLISECONDS);
+      flushThreshold = getInt(cfg, CACHE_SECTION, FLUSH_THRESHOLD_KEY, DEFAULT_FLUSH_THRESHOLD);
     }
 
     public int threadPoolSize() {
@@ -433,6 +721,14 @@ public class Configuration {
     public List<String> patterns() {
       return Collections.unmodifiableList(patterns);
     }
+
+    public long batchWindowMs() {
+      return batchWindowMs;
+    }
+
+    public int flushThreshold() {
+      return flushThreshold;
+    }
   }
 
   public static class Event extends Forwarding {
@@ -447,29 +743,41 @@ public class Configuration {
     static final String INDEX_SECTION = "index";
     static final String MAX_TRIES_KEY = "maxTries";
     static final String RETRY_INTERVAL_KEY = "retryInterval";
+    static final String MAX_QUEUED_REQUESTS_KEY = "maxQueuedRequests";
+    static final int DEFAULT_MAX_QUEUED_REQUESTS = 0;
+    static final String REF_POLL_INTERVAL_KEY = "refPollInterval";
+    static final int DEFAULT_REF_POLL_INTERVAL = 1000;
+    static final String CHECKER_CACHE_SIZE_KEY = "checkerCacheSize";
+    static final int DEFAULT_CHECKER_CACHE_SIZE = 1024;
+    static final String DRAIN_TIMEOUT_KEY = "drainTimeout";
+    static final int DEFAULT_DRAIN_TIMEOUT = 30000;
 
     private final int threadPoolSize;
     private final int retryInterval;
     private final int maxTries;
-
-    private final int numStripedLocks;
+    private final int maxQueuedRequests;
+    private final int refPollInterval;
+    private final int checkerCacheSize;
+    private final int drainTimeout;
 
     private Index(Config cfg) {
       super(cfg, INDEX_SECTION);
       threadPoolSize = getInt(cfg, INDEX_SECTION, THREAD_POOL_SIZE_KEY, DEFAULT_THREAD_POOL_SIZE);
-      numStripedLocks = getInt(cfg, INDEX_SECTION, NUM_STRIPED_LOCKS, DEFAULT_NUM_STRIPED_LOCKS);
       retryInterval = getInt(cfg, INDEX_SECTION, RETRY_INTERVAL_KEY, DEFAULT_INDEX_RETRY_INTERVAL);
       maxTries = getInt(cfg, INDEX_SECTION, MAX_TRIES_KEY, DEFAULT_INDEX_MAX_TRIES);
+      maxQueuedRequests =
+          getInt(cfg, INDEX_SECTION, MAX_QUEUED_REQUESTS_KEY, DEFAULT_MAX_QUEUED_REQUESTS);
+      refPollInterval =
+          getInt(cfg, INDEX_SECTION, REF_POLL_INTERVAL_KEY, DEFAULT_REF_POLL_INTERVAL);
+      checkerCacheSize =
+          getInt(cfg, INDEX_SECTION, CHECKER_CACHE_SIZE_KEY, DEFAULT_CHECKER_CACHE_SIZE);
+      drainTimeout = getInt(cfg, INDEX_SECTION, DRAIN_TIMEOUT_KEY, DEFAULT_DRAIN_TIMEOUT);
     }
 
     public int threadPoolSize() {
       return threadPoolSize;
     }
 
-    public int numStripedLocks() {
-      return numStripedLocks;
-    }
-
     public int retryInterval() {
       return retryInterval;
     }
@@ -477,6 +785,22 @@ public class Configuration {
     public int maxTries() {
       return maxTries;
     }
+
+    public int maxQueuedRequests() {
+      return maxQueuedRequests;
+    }
+
+    public int refPollInterval() {
+      return refPollInterval;
+    }
+
+    public int checkerCacheSize() {
+      return checkerCacheSize;
+    }
+
+    public int drainTimeout() {
+      return drainTimeout;
+    }
   }
 
   public static class Websession extends Forwarding {
@@ -14,19 +14,53 @@
 
 package com.ericsson.gerrit.plugins.highavailability;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration.ExecutorMode;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.server.git.WorkQueue;
 import com.google.inject.Provider;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public abstract class ExecutorProvider
     implements Provider<ScheduledExecutorService>, LifecycleListener {
+  private static final long ELASTIC_KEEP_ALIVE_SECONDS = 60;
+
   private ScheduledExecutorService executor;
 
   protected ExecutorProvider(WorkQueue workQueue, int threadPoolSize, String threadNamePrefix) {
     executor = workQueue.createQueue(threadPoolSize, threadNamePrefix);
   }
 
+  protected ExecutorProvider(
+      WorkQueue workQueue, Configuration config, int threadPoolSize, String threadNamePrefix) {
+    executor = createQueue(workQueue, config, threadPoolSize, threadNamePrefix);
+  }
+
+  /**
+   * Create a queue running the forwarding tasks. In the {@code elastic} executor mode, the queue
+   * starts a thread for each task up to {@code forwarder.maxThreads}, and threads which stay idle
+   * are stopped, so that tasks blocked on a peer do not hold up the other tasks.
+   *
+   * @param workQueue the work queue creating the queue, which lists its tasks in show-queue.
+   * @param config the plugin configuration.
+   * @param threadPoolSize the number of threads of the queue in the {@code fixed} executor mode.
+   * @param threadNamePrefix the name of the queue.
+   * @return the queue.
+   */
+  public static ScheduledExecutorService createQueue(
+      WorkQueue workQueue, Configuration config, int threadPoolSize, String threadNamePrefix) {
+    if (config.forwarder().executor() != ExecutorMode.ELASTIC) {
+      return workQueue.createQueue(threadPoolSize, threadNamePrefix);
+    }
+    ScheduledThreadPoolExecutor elastic =
+        workQueue.createQueue(
+            Math.max(threadPoolSize, config.forwarder().maxThreads()), threadNamePrefix, false);
+    elastic.setKeepAliveTime(ELASTIC_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    elastic.allowCoreThreadTimeOut(true);
+    return elastic;
+  }
+
   @Override
   public void start() {
     // do nothing
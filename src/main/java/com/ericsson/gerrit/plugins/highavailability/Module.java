@@ -18,6 +18,7 @@ import com.ericsson.gerrit.plugins.highavailability.autoreindex.AutoReindexModul
 import com.ericsson.gerrit.plugins.highavailability.cache.CacheModule;
 import com.ericsson.gerrit.plugins.highavailability.event.EventModule;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwarderModule;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.broker.BrokerForwarderModule;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.RestForwarderModule;
 import com.ericsson.gerrit.plugins.highavailability.index.IndexModule;
 import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfoModule;
@@ -40,7 +41,14 @@ class Module extends AbstractModule {
   @Override
   protected void configure() {
     install(new ForwarderModule());
-    install(new RestForwarderModule());
+    switch (config.forwarder().strategy()) {
+      case BROKER:
+        install(new BrokerForwarderModule());
+        break;
+      case REST:
+      default:
+        install(new RestForwarderModule(config));
+    }
 
     if (config.cache().synchronize()) {
       install(new CacheModule());
@@ -14,55 +14,75 @@
 
 package com.ericsson.gerrit.plugins.highavailability.autoreindex;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexAccountHandler;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
-import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.Account;
-import com.google.gerrit.server.account.AccountState;
-import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import java.io.IOException;
-import java.sql.Timestamp;
+import java.nio.file.Path;
 import java.util.Optional;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
 
-public class AccountReindexRunnable extends ReindexRunnable<AccountState> {
-  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+public class AccountReindexRunnable extends RefSnapshotReindexRunnable<Account.Id> {
+  static final String SNAPSHOT_FILE_NAME = "account_refs";
 
   private final ForwardedIndexAccountHandler accountIdx;
 
-  private final Accounts accounts;
+  private final GitRepositoryManager repoManager;
+
+  private final AllUsersName allUsers;
 
   @Inject
   public AccountReindexRunnable(
       ForwardedIndexAccountHandler accountIdx,
       IndexTs indexTs,
       OneOffRequestContext ctx,
-      Accounts accounts) {
-    super(AbstractIndexRestApiServlet.IndexName.ACCOUNT, indexTs, ctx);
+      GitRepositoryManager repoManager,
+      AllUsersName allUsers,
+      @PluginData Path dataDir,
+      Configuration cfg) {
+    super(
+        AbstractIndexRestApiServlet.IndexName.ACCOUNT,
+        indexTs,
+        ctx,
+        dataDir,
+        SNAPSHOT_FILE_NAME,
+        cfg);
     this.accountIdx = accountIdx;
-    this.accounts = accounts;
+    this.repoManager = repoManager;
+    this.allUsers = allUsers;
   }
 
+  /** List the user refs of All-Users, without loading the accounts. */
   @Override
-  protected Iterable<AccountState> fetchItems() throws Exception {
-    return accounts.all();
+  protected void scanRefs(RefVisitor<Account.Id> visitor) throws Exception {
+    try (Repository repo = repoManager.openRepository(allUsers);
+        RevWalk rw = new RevWalk(repo)) {
+      for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_USERS)) {
+        Account.Id id = Account.Id.fromRef(ref.getName());
+        if (id != null) {
+          visitor.visit(id, ref.getObjectId(), rw);
+        }
+      }
+    }
   }
 
   @Override
-  protected Optional<Timestamp> indexIfNeeded(AccountState as, Timestamp sinceTs) {
-    try {
-      Account a = as.account();
-      Timestamp accountTs = a.registeredOn();
-      if (accountTs.after(sinceTs)) {
-        log.atInfo().log("Index %s/%s/%s/%s", a.id(), a.fullName(), a.preferredEmail(), accountTs);
-        accountIdx.index(a.id(), Operation.INDEX, Optional.empty());
-        return Optional.of(accountTs);
-      }
-    } catch (IOException e) {
-      log.atSevere().withCause(e).log("Reindex failed");
-    }
-    return Optional.empty();
+  protected String key(Account.Id id) {
+    return Integer.toString(id.get());
+  }
+
+  @Override
+  protected void index(Account.Id id) throws IOException {
+    accountIdx.index(id, Operation.INDEX, Optional.empty());
   }
 }
@@ -26,6 +26,7 @@ public class AutoReindexModule extends AbstractModule {
   @Override
   protected void configure() {
     DynamicSet.bind(binder(), LifecycleListener.class).to(AutoReindexScheduler.class);
+    DynamicSet.bind(binder(), LifecycleListener.class).to(IndexTs.class);
     DynamicSet.bind(binder(), ChangeIndexedListener.class).to(IndexTs.class);
     DynamicSet.bind(binder(), AccountIndexedListener.class).to(IndexTs.class);
     DynamicSet.bind(binder(), GroupIndexedListener.class).to(IndexTs.class);
@@ -14,25 +14,41 @@
 
 package com.ericsson.gerrit.plugins.highavailability.autoreindex;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.autoreindex.ProjectHighWaterMarks.Mark;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexChangeHandler;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
-import com.google.common.collect.Streams;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeBatchLoader;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeBatchLoader.LoadedChange;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.server.git.GitRepositoryManager;
-import com.google.gerrit.server.notedb.ChangeNotes;
-import com.google.gerrit.server.notedb.ChangeNotes.Factory.ChangeNotesResult;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
 
 public class ChangeReindexRunnable extends ReindexRunnable<Change> {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
@@ -43,21 +59,17 @@ public class ChangeReindexRunnable extends ReindexRunnable<Change> {
 
   private final GitRepositoryManager repoManager;
 
-  private final ChangeNotes.Factory notesFactory;
+  private final ChangeBatchLoader batchLoader;
 
-  private static class StreamIterable implements Iterable<Change> {
+  private final ProjectHighWaterMarks highWaterMarks;
 
-    private final Stream<Change> stream;
+  private final int threadPoolSize;
 
-    public StreamIterable(Stream<Change> stream) {
-      this.stream = stream;
-    }
+  private final Map<Project.NameKey, Mark> pendingMarks = new ConcurrentHashMap<>();
 
-    @Override
-    public Iterator<Change> iterator() {
-      return stream.iterator();
-    }
-  }
+  private Project.NameKey indexedProject;
+
+  private boolean indexedProjectFailed;
 
   @Inject
   public ChangeReindexRunnable(
@@ -66,43 +78,138 @@ public class ChangeReindexRunnable extends ReindexRunnable<Change> {
       OneOffRequestContext ctx,
       ProjectCache projectCache,
       GitRepositoryManager repoManager,
-      ChangeNotes.Factory notesFactory) {
+      ChangeBatchLoader batchLoader,
+      ProjectHighWaterMarks highWaterMarks,
+      Configuration cfg) {
     super(AbstractIndexRestApiServlet.IndexName.CHANGE, indexTs, ctx);
     this.changeIdx = changeIdx;
     this.projectCache = projectCache;
     this.repoManager = repoManager;
-    this.notesFactory = notesFactory;
+    this.batchLoader = batchLoader;
+    this.highWaterMarks = highWaterMarks;
+    this.threadPoolSize = cfg.autoReindex().threadPoolSize();
   }
 
+  /**
+   * Scan the projects in parallel, on {@code autoReindex.threadPoolSize} threads. The projects
+   * whose meta refs did not change since their last scan are skipped. In the other ones, the notes
+   * of a change are only loaded when the commit of its meta ref is not older than the last scan of
+   * the project, or than {@code sinceTs} if it was never scanned.
+   *
+   * <p>The changes are returned grouped by project, so that the high-water mark of a project is set
+   * as soon as all its changes are reindexed. The mark is the time of the latest meta ref commit
+   * seen in the project, not the local time, so that a change committed by another node whose clock
+   * is behind is not missed.
+   */
   @Override
-  protected Iterable<Change> fetchItems() throws Exception {
-    Stream<Change> allChangesStream = Stream.empty();
-    Iterable<Project.NameKey> projects = projectCache.all();
-    for (Project.NameKey projectName : projects) {
-      try (Repository repo = repoManager.openRepository(projectName)) {
-        Stream<Change> projectChangesStream =
-            notesFactory
-                .scan(repo, projectName)
-                .map((ChangeNotesResult changeNotes) -> changeNotes.notes().getChange());
-        allChangesStream = Streams.concat(allChangesStream, projectChangesStream);
+  protected Iterable<Change> fetchItems(Timestamp sinceTs) throws Exception {
+    List<Project.NameKey> projects = ImmutableList.copyOf(projectCache.all());
+    pendingMarks.clear();
+    indexedProject = null;
+    ForkJoinPool pool = new ForkJoinPool(threadPoolSize);
+    try {
+      return pool.submit(
+              () ->
+                  projects
+                      .parallelStream()
+                      .flatMap(project -> scan(project, sinceTs).stream())
+                      .collect(Collectors.toList()))
+          .get();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private List<Change> scan(Project.NameKey project, Timestamp sinceTs) {
+    Optional<Mark> mark = highWaterMarks.get(project);
+    Timestamp projectSinceTs = mark.map(Mark::ts).orElse(sinceTs);
+    try {
+      List<Change.Id> updated = new ArrayList<>();
+      Hasher refsDigest = Hashing.murmur3_128().newHasher();
+      try (Repository repo = repoManager.openRepository(project);
+          RevWalk rw = new RevWalk(repo)) {
+        List<Ref> metaRefs = new ArrayList<>();
+        for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES)) {
+          if (RefNames.isNoteDbMetaRef(ref.getName())) {
+            metaRefs.add(ref);
+            refsDigest.putString(ref.getName(), UTF_8).putString(ref.getObjectId().name(), UTF_8);
+          }
+        }
+        String digest = refsDigest.hash().toString();
+        if (mark.isPresent() && mark.get().refsDigest().equals(digest)) {
+          return ImmutableList.of();
+        }
+        int latestCommitTime = 0;
+        for (Ref ref : metaRefs) {
+          int commitTime = rw.parseCommit(ref.getObjectId()).getCommitTime();
+          latestCommitTime = Math.max(latestCommitTime, commitTime);
+          // The exact update time is checked on the notes.
+          if (!isOlder(commitTime, projectSinceTs)) {
+            updated.add(Change.Id.fromRef(ref.getName()));
+          }
+        }
+        Timestamp markTs =
+            new Timestamp(
+                Math.max(
+                    projectSinceTs.getTime(), TimeUnit.SECONDS.toMillis(latestCommitTime)));
+
+        Map<Change.Id, LoadedChange> loaded =
+            updated.isEmpty() ? ImmutableMap.of() : batchLoader.load(project, updated);
+        List<Change> changes =
+            loaded.values().stream()
+                .map(c -> c.notes().getChange())
+                .filter(c -> !c.getLastUpdatedOn().before(projectSinceTs))
+                .collect(Collectors.toList());
+        log.atFine().log("%d changes of %s were updated", changes.size(), project);
+        if (loaded.size() < updated.size()) {
+          // Some changes could not be loaded, scan the project again next time.
+          return changes;
+        }
+        if (changes.isEmpty()) {
+          highWaterMarks.put(project, new Mark(markTs, digest));
+        } else {
+          pendingMarks.put(project, new Mark(markTs, digest));
+        }
+        return changes;
       }
+    } catch (IOException | RuntimeException e) {
+      log.atSevere().withCause(e).log("Unable to scan the changes of %s", project);
+      return ImmutableList.of();
     }
-    return new StreamIterable(allChangesStream);
   }
 
+  /** The fetched changes were updated since the last scan of their project, they are reindexed. */
   @Override
   protected Optional<Timestamp> indexIfNeeded(Change c, Timestamp sinceTs) {
+    if (!c.getProject().equals(indexedProject)) {
+      markIndexedProject();
+      indexedProject = c.getProject();
+      indexedProjectFailed = false;
+    }
     try {
       Timestamp changeTs = c.getLastUpdatedOn();
-      if (changeTs.after(sinceTs)) {
-        log.atInfo().log(
-            "Index %s/%s/%s was updated after %s", c.getProject(), c.getId(), changeTs, sinceTs);
-        changeIdx.index(c.getProject() + "~" + c.getId(), Operation.INDEX, Optional.empty());
-        return Optional.of(changeTs);
-      }
-    } catch (IOException e) {
+      log.atInfo().log(
+          "Index %s/%s/%s was updated after %s", c.getProject(), c.getId(), changeTs, sinceTs);
+      changeIdx.index(c.getProject() + "~" + c.getId(), Operation.INDEX, Optional.empty());
+      return Optional.of(changeTs);
+    } catch (IOException | RuntimeException e) {
       log.atSevere().withCause(e).log("Reindex failed");
+      indexedProjectFailed = true;
     }
     return Optional.empty();
   }
+
+  @Override
+  protected void scanCompleted() {
+    markIndexedProject();
+    indexedProject = null;
+    highWaterMarks.compact(ImmutableSet.copyOf(projectCache.all()));
+  }
+
+  private void markIndexedProject() {
+    Mark mark = indexedProject != null ? pendingMarks.remove(indexedProject) : null;
+    if (mark != null && !indexedProjectFailed) {
+      highWaterMarks.put(indexedProject, mark);
+    }
+  }
 }
@@ -14,31 +14,75 @@
 
 package com.ericsson.gerrit.plugins.highavailability.autoreindex;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexGroupHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
-import com.google.gerrit.common.data.GroupReference;
-import com.google.gerrit.server.group.db.Groups;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
-import java.sql.Timestamp;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
 
-public class GroupReindexRunnable extends ReindexRunnable<GroupReference> {
+public class GroupReindexRunnable extends RefSnapshotReindexRunnable<AccountGroup.UUID> {
+  static final String SNAPSHOT_FILE_NAME = "group_refs";
 
-  private final Groups groups;
+  private final ForwardedIndexGroupHandler groupIdx;
+
+  private final GitRepositoryManager repoManager;
+
+  private final AllUsersName allUsers;
 
   @Inject
-  public GroupReindexRunnable(IndexTs indexTs, OneOffRequestContext ctx, Groups groups) {
-    super(AbstractIndexRestApiServlet.IndexName.GROUP, indexTs, ctx);
-    this.groups = groups;
+  public GroupReindexRunnable(
+      ForwardedIndexGroupHandler groupIdx,
+      IndexTs indexTs,
+      OneOffRequestContext ctx,
+      GitRepositoryManager repoManager,
+      AllUsersName allUsers,
+      @PluginData Path dataDir,
+      Configuration cfg) {
+    super(
+        AbstractIndexRestApiServlet.IndexName.GROUP,
+        indexTs,
+        ctx,
+        dataDir,
+        SNAPSHOT_FILE_NAME,
+        cfg);
+    this.groupIdx = groupIdx;
+    this.repoManager = repoManager;
+    this.allUsers = allUsers;
+  }
+
+  /** List the group refs of All-Users. */
+  @Override
+  protected void scanRefs(RefVisitor<AccountGroup.UUID> visitor) throws Exception {
+    try (Repository repo = repoManager.openRepository(allUsers);
+        RevWalk rw = new RevWalk(repo)) {
+      for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_GROUPS)) {
+        AccountGroup.UUID uuid = AccountGroup.UUID.fromRef(ref.getName());
+        if (uuid != null) {
+          visitor.visit(uuid, ref.getObjectId(), rw);
+        }
+      }
+    }
   }
 
   @Override
-  protected Iterable<GroupReference> fetchItems() throws Exception {
-    return groups.getAllGroupReferences()::iterator;
+  protected String key(AccountGroup.UUID uuid) {
+    return uuid.get();
   }
 
   @Override
-  protected Optional<Timestamp> indexIfNeeded(GroupReference g, Timestamp sinceTs) {
-    return Optional.empty();
+  protected void index(AccountGroup.UUID uuid) throws IOException {
+    groupIdx.index(uuid, Operation.INDEX, Optional.empty());
   }
 }
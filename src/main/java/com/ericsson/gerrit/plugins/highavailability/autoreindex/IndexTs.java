@@ -14,6 +14,13 @@
 
 package com.ericsson.gerrit.plugins.highavailability.autoreindex;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet.IndexName;
 import com.ericsson.gerrit.plugins.highavailability.index.CurrentRequestContext;
@@ -22,6 +29,7 @@ import com.google.gerrit.extensions.annotations.PluginData;
 import com.google.gerrit.extensions.events.AccountIndexedListener;
 import com.google.gerrit.extensions.events.ChangeIndexedListener;
 import com.google.gerrit.extensions.events.GroupIndexedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.events.ProjectIndexedListener;
 import com.google.gerrit.server.change.ChangeFinder;
 import com.google.gerrit.server.git.WorkQueue;
@@ -29,68 +37,72 @@ import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keep the latest indexing timestamp of each index in memory and store it under the plugin data
+ * directory.
+ *
+ * <p>The updates are coalesced: an updated timestamp is written at most once every {@code
+ * autoReindex.flushInterval}, by a single flush writing only the timestamps updated since the
+ * previous one. Each file is replaced atomically by a synced temporary file.
+ */
 @Singleton
 public class IndexTs
     implements ChangeIndexedListener,
         AccountIndexedListener,
         GroupIndexedListener,
-        ProjectIndexedListener {
+        ProjectIndexedListener,
+        LifecycleListener {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
   private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
 
   private final Path dataDir;
   private final ScheduledExecutorService exec;
-  private final FlusherRunner flusher;
+  private final long flushIntervalMs;
   private final ChangeFinder changeFinder;
   private final CurrentRequestContext currCtx;
 
-  private volatile LocalDateTime changeTs;
-  private volatile LocalDateTime accountTs;
-  private volatile LocalDateTime groupTs;
-  private volatile LocalDateTime projectTs;
-
-  class FlusherRunner implements Runnable {
-
-    @Override
-    public void run() {
-      store(AbstractIndexRestApiServlet.IndexName.CHANGE, changeTs);
-      store(AbstractIndexRestApiServlet.IndexName.ACCOUNT, accountTs);
-      store(AbstractIndexRestApiServlet.IndexName.GROUP, groupTs);
-      store(AbstractIndexRestApiServlet.IndexName.PROJECT, projectTs);
-    }
-
-    private void store(AbstractIndexRestApiServlet.IndexName index, LocalDateTime latestTs) {
-      Optional<LocalDateTime> currTs = getUpdateTs(index);
-      if (!currTs.isPresent() || latestTs.isAfter(currTs.get())) {
-        Path indexTsFile = dataDir.resolve(index.name().toLowerCase());
-        try {
-          Files.write(indexTsFile, latestTs.format(formatter).getBytes(StandardCharsets.UTF_8));
-        } catch (IOException e) {
-          log.atSevere().withCause(e).log("Unable to update last timestamp for index %s", index);
-        }
-      }
-    }
-  }
+  private final Map<IndexName, LocalDateTime> latestTs = new ConcurrentHashMap<>();
+  private final Set<IndexName> dirty = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
 
   @Inject
   public IndexTs(
       @PluginData Path dataDir,
       WorkQueue queue,
+      Configuration cfg,
       ChangeFinder changeFinder,
       CurrentRequestContext currCtx) {
     this.dataDir = dataDir;
     this.exec = queue.getDefaultQueue();
-    this.flusher = new FlusherRunner();
+    this.flushIntervalMs = cfg.autoReindex().flushIntervalMs();
     this.changeFinder = changeFinder;
     this.currCtx = currCtx;
+    for (IndexName index : IndexName.values()) {
+      read(index).ifPresent(ts -> latestTs.put(index, ts));
+    }
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    flush();
   }
 
   @Override
@@ -131,6 +143,31 @@ public class IndexTs
   }
 
   public Optional<LocalDateTime> getUpdateTs(AbstractIndexRestApiServlet.IndexName index) {
+    return Optional.ofNullable(latestTs.get(index));
+  }
+
+  void update(AbstractIndexRestApiServlet.IndexName index, LocalDateTime dateTime) {
+    LocalDateTime previousTs = latestTs.get(index);
+    if (previousTs != null && !dateTime.isAfter(previousTs)) {
+      return;
+    }
+    latestTs.merge(index, dateTime, (ts1, ts2) -> ts1.isAfter(ts2) ? ts1 : ts2);
+    dirty.add(index);
+    if (flushScheduled.compareAndSet(false, true)) {
+      exec.schedule(this::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  void flush() {
+    flushScheduled.set(false);
+    for (IndexName index : IndexName.values()) {
+      if (dirty.remove(index)) {
+        store(index, latestTs.get(index));
+      }
+    }
+  }
+
+  private Optional<LocalDateTime> read(IndexName index) {
     try {
       Path indexTsFile = dataDir.resolve(index.name().toLowerCase());
       if (indexTsFile.toFile().exists()) {
@@ -143,23 +180,19 @@ public class IndexTs
     return Optional.empty();
   }
 
-  void update(AbstractIndexRestApiServlet.IndexName index, LocalDateTime dateTime) {
-    switch (index) {
-      case CHANGE:
-        changeTs = dateTime;
-        break;
-      case ACCOUNT:
-        accountTs = dateTime;
-        break;
-      case GROUP:
-        groupTs = dateTime;
-        break;
-      case PROJECT:
-        projectTs = dateTime;
-        break;
-      default:
-        throw new IllegalArgumentException("Unsupported index " + index);
+  private synchronized void store(IndexName index, LocalDateTime latestTs) {
+    Path indexTsFile = dataDir.resolve(index.name().toLowerCase());
+    Path tmpFile = dataDir.resolve(index.name().toLowerCase() + ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmpFile, CREATE, TRUNCATE_EXISTING, WRITE)) {
+        channel.write(
+            ByteBuffer.wrap(latestTs.format(formatter).getBytes(StandardCharsets.UTF_8)));
+        channel.force(true);
+      }
+      Files.move(tmpFile, indexTsFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Unable to update last timestamp for index %s", index);
+      dirty.add(index);
     }
-    exec.execute(flusher);
   }
 }
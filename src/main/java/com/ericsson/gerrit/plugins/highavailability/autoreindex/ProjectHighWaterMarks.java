@@ -0,0 +1,181 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import com.google.common.base.Splitter;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remember, for each project, until when its changes were reindexed and the state of their meta
+ * refs at that time, so that the projects whose changes were not updated since can be skipped.
+ *
+ * <p>The marks are appended to a file under the plugin data directory as soon as they are set, so
+ * that an interrupted scan resumes from the projects it did not complete. The file is rewritten
+ * once it holds more lines than twice the number of projects.
+ */
+@Singleton
+class ProjectHighWaterMarks {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String FILE_NAME = "change_projects";
+
+  private final Path file;
+  private final Map<Project.NameKey, Mark> marks = new ConcurrentHashMap<>();
+  private volatile boolean loaded;
+  private int lines;
+
+  @Inject
+  ProjectHighWaterMarks(@PluginData Path dataDir) {
+    this.file = dataDir.resolve(FILE_NAME);
+  }
+
+  Optional<Mark> get(Project.NameKey project) {
+    if (!loaded) {
+      load();
+    }
+    return Optional.ofNullable(marks.get(project));
+  }
+
+  synchronized void put(Project.NameKey project, Mark mark) {
+    load();
+    marks.put(project, mark);
+    try (BufferedWriter writer = Files.newBufferedWriter(file, UTF_8, CREATE, APPEND)) {
+      writer.write(mark.format(project));
+      writer.newLine();
+      lines++;
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to store the high-water mark of %s", project);
+    }
+  }
+
+  /**
+   * Drop the marks of the projects which do not exist anymore and rewrite the file if it holds
+   * too many outdated lines.
+   *
+   * @param projects the existing projects.
+   */
+  synchronized void compact(Set<Project.NameKey> projects) {
+    load();
+    boolean removed = marks.keySet().retainAll(projects);
+    if (!removed && lines <= 2 * marks.size()) {
+      return;
+    }
+    Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+        for (Map.Entry<Project.NameKey, Mark> mark : marks.entrySet()) {
+          writer.write(mark.getValue().format(mark.getKey()));
+          writer.newLine();
+        }
+      }
+      Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+      lines = marks.size();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to rewrite %s", file);
+    }
+  }
+
+  private synchronized void load() {
+    if (loaded) {
+      return;
+    }
+    if (Files.exists(file)) {
+      read();
+    }
+    loaded = true;
+  }
+
+  private void read() {
+    try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        List<String> fields = Splitter.on(' ').limit(3).splitToList(line);
+        if (fields.size() != 3) {
+          log.atWarning().log("Ignoring invalid line '%s' of %s", line, file);
+          continue;
+        }
+        try {
+          marks.put(
+              Project.nameKey(fields.get(2)),
+              new Mark(new Timestamp(Long.parseLong(fields.get(0))), fields.get(1)));
+        } catch (NumberFormatException e) {
+          log.atWarning().log("Ignoring invalid line '%s' of %s", line, file);
+        }
+      }
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to read %s, all the projects will be scanned", file);
+    }
+  }
+
+  static class Mark {
+    private final Timestamp ts;
+    private final String refsDigest;
+
+    Mark(Timestamp ts, String refsDigest) {
+      this.ts = ts;
+      this.refsDigest = refsDigest;
+    }
+
+    /** @return the time until when the changes of the project were reindexed. */
+    Timestamp ts() {
+      return ts;
+    }
+
+    /** @return the digest of the meta refs of the changes of the project at that time. */
+    String refsDigest() {
+      return refsDigest;
+    }
+
+    private String format(Project.NameKey project) {
+      return ts.getTime() + " " + refsDigest + " " + project.get();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Mark)) {
+        return false;
+      }
+      Mark other = (Mark) o;
+      return ts.equals(other.ts) && refsDigest.equals(other.refsDigest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(ts, refsDigest);
+    }
+  }
+}
@@ -14,32 +14,94 @@
 
 package com.ericsson.gerrit.plugins.highavailability.autoreindex;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexProjectHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
-import java.sql.Timestamp;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
 
-public class ProjectReindexRunnable extends ReindexRunnable<Project.NameKey> {
+public class ProjectReindexRunnable extends RefSnapshotReindexRunnable<Project.NameKey> {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String SNAPSHOT_FILE_NAME = "project_refs";
+
+  private final ForwardedIndexProjectHandler projectIdx;
 
   private final ProjectCache projectCache;
 
+  private final GitRepositoryManager repoManager;
+
   @Inject
   public ProjectReindexRunnable(
-      IndexTs indexTs, OneOffRequestContext ctx, ProjectCache projectCache) {
-    super(AbstractIndexRestApiServlet.IndexName.PROJECT, indexTs, ctx);
+      ForwardedIndexProjectHandler projectIdx,
+      IndexTs indexTs,
+      OneOffRequestContext ctx,
+      ProjectCache projectCache,
+      GitRepositoryManager repoManager,
+      @PluginData Path dataDir,
+      Configuration cfg) {
+    super(
+        AbstractIndexRestApiServlet.IndexName.PROJECT,
+        indexTs,
+        ctx,
+        dataDir,
+        SNAPSHOT_FILE_NAME,
+        cfg);
+    this.projectIdx = projectIdx;
     this.projectCache = projectCache;
+    this.repoManager = repoManager;
+  }
+
+  /**
+   * List the {@code refs/meta/config} of the projects, in parallel on {@code
+   * autoReindex.threadPoolSize} threads.
+   */
+  @Override
+  protected void scanRefs(RefVisitor<Project.NameKey> visitor) throws Exception {
+    List<Project.NameKey> projects = ImmutableList.copyOf(projectCache.all());
+    ForkJoinPool pool = new ForkJoinPool(parallelism());
+    try {
+      pool.submit(() -> projects.parallelStream().forEach(project -> scanRef(project, visitor)))
+          .get();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void scanRef(Project.NameKey project, RefVisitor<Project.NameKey> visitor) {
+    try (Repository repo = repoManager.openRepository(project);
+        RevWalk rw = new RevWalk(repo)) {
+      Ref ref = repo.getRefDatabase().exactRef(RefNames.REFS_CONFIG);
+      if (ref != null) {
+        visitor.visit(project, ref.getObjectId(), rw);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.atSevere().withCause(e).log("Unable to scan the configuration of %s", project);
+    }
   }
 
   @Override
-  protected Iterable<Project.NameKey> fetchItems() {
-    return projectCache.all();
+  protected String key(Project.NameKey project) {
+    return project.get();
   }
 
   @Override
-  protected Optional<Timestamp> indexIfNeeded(Project.NameKey g, Timestamp sinceTs) {
-    return Optional.empty();
+  protected void index(Project.NameKey project) throws IOException {
+    projectIdx.index(project, Operation.INDEX, Optional.empty());
   }
 }
@@ -0,0 +1,161 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import com.google.common.base.Splitter;
+import com.google.common.flogger.FluentLogger;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Remember the object id a ref of each reindexed item pointed to when the item was reindexed, so
+ * that only the items whose ref moved since are reindexed again.
+ *
+ * <p>The ids are appended to a file under the plugin data directory as soon as they are set, and
+ * the file is rewritten once it holds more lines than twice the number of items. The items never
+ * reindexed which are found not updated are recorded with their current id, written on the next
+ * compaction, so that their commit is not read again.
+ */
+class RefSnapshot {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final Path file;
+  private final Map<String, ObjectId> ids = new ConcurrentHashMap<>();
+  private volatile boolean loaded;
+  private volatile boolean seeded;
+  private int lines;
+
+  RefSnapshot(Path dataDir, String fileName) {
+    this.file = dataDir.resolve(fileName);
+  }
+
+  /**
+   * @param key the item.
+   * @return the id the ref of the item pointed to when it was last reindexed, if it ever was.
+   */
+  Optional<ObjectId> get(String key) {
+    if (!loaded) {
+      load();
+    }
+    return Optional.ofNullable(ids.get(key));
+  }
+
+  /**
+   * @param key the item.
+   * @param id the id its ref currently points to.
+   * @param rw the walk of the repository of the ref.
+   * @param sinceTs the time of the last reindexing.
+   * @return whether the ref moved since the item was last reindexed or, if it never was, whether it
+   *     points to a commit not older than {@code sinceTs}; the id of an item never reindexed and
+   *     not updated is recorded.
+   * @throws IOException if the commit cannot be read.
+   */
+  boolean isUpdated(String key, ObjectId id, RevWalk rw, Timestamp sinceTs) throws IOException {
+    Optional<ObjectId> indexedId = get(key);
+    if (indexedId.isPresent()) {
+      return !indexedId.get().equals(id);
+    }
+    if (ReindexRunnable.isOlder(rw.parseCommit(id).getCommitTime(), sinceTs)) {
+      ids.putIfAbsent(key, id.copy());
+      seeded = true;
+      return false;
+    }
+    return true;
+  }
+
+  synchronized void put(String key, ObjectId id) {
+    load();
+    ids.put(key, id.copy());
+    try (BufferedWriter writer = Files.newBufferedWriter(file, UTF_8, CREATE, APPEND)) {
+      writer.write(id.name() + " " + key);
+      writer.newLine();
+      lines++;
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to store the id of %s in %s", key, file);
+    }
+  }
+
+  /**
+   * Drop the ids of the items which do not exist anymore and rewrite the file if it holds too many
+   * outdated lines or misses the ids recorded while checking the items never reindexed.
+   *
+   * @param keys the existing items.
+   */
+  synchronized void compact(Set<String> keys) {
+    load();
+    boolean removed = ids.keySet().retainAll(keys);
+    if (!removed && !seeded && lines <= 2 * ids.size()) {
+      return;
+    }
+    seeded = false;
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+        for (Map.Entry<String, ObjectId> id : ids.entrySet()) {
+          writer.write(id.getValue().name() + " " + id.getKey());
+          writer.newLine();
+        }
+      }
+      Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+      lines = ids.size();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to rewrite %s", file);
+    }
+  }
+
+  private synchronized void load() {
+    if (loaded) {
+      return;
+    }
+    if (Files.exists(file)) {
+      read();
+    }
+    loaded = true;
+  }
+
+  private void read() {
+    try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        List<String> fields = Splitter.on(' ').limit(2).splitToList(line);
+        if (fields.size() != 2 || !ObjectId.isId(fields.get(0))) {
+          log.atWarning().log("Ignoring invalid line '%s' of %s", line, file);
+          continue;
+        }
+        ids.put(fields.get(1), ObjectId.fromString(fields.get(0)));
+      }
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to read %s, all the refs will be checked", file);
+    }
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Reindex the items whose ref moved since they were last reindexed, as recorded in a {@link
+ * RefSnapshot}. An item which was never reindexed is considered updated if the commit of its ref is
+ * not older than the last reindexing. The time of the last reindexing only moves to the time of the
+ * commits of the reindexed items, and an item which could not be reindexed is recorded with the
+ * zero id, so that it is reindexed again on the next poll.
+ *
+ * <p>The memory used is therefore proportional to the number of items: the snapshot keeps the key
+ * and the ref id of every existing item, and the keys of all the items are gathered while scanning
+ * to drop the ones of the deleted items. The items themselves are only loaded when reindexed.
+ */
+abstract class RefSnapshotReindexRunnable<T> extends ReindexRunnable<T> {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final String itemName;
+  private final RefSnapshot snapshot;
+  private final int threadPoolSize;
+  private final Map<T, UpdatedRef> pendingRefs =
+      Collections.synchronizedMap(new LinkedHashMap<>());
+
+  RefSnapshotReindexRunnable(
+      AbstractIndexRestApiServlet.IndexName itemName,
+      IndexTs indexTs,
+      OneOffRequestContext ctx,
+      Path dataDir,
+      String snapshotFileName,
+      Configuration cfg) {
+    super(itemName, indexTs, ctx);
+    this.itemName = itemName.name().toLowerCase();
+    this.snapshot = new RefSnapshot(dataDir, snapshotFileName);
+    this.threadPoolSize = cfg.autoReindex().threadPoolSize();
+  }
+
+  /** Called with the ref of each existing item, possibly from several threads at once. */
+  @FunctionalInterface
+  interface RefVisitor<T> {
+    /**
+     * @param item the item.
+     * @param id the id its ref currently points to.
+     * @param rw the walk of the repository of the ref.
+     * @throws IOException if the commit of the ref cannot be read.
+     */
+    void visit(T item, ObjectId id, RevWalk rw) throws IOException;
+  }
+
+  /**
+   * List the refs of the existing items.
+   *
+   * @param visitor to call with the ref of each item.
+   * @throws Exception if the refs cannot be listed.
+   */
+  protected abstract void scanRefs(RefVisitor<T> visitor) throws Exception;
+
+  /** @return the key of the item in the snapshot. */
+  protected abstract String key(T item);
+
+  /**
+   * Reindex an updated item.
+   *
+   * @param item the item.
+   * @throws IOException if the item cannot be reindexed.
+   */
+  protected abstract void index(T item) throws IOException;
+
+  @Override
+  protected Iterable<T> fetchItems(Timestamp sinceTs) throws Exception {
+    pendingRefs.clear();
+    Set<String> keys = ConcurrentHashMap.newKeySet();
+    scanRefs(
+        (item, id, rw) -> {
+          String key = key(item);
+          keys.add(key);
+          if (snapshot.isUpdated(key, id, rw, sinceTs)) {
+            pendingRefs.put(item, new UpdatedRef(id, rw.parseCommit(id).getCommitTime()));
+          }
+        });
+    snapshot.compact(keys);
+    List<T> updated;
+    synchronized (pendingRefs) {
+      updated = ImmutableList.copyOf(pendingRefs.keySet());
+    }
+    log.atFine().log("%d %ss were updated", updated.size(), itemName);
+    return updated;
+  }
+
+  @Override
+  protected Optional<Timestamp> indexIfNeeded(T item, Timestamp sinceTs) {
+    UpdatedRef ref = pendingRefs.remove(item);
+    try {
+      log.atInfo().log("Index %s %s updated after %s", itemName, item, sinceTs);
+      index(item);
+      snapshot.put(key(item), ref.id);
+      return Optional.of(new Timestamp(TimeUnit.SECONDS.toMillis(ref.commitTime)));
+    } catch (IOException | RuntimeException e) {
+      log.atSevere().withCause(e).log("Reindex failed");
+      snapshot.put(key(item), ObjectId.zeroId());
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  protected int parallelism() {
+    return threadPoolSize;
+  }
+
+  private static class UpdatedRef {
+    private final ObjectId id;
+    private final int commitTime;
+
+    UpdatedRef(ObjectId id, int commitTime) {
+      this.id = id;
+      this.commitTime = commitTime;
+    }
+  }
+}
@@ -16,18 +16,24 @@ package com.ericsson.gerrit.plugins.highavailability.autoreindex;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.server.util.ManualRequestContext;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 abstract class ReindexRunnable<T> implements Runnable {
 
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final int BATCH_SIZE = 10;
 
   private final AbstractIndexRestApiServlet.IndexName itemName;
   private final OneOffRequestContext ctx;
@@ -50,32 +56,30 @@ abstract class ReindexRunnable<T> implements Runnable {
       newLastIndexTs = maxTimestamp(newLastIndexTs, Timestamp.valueOf(maybeIndexTs.get()));
       log.atFine().log("Scanning for all the %ss after %s", itemNameString, newLastIndexTs);
       try (ManualRequestContext mctx = ctx.open()) {
-        int count = 0;
-        int errors = 0;
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Timestamp sinceTs = newLastIndexTs;
         Stopwatch stopwatch = Stopwatch.createStarted();
-        for (T c : fetchItems()) {
-          try {
-            Optional<Timestamp> itemTs = indexIfNeeded(c, newLastIndexTs);
-            if (itemTs.isPresent()) {
-              count++;
-              newLastIndexTs = maxTimestamp(newLastIndexTs, itemTs.get());
-            }
-          } catch (Exception e) {
-            log.atSevere().withCause(e).log("Unable to reindex %s %s", itemNameString, c);
-            errors++;
+        Iterable<T> items = fetchItems(sinceTs);
+        if (parallelism() > 1) {
+          indexInBatches(items, sinceTs, count, errors);
+        } else {
+          for (T c : items) {
+            index(c, sinceTs, count, errors);
           }
         }
+        scanCompleted();
         long elapsedNanos = stopwatch.stop().elapsed(TimeUnit.NANOSECONDS);
-        if (count > 0) {
+        if (count.get() > 0) {
           log.atInfo().log(
               "%d %ss reindexed in %d msec (%d/sec), %d failed",
-              count,
+              count.get(),
               itemNameString,
               elapsedNanos / 1000000L,
-              (count * 1000L) / (elapsedNanos / 1000000L),
-              errors);
-        } else if (errors > 0) {
-          log.atInfo().log("%d %ss failed to reindex", errors, itemNameString);
+              (count.get() * 1000L) / (elapsedNanos / 1000000L),
+              errors.get());
+        } else if (errors.get() > 0) {
+          log.atInfo().log("%d %ss failed to reindex", errors.get(), itemNameString);
         } else {
           log.atFine().log("Scanning finished");
         }
@@ -86,6 +90,52 @@ abstract class ReindexRunnable<T> implements Runnable {
     }
   }
 
+  private void index(T item, Timestamp sinceTs, AtomicInteger count, AtomicInteger errors) {
+    try {
+      Optional<Timestamp> itemTs = indexIfNeeded(item, sinceTs);
+      if (itemTs.isPresent()) {
+        count.incrementAndGet();
+        updateLastIndexTs(itemTs.get());
+      }
+    } catch (Exception e) {
+      log.atSevere().withCause(e).log("Unable to reindex %s %s", itemName, item);
+      errors.incrementAndGet();
+    }
+  }
+
+  /**
+   * Reindex the items in batches of {@value #BATCH_SIZE}, on {@link #parallelism()} threads. The
+   * items are fetched as the batches are submitted, a few batches at most wait for a thread.
+   */
+  private void indexInBatches(
+      Iterable<T> items, Timestamp sinceTs, AtomicInteger count, AtomicInteger errors)
+      throws InterruptedException {
+    int threads = parallelism();
+    int maxBatches = 2 * threads;
+    Semaphore batches = new Semaphore(maxBatches);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      for (List<T> batch : Iterables.partition(items, BATCH_SIZE)) {
+        batches.acquire();
+        pool.execute(
+            () -> {
+              try (ManualRequestContext batchCtx = ctx.open()) {
+                batch.forEach(item -> index(item, sinceTs, count, errors));
+              } finally {
+                batches.release();
+              }
+            });
+      }
+      batches.acquire(maxBatches);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private synchronized void updateLastIndexTs(Timestamp itemTs) {
+    newLastIndexTs = maxTimestamp(newLastIndexTs, itemTs);
+  }
+
   private Timestamp maxTimestamp(Timestamp ts1, Timestamp ts2) {
     if (ts1 == null) {
       return ts2;
@@ -101,7 +151,35 @@ abstract class ReindexRunnable<T> implements Runnable {
     return ts2;
   }
 
-  protected abstract Iterable<T> fetchItems() throws Exception;
+  /**
+   * Fetch the items to reindex.
+   *
+   * @param sinceTs the time of the last reindexing.
+   * @return the items which may have been updated since {@code sinceTs}.
+   * @throws Exception if the items cannot be fetched.
+   */
+  protected abstract Iterable<T> fetchItems(Timestamp sinceTs) throws Exception;
 
   protected abstract Optional<Timestamp> indexIfNeeded(T item, Timestamp sinceTs);
+
+  /**
+   * @return the number of threads reindexing the fetched items; when 1, the items are reindexed one
+   *     at a time, in the order they are fetched.
+   */
+  protected int parallelism() {
+    return 1;
+  }
+
+  /**
+   * @param commitTimeSec the time of a commit, in seconds.
+   * @param sinceTs the time of the last reindexing.
+   * @return whether the commit is older than the last reindexing, the commit time being truncated
+   *     to the second.
+   */
+  protected static boolean isOlder(int commitTimeSec, Timestamp sinceTs) {
+    return TimeUnit.SECONDS.toMillis(commitTimeSec + 1L) <= sinceTs.getTime();
+  }
+
+  /** Called once all the fetched items went through {@link #indexIfNeeded}. */
+  protected void scanCompleted() {}
 }
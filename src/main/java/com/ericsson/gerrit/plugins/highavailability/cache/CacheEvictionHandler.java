@@ -14,57 +14,139 @@
 
 package com.ericsson.gerrit.plugins.highavailability.cache;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEvictionMetrics;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.Context;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
 import com.google.common.cache.RemovalNotification;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.server.cache.CacheRemovalListener;
 import com.google.inject.Inject;
-import java.util.concurrent.Executor;
+import com.google.inject.Singleton;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Forward the evictions of the local caches to the other master.
+ *
+ * <p>The keys evicted from a cache are gathered for {@code cache.batchWindow} milliseconds after
+ * the first of them, without duplicates, and their eviction is forwarded in a single message. When
+ * more than {@code cache.flushThreshold} keys are gathered, as when the whole cache is invalidated,
+ * the other master is asked to flush the cache instead.
+ *
+ * <p>The time the keys are gathered and the time until their eviction is forwarded, from the first
+ * of them, are recorded per cache in the {@link CacheEvictionMetrics}, once the forwarding
+ * completes.
+ */
+@Singleton
 class CacheEvictionHandler<K, V> implements CacheRemovalListener<K, V> {
-  private final Executor executor;
+  private final ScheduledExecutorService executor;
   private final Forwarder forwarder;
   private final String pluginName;
   private final CachePatternMatcher matcher;
+  private final CacheEvictionMetrics metrics;
+  private final long batchWindowMs;
+  private final int flushThreshold;
+  private final ConcurrentMap<String, PendingEviction> pending = new ConcurrentHashMap<>();
 
   @Inject
   CacheEvictionHandler(
       Forwarder forwarder,
-      @CacheExecutor Executor executor,
+      @CacheExecutor ScheduledExecutorService executor,
       @PluginName String pluginName,
-      CachePatternMatcher matcher) {
+      CachePatternMatcher matcher,
+      CacheEvictionMetrics metrics,
+      Configuration cfg) {
     this.forwarder = forwarder;
     this.executor = executor;
     this.pluginName = pluginName;
     this.matcher = matcher;
+    this.metrics = metrics;
+    this.batchWindowMs = cfg.cache().batchWindowMs();
+    this.flushThreshold = cfg.cache().flushThreshold();
   }
 
   @Override
   public void onRemoval(String plugin, String cache, RemovalNotification<K, V> notification) {
     if (!Context.isForwardedEvent() && !notification.wasEvicted() && matcher.matches(cache)) {
-      executor.execute(new CacheEvictionTask(cache, notification.getKey()));
+      boolean[] first = new boolean[1];
+      pending.compute(
+          cache,
+          (name, eviction) -> {
+            if (eviction == null) {
+              eviction = new PendingEviction();
+              first[0] = true;
+            }
+            eviction.add(notification.getKey(), flushThreshold);
+            return eviction;
+          });
+      if (first[0]) {
+        executor.schedule(new CacheEvictionTask(cache), batchWindowMs, TimeUnit.MILLISECONDS);
+      }
     }
   }
 
   class CacheEvictionTask implements Runnable {
     private final String cacheName;
-    private final Object key;
 
-    CacheEvictionTask(String cacheName, Object key) {
+    CacheEvictionTask(String cacheName) {
       this.cacheName = cacheName;
-      this.key = key;
     }
 
     @Override
     public void run() {
-      forwarder.evict(cacheName, key);
+      PendingEviction eviction = pending.remove(cacheName);
+      metrics.queued(cacheName, System.nanoTime() - eviction.created);
+      Set<Object> keys = eviction.keys;
+      CompletableFuture<Boolean> forwarded;
+      if (keys == null) {
+        forwarded = forwarder.flushCacheAsync(cacheName);
+      } else if (keys.size() == 1) {
+        forwarded = forwarder.evictAsync(cacheName, keys.iterator().next());
+      } else {
+        forwarded = forwarder.evictAllAsync(cacheName, keys);
+      }
+      int evictions = keys == null ? 1 : keys.size();
+      forwarded.whenComplete(
+          (ok, e) -> {
+            if (e == null && ok) {
+              metrics.sent(cacheName, evictions, System.nanoTime() - eviction.created);
+            } else {
+              metrics.failed(cacheName, evictions);
+            }
+          });
     }
 
     @Override
     public String toString() {
+      PendingEviction eviction = pending.get(cacheName);
+      if (eviction != null && eviction.keys == null) {
+        return String.format("[%s] Flush cache '%s' in target instance", pluginName, cacheName);
+      }
       return String.format(
-          "[%s] Evict key '%s' from cache '%s' in target instance", pluginName, key, cacheName);
+          "[%s] Evict %d keys from cache '%s' in target instance",
+          pluginName, eviction == null ? 0 : eviction.keys.size(), cacheName);
+    }
+  }
+
+  /** The keys gathered for a cache, or null once the whole cache is to be flushed. */
+  private static class PendingEviction {
+    private final long created = System.nanoTime();
+    private Set<Object> keys = new LinkedHashSet<>();
+
+    void add(Object key, int flushThreshold) {
+      if (keys == null) {
+        return;
+      }
+      keys.add(key);
+      if (flushThreshold > 0 && keys.size() > flushThreshold) {
+        keys = null;
+      }
     }
   }
 }
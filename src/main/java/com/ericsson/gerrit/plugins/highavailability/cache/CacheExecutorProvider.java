@@ -25,6 +25,6 @@ class CacheExecutorProvider extends ExecutorProvider {
 
   @Inject
   CacheExecutorProvider(WorkQueue workQueue, Configuration config) {
-    super(workQueue, config.cache().threadPoolSize(), "Forward-Cache-Eviction-Event");
+    super(workQueue, config, config.cache().threadPoolSize(), "Forward-Cache-Eviction-Event");
   }
 }
@@ -17,28 +17,74 @@ package com.ericsson.gerrit.plugins.highavailability.cache;
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.logging.Metadata;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+/**
+ * Tell whether the evictions of a cache are forwarded, from the name of the cache.
+ *
+ * <p>The patterns which are plain cache names are looked up in a set, the other ones are joined
+ * into a single regular expression. The decision is made once per cache name and remembered, since
+ * the set of caches is fixed while the plugin is loaded.
+ */
 @Singleton
 class CachePatternMatcher {
   private static final List<String> DEFAULT_PATTERNS =
       ImmutableList.of(
           "^accounts.*", "^groups.*", "ldap_usernames", "projects", "sshkeys", "web_sessions");
+  private static final Pattern LITERAL = Pattern.compile("[\\w-]+");
 
+  private final ImmutableSet<String> names;
   private final Pattern pattern;
+  private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+  private final Counter1<String> matched;
 
   @Inject
-  CachePatternMatcher(Configuration cfg) {
+  CachePatternMatcher(Configuration cfg, MetricMaker metricMaker) {
     List<String> patterns = new ArrayList<>(DEFAULT_PATTERNS);
     patterns.addAll(cfg.cache().patterns());
-    this.pattern = Pattern.compile(Joiner.on("|").join(patterns));
+    ImmutableSet.Builder<String> names = ImmutableSet.builder();
+    List<String> regexes = new ArrayList<>();
+    for (String p : patterns) {
+      if (LITERAL.matcher(p).matches()) {
+        names.add(p);
+      } else {
+        regexes.add(p);
+      }
+    }
+    this.names = names.build();
+    this.pattern = regexes.isEmpty() ? null : Pattern.compile(Joiner.on("|").join(regexes));
+    this.matched =
+        metricMaker.newCounter(
+            "forwarding/cache/matched",
+            new Description("Removals from the local caches whose eviction is forwarded")
+                .setRate()
+                .setUnit("removals"),
+            Field.ofString("cache_name", Metadata.Builder::cacheName)
+                .description("The name of the cache.")
+                .build());
   }
 
   boolean matches(String cacheName) {
-    return pattern.matcher(cacheName).matches();
+    boolean matches = decisions.computeIfAbsent(cacheName, this::evaluate);
+    if (matches) {
+      matched.increment(cacheName);
+    }
+    return matches;
+  }
+
+  private boolean evaluate(String cacheName) {
+    return names.contains(cacheName) || (pattern != null && pattern.matcher(cacheName).matches());
   }
 }
@@ -20,6 +20,8 @@ public final class Constants {
   public static final String ACCOUNTS = "accounts";
   public static final String GROUPS = "groups";
   public static final String GROUPS_BYINCLUDE = "groups_byinclude";
+  public static final String GROUPS_BYMEMBER = "groups_bymember";
+  public static final String GROUPS_BYSUBGROUP = "groups_bysubgroup";
   public static final String GROUPS_MEMBERS = "groups_members";
   public static final String PROJECTS = "projects";
 
@@ -16,16 +16,19 @@ package com.ericsson.gerrit.plugins.highavailability.cache;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.Context;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
+import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.events.NewProjectCreatedListener;
 import com.google.gerrit.extensions.events.ProjectDeletedListener;
 import com.google.gerrit.extensions.events.ProjectEvent;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
 @Singleton
 public class ProjectListUpdateHandler implements NewProjectCreatedListener, ProjectDeletedListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
   private final Forwarder forwarder;
   private final Executor executor;
@@ -68,11 +71,16 @@ public class ProjectListUpdateHandler implements NewProjectCreatedListener, Proj
 
     @Override
     public void run() {
-      if (delete) {
-        forwarder.removeFromProjectList(projectName);
-      } else {
-        forwarder.addToProjectList(projectName);
-      }
+      CompletableFuture<Boolean> forwarded =
+          delete
+              ? forwarder.removeFromProjectListAsync(projectName)
+              : forwarder.addToProjectListAsync(projectName);
+      forwarded.whenComplete(
+          (ok, e) -> {
+            if (e != null || !ok) {
+              log.atWarning().withCause(e).log("%s failed", this);
+            }
+          });
     }
 
     @Override
@@ -0,0 +1,151 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.google.gerrit.server.events.Event;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Expose an {@link AsyncForwarder} as a {@link Forwarder} without waiting for the outcome of the
+ * forwarding.
+ *
+ * <p>Messages still in flight are reported as successfully forwarded by the synchronous methods;
+ * failures are logged by the {@link AsyncForwarder}. The outcome of the indexing, cache eviction
+ * and project list messages is available from the asynchronous methods, so that they are only
+ * counted as forwarded once they are.
+ */
+@Singleton
+public class AsyncForwarderAdapter implements Forwarder {
+  private final AsyncForwarder asyncForwarder;
+
+  @Inject
+  AsyncForwarderAdapter(AsyncForwarder asyncForwarder) {
+    this.asyncForwarder = asyncForwarder;
+  }
+
+  @Override
+  public boolean indexAccount(int accountId, IndexEvent indexEvent) {
+    return resultIfDone(asyncForwarder.indexAccount(accountId, indexEvent));
+  }
+
+  @Override
+  public boolean indexChange(String projectName, int changeId, IndexEvent indexEvent) {
+    return resultIfDone(asyncForwarder.indexChange(projectName, changeId, indexEvent));
+  }
+
+  @Override
+  public boolean deleteChangeFromIndex(int changeId, IndexEvent indexEvent) {
+    return resultIfDone(asyncForwarder.deleteChangeFromIndex(changeId, indexEvent));
+  }
+
+  @Override
+  public boolean indexGroup(String uuid, IndexEvent indexEvent) {
+    return resultIfDone(asyncForwarder.indexGroup(uuid, indexEvent));
+  }
+
+  @Override
+  public boolean indexProject(String projectName, IndexEvent indexEvent) {
+    return resultIfDone(asyncForwarder.indexProject(projectName, indexEvent));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexAccountAsync(int accountId, IndexEvent indexEvent) {
+    return asyncForwarder.indexAccount(accountId, indexEvent);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexChangeAsync(
+      String projectName, int changeId, IndexEvent indexEvent) {
+    return asyncForwarder.indexChange(projectName, changeId, indexEvent);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteChangeFromIndexAsync(
+      int changeId, IndexEvent indexEvent) {
+    return asyncForwarder.deleteChangeFromIndex(changeId, indexEvent);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexGroupAsync(String uuid, IndexEvent indexEvent) {
+    return asyncForwarder.indexGroup(uuid, indexEvent);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexProjectAsync(String projectName, IndexEvent indexEvent) {
+    return asyncForwarder.indexProject(projectName, indexEvent);
+  }
+
+  @Override
+  public boolean send(Event event) {
+    return resultIfDone(asyncForwarder.send(event));
+  }
+
+  @Override
+  public boolean evict(String cacheName, Object key) {
+    return resultIfDone(asyncForwarder.evict(cacheName, key));
+  }
+
+  @Override
+  public boolean evictAll(String cacheName, Collection<?> keys) {
+    return resultIfDone(asyncForwarder.evictAll(cacheName, keys));
+  }
+
+  @Override
+  public boolean flushCache(String cacheName) {
+    return resultIfDone(asyncForwarder.flushCache(cacheName));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> evictAsync(String cacheName, Object key) {
+    return asyncForwarder.evict(cacheName, key);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> evictAllAsync(String cacheName, Collection<?> keys) {
+    return asyncForwarder.evictAll(cacheName, keys);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> flushCacheAsync(String cacheName) {
+    return asyncForwarder.flushCache(cacheName);
+  }
+
+  @Override
+  public boolean addToProjectList(String projectName) {
+    return resultIfDone(asyncForwarder.addToProjectList(projectName));
+  }
+
+  @Override
+  public boolean removeFromProjectList(String projectName) {
+    return resultIfDone(asyncForwarder.removeFromProjectList(projectName));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> addToProjectListAsync(String projectName) {
+    return asyncForwarder.addToProjectList(projectName);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> removeFromProjectListAsync(String projectName) {
+    return asyncForwarder.removeFromProjectList(projectName);
+  }
+
+  private static boolean resultIfDone(CompletableFuture<Boolean> result) {
+    return result.getNow(true);
+  }
+}
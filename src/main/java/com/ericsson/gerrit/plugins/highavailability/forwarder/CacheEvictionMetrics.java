@@ -0,0 +1,117 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.logging.Metadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+/** Count, per cache, the evictions forwarded to and received from the other master. */
+@Singleton
+public class CacheEvictionMetrics {
+  private final Counter1<String> sent;
+  private final Counter1<String> failed;
+  private final Counter1<String> retried;
+  private final Counter1<String> received;
+  private final Timer1<String> queueLatency;
+  private final Timer1<String> latency;
+
+  @Inject
+  public CacheEvictionMetrics(MetricMaker metricMaker) {
+    Field<String> cacheName =
+        Field.ofString("cache_name", Metadata.Builder::cacheName)
+            .description("The name of the cache.")
+            .build();
+    this.sent =
+        metricMaker.newCounter(
+            "forwarding/cache/sent",
+            new Description("Cache evictions forwarded to the other master")
+                .setRate()
+                .setUnit("evictions"),
+            cacheName);
+    this.failed =
+        metricMaker.newCounter(
+            "forwarding/cache/failed",
+            new Description("Cache evictions which could not be forwarded")
+                .setRate()
+                .setUnit("evictions"),
+            cacheName);
+    this.retried =
+        metricMaker.newCounter(
+            "forwarding/cache/retried",
+            new Description("Requests forwarding cache evictions which were retried")
+                .setRate()
+                .setUnit("retries"),
+            cacheName);
+    this.received =
+        metricMaker.newCounter(
+            "forwarding/cache/received",
+            new Description("Cache evictions received from the other master")
+                .setRate()
+                .setUnit("evictions"),
+            cacheName);
+    this.queueLatency =
+        metricMaker.newTimer(
+            "forwarding/cache/queue_latency",
+            new Description("Time the cache evictions are gathered before being forwarded")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            cacheName);
+    this.latency =
+        metricMaker.newTimer(
+            "forwarding/cache/latency",
+            new Description("Time from the first removal until the cache evictions are forwarded")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            cacheName);
+  }
+
+  /**
+   * @param cacheName the name of the cache.
+   * @param waitNanos how long the evictions were gathered before being forwarded.
+   */
+  public void queued(String cacheName, long waitNanos) {
+    queueLatency.record(cacheName, waitNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param cacheName the name of the cache.
+   * @param evictions the number of forwarded evictions.
+   * @param latencyNanos how long after the first removal the evictions were forwarded.
+   */
+  public void sent(String cacheName, int evictions, long latencyNanos) {
+    sent.incrementBy(cacheName, evictions);
+    latency.record(cacheName, latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void failed(String cacheName, int evictions) {
+    failed.incrementBy(cacheName, evictions);
+  }
+
+  public void retried(String cacheName) {
+    retried.increment(cacheName);
+  }
+
+  public void received(String cacheName, int evictions) {
+    received.incrementBy(cacheName, evictions);
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+/**
+ * Encode and decode the keys of a cache whose evictions are forwarded to the other master.
+ *
+ * <p>The keys of the caches without a codec are forwarded as serialized by Gson and only the
+ * string keys can be decoded, the other master flushes the whole cache for the other ones. A plugin
+ * can bind a codec for each of its caches, exported with the name of the cache:
+ *
+ * <pre>
+ * bind(new TypeLiteral&lt;CacheKeyCodec&lt;?&gt;&gt;() {})
+ *     .annotatedWith(Exports.named("my_cache"))
+ *     .toInstance(new MyCacheKeyCodec());
+ * </pre>
+ *
+ * @param <K> the type of the keys of the cache.
+ */
+public interface CacheKeyCodec<K> {
+  /** @return the type of the keys of the cache. */
+  Class<K> keyType();
+
+  /**
+   * Write a key as a JSON value.
+   *
+   * @param out the writer to write the key to.
+   * @param key the key.
+   * @throws IOException if the key cannot be written.
+   */
+  void encode(JsonWriter out, K key) throws IOException;
+
+  /**
+   * Read a key written by {@link #encode(JsonWriter, Object)}.
+   *
+   * @param in the reader positioned on the key.
+   * @return the key.
+   * @throws IOException if the key cannot be read.
+   */
+  K decode(JsonReader in) throws IOException;
+}
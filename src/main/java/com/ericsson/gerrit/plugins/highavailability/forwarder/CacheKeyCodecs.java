@@ -0,0 +1,340 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.internal.bind.JsonTreeWriter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Encode and decode the keys of the evicted cache entries with the {@link CacheKeyCodec} of their
+ * cache, the built-in one of a core cache or the one bound by the plugin of a plugin cache.
+ */
+@Singleton
+public class CacheKeyCodecs {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private static final CacheKeyCodec<Account.Id> ACCOUNT_ID =
+      new IntFieldCodec<>(Account.Id.class, "id", Account::id, Account.Id::get);
+  private static final CacheKeyCodec<AccountGroup.Id> GROUP_ID =
+      new IntFieldCodec<>(AccountGroup.Id.class, "id", AccountGroup::id, AccountGroup.Id::get);
+  private static final CacheKeyCodec<AccountGroup.UUID> GROUP_UUID =
+      new StringFieldCodec<>(
+          AccountGroup.UUID.class, "uuid", AccountGroup::uuid, AccountGroup.UUID::get);
+
+  private static final ImmutableMap<String, CacheKeyCodec<?>> CORE_CODECS =
+      ImmutableMap.<String, CacheKeyCodec<?>>builder()
+          .put(Constants.ACCOUNTS, ACCOUNT_ID)
+          .put(Constants.GROUPS, GROUP_ID)
+          .put(Constants.GROUPS_BYINCLUDE, GROUP_UUID)
+          .put(Constants.GROUPS_BYMEMBER, ACCOUNT_ID)
+          .put(Constants.GROUPS_BYSUBGROUP, GROUP_UUID)
+          .put(Constants.GROUPS_MEMBERS, GROUP_UUID)
+          .build();
+
+  private final Gson gson;
+  private final DynamicMap<CacheKeyCodec<?>> pluginCodecs;
+
+  @Inject
+  public CacheKeyCodecs(@EventGson Gson gson, DynamicMap<CacheKeyCodec<?>> pluginCodecs) {
+    this.gson = gson;
+    this.pluginCodecs = pluginCodecs;
+  }
+
+  /**
+   * Encode the key of an entry of a cache.
+   *
+   * @param cacheName the name of the cache, e.g. my_plugin.my_cache.
+   * @param key the key.
+   * @return the JSON value of the key.
+   */
+  public String encode(String cacheName, Object key) {
+    StringWriter json = new StringWriter();
+    try (JsonWriter out = writer(json)) {
+      writeKey(out, cacheName, key);
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to encode key %s of cache %s", key, cacheName);
+      return gson.toJson(key);
+    }
+    return json.toString();
+  }
+
+  /**
+   * Encode the keys of several entries of a cache.
+   *
+   * @param cacheName the name of the cache, e.g. my_plugin.my_cache.
+   * @param keys the keys.
+   * @return the JSON array of the keys.
+   */
+  public String encodeAll(String cacheName, Collection<?> keys) {
+    StringWriter json = new StringWriter();
+    try (JsonWriter out = writer(json)) {
+      writeKeys(out, cacheName, keys);
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to encode keys of cache %s", cacheName);
+      return gson.toJson(keys);
+    }
+    return json.toString();
+  }
+
+  /** @return the key encoded as by {@link #encode(String, Object)}, as a JSON tree. */
+  public JsonElement encodeTree(String cacheName, Object key) {
+    JsonTreeWriter out = treeWriter();
+    try {
+      writeKey(out, cacheName, key);
+      return out.get();
+    } catch (IOException | IllegalStateException e) {
+      log.atWarning().withCause(e).log("Unable to encode key %s of cache %s", key, cacheName);
+      return gson.toJsonTree(key);
+    }
+  }
+
+  /** @return the keys encoded as by {@link #encodeAll(String, Collection)}, as a JSON tree. */
+  public JsonElement encodeAllTree(String cacheName, Collection<?> keys) {
+    JsonTreeWriter out = treeWriter();
+    try {
+      writeKeys(out, cacheName, keys);
+      return out.get();
+    } catch (IOException | IllegalStateException e) {
+      log.atWarning().withCause(e).log("Unable to encode keys of cache %s", cacheName);
+      return gson.toJsonTree(keys);
+    }
+  }
+
+  /**
+   * Decode the key of an entry of a cache.
+   *
+   * @param cacheName the name of the cache, e.g. my_plugin.my_cache.
+   * @param json the JSON value of the key.
+   * @return the key, or empty if the cache has no codec and the key is not a string, in which case
+   *     the whole cache is to be flushed.
+   * @throws IOException if the key is invalid.
+   */
+  public Optional<Object> decode(String cacheName, String json) throws IOException {
+    CacheKeyCodec<?> codec = codec(cacheName);
+    try (JsonReader in = reader(json)) {
+      return read(in, cacheName, codec);
+    }
+  }
+
+  /**
+   * Decode the keys of several entries of a cache.
+   *
+   * @param cacheName the name of the cache, e.g. my_plugin.my_cache.
+   * @param json the JSON array of the keys.
+   * @return the keys, without duplicates, or empty if any of them cannot be decoded as by {@link
+   *     #decode(String, String)}.
+   * @throws IOException if the keys are invalid.
+   */
+  public Optional<Set<Object>> decodeAll(String cacheName, String json) throws IOException {
+    Set<Object> keys = new LinkedHashSet<>();
+    if (Strings.isNullOrEmpty(json)) {
+      return Optional.of(keys);
+    }
+    CacheKeyCodec<?> codec = codec(cacheName);
+    try (JsonReader in = reader(json)) {
+      in.beginArray();
+      while (in.hasNext()) {
+        Optional<Object> key = read(in, cacheName, codec);
+        if (!key.isPresent()) {
+          return Optional.empty();
+        }
+        keys.add(key.get());
+      }
+      in.endArray();
+    } catch (IllegalStateException e) {
+      throw new IOException("Invalid keys of cache " + cacheName, e);
+    }
+    return Optional.of(keys);
+  }
+
+  private CacheKeyCodec<?> codec(String cacheName) {
+    CacheEntry entry = CacheEntry.from(cacheName, null);
+    if (Constants.GERRIT.equals(entry.getPluginName())) {
+      return CORE_CODECS.get(entry.getCacheName());
+    }
+    return pluginCodecs.get(entry.getPluginName(), entry.getCacheName());
+  }
+
+  private void writeKey(JsonWriter out, String cacheName, Object key) throws IOException {
+    write(out, cacheName, codec(cacheName), key);
+  }
+
+  private void writeKeys(JsonWriter out, String cacheName, Collection<?> keys)
+      throws IOException {
+    CacheKeyCodec<?> codec = codec(cacheName);
+    out.beginArray();
+    for (Object key : keys) {
+      write(out, cacheName, codec, key);
+    }
+    out.endArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <K> void write(JsonWriter out, String cacheName, CacheKeyCodec<K> codec, Object key)
+      throws IOException {
+    if (codec == null || !codec.keyType().isInstance(key)) {
+      if (codec != null) {
+        log.atFine().log("Key %s of cache %s is not a %s", key, cacheName, codec.keyType());
+      }
+      gson.toJson(key, key == null ? Object.class : key.getClass(), out);
+      return;
+    }
+    codec.encode(out, (K) key);
+  }
+
+  private static Optional<Object> read(JsonReader in, String cacheName, CacheKeyCodec<?> codec)
+      throws IOException {
+    try {
+      if (codec != null) {
+        return Optional.ofNullable(codec.decode(in));
+      }
+      JsonToken token = in.peek();
+      if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+        return Optional.of(in.nextString());
+      }
+      in.skipValue();
+      log.atFine().log("Cache %s has no codec for its %s keys", cacheName, token);
+      return Optional.empty();
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new IOException("Invalid key of cache " + cacheName, e);
+    }
+  }
+
+  private static JsonWriter writer(StringWriter json) {
+    JsonWriter out = new JsonWriter(json);
+    out.setLenient(true);
+    return out;
+  }
+
+  private static JsonTreeWriter treeWriter() {
+    JsonTreeWriter out = new JsonTreeWriter();
+    out.setLenient(true);
+    return out;
+  }
+
+  private static JsonReader reader(String json) {
+    JsonReader in = new JsonReader(new StringReader(Strings.nullToEmpty(json)));
+    in.setLenient(true);
+    return in;
+  }
+
+  /** Codec of the keys written as a JSON object with a single int field. */
+  private static class IntFieldCodec<K> implements CacheKeyCodec<K> {
+    private final Class<K> keyType;
+    private final String field;
+    private final IntFunction<K> fromInt;
+    private final ToIntFunction<K> toInt;
+
+    IntFieldCodec(Class<K> keyType, String field, IntFunction<K> fromInt, ToIntFunction<K> toInt) {
+      this.keyType = keyType;
+      this.field = field;
+      this.fromInt = fromInt;
+      this.toInt = toInt;
+    }
+
+    @Override
+    public Class<K> keyType() {
+      return keyType;
+    }
+
+    @Override
+    public void encode(JsonWriter out, K key) throws IOException {
+      out.beginObject().name(field).value(toInt.applyAsInt(key)).endObject();
+    }
+
+    @Override
+    public K decode(JsonReader in) throws IOException {
+      K key = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (field.equals(in.nextName())) {
+          key = fromInt.apply(in.nextInt());
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return key;
+    }
+  }
+
+  /** Codec of the keys written as a JSON object with a single string field. */
+  private static class StringFieldCodec<K> implements CacheKeyCodec<K> {
+    private final Class<K> keyType;
+    private final String field;
+    private final Function<String, K> fromString;
+    private final Function<K, String> toString;
+
+    StringFieldCodec(
+        Class<K> keyType,
+        String field,
+        Function<String, K> fromString,
+        Function<K, String> toString) {
+      this.keyType = keyType;
+      this.field = field;
+      this.fromString = fromString;
+      this.toString = toString;
+    }
+
+    @Override
+    public Class<K> keyType() {
+      return keyType;
+    }
+
+    @Override
+    public void encode(JsonWriter out, K key) throws IOException {
+      out.beginObject().name(field).value(toString.apply(key)).endObject();
+    }
+
+    @Override
+    public K decode(JsonReader in) throws IOException {
+      K key = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (field.equals(in.nextName())) {
+          key = fromString.apply(in.nextString());
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return key;
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.util.Collection;
 
 /**
  * Evict cache entries. This class is meant to be used on the receiving side of the {@link
@@ -31,10 +32,13 @@ public class ForwardedCacheEvictionHandler {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
   private final DynamicMap<Cache<?, ?>> cacheMap;
+  private final CacheEvictionMetrics metrics;
 
   @Inject
-  public ForwardedCacheEvictionHandler(DynamicMap<Cache<?, ?>> cacheMap) {
+  public ForwardedCacheEvictionHandler(
+      DynamicMap<Cache<?, ?>> cacheMap, CacheEvictionMetrics metrics) {
     this.cacheMap = cacheMap;
+    this.metrics = metrics;
   }
 
   /**
@@ -45,10 +49,7 @@ public class ForwardedCacheEvictionHandler {
    * @throws CacheNotFoundException if cache does not exist
    */
   public void evict(CacheEntry entry) throws CacheNotFoundException {
-    Cache<?, ?> cache = cacheMap.get(entry.getPluginName(), entry.getCacheName());
-    if (cache == null) {
-      throw new CacheNotFoundException(entry.getPluginName(), entry.getCacheName());
-    }
+    Cache<?, ?> cache = getCache(entry);
     try {
       Context.setForwardedEvent(true);
       if (Constants.PROJECT_LIST.equals(entry.getCacheName())) {
@@ -59,8 +60,63 @@ public class ForwardedCacheEvictionHandler {
         cache.invalidate(entry.getKey());
         log.atFine().log("Invalidated cache %s[%s]", entry.getCacheName(), entry.getKey());
       }
+      metrics.received(entry.getCacheName(), 1);
     } finally {
       Context.unsetForwardedEvent();
     }
   }
+
+  /**
+   * Evict several entries from a cache of the local node at once, eviction will not be forwarded
+   * to the other node.
+   *
+   * @param cacheName the cache to evict the entries from, e.g. my_plugin.my_cache
+   * @param keys the keys identifying the entries to evict
+   * @throws CacheNotFoundException if cache does not exist
+   */
+  public void evictAll(String cacheName, Collection<?> keys) throws CacheNotFoundException {
+    CacheEntry entry = CacheEntry.from(cacheName, null);
+    Cache<?, ?> cache = getCache(entry);
+    try {
+      Context.setForwardedEvent(true);
+      if (Constants.PROJECT_LIST.equals(entry.getCacheName())) {
+        cache.invalidateAll();
+        log.atFine().log("Invalidated cache %s", entry.getCacheName());
+      } else {
+        cache.invalidateAll(keys);
+        log.atFine().log("Invalidated %d keys of cache %s", keys.size(), entry.getCacheName());
+      }
+      metrics.received(entry.getCacheName(), keys.size());
+    } finally {
+      Context.unsetForwardedEvent();
+    }
+  }
+
+  /**
+   * Evict all the entries from a cache of the local node, eviction will not be forwarded to the
+   * other node.
+   *
+   * @param cacheName the cache to flush, e.g. my_plugin.my_cache
+   * @throws CacheNotFoundException if cache does not exist
+   */
+  public void flush(String cacheName) throws CacheNotFoundException {
+    CacheEntry entry = CacheEntry.from(cacheName, null);
+    Cache<?, ?> cache = getCache(entry);
+    try {
+      Context.setForwardedEvent(true);
+      cache.invalidateAll();
+      log.atFine().log("Invalidated cache %s", entry.getCacheName());
+      metrics.received(entry.getCacheName(), 1);
+    } finally {
+      Context.unsetForwardedEvent();
+    }
+  }
+
+  private Cache<?, ?> getCache(CacheEntry entry) throws CacheNotFoundException {
+    Cache<?, ?> cache = cacheMap.get(entry.getPluginName(), entry.getCacheName());
+    if (cache == null) {
+      throw new CacheNotFoundException(entry.getPluginName(), entry.getCacheName());
+    }
+    return cache;
+  }
 }
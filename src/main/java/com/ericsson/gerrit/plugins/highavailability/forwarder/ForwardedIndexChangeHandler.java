@@ -16,21 +16,34 @@ package com.ericsson.gerrit.plugins.highavailability.forwarder;
 
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.ericsson.gerrit.plugins.highavailability.Configuration.Index;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeBatchLoader;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeBatchLoader.LoadedChange;
 import com.ericsson.gerrit.plugins.highavailability.index.ChangeChecker;
 import com.ericsson.gerrit.plugins.highavailability.index.ChangeCheckerImpl;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeRefWaiter;
 import com.ericsson.gerrit.plugins.highavailability.index.ForwardedIndexExecutor;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.server.index.change.ChangeIndexer;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.util.ManualRequestContext;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -47,6 +60,9 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
   private final int retryInterval;
   private final int maxTries;
   private final ChangeCheckerImpl.Factory changeCheckerFactory;
+  private final ChangeBatchLoader batchLoader;
+  private final ChangeData.Factory changeDataFactory;
+  private final ChangeRefWaiter refWaiter;
 
   @Inject
   ForwardedIndexChangeHandler(
@@ -54,12 +70,17 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
       Configuration config,
       @ForwardedIndexExecutor ScheduledExecutorService indexExecutor,
       OneOffRequestContext oneOffCtx,
-      ChangeCheckerImpl.Factory changeCheckerFactory) {
-    super(config.index());
+      ChangeCheckerImpl.Factory changeCheckerFactory,
+      ChangeBatchLoader batchLoader,
+      ChangeData.Factory changeDataFactory,
+      ChangeRefWaiter refWaiter) {
     this.indexer = indexer;
     this.indexExecutor = indexExecutor;
     this.oneOffCtx = oneOffCtx;
     this.changeCheckerFactory = changeCheckerFactory;
+    this.batchLoader = batchLoader;
+    this.changeDataFactory = changeDataFactory;
+    this.refWaiter = refWaiter;
 
     Index indexConfig = config.index();
     this.retryInterval = indexConfig != null ? indexConfig.retryInterval() : 0;
@@ -68,10 +89,10 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
 
   @Override
   protected void doIndex(String id, Optional<IndexEvent> indexEvent) throws IOException {
-    doIndex(id, indexEvent, 0);
+    doIndex(id, indexEvent, Retry.NONE);
   }
 
-  private void doIndex(String id, Optional<IndexEvent> indexEvent, int retryCount)
+  private void doIndex(String id, Optional<IndexEvent> indexEvent, Retry retry)
       throws IOException {
     try {
       ChangeChecker checker = changeCheckerFactory.create(id);
@@ -81,9 +102,9 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
         reindex(notes);
 
         if (checker.isChangeUpToDate(indexEvent)) {
-          if (retryCount > 0) {
+          if (retry.attempt > 0) {
             log.atWarning().log(
-                "Change %s has been eventually indexed after %d attempt(s)", id, retryCount);
+                "Change %s has been eventually indexed after %d attempt(s)", id, retry.attempt);
           } else {
             log.atFine().log("Change %s successfully indexed", id);
           }
@@ -91,13 +112,20 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
           log.atWarning().log(
               "Change %s seems too old compared to the event timestamp (event-Ts=%s >> change-Ts=%s)",
               id, indexEvent, checker);
-          rescheduleIndex(id, indexEvent, retryCount + 1);
+          rescheduleIndex(
+              id,
+              indexEvent,
+              retry,
+              ImmutableList.of(
+                  RefNames.changeMetaRef(parseChangeId(id)),
+                  notes.getChange().getDest().branch()));
         }
       } else {
         log.atWarning().log(
             "Change %s not present yet in local Git repository (event=%s) after %d attempt(s)",
-            id, indexEvent, retryCount);
-        if (!rescheduleIndex(id, indexEvent, retryCount + 1)) {
+            id, indexEvent, retry.attempt);
+        if (!rescheduleIndex(
+            id, indexEvent, retry, ImmutableList.of(RefNames.changeMetaRef(parseChangeId(id))))) {
           log.atSevere().log(
               "Change %s could not be found in the local Git repository (event=%s)",
               id, indexEvent);
@@ -114,33 +142,137 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
     }
   }
 
+  /**
+   * Index several changes in the local node, indexing will not be forwarded to the other node.
+   *
+   * <p>The changes are grouped by project so that the repository of each project is opened once and
+   * the changes are loaded from a single lookup of their refs. Changes which are missing or older
+   * than their index event are indexed one at a time instead, retrying as for {@link #index}.
+   *
+   * @param changes the ids of the changes to index, in the {@code project~changeNumber} form, and
+   *     their index events.
+   * @throws IOException if some changes could not be indexed.
+   * @throws IllegalArgumentException if some ids are invalid, once the other changes are indexed.
+   */
+  public void indexChanges(Map<String, Optional<IndexEvent>> changes) throws IOException {
+    log.atFine().log("Indexing %d changes", changes.size());
+    Map<Project.NameKey, Map<Change.Id, String>> byProject = new LinkedHashMap<>();
+    int invalid = 0;
+    for (String id : changes.keySet()) {
+      try {
+        byProject
+            .computeIfAbsent(parseProject(id), p -> new LinkedHashMap<>())
+            .put(parseChangeId(id), id);
+      } catch (IllegalArgumentException e) {
+        log.atSevere().withCause(e).log("Unable to index change %s", id);
+        invalid++;
+      }
+    }
+
+    int failed = 0;
+    try (ManualRequestContext ctx = oneOffCtx.open()) {
+      Context.setForwardedEvent(true);
+      for (Map.Entry<Project.NameKey, Map<Change.Id, String>> project : byProject.entrySet()) {
+        Map<Change.Id, LoadedChange> loaded = load(project.getKey(), project.getValue());
+        for (Map.Entry<Change.Id, String> change : project.getValue().entrySet()) {
+          String id = change.getValue();
+          Optional<IndexEvent> indexEvent = changes.get(id);
+          LoadedChange loadedChange = loaded.get(change.getKey());
+          try {
+            runSerially(
+                id,
+                Operation.INDEX,
+                () -> {
+                  if (loadedChange != null && loadedChange.isUpToDate(indexEvent)) {
+                    indexer.index(changeDataFactory.create(loadedChange.notes()));
+                    log.atFine().log("Change %s successfully indexed", id);
+                  } else {
+                    doIndex(id, indexEvent, Retry.NONE);
+                  }
+                });
+          } catch (Exception e) {
+            log.atSevere().withCause(e).log("Unable to index change %s", id);
+            failed++;
+          }
+        }
+      }
+    } finally {
+      Context.unsetForwardedEvent();
+    }
+    if (failed > 0) {
+      throw new IOException(
+          String.format(
+              "%d of %d changes could not be indexed", failed + invalid, changes.size()));
+    }
+    if (invalid > 0) {
+      throw new IllegalArgumentException(
+          String.format("%d of %d change ids are invalid", invalid, changes.size()));
+    }
+  }
+
+  private Map<Change.Id, LoadedChange> load(Project.NameKey project, Map<Change.Id, String> ids) {
+    if (project.get().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    try {
+      return batchLoader.load(project, ids.keySet());
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log(
+          "Unable to load %d changes of %s at once", ids.size(), project);
+      return Collections.emptyMap();
+    }
+  }
+
   private void reindex(ChangeNotes notes) {
     notes.reload();
     indexer.index(notes.getChange());
   }
 
-  private boolean rescheduleIndex(String id, Optional<IndexEvent> indexEvent, int retryCount) {
-    if (retryCount > maxTries) {
+  /**
+   * Index the change again once its refs are updated, or after {@code index.retryInterval} if they
+   * are not. Only the retries after {@code index.retryInterval} count against {@code
+   * index.maxTries}, and the change is given up {@code index.maxTries} times {@code
+   * index.retryInterval} milliseconds after its first retry however often its refs are updated.
+   */
+  private boolean rescheduleIndex(
+      String id, Optional<IndexEvent> indexEvent, Retry retry, List<String> refNames) {
+    long now = System.currentTimeMillis();
+    boolean retried = retry.attempt > 0;
+    long deadline = retried ? retry.deadline : now + (long) maxTries * retryInterval;
+    if (retry.timeouts >= maxTries || (retried && now >= deadline)) {
       log.atSevere().log(
           "Change %s could not be indexed after %d retries. Change index could be stale.",
-          id, retryCount);
+          id, retry.attempt);
       return false;
     }
 
+    int attempt = retry.attempt + 1;
+    long delay = Math.max(0, Math.min(retryInterval, deadline - now));
     log.atWarning().log(
-        "Retrying for the #%d time to index Change %s after %d msecs",
-        retryCount, id, retryInterval);
-    indexExecutor.schedule(
-        () -> {
+        "Retrying for the #%d time to index Change %s when %s are updated or after %d msecs",
+        attempt, id, refNames, delay);
+    CompletableFuture<Boolean> timedOut = new CompletableFuture<>();
+    CompletableFuture<Void> refsUpdated = refWaiter.await(parseProject(id), refNames);
+    refsUpdated.thenRun(() -> timedOut.complete(false));
+    ScheduledFuture<?> fallback =
+        indexExecutor.schedule(() -> timedOut.complete(true), delay, TimeUnit.MILLISECONDS);
+    timedOut.thenAcceptAsync(
+        fallbackElapsed -> {
+          fallback.cancel(false);
+          refsUpdated.complete(null);
           try (ManualRequestContext ctx = oneOffCtx.open()) {
             Context.setForwardedEvent(true);
-            doIndex(id, indexEvent, retryCount);
+            doIndex(
+                id,
+                indexEvent,
+                new Retry(attempt, retry.timeouts + (fallbackElapsed ? 1 : 0), deadline));
           } catch (Exception e) {
             log.atWarning().withCause(e).log("Change %s could not be indexed", id);
+          } finally {
+            Context.unsetForwardedEvent();
           }
         },
-        retryInterval,
-        TimeUnit.MILLISECONDS);
+        indexExecutor);
     return true;
   }
 
@@ -150,8 +282,42 @@ public class ForwardedIndexChangeHandler extends ForwardedIndexingHandler<String
     log.atFine().log("Change %s successfully deleted from index", id);
   }
 
+  private static Project.NameKey parseProject(String id) {
+    return Project.nameKey(split(id).get(0));
+  }
+
   private static Change.Id parseChangeId(String id) {
-    return Change.id(Integer.parseInt(Splitter.on("~").splitToList(id).get(1)));
+    try {
+      return Change.id(Integer.parseInt(split(id).get(1)));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid change id: " + id, e);
+    }
+  }
+
+  private static List<String> split(String id) {
+    List<String> parts = id == null ? ImmutableList.of() : Splitter.on("~").splitToList(id);
+    if (parts.size() < 2) {
+      throw new IllegalArgumentException("Invalid change id: " + id);
+    }
+    return parts;
+  }
+
+  /** Retries of the indexing of a change. */
+  private static class Retry {
+    static final Retry NONE = new Retry(0, 0, 0);
+
+    /** Number of retries so far. */
+    final int attempt;
+    /** Number of retries which were not woken up by an update of the refs of the change. */
+    final int timeouts;
+    /** Time in milliseconds after which the change is given up, once retried. */
+    final long deadline;
+
+    Retry(int attempt, int timeouts, long deadline) {
+      this.attempt = attempt;
+      this.timeouts = timeouts;
+      this.deadline = deadline;
+    }
   }
 
   private static boolean isCausedByNoSuchChangeException(Throwable throwable) {
@@ -14,12 +14,10 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder;
 
-import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.IndexTask;
 import com.google.common.flogger.FluentLogger;
-import com.google.common.util.concurrent.Striped;
 import java.io.IOException;
 import java.util.Optional;
-import java.util.concurrent.locks.Lock;
 
 /**
  * Base class to handle forwarded indexing. This class is meant to be extended by classes used on
@@ -40,14 +38,24 @@ public abstract class ForwardedIndexingHandler<T> {
     }
   }
 
-  private final Striped<Lock> idLocks;
+  private final IdSerializer<T> serializer = new IdSerializer<>();
 
   protected abstract void doIndex(T id, Optional<IndexEvent> indexEvent) throws IOException;
 
   protected abstract void doDelete(T id, Optional<IndexEvent> indexEvent) throws IOException;
 
-  protected ForwardedIndexingHandler(Configuration.Index indexConfig) {
-    idLocks = Striped.lock(indexConfig.numStripedLocks());
+  /**
+   * Run an operation on an item once the operations previously requested for the item are done. A
+   * requested operation which is still waiting is superseded by a newer request of the same
+   * operation on the item.
+   *
+   * @param id The id of the item.
+   * @param operation The operation to run.
+   * @param task The task running the operation.
+   * @throws IOException If an error occur while running the operation, or the one superseding it.
+   */
+  protected void runSerially(T id, Operation operation, IndexTask task) throws IOException {
+    serializer.run(id, operation, task);
   }
 
   /**
@@ -61,23 +69,22 @@ public abstract class ForwardedIndexingHandler<T> {
     log.atFine().log("%s %s %s", operation, id, indexEvent);
     try {
       Context.setForwardedEvent(true);
-      Lock idLock = idLocks.get(id);
-      idLock.lock();
-      try {
-        switch (operation) {
-          case INDEX:
-            doIndex(id, indexEvent);
-            break;
-          case DELETE:
-            doDelete(id, indexEvent);
-            break;
-          default:
-            log.atSevere().log("unexpected operation: %s", operation);
-            break;
-        }
-      } finally {
-        idLock.unlock();
-      }
+      runSerially(
+          id,
+          operation,
+          () -> {
+            switch (operation) {
+              case INDEX:
+                doIndex(id, indexEvent);
+                break;
+              case DELETE:
+                doDelete(id, indexEvent);
+                break;
+              default:
+                log.atSevere().log("unexpected operation: %s", operation);
+                break;
+            }
+          });
     } finally {
       Context.unsetForwardedEvent();
     }
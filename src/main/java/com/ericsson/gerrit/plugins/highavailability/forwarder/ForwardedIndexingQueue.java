@@ -0,0 +1,178 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.ExecutorProvider;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of the forwarded indexing requests waiting to be processed on this node.
+ *
+ * <p>The requests are acknowledged as soon as they are queued, and are processed by {@code
+ * index.threadPoolSize} threads by order of priority: deletions first, then the requests resulting
+ * from user actions and finally the bulk reindexing requests. Requests of the same priority are
+ * processed in the order they were received. Once {@code index.maxQueuedRequests} requests are
+ * waiting, new requests are refused so that the sender backs off and retries them later.
+ *
+ * <p>When stopping, the queued requests are processed for up to {@code index.drainTimeout}
+ * milliseconds; the remaining ones are dropped, although the sender was told they were accepted.
+ * Queued requests are therefore delivered at most once.
+ */
+@Singleton
+public class ForwardedIndexingQueue implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  public enum Priority {
+    DELETE,
+    INTERACTIVE,
+    BULK
+  }
+
+  public interface IndexTask {
+    void run() throws IOException;
+  }
+
+  private final WorkQueue workQueue;
+  private final Configuration cfg;
+  private final int capacity;
+  private final PriorityBlockingQueue<QueuedTask> tasks = new PriorityBlockingQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile ScheduledExecutorService executor;
+
+  @Inject
+  ForwardedIndexingQueue(WorkQueue workQueue, Configuration cfg) {
+    this.workQueue = workQueue;
+    this.cfg = cfg;
+    this.capacity = cfg.index().maxQueuedRequests();
+  }
+
+  @Override
+  public void start() {
+    if (isEnabled()) {
+      executor =
+          ExecutorProvider.createQueue(
+              workQueue, cfg, cfg.index().threadPoolSize(), "Forwarded-Index-Queue");
+    }
+  }
+
+  @Override
+  public void stop() {
+    ScheduledExecutorService current = executor;
+    executor = null;
+    if (current != null) {
+      current.shutdown();
+      try {
+        current.awaitTermination(cfg.index().drainTimeout(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (!tasks.isEmpty()) {
+      log.atWarning().log(
+          "Dropping %d queued forwarded indexing requests not processed within %d ms",
+          tasks.size(), cfg.index().drainTimeout());
+      tasks.clear();
+    }
+  }
+
+  /** @return true if forwarded indexing requests are queued, false if they are processed inline. */
+  public boolean isEnabled() {
+    return capacity > 0;
+  }
+
+  /**
+   * Queue a forwarded indexing request.
+   *
+   * @param priority the priority of the request.
+   * @param description the description of the request, for logging.
+   * @param task the processing of the request.
+   * @return true if the request was queued, false if the queue is full.
+   */
+  public boolean offer(Priority priority, String description, IndexTask task) {
+    ScheduledExecutorService current = executor;
+    if (current == null) {
+      return false;
+    }
+    if (queued.incrementAndGet() > capacity) {
+      queued.decrementAndGet();
+      log.atFine().log("Queue full, refusing %s", description);
+      return false;
+    }
+    QueuedTask queuedTask =
+        new QueuedTask(priority, sequence.getAndIncrement(), description, task);
+    tasks.add(queuedTask);
+    try {
+      current.execute(this::runNext);
+    } catch (RejectedExecutionException e) {
+      log.atWarning().withCause(e).log("Unable to schedule %s", description);
+      if (tasks.remove(queuedTask)) {
+        queued.decrementAndGet();
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /** @return the number of requests waiting to be processed. */
+  public int size() {
+    return queued.get();
+  }
+
+  private void runNext() {
+    QueuedTask next = tasks.poll();
+    if (next == null) {
+      return;
+    }
+    queued.decrementAndGet();
+    try {
+      next.task.run();
+    } catch (IOException | RuntimeException e) {
+      log.atSevere().withCause(e).log("Unable to %s", next.description);
+    }
+  }
+
+  private static class QueuedTask implements Comparable<QueuedTask> {
+    private final Priority priority;
+    private final long sequence;
+    private final String description;
+    private final IndexTask task;
+
+    QueuedTask(Priority priority, long sequence, String description, IndexTask task) {
+      this.priority = priority;
+      this.sequence = sequence;
+      this.description = description;
+      this.task = task;
+    }
+
+    @Override
+    public int compareTo(QueuedTask other) {
+      int byPriority = priority.compareTo(other.priority);
+      return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+  }
+}
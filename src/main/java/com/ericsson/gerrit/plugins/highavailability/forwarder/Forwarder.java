@@ -15,6 +15,8 @@
 package com.ericsson.gerrit.plugins.highavailability.forwarder;
 
 import com.google.gerrit.server.events.Event;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 /** Forward indexing, stream events and cache evictions to the other master */
 public interface Forwarder {
@@ -65,6 +67,69 @@ public interface Forwarder {
    */
   boolean indexProject(String projectName, IndexEvent indexEvent);
 
+  /**
+   * Forward a account indexing event to the other master, without waiting for the outcome when the
+   * forwarding is asynchronous.
+   *
+   * @param accountId the account to index.
+   * @param indexEvent the details of the index event.
+   * @return the outcome, completed with true once the event is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> indexAccountAsync(int accountId, IndexEvent indexEvent) {
+    return CompletableFuture.completedFuture(indexAccount(accountId, indexEvent));
+  }
+
+  /**
+   * Forward a change indexing event to the other master, without waiting for the outcome when the
+   * forwarding is asynchronous.
+   *
+   * @param projectName the project of the change to index.
+   * @param changeId the change to index.
+   * @param indexEvent the details of the index event.
+   * @return the outcome, completed with true once the event is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> indexChangeAsync(
+      String projectName, int changeId, IndexEvent indexEvent) {
+    return CompletableFuture.completedFuture(indexChange(projectName, changeId, indexEvent));
+  }
+
+  /**
+   * Forward a delete change from index event to the other master, without waiting for the outcome
+   * when the forwarding is asynchronous.
+   *
+   * @param changeId the change to remove from the index.
+   * @param indexEvent the details of the index event.
+   * @return the outcome, completed with true once the event is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> deleteChangeFromIndexAsync(
+      int changeId, IndexEvent indexEvent) {
+    return CompletableFuture.completedFuture(deleteChangeFromIndex(changeId, indexEvent));
+  }
+
+  /**
+   * Forward a group indexing event to the other master, without waiting for the outcome when the
+   * forwarding is asynchronous.
+   *
+   * @param uuid the group to index.
+   * @param indexEvent the details of the index event.
+   * @return the outcome, completed with true once the event is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> indexGroupAsync(String uuid, IndexEvent indexEvent) {
+    return CompletableFuture.completedFuture(indexGroup(uuid, indexEvent));
+  }
+
+  /**
+   * Forward a project indexing event to the other master, without waiting for the outcome when the
+   * forwarding is asynchronous.
+   *
+   * @param projectName the project to index.
+   * @param indexEvent the details of the index event.
+   * @return the outcome, completed with true once the event is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> indexProjectAsync(String projectName, IndexEvent indexEvent) {
+    return CompletableFuture.completedFuture(indexProject(projectName, indexEvent));
+  }
+
   /**
    * Forward a stream event to the other master.
    *
@@ -82,6 +147,58 @@ public interface Forwarder {
    */
   boolean evict(String cacheName, Object key);
 
+  /**
+   * Forward the eviction of several entries of a cache to the other master in one message.
+   *
+   * @param cacheName the name of the cache to evict the entries from.
+   * @param keys the keys identifying the entries to evict from the cache.
+   * @return true if successful, otherwise false.
+   */
+  boolean evictAll(String cacheName, Collection<?> keys);
+
+  /**
+   * Forward the eviction of all the entries of a cache to the other master.
+   *
+   * @param cacheName the name of the cache to flush.
+   * @return true if successful, otherwise false.
+   */
+  boolean flushCache(String cacheName);
+
+  /**
+   * Forward a cache eviction event to the other master, without waiting for the outcome when the
+   * forwarding is asynchronous.
+   *
+   * @param cacheName the name of the cache to evict an entry from.
+   * @param key the key identifying the entry to evict from the cache.
+   * @return the outcome, completed with true once the eviction is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> evictAsync(String cacheName, Object key) {
+    return CompletableFuture.completedFuture(evict(cacheName, key));
+  }
+
+  /**
+   * Forward the eviction of several entries of a cache to the other master in one message, without
+   * waiting for the outcome when the forwarding is asynchronous.
+   *
+   * @param cacheName the name of the cache to evict the entries from.
+   * @param keys the keys identifying the entries to evict from the cache.
+   * @return the outcome, completed with true once the eviction is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> evictAllAsync(String cacheName, Collection<?> keys) {
+    return CompletableFuture.completedFuture(evictAll(cacheName, keys));
+  }
+
+  /**
+   * Forward the eviction of all the entries of a cache to the other master, without waiting for
+   * the outcome when the forwarding is asynchronous.
+   *
+   * @param cacheName the name of the cache to flush.
+   * @return the outcome, completed with true once the flush is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> flushCacheAsync(String cacheName) {
+    return CompletableFuture.completedFuture(flushCache(cacheName));
+  }
+
   /**
    * Forward an addition to the project list cache to the other master.
    *
@@ -97,4 +214,26 @@ public interface Forwarder {
    * @return true if successful, otherwise false.
    */
   boolean removeFromProjectList(String projectName);
+
+  /**
+   * Forward an addition to the project list cache to the other master, without waiting for the
+   * outcome when the forwarding is asynchronous.
+   *
+   * @param projectName the name of the project to add to the project list cache
+   * @return the outcome, completed with true once the addition is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> addToProjectListAsync(String projectName) {
+    return CompletableFuture.completedFuture(addToProjectList(projectName));
+  }
+
+  /**
+   * Forward a removal from the project list cache to the other master, without waiting for the
+   * outcome when the forwarding is asynchronous.
+   *
+   * @param projectName the name of the project to remove from the project list cache
+   * @return the outcome, completed with true once the removal is forwarded or false once given up.
+   */
+  default CompletableFuture<Boolean> removeFromProjectListAsync(String projectName) {
+    return CompletableFuture.completedFuture(removeFromProjectList(projectName));
+  }
 }
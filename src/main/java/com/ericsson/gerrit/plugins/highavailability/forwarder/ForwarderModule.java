@@ -14,14 +14,20 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder;
 
+import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.registration.DynamicItem;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.server.events.EventDispatcher;
 import com.google.inject.AbstractModule;
+import com.google.inject.TypeLiteral;
 
 public class ForwarderModule extends AbstractModule {
 
   @Override
   protected void configure() {
     DynamicItem.bind(binder(), EventDispatcher.class).to(ForwardedAwareEventBroker.class);
+    DynamicSet.bind(binder(), LifecycleListener.class).to(ForwardedIndexingQueue.class);
+    DynamicMap.mapOf(binder(), new TypeLiteral<CacheKeyCodec<?>>() {});
   }
 }
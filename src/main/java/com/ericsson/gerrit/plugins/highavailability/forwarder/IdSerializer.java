@@ -0,0 +1,136 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.IndexTask;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Run the tasks of a same id one at a time, in the order they are submitted, while the tasks of
+ * distinct ids run concurrently.
+ *
+ * <p>Each id has a mailbox of the tasks waiting for the running one to finish. A task submitted
+ * with the same kind as the last waiting task of its id replaces it: both submitters get the
+ * outcome of the newest task, which is run once. Tasks are run by the threads submitting them, the
+ * mailbox only hands the turn over from one to the next.
+ */
+class IdSerializer<T> {
+  private final ConcurrentMap<T, ArrayDeque<Turn>> mailboxes = new ConcurrentHashMap<>();
+
+  /**
+   * Run a task once the tasks previously submitted for its id are done.
+   *
+   * @param id the id the task works on.
+   * @param kind the kind of the task, a waiting task of the same kind is superseded by this one.
+   * @param task the task to run.
+   * @throws IOException if the task, or the task superseding it, failed.
+   */
+  void run(T id, Object kind, IndexTask task) throws IOException {
+    Turn turn = new Turn(kind, task);
+    Turn[] superseded = new Turn[1];
+    mailboxes.compute(
+        id,
+        (k, waiting) -> {
+          if (waiting == null) {
+            turn.start.complete(null);
+            return new ArrayDeque<>();
+          }
+          Turn last = waiting.peekLast();
+          if (last != null && last.kind.equals(kind)) {
+            last.task = task;
+            superseded[0] = last;
+          } else {
+            waiting.addLast(turn);
+          }
+          return waiting;
+        });
+
+    if (superseded[0] != null) {
+      join(superseded[0].done);
+      return;
+    }
+
+    join(turn.start);
+    try {
+      turn.task.run();
+      turn.done.complete(null);
+    } catch (IOException | RuntimeException | Error e) {
+      turn.done.completeExceptionally(e);
+      throw e;
+    } finally {
+      handOver(id);
+    }
+  }
+
+  @VisibleForTesting
+  int waiting(T id) {
+    int[] size = new int[1];
+    mailboxes.computeIfPresent(
+        id,
+        (k, waiting) -> {
+          size[0] = waiting.size();
+          return waiting;
+        });
+    return size[0];
+  }
+
+  private void handOver(T id) {
+    Turn[] next = new Turn[1];
+    mailboxes.computeIfPresent(
+        id,
+        (k, waiting) -> {
+          next[0] = waiting.pollFirst();
+          return next[0] == null ? null : waiting;
+        });
+    if (next[0] != null) {
+      next[0].start.complete(null);
+    }
+  }
+
+  private static void join(CompletableFuture<Void> future) throws IOException {
+    try {
+      future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static class Turn {
+    private final Object kind;
+    private final CompletableFuture<Void> start = new CompletableFuture<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile IndexTask task;
+
+    Turn(Object kind, IndexTask task) {
+      this.kind = kind;
+      this.task = task;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessageHandler;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consume the messages published to the {@link MessageLog} by the other masters and apply them to
+ * this one. The offset reached in each partition is kept in the plugin data directory, so that
+ * consuming resumes where it stopped after a restart; a master consuming the log for the first time
+ * starts from its end.
+ */
+@Singleton
+class BrokerConsumer implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  static final String OFFSETS_FILE = "broker-offsets";
+  static final int BATCH_SIZE = 100;
+
+  private final MessageLog messageLog;
+  private final ForwardedMessageHandler handler;
+  private final BrokerNode node;
+  private final Path offsetsFile;
+  private final int pollInterval;
+  private final Gson gson;
+  private final ScheduledExecutorService executor;
+  private final long[] offsets;
+
+  @Inject
+  BrokerConsumer(
+      MessageLog messageLog,
+      ForwardedMessageHandler handler,
+      BrokerNode node,
+      Configuration cfg,
+      WorkQueue workQueue,
+      @PluginData Path dataDir,
+      @EventGson Gson gson) {
+    this.messageLog = messageLog;
+    this.handler = handler;
+    this.node = node;
+    this.offsetsFile = dataDir.resolve(OFFSETS_FILE);
+    this.pollInterval = Math.max(1, cfg.broker().pollInterval());
+    this.gson = gson;
+    this.executor = workQueue.createQueue(1, "Broker-Consumer");
+    this.offsets = new long[messageLog.partitions()];
+  }
+
+  @Override
+  public void start() {
+    try {
+      loadOffsets();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load the offsets of the message log", e);
+    }
+    executor.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(pollInterval, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void poll() {
+    boolean consumed = false;
+    for (int partition = 0; partition < offsets.length; partition++) {
+      try {
+        List<MessageLog.Record> records;
+        while (!(records = messageLog.read(partition, offsets[partition], BATCH_SIZE)).isEmpty()) {
+          for (MessageLog.Record record : records) {
+            apply(record);
+            offsets[partition] = record.nextOffset();
+          }
+          consumed = true;
+        }
+      } catch (IOException | RuntimeException e) {
+        log.atSevere().withCause(e).log("Unable to consume partition %d", partition);
+      }
+    }
+    if (consumed) {
+      storeOffsets();
+    }
+  }
+
+  private void apply(MessageLog.Record record) {
+    BrokerMessage message;
+    try {
+      message = gson.fromJson(new String(record.data(), UTF_8), BrokerMessage.class);
+    } catch (JsonParseException e) {
+      log.atSevere().withCause(e).log("Skipping invalid record of the message log");
+      return;
+    }
+    if (node.id().equals(message.getOrigin())) {
+      return;
+    }
+    try {
+      handler.handle(message.getMessage());
+    } catch (Exception e) {
+      log.atSevere().withCause(e).log("Unable to apply %s", message.getMessage());
+    }
+  }
+
+  private void loadOffsets() throws IOException {
+    Properties stored = new Properties();
+    if (Files.exists(offsetsFile)) {
+      try (InputStream in = Files.newInputStream(offsetsFile)) {
+        stored.load(in);
+      }
+    }
+    for (int partition = 0; partition < offsets.length; partition++) {
+      String offset = stored.getProperty(Integer.toString(partition));
+      offsets[partition] =
+          offset != null ? Long.parseLong(offset) : messageLog.endOffset(partition);
+    }
+  }
+
+  private void storeOffsets() {
+    Properties stored = new Properties();
+    for (int partition = 0; partition < offsets.length; partition++) {
+      stored.setProperty(Integer.toString(partition), Long.toString(offsets[partition]));
+    }
+    try {
+      Files.createDirectories(offsetsFile.getParent());
+      Path tmp = Files.createTempFile(offsetsFile.getParent(), OFFSETS_FILE, ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        stored.store(out, null);
+      }
+      Files.move(tmp, offsetsFile, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Unable to store the offsets of the message log");
+    }
+  }
+}
@@ -0,0 +1,139 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gson.Gson;
+import com.google.gson.JsonNull;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Publish the indexing, cache eviction, stream event and project list update messages to the
+ * {@link MessageLog}, from which the other masters consume them.
+ *
+ * <p>The partition of a message is chosen from the entity it is about, so that the messages about
+ * the same change, account, group, project or cache are consumed in order; all the stream events
+ * share the same partition. Published messages are reported as successfully forwarded.
+ */
+@Singleton
+class BrokerForwarder implements Forwarder {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final MessageLog messageLog;
+  private final BrokerNode node;
+  private final Gson gson;
+  private final CacheKeyCodecs codecs;
+
+  @Inject
+  BrokerForwarder(
+      MessageLog messageLog, BrokerNode node, @EventGson Gson gson, CacheKeyCodecs codecs) {
+    this.messageLog = messageLog;
+    this.node = node;
+    this.gson = gson;
+    this.codecs = codecs;
+  }
+
+  @Override
+  public boolean indexAccount(int accountId, IndexEvent indexEvent) {
+    String id = String.valueOf(accountId);
+    return publish("account/" + id, Type.INDEX_ACCOUNT, id, indexEvent);
+  }
+
+  @Override
+  public boolean indexChange(String projectName, int changeId, IndexEvent indexEvent) {
+    return publish(
+        "change/" + changeId, Type.INDEX_CHANGE, projectName + "~" + changeId, indexEvent);
+  }
+
+  @Override
+  public boolean deleteChangeFromIndex(int changeId, IndexEvent indexEvent) {
+    return publish("change/" + changeId, Type.DELETE_CHANGE, "~" + changeId, indexEvent);
+  }
+
+  @Override
+  public boolean indexGroup(String uuid, IndexEvent indexEvent) {
+    return publish("group/" + uuid, Type.INDEX_GROUP, uuid, indexEvent);
+  }
+
+  @Override
+  public boolean indexProject(String projectName, IndexEvent indexEvent) {
+    return publish("project/" + projectName, Type.INDEX_PROJECT, projectName, indexEvent);
+  }
+
+  @Override
+  public boolean send(Event event) {
+    return publish("event", Type.EVENT, event.type, event);
+  }
+
+  @Override
+  public boolean evict(String cacheName, Object key) {
+    return publish(
+        "cache/" + cacheName,
+        new ForwardedMessage(Type.EVICT, cacheName, codecs.encodeTree(cacheName, key)));
+  }
+
+  @Override
+  public boolean evictAll(String cacheName, Collection<?> keys) {
+    return publish(
+        "cache/" + cacheName,
+        new ForwardedMessage(Type.EVICT_ALL, cacheName, codecs.encodeAllTree(cacheName, keys)));
+  }
+
+  @Override
+  public boolean flushCache(String cacheName) {
+    return publish("cache/" + cacheName, Type.FLUSH_CACHE, cacheName, null);
+  }
+
+  @Override
+  public boolean addToProjectList(String projectName) {
+    return publish("project/" + projectName, Type.ADD_TO_PROJECT_LIST, projectName, null);
+  }
+
+  @Override
+  public boolean removeFromProjectList(String projectName) {
+    return publish("project/" + projectName, Type.REMOVE_FROM_PROJECT_LIST, projectName, null);
+  }
+
+  private boolean publish(String key, Type type, String id, Object payload) {
+    return publish(
+        key,
+        new ForwardedMessage(
+            type, id, payload == null ? JsonNull.INSTANCE : gson.toJsonTree(payload)));
+  }
+
+  private boolean publish(String key, ForwardedMessage message) {
+    int partition = Math.floorMod(key.hashCode(), messageLog.partitions());
+    try {
+      messageLog.append(
+          partition, gson.toJson(new BrokerMessage(node.id(), message)).getBytes(UTF_8));
+      return true;
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Unable to publish %s to partition %d", message, partition);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage;
+
+/** A {@link ForwardedMessage} published to the {@link MessageLog}, along with its publisher. */
+class BrokerMessage {
+  private final String origin;
+  private final ForwardedMessage message;
+
+  BrokerMessage(String origin, ForwardedMessage message) {
+    this.origin = origin;
+    this.message = message;
+  }
+
+  String getOrigin() {
+    return origin;
+  }
+
+  ForwardedMessage getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,52 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Identity of this master in the {@link MessageLog}, generated once and kept in the plugin data
+ * directory, so that a master skips the messages it published itself.
+ */
+@Singleton
+class BrokerNode {
+  static final String NODE_ID_FILE = "broker-node-id";
+
+  private final String id;
+
+  @Inject
+  BrokerNode(@PluginData Path dataDir) throws IOException {
+    Path file = dataDir.resolve(NODE_ID_FILE);
+    if (Files.exists(file)) {
+      id = new String(Files.readAllBytes(file), UTF_8).trim();
+    } else {
+      id = UUID.randomUUID().toString();
+      Files.createDirectories(dataDir);
+      Files.write(file, id.getBytes(UTF_8));
+    }
+  }
+
+  String id() {
+    return id;
+  }
+}
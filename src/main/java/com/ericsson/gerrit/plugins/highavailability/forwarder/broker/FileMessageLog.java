@@ -0,0 +1,226 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.SharedDirectory;
+import com.google.common.flogger.FluentLogger;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link MessageLog} stored in the shared directory. Each partition is a directory of segment
+ * files, named after the offset of their first record; each record is stored as its length followed
+ * by its content. Appends to a partition are serialized across the masters with a file lock, and a
+ * new segment is started when the last one reaches {@code broker.segmentSize}. Segments older than
+ * {@code broker.retention} are then deleted.
+ */
+@Singleton
+class FileMessageLog implements MessageLog {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  static final String BROKER_DIR = "broker";
+  static final String SEGMENT_SUFFIX = ".log";
+  static final String LOCK_FILE = "lock";
+  private static final int LENGTH_BYTES = Integer.BYTES;
+
+  private final Path dir;
+  private final int partitions;
+  private final int segmentSize;
+  private final long retention;
+  private final Object[] partitionLocks;
+
+  @Inject
+  FileMessageLog(@SharedDirectory Path sharedDirectory, Configuration cfg) {
+    this.dir = sharedDirectory.resolve(BROKER_DIR);
+    this.partitions = Math.max(1, cfg.broker().partitions());
+    this.segmentSize = Math.max(LENGTH_BYTES, cfg.broker().segmentSize());
+    this.retention = cfg.broker().retention();
+    this.partitionLocks = new Object[partitions];
+    for (int i = 0; i < partitions; i++) {
+      partitionLocks[i] = new Object();
+    }
+  }
+
+  @Override
+  public int partitions() {
+    return partitions;
+  }
+
+  @Override
+  public void append(int partition, byte[] data) throws IOException {
+    Path partitionDir = partitionDir(partition);
+    ByteBuffer record = ByteBuffer.allocate(LENGTH_BYTES + data.length);
+    record.putInt(data.length).put(data).flip();
+    synchronized (partitionLocks[partition]) {
+      Files.createDirectories(partitionDir);
+      try (FileChannel lockChannel =
+              FileChannel.open(partitionDir.resolve(LOCK_FILE), CREATE, WRITE);
+          FileLock lock = lockChannel.lock()) {
+        Path segment = lastSegment(partitionDir, record.remaining());
+        try (FileChannel channel = FileChannel.open(segment, CREATE, WRITE, APPEND)) {
+          while (record.hasRemaining()) {
+            channel.write(record);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<Record> read(int partition, long offset, int max) throws IOException {
+    List<Record> records = new ArrayList<>();
+    TreeMap<Long, Path> segments = segments(partitionDir(partition));
+    if (segments.isEmpty()) {
+      return records;
+    }
+    if (offset < segments.firstKey()) {
+      log.atWarning().log(
+          "Records of partition %d from offset %d to %d expired before being consumed",
+          partition, offset, segments.firstKey());
+      offset = segments.firstKey();
+    }
+    Map.Entry<Long, Path> segment = segments.floorEntry(offset);
+    while (segment != null && records.size() < max) {
+      long base = segment.getKey();
+      try (FileChannel channel = FileChannel.open(segment.getValue(), READ)) {
+        long position = offset - base;
+        byte[] data;
+        while (records.size() < max && (data = readRecord(channel, position)) != null) {
+          position += LENGTH_BYTES + data.length;
+          offset = base + position;
+          records.add(new Record(offset, data));
+        }
+        if (position < channel.size()) {
+          break;
+        }
+      } catch (NoSuchFileException e) {
+        log.atFine().log("Segment %s was deleted while being read", segment.getValue());
+      }
+      segment = segments.higherEntry(base);
+      if (segment != null) {
+        offset = segment.getKey();
+      }
+    }
+    return records;
+  }
+
+  @Override
+  public long endOffset(int partition) throws IOException {
+    TreeMap<Long, Path> segments = segments(partitionDir(partition));
+    if (segments.isEmpty()) {
+      return 0;
+    }
+    Map.Entry<Long, Path> last = segments.lastEntry();
+    return last.getKey() + Files.size(last.getValue());
+  }
+
+  private Path partitionDir(int partition) {
+    return dir.resolve(Integer.toString(partition));
+  }
+
+  private Path lastSegment(Path partitionDir, int recordSize) throws IOException {
+    TreeMap<Long, Path> segments = segments(partitionDir);
+    if (segments.isEmpty()) {
+      return segmentPath(partitionDir, 0);
+    }
+    Map.Entry<Long, Path> last = segments.lastEntry();
+    long size = Files.size(last.getValue());
+    if (size == 0 || size + recordSize <= segmentSize) {
+      return last.getValue();
+    }
+    deleteExpiredSegments(segments);
+    return segmentPath(partitionDir, last.getKey() + size);
+  }
+
+  private void deleteExpiredSegments(TreeMap<Long, Path> segments) {
+    long expiry = System.currentTimeMillis() - retention;
+    for (Path segment : segments.headMap(segments.lastKey()).values()) {
+      try {
+        if (Files.getLastModifiedTime(segment).toMillis() < expiry) {
+          Files.deleteIfExists(segment);
+        }
+      } catch (IOException e) {
+        log.atWarning().withCause(e).log("Unable to delete expired segment %s", segment);
+      }
+    }
+  }
+
+  private static Path segmentPath(Path partitionDir, long base) {
+    return partitionDir.resolve(String.format("%019d%s", base, SEGMENT_SUFFIX));
+  }
+
+  private static TreeMap<Long, Path> segments(Path partitionDir) throws IOException {
+    TreeMap<Long, Path> segments = new TreeMap<>();
+    if (!Files.isDirectory(partitionDir)) {
+      return segments;
+    }
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(partitionDir, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        segments.put(
+            Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+      }
+    }
+    return segments;
+  }
+
+  private static byte[] readRecord(FileChannel channel, long position) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(LENGTH_BYTES);
+    if (!readFully(channel, length, position)) {
+      return null;
+    }
+    int size = length.getInt(0);
+    if (size <= 0) {
+      return null;
+    }
+    ByteBuffer data = ByteBuffer.allocate(size);
+    if (!readFully(channel, data, position + LENGTH_BYTES)) {
+      return null;
+    }
+    return data.array();
+  }
+
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    if (channel.size() - position < buffer.remaining()) {
+      return false;
+    }
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Partitioned append-only log shared by all the masters. Each master publishes its messages to the
+ * log and consumes the messages published by the others. Records of a partition are identified by
+ * their offset and are read in the order they were appended.
+ */
+public interface MessageLog {
+
+  /** A record read from the log. */
+  class Record {
+    private final long nextOffset;
+    private final byte[] data;
+
+    public Record(long nextOffset, byte[] data) {
+      this.nextOffset = nextOffset;
+      this.data = data;
+    }
+
+    /** @return the offset of the record following this one in the partition. */
+    public long nextOffset() {
+      return nextOffset;
+    }
+
+    public byte[] data() {
+      return data;
+    }
+  }
+
+  /** @return the number of partitions of the log. */
+  int partitions();
+
+  /**
+   * Append a record at the end of a partition.
+   *
+   * @param partition the partition to append to.
+   * @param data the content of the record.
+   * @throws IOException if the record cannot be appended.
+   */
+  void append(int partition, byte[] data) throws IOException;
+
+  /**
+   * Read the records of a partition.
+   *
+   * @param partition the partition to read.
+   * @param offset the offset of the first record to read.
+   * @param max the maximum number of records to read.
+   * @return the records following the offset, in the order they were appended.
+   * @throws IOException if the partition cannot be read.
+   */
+  List<Record> read(int partition, long offset, int max) throws IOException;
+
+  /**
+   * Get the end of a partition.
+   *
+   * @param partition the partition.
+   * @return the offset of the next record to be appended to the partition.
+   * @throws IOException if the partition cannot be read.
+   */
+  long endOffset(int partition) throws IOException;
+}
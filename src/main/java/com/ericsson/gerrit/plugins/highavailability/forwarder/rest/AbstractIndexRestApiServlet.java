@@ -20,6 +20,8 @@ import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.Priority;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
 import com.google.common.base.Charsets;
 import com.google.gerrit.server.events.EventGson;
@@ -34,6 +36,7 @@ public abstract class AbstractIndexRestApiServlet<T> extends AbstractRestApiServ
   private static final long serialVersionUID = -1L;
 
   private final ForwardedIndexingHandler<T> forwardedIndexingHandler;
+  private final ForwardedIndexingQueue queue;
   private final IndexName indexName;
   private final boolean allowDelete;
   private final Gson gson;
@@ -54,18 +57,22 @@ public abstract class AbstractIndexRestApiServlet<T> extends AbstractRestApiServ
 
   AbstractIndexRestApiServlet(
       ForwardedIndexingHandler<T> forwardedIndexingHandler,
+      ForwardedIndexingQueue queue,
       IndexName indexName,
       boolean allowDelete,
       @EventGson Gson gson) {
     this.forwardedIndexingHandler = forwardedIndexingHandler;
+    this.queue = queue;
     this.indexName = indexName;
     this.allowDelete = allowDelete;
     this.gson = gson;
   }
 
   AbstractIndexRestApiServlet(
-      ForwardedIndexingHandler<T> forwardedIndexingHandler, IndexName indexName) {
-    this(forwardedIndexingHandler, indexName, false, new Gson());
+      ForwardedIndexingHandler<T> forwardedIndexingHandler,
+      ForwardedIndexingQueue queue,
+      IndexName indexName) {
+    this(forwardedIndexingHandler, queue, indexName, false, new Gson());
   }
 
   @Override
@@ -88,14 +95,28 @@ public abstract class AbstractIndexRestApiServlet<T> extends AbstractRestApiServ
     String path = req.getRequestURI();
     T id = parse(path.substring(path.lastIndexOf('/') + 1));
     try {
-      forwardedIndexingHandler.index(id, operation, parseBody(req));
-      rsp.setStatus(SC_NO_CONTENT);
+      Optional<IndexEvent> event = parseBody(req);
+      if (!queue.isEnabled()) {
+        forwardedIndexingHandler.index(id, operation, event);
+        rsp.setStatus(SC_NO_CONTENT);
+      } else {
+        enqueue(
+            rsp,
+            queue,
+            priority(operation),
+            String.format("%s %s %s", operation, indexName, id),
+            () -> forwardedIndexingHandler.index(id, operation, event));
+      }
     } catch (IOException e) {
       sendError(rsp, SC_CONFLICT, e.getMessage());
       log.atSevere().withCause(e).log("Unable to update %s index", indexName);
     }
   }
 
+  private static Priority priority(Operation operation) {
+    return operation == Operation.DELETE ? Priority.DELETE : Priority.INTERACTIVE;
+  }
+
   protected Optional<IndexEvent> parseBody(HttpServletRequest req) throws IOException {
     String contentType = req.getContentType();
     if (contentType != null && contentType.contains("application/json")) {
@@ -14,8 +14,14 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.RETRY_AFTER;
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.SC_TOO_MANY_REQUESTS;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.IndexTask;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.Priority;
 import com.google.common.flogger.FluentLogger;
 import java.io.IOException;
 import javax.servlet.http.HttpServlet;
@@ -24,6 +30,7 @@ import javax.servlet.http.HttpServletResponse;
 public abstract class AbstractRestApiServlet extends HttpServlet {
   private static final long serialVersionUID = 1L;
   protected static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final int RETRY_AFTER_SECONDS = 1;
 
   protected static void setHeaders(HttpServletResponse rsp) {
     rsp.setContentType("text/plain");
@@ -37,4 +44,38 @@ public abstract class AbstractRestApiServlet extends HttpServlet {
       log.atSevere().withCause(e).log("Failed to send error messsage");
     }
   }
+
+  /**
+   * Queue an indexing request, answering that it was accepted, or asking the sender to retry later
+   * if the queue is full.
+   *
+   * @param rsp the response to the request.
+   * @param queue the queue of the indexing requests.
+   * @param priority the priority of the request.
+   * @param description the description of the request, for logging.
+   * @param task the processing of the request.
+   */
+  protected void enqueue(
+      HttpServletResponse rsp,
+      ForwardedIndexingQueue queue,
+      Priority priority,
+      String description,
+      IndexTask task) {
+    if (queue.offer(priority, description, task)) {
+      rsp.setStatus(SC_ACCEPTED);
+    } else {
+      sendTooManyRequests(rsp, "too many pending indexing requests");
+    }
+  }
+
+  /**
+   * Ask the sender to retry later, once the queue of the indexing requests is no longer full.
+   *
+   * @param rsp the response to the request.
+   * @param message the error message.
+   */
+  protected void sendTooManyRequests(HttpServletResponse rsp, String message) {
+    rsp.setIntHeader(RETRY_AFTER, RETRY_AFTER_SECONDS);
+    sendError(rsp, SC_TOO_MANY_REQUESTS, message);
+  }
 }
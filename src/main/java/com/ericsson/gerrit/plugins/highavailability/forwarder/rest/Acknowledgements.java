@@ -0,0 +1,81 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration.AckPolicy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Combine the results of forwarding a message to each peer according to an {@link AckPolicy}. */
+final class Acknowledgements {
+
+  private Acknowledgements() {}
+
+  /**
+   * Get the number of peers which must receive a message for it to be acknowledged. A quorum is a
+   * majority of the cluster, this instance included.
+   *
+   * @param policy the acknowledgement policy.
+   * @param peers the number of peers the message is forwarded to.
+   * @return the number of successful deliveries needed.
+   */
+  static int required(AckPolicy policy, int peers) {
+    switch (policy) {
+      case NONE:
+        return 0;
+      case ANY:
+        return Math.min(1, peers);
+      case QUORUM:
+        return (peers + 1) / 2;
+      case ALL:
+      default:
+        return peers;
+    }
+  }
+
+  /**
+   * Wait for the deliveries required by the policy. The result is known as soon as enough
+   * deliveries succeeded, or too many failed; the remaining deliveries go on in the background.
+   *
+   * @param policy the acknowledgement policy.
+   * @param deliveries the results of the delivery to each peer.
+   * @return whether the message was acknowledged.
+   */
+  static CompletableFuture<Boolean> await(
+      AckPolicy policy, List<CompletableFuture<Boolean>> deliveries) {
+    int required = required(policy, deliveries.size());
+    if (required == 0) {
+      return CompletableFuture.completedFuture(true);
+    }
+    int allowedFailures = deliveries.size() - required;
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    AtomicInteger successes = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+    for (CompletableFuture<Boolean> delivery : deliveries) {
+      delivery.whenComplete(
+          (delivered, e) -> {
+            if (e == null && Boolean.TRUE.equals(delivered)) {
+              if (successes.incrementAndGet() == required) {
+                result.complete(true);
+              }
+            } else if (failures.incrementAndGet() == allowedFailures + 1) {
+              result.complete(false);
+            }
+          });
+    }
+    return result;
+  }
+}
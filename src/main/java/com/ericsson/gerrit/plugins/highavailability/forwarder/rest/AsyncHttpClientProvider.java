@@ -0,0 +1,96 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.HttpTransport;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+
+/**
+ * Provides a non-blocking HTTP client with SSL capabilities. With the {@code http2} transport, the
+ * client multiplexes all the requests to a peer over a single HTTP/2 connection.
+ */
+class AsyncHttpClientProvider implements Provider<CloseableHttpAsyncClient> {
+  private static final int CONNECTIONS_PER_ROUTE = 100;
+  // Up to 2 target instances with the max number of connections per host:
+  private static final int MAX_CONNECTIONS = 2 * CONNECTIONS_PER_ROUTE;
+
+  private final Configuration cfg;
+
+  @Inject
+  AsyncHttpClientProvider(Configuration cfg) {
+    this.cfg = cfg;
+  }
+
+  @Override
+  public CloseableHttpAsyncClient get() {
+    if (cfg.http().transport() == HttpTransport.HTTP2) {
+      return HttpAsyncClients.customHttp2()
+          .setTlsStrategy(buildTlsStrategy())
+          .setDefaultCredentialsProvider(buildCredentials())
+          .setDefaultRequestConfig(customRequestConfig())
+          .build();
+    }
+    return HttpAsyncClients.custom()
+        .setConnectionManager(customConnectionManager())
+        .setDefaultCredentialsProvider(buildCredentials())
+        .setDefaultRequestConfig(customRequestConfig())
+        .build();
+  }
+
+  private RequestConfig customRequestConfig() {
+    return RequestConfig.custom()
+        .setConnectTimeout(cfg.http().connectionTimeout(), TimeUnit.MILLISECONDS)
+        .setResponseTimeout(cfg.http().socketTimeout(), TimeUnit.MILLISECONDS)
+        .setConnectionRequestTimeout(cfg.http().connectionTimeout(), TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  private static AsyncClientConnectionManager customConnectionManager() {
+    return PoolingAsyncClientConnectionManagerBuilder.create()
+        .setTlsStrategy(buildTlsStrategy())
+        .setMaxConnPerRoute(CONNECTIONS_PER_ROUTE)
+        .setMaxConnTotal(MAX_CONNECTIONS)
+        .build();
+  }
+
+  private static TlsStrategy buildTlsStrategy() {
+    return ClientTlsStrategyBuilder.create()
+        .setSslContext(HttpClientProvider.buildSslContext())
+        .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+        .build();
+  }
+
+  private BasicCredentialsProvider buildCredentials() {
+    BasicCredentialsProvider creds = new BasicCredentialsProvider();
+    creds.setCredentials(
+        new AuthScope(null, -1),
+        new UsernamePasswordCredentials(cfg.http().user(), cfg.http().password().toCharArray()));
+    return creds;
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
+import com.google.common.base.Strings;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequests;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.io.CloseMode;
+
+/**
+ * Send requests to the other master with a non-blocking HTTP client. The requests are executed by
+ * the I/O threads of the client and the outcome is delivered through the returned futures.
+ */
+@Singleton
+class AsyncHttpSession {
+  private final CloseableHttpAsyncClient httpClient;
+  private final Gson gson;
+
+  @Inject
+  AsyncHttpSession(CloseableHttpAsyncClient httpClient, @EventGson Gson gson) {
+    this.httpClient = httpClient;
+    this.gson = gson;
+  }
+
+  void start() {
+    httpClient.start();
+  }
+
+  void stop() {
+    httpClient.close(CloseMode.GRACEFUL);
+  }
+
+  CompletableFuture<HttpResult> post(String uri) {
+    return post(uri, null);
+  }
+
+  CompletableFuture<HttpResult> post(String uri, Object content) {
+    SimpleHttpRequest post = SimpleHttpRequests.post(uri);
+    setContent(post, content);
+    return execute(post);
+  }
+
+  CompletableFuture<HttpResult> post(String uri, byte[] content, String contentType) {
+    SimpleHttpRequest post = SimpleHttpRequests.post(uri);
+    post.setBody(content, ContentType.create(contentType));
+    return execute(post);
+  }
+
+  CompletableFuture<HttpResult> delete(String uri) {
+    return execute(SimpleHttpRequests.delete(uri));
+  }
+
+  private CompletableFuture<HttpResult> execute(SimpleHttpRequest request) {
+    CompletableFuture<HttpResult> result = new CompletableFuture<>();
+    httpClient.execute(
+        request,
+        new FutureCallback<SimpleHttpResponse>() {
+          @Override
+          public void completed(SimpleHttpResponse response) {
+            Header retryAfter = response.getFirstHeader(HttpResponseHandler.RETRY_AFTER);
+            result.complete(
+                new HttpResult(
+                    HttpResponseHandler.isSuccessful(response.getCode()),
+                    Strings.nullToEmpty(response.getBodyText()),
+                    HttpResponseHandler.retryAfter(
+                        response.getCode(),
+                        retryAfter != null ? retryAfter.getValue() : null)));
+          }
+
+          @Override
+          public void failed(Exception e) {
+            result.completeExceptionally(e);
+          }
+
+          @Override
+          public void cancelled() {
+            result.cancel(false);
+          }
+        });
+    return result;
+  }
+
+  private void setContent(SimpleHttpRequest request, Object content) {
+    if (content != null) {
+      request.setBody(jsonEncode(content), ContentType.APPLICATION_JSON);
+    }
+  }
+
+  private String jsonEncode(Object content) {
+    if (content instanceof String) {
+      return (String) content;
+    }
+    return gson.toJson(content);
+  }
+}
@@ -0,0 +1,372 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.HttpTransport;
+import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.AsyncForwarder;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.base.Joiner;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.restapi.Url;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.net.ssl.SSLException;
+import org.apache.hc.core5.http.HttpException;
+
+/**
+ * Forward messages to the other master with non-blocking HTTP requests. Failed requests are retried
+ * by scheduling a new attempt after {@code http.retryInterval} instead of parking a thread, so a
+ * few threads can keep many forwards in flight.
+ *
+ * <p>With the {@code http2} transport, the indexing, cache eviction and stream event messages are
+ * sent to the batch endpoint with the binary encoding of {@link ForwardedMessageCodec}.
+ */
+@Singleton
+class AsyncRestForwarder implements AsyncForwarder, LifecycleListener {
+  enum RequestMethod {
+    POST,
+    DELETE
+  }
+
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final AsyncHttpSession httpSession;
+  private final String pluginRelativePath;
+  private final Configuration cfg;
+  private final Provider<Set<PeerInfo>> peerInfoProvider;
+  private final Gson gson;
+  private final CacheKeyCodecs codecs;
+  private final ScheduledExecutorService retryExecutor;
+  private final boolean binaryMessages;
+  private final AtomicLong messageIds = new AtomicLong();
+
+  @Inject
+  AsyncRestForwarder(
+      AsyncHttpSession httpSession,
+      @PluginName String pluginName,
+      Configuration cfg,
+      Provider<Set<PeerInfo>> peerInfoProvider,
+      @EventGson Gson gson,
+      CacheKeyCodecs codecs,
+      WorkQueue workQueue) {
+    this.httpSession = httpSession;
+    this.pluginRelativePath = Joiner.on("/").join("plugins", pluginName);
+    this.cfg = cfg;
+    this.peerInfoProvider = peerInfoProvider;
+    this.gson = gson;
+    this.codecs = codecs;
+    this.retryExecutor = workQueue.createQueue(1, "Forward-Retry");
+    this.binaryMessages = cfg.http().transport() == HttpTransport.HTTP2;
+  }
+
+  @Override
+  public void start() {
+    httpSession.start();
+  }
+
+  @Override
+  public void stop() {
+    retryExecutor.shutdownNow();
+    httpSession.stop();
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexAccount(int accountId, IndexEvent event) {
+    if (binaryMessages) {
+      return forward(Type.INDEX_ACCOUNT, String.valueOf(accountId), event);
+    }
+    return execute(RequestMethod.POST, "index account", "index/account", accountId, event);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexChange(
+      String projectName, int changeId, IndexEvent event) {
+    if (binaryMessages) {
+      return forward(Type.INDEX_CHANGE, projectName + "~" + changeId, event);
+    }
+    return execute(
+        RequestMethod.POST,
+        "index change",
+        "index/change",
+        buildIndexEndpoint(projectName, changeId),
+        event);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteChangeFromIndex(int changeId, IndexEvent event) {
+    if (binaryMessages) {
+      return forward(Type.DELETE_CHANGE, "~" + changeId, event);
+    }
+    return execute(
+        RequestMethod.DELETE, "delete change", "index/change", buildIndexEndpoint(changeId), event);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexGroup(String uuid, IndexEvent event) {
+    if (binaryMessages) {
+      return forward(Type.INDEX_GROUP, uuid, event);
+    }
+    return execute(RequestMethod.POST, "index group", "index/group", uuid, event);
+  }
+
+  private String buildIndexEndpoint(int changeId) {
+    return buildIndexEndpoint("", changeId);
+  }
+
+  private String buildIndexEndpoint(String projectName, int changeId) {
+    String escapedProjectName = Url.encode(projectName);
+    return escapedProjectName + '~' + changeId;
+  }
+
+  @Override
+  public CompletableFuture<Boolean> indexProject(String projectName, IndexEvent event) {
+    if (binaryMessages) {
+      return forward(Type.INDEX_PROJECT, projectName, event);
+    }
+    return execute(
+        RequestMethod.POST, "index project", "index/project", Url.encode(projectName), event);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> send(Event event) {
+    if (binaryMessages) {
+      return forward(Type.EVENT, event.type, event);
+    }
+    return execute(RequestMethod.POST, "send event", "event", event.type, event);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> evict(String cacheName, Object key) {
+    if (binaryMessages) {
+      return forward(
+          new ForwardedMessage(Type.EVICT, cacheName, codecs.encodeTree(cacheName, key)));
+    }
+    String json = codecs.encode(cacheName, key);
+    return execute(RequestMethod.POST, "invalidate cache " + cacheName, "cache", cacheName, json);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> evictAll(String cacheName, Collection<?> keys) {
+    if (binaryMessages) {
+      return forward(
+          new ForwardedMessage(Type.EVICT_ALL, cacheName, codecs.encodeAllTree(cacheName, keys)));
+    }
+    return execute(
+        RequestMethod.POST,
+        "invalidate " + keys.size() + " keys of cache " + cacheName,
+        "cache",
+        Joiner.on("/").join(cacheName, CacheRestApiServlet.KEYS),
+        codecs.encodeAll(cacheName, keys));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> flushCache(String cacheName) {
+    if (binaryMessages) {
+      return forward(Type.FLUSH_CACHE, cacheName, null);
+    }
+    return execute(
+        RequestMethod.POST,
+        "flush cache",
+        "cache",
+        Joiner.on("/").join(cacheName, CacheRestApiServlet.FLUSH));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> addToProjectList(String projectName) {
+    return execute(
+        RequestMethod.POST,
+        "Update project_list, add ",
+        buildProjectListEndpoint(),
+        Url.encode(projectName));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> removeFromProjectList(String projectName) {
+    return execute(
+        RequestMethod.DELETE,
+        "Update project_list, remove ",
+        buildProjectListEndpoint(),
+        Url.encode(projectName));
+  }
+
+  private CompletableFuture<Boolean> forward(Type type, String id, Object payload) {
+    return forward(new ForwardedMessage(type, id, gson.toJsonTree(payload)));
+  }
+
+  private CompletableFuture<Boolean> forward(ForwardedMessage message) {
+    return execute(
+        RequestMethod.POST,
+        "forward " + message.getType(),
+        "batch",
+        messageIds.incrementAndGet(),
+        ForwardedMessageCodec.encode(Collections.singletonList(message)));
+  }
+
+  private static String buildProjectListEndpoint() {
+    return Joiner.on("/").join("cache", Constants.PROJECT_LIST);
+  }
+
+  private CompletableFuture<Boolean> execute(
+      RequestMethod method, String action, String endpoint, Object id) {
+    return execute(method, action, endpoint, id, null);
+  }
+
+  private CompletableFuture<Boolean> execute(
+      RequestMethod method, String action, String endpoint, Object id, Object payload) {
+    List<CompletableFuture<Boolean>> deliveries =
+        peerInfoProvider.get().stream()
+            .map(peer -> new Request(method, peer.getDirectUrl(), action, endpoint, id, payload))
+            .map(Request::execute)
+            .collect(Collectors.toList());
+    return Acknowledgements.await(cfg.http().ackPolicy(), deliveries);
+  }
+
+  private class Request {
+    private final RequestMethod method;
+    private final String action;
+    private final Object key;
+    private final String destination;
+    private final String uri;
+    private final Object payload;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    private int execCnt;
+    private long retryAfter;
+
+    Request(
+        RequestMethod method,
+        String destination,
+        String action,
+        String endpoint,
+        Object key,
+        Object payload) {
+      this.method = method;
+      this.action = action;
+      this.key = key;
+      this.destination = destination;
+      this.uri = Joiner.on("/").join(destination, pluginRelativePath, endpoint, key);
+      this.payload = payload;
+    }
+
+    CompletableFuture<Boolean> execute() {
+      log.atFine().log("Executing %s %s towards %s", action, key, destination);
+      tryOnce();
+      return result;
+    }
+
+    private void tryOnce() {
+      execCnt++;
+      CompletableFuture<HttpResult> response;
+      try {
+        response = send();
+      } catch (RuntimeException e) {
+        onFailure(new ForwardingException(false, e.getMessage(), e));
+        return;
+      }
+      response.whenComplete(this::onResponse);
+    }
+
+    private CompletableFuture<HttpResult> send() {
+      switch (method) {
+        case POST:
+          if (payload instanceof byte[]) {
+            return httpSession.post(uri, (byte[]) payload, ForwardedMessageCodec.MEDIA_TYPE);
+          }
+          return httpSession.post(uri, payload);
+        case DELETE:
+        default:
+          return httpSession.delete(uri);
+      }
+    }
+
+    private void onResponse(HttpResult httpResult, Throwable error) {
+      retryAfter = httpResult != null ? httpResult.getRetryAfter() : 0;
+      if (error != null) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        onFailure(new ForwardingException(isRecoverable(cause), cause.getMessage(), cause));
+      } else if (!httpResult.isSuccessful()) {
+        onFailure(
+            new ForwardingException(
+                true,
+                String.format("Unable to %s %s : %s", action, key, httpResult.getMessage())));
+      } else {
+        log.atFine().log("%s %s towards %s OK", action, key, destination);
+        result.complete(true);
+      }
+    }
+
+    private void onFailure(ForwardingException e) {
+      int maxTries = cfg.http().maxTries();
+      log.atFine().withCause(e).log(
+          "Failed to %s %s on %s [%d/%d]", action, key, destination, execCnt, maxTries);
+      if (!e.isRecoverable()) {
+        log.atSevere().withCause(e).log(
+            "%s %s towards %s failed with unrecoverable error; giving up",
+            action, key, destination);
+        result.complete(false);
+        return;
+      }
+      if (execCnt >= maxTries) {
+        log.atSevere().log(
+            "Failed to %s %s on %s after %d tries; giving up", action, key, destination, maxTries);
+        result.complete(false);
+        return;
+      }
+
+      log.atFine().log("Retrying to %s %s on %s", action, key, destination);
+      try {
+        retryExecutor.schedule(
+            this::tryOnce,
+            Math.max(cfg.http().retryInterval(), retryAfter),
+            TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ree) {
+        log.atSevere().withCause(ree).log(
+            "%s %s towards %s was cancelled; giving up", action, key, destination);
+        result.complete(false);
+      }
+    }
+
+    private boolean isRecoverable(Throwable e) {
+      Throwable cause = e.getCause();
+      return !(e instanceof SSLException
+          || e instanceof HttpException
+          || cause instanceof HttpException);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.PROCESSED_MESSAGES;
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
+import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheNotFoundException;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.Priority;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Process the messages of a batch in order. When a message fails, the processing stops and the
+ * number of messages processed before it is reported in the {@code X-Processed-Messages} header,
+ * so that the sender only forwards the remaining ones again. The messages which can never be
+ * processed, e.g. evicting from an unknown cache, are skipped.
+ *
+ * <p>When the forwarded indexing requests are queued, the indexing messages are queued like the
+ * ones received one by one: deletions first, then the changes indexed at once as bulk requests
+ * behind the other indexing messages. Once the queue is full, the processing stops and the sender
+ * is asked to retry the remaining messages later.
+ */
+@Singleton
+class BatchRestApiServlet extends AbstractRestApiServlet {
+  private static final long serialVersionUID = -1L;
+  private static final Type MESSAGE_LIST_TYPE =
+      new TypeToken<List<ForwardedMessage>>() {}.getType();
+
+  private final ForwardedMessageHandler forwardedMessageHandler;
+  private final ForwardedIndexingQueue queue;
+  private final Gson gson;
+
+  @Inject
+  BatchRestApiServlet(
+      ForwardedMessageHandler forwardedMessageHandler,
+      ForwardedIndexingQueue queue,
+      @EventGson Gson gson) {
+    this.forwardedMessageHandler = forwardedMessageHandler;
+    this.queue = queue;
+    this.gson = gson;
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse rsp) {
+    setHeaders(rsp);
+    String path = req.getRequestURI();
+    String batchId = path.substring(path.lastIndexOf('/') + 1);
+    List<ForwardedMessage> messages;
+    try {
+      messages = readMessages(req);
+    } catch (IOException | JsonParseException e) {
+      log.atSevere().withCause(e).log("Unable to parse batch %s", batchId);
+      sendError(rsp, SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    int processed = 0;
+    boolean queued = false;
+    while (processed < messages.size()) {
+      List<ForwardedMessage> group = nextGroup(messages, processed);
+      Optional<Priority> priority = queue.isEnabled() ? priority(group) : Optional.empty();
+      if (priority.isPresent()) {
+        if (!queue.offer(
+            priority.get(),
+            String.format("index %d messages of batch %s", group.size(), batchId),
+            () -> index(group))) {
+          log.atWarning().log(
+              "Refusing %d of the %d messages of batch %s, too many pending indexing requests",
+              messages.size() - processed, messages.size(), batchId);
+          rsp.setIntHeader(PROCESSED_MESSAGES, processed);
+          sendTooManyRequests(
+              rsp,
+              String.format(
+                  "too many pending indexing requests, message %d of %d of batch %s refused",
+                  processed + 1, messages.size(), batchId));
+          return;
+        }
+        queued = true;
+      } else {
+        try {
+          handle(group);
+        } catch (CacheNotFoundException | IllegalArgumentException | JsonParseException e) {
+          log.atSevere().withCause(e).log(
+              "Skipping %d messages of batch %s which can never be processed: %s",
+              group.size(), batchId, group);
+        } catch (Exception e) {
+          log.atSevere().withCause(e).log(
+              "Unable to process %d messages of batch %s: %s", group.size(), batchId, group);
+          rsp.setIntHeader(PROCESSED_MESSAGES, processed);
+          sendError(
+              rsp,
+              SC_CONFLICT,
+              String.format(
+                  "message %d of %d of batch %s failed", processed + 1, messages.size(), batchId));
+          return;
+        }
+      }
+      processed += group.size();
+    }
+    log.atFine().log("Batch %s of %d messages processed", batchId, messages.size());
+    rsp.setStatus(queued ? SC_ACCEPTED : SC_NO_CONTENT);
+  }
+
+  /**
+   * @return the priority of the indexing messages once queued, or empty if they are not indexing
+   *     messages.
+   */
+  private static Optional<Priority> priority(List<ForwardedMessage> group) {
+    ForwardedMessage.Type type = group.get(0).getType();
+    if (!ForwardedMessageHandler.isIndexing(type)) {
+      return Optional.empty();
+    }
+    if (type == ForwardedMessage.Type.DELETE_CHANGE) {
+      return Optional.of(Priority.DELETE);
+    }
+    return Optional.of(group.size() > 1 ? Priority.BULK : Priority.INTERACTIVE);
+  }
+
+  /**
+   * Get the next messages to process at once: the changes of consecutive messages are indexed at
+   * once, keeping the order of the other messages.
+   */
+  private static List<ForwardedMessage> nextGroup(List<ForwardedMessage> messages, int from) {
+    int to = from + 1;
+    if (messages.get(from).getType() == ForwardedMessage.Type.INDEX_CHANGE) {
+      while (to < messages.size()
+          && messages.get(to).getType() == ForwardedMessage.Type.INDEX_CHANGE) {
+        to++;
+      }
+    }
+    return messages.subList(from, to);
+  }
+
+  private void handle(List<ForwardedMessage> group) throws Exception {
+    ForwardedMessage first = group.get(0);
+    if (first.getType() == ForwardedMessage.Type.INDEX_CHANGE) {
+      forwardedMessageHandler.indexChanges(group);
+    } else {
+      forwardedMessageHandler.handle(first);
+    }
+  }
+
+  private void index(List<ForwardedMessage> group) throws IOException {
+    ForwardedMessage first = group.get(0);
+    if (first.getType() == ForwardedMessage.Type.INDEX_CHANGE) {
+      forwardedMessageHandler.indexChanges(group);
+    } else {
+      forwardedMessageHandler.index(first);
+    }
+  }
+
+  private List<ForwardedMessage> readMessages(HttpServletRequest req) throws IOException {
+    String contentType = req.getContentType();
+    if (contentType != null && contentType.startsWith(ForwardedMessageCodec.MEDIA_TYPE)) {
+      long length = req.getContentLengthLong();
+      return ForwardedMessageCodec.decode(
+          req.getInputStream(), length >= 0 ? length : ForwardedMessageCodec.MAX_LENGTH);
+    }
+    List<ForwardedMessage> messages = gson.fromJson(req.getReader(), MESSAGE_LIST_TYPE);
+    return messages == null ? Collections.emptyList() : messages;
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gather the indexing, cache eviction and stream event messages into batches which are forwarded
+ * to the other master in one request. A batch is sent as soon as it reaches {@code batch.maxSize}
+ * messages or when its oldest message has been waiting for {@code batch.maxDelay} milliseconds.
+ *
+ * <p>Queued messages are reported as successfully forwarded; failures to forward the batch are
+ * logged by the {@link RestForwarder}.
+ */
+@Singleton
+class BatchingForwarder extends MessageForwarder implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final int maxSize;
+  private final int maxDelay;
+  private final ScheduledExecutorService flushExecutor;
+  private final AtomicLong batchIds = new AtomicLong();
+
+  private List<ForwardedMessage> pending = new ArrayList<>();
+  private ScheduledFuture<?> scheduledFlush;
+
+  @Inject
+  BatchingForwarder(
+      RestForwarder restForwarder,
+      Configuration cfg,
+      WorkQueue workQueue,
+      @EventGson Gson gson,
+      CacheKeyCodecs codecs) {
+    super(restForwarder, gson, codecs);
+    this.maxSize = Math.max(1, cfg.batch().maxSize());
+    this.maxDelay = cfg.batch().maxDelay();
+    this.flushExecutor = workQueue.createQueue(1, "Forward-Batch");
+  }
+
+  @Override
+  public void start() {
+    // do nothing
+  }
+
+  @Override
+  public void stop() {
+    flush();
+    flushExecutor.shutdown();
+  }
+
+  @Override
+  protected boolean forward(ForwardedMessage message) {
+    List<ForwardedMessage> batch = null;
+    synchronized (this) {
+      pending.add(message);
+      if (pending.size() >= maxSize) {
+        batch = drain();
+      } else if (scheduledFlush == null) {
+        scheduledFlush = flushExecutor.schedule(this::flush, maxDelay, TimeUnit.MILLISECONDS);
+      }
+    }
+    return batch == null || forwardBatch(batch);
+  }
+
+  void flush() {
+    List<ForwardedMessage> batch = drain();
+    if (!batch.isEmpty()) {
+      forwardBatch(batch);
+    }
+  }
+
+  private synchronized List<ForwardedMessage> drain() {
+    List<ForwardedMessage> batch = pending;
+    pending = new ArrayList<>();
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    return batch;
+  }
+
+  private boolean forwardBatch(List<ForwardedMessage> batch) {
+    long batchId = batchIds.incrementAndGet();
+    log.atFine().log("Forwarding batch %d of %d messages", batchId, batch.size());
+    return restForwarder.forwardBatch(batchId, batch);
+  }
+}
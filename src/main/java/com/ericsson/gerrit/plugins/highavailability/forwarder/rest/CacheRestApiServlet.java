@@ -18,6 +18,7 @@ import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEntry;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheNotFoundException;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedCacheEvictionHandler;
 import com.google.common.base.Splitter;
@@ -25,22 +26,27 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 @Singleton
 class CacheRestApiServlet extends AbstractRestApiServlet {
+  static final String KEYS = "keys";
+  static final String FLUSH = "flush";
   private static final int CACHENAME_INDEX = 1;
+  private static final int OPERATION_INDEX = 2;
   private static final long serialVersionUID = -1L;
 
   private final ForwardedCacheEvictionHandler forwardedCacheEvictionHandler;
-  private final GsonParser gson;
+  private final CacheKeyCodecs codecs;
 
   @Inject
   CacheRestApiServlet(
-      ForwardedCacheEvictionHandler forwardedCacheEvictionHandler, GsonParser gson) {
+      ForwardedCacheEvictionHandler forwardedCacheEvictionHandler, CacheKeyCodecs codecs) {
     this.forwardedCacheEvictionHandler = forwardedCacheEvictionHandler;
-    this.gson = gson;
+    this.codecs = codecs;
   }
 
   @Override
@@ -49,9 +55,24 @@ class CacheRestApiServlet extends AbstractRestApiServlet {
     try {
       List<String> params = Splitter.on('/').splitToList(req.getPathInfo());
       String cacheName = params.get(CACHENAME_INDEX);
-      String json = req.getReader().readLine();
-      forwardedCacheEvictionHandler.evict(
-          CacheEntry.from(cacheName, gson.fromJson(cacheName, json)));
+      String operation = params.size() > OPERATION_INDEX ? params.get(OPERATION_INDEX) : "";
+      if (FLUSH.equals(operation)) {
+        forwardedCacheEvictionHandler.flush(cacheName);
+      } else if (KEYS.equals(operation)) {
+        Optional<Set<Object>> keys = codecs.decodeAll(cacheName, req.getReader().readLine());
+        if (keys.isPresent()) {
+          forwardedCacheEvictionHandler.evictAll(cacheName, keys.get());
+        } else {
+          forwardedCacheEvictionHandler.flush(cacheName);
+        }
+      } else {
+        Optional<Object> key = codecs.decode(cacheName, req.getReader().readLine());
+        if (key.isPresent()) {
+          forwardedCacheEvictionHandler.evict(CacheEntry.from(cacheName, key.get()));
+        } else {
+          forwardedCacheEvictionHandler.flush(cacheName);
+        }
+      }
       rsp.setStatus(SC_NO_CONTENT);
     } catch (CacheNotFoundException e) {
       log.atSevere().log("Failed to process eviction request: %s", e.getMessage());
@@ -0,0 +1,73 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A single indexing, cache eviction, stream event or project list update message, self-contained so
+ * that several of them can be forwarded to the other master in one request.
+ */
+public class ForwardedMessage {
+  public enum Type {
+    INDEX_CHANGE,
+    DELETE_CHANGE,
+    INDEX_ACCOUNT,
+    INDEX_GROUP,
+    INDEX_PROJECT,
+    EVICT,
+    EVENT,
+    ADD_TO_PROJECT_LIST,
+    REMOVE_FROM_PROJECT_LIST,
+    EVICT_ALL,
+    FLUSH_CACHE
+  }
+
+  private final Type type;
+  private final String id;
+  private final JsonElement payload;
+
+  /**
+   * Forwarded message
+   *
+   * @param type the type of the message
+   * @param id the id of the item to index, the name of the cache to evict from, the type of the
+   *     event or the name of the project to add to or remove from the project list
+   * @param payload the index event, cache key, array of cache keys or stream event, null for
+   *     project list updates and cache flushes
+   */
+  public ForwardedMessage(Type type, String id, JsonElement payload) {
+    this.type = type;
+    this.id = id;
+    this.payload = payload;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public JsonElement getPayload() {
+    return payload;
+  }
+
+  @Override
+  public String toString() {
+    return type.name().toLowerCase() + " " + id;
+  }
+}
@@ -0,0 +1,307 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of {@link ForwardedMessage}s, avoiding the JSON text serialization of the
+ * messages on both sides.
+ *
+ * <p>The messages are written as a sequence of frames, each prefixed by its length. A frame holds
+ * the type of the message, its id and its payload. The payload, which can be an {@code IndexEvent},
+ * a cache key or a stream event, is written as a tree of tagged values: integers are written as
+ * variable-length zig-zag numbers and strings and collections are prefixed by their length.
+ */
+final class ForwardedMessageCodec {
+  static final String MEDIA_TYPE = "application/x-high-availability-messages";
+
+  private static final int NULL = 0;
+  private static final int TRUE = 1;
+  private static final int FALSE = 2;
+  private static final int INTEGER = 3;
+  private static final int DECIMAL = 4;
+  private static final int STRING = 5;
+  private static final int ARRAY = 6;
+  private static final int OBJECT = 7;
+
+  /** Maximum number of bytes of the messages decoded at once. */
+  static final long MAX_LENGTH = 64L * 1024 * 1024;
+
+  private static final Type[] TYPES = Type.values();
+
+  private ForwardedMessageCodec() {}
+
+  /**
+   * Encode messages.
+   *
+   * @param messages the messages to encode.
+   * @return the encoded messages.
+   */
+  static byte[] encode(List<ForwardedMessage> messages) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Output frame = new Output();
+    for (ForwardedMessage message : messages) {
+      frame.reset();
+      frame.write(message.getType().ordinal());
+      frame.writeString(message.getId());
+      frame.writeValue(message.getPayload());
+      writeVarint(out, frame.size());
+      frame.copyTo(out);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode messages, from at most {@link #MAX_LENGTH} bytes.
+   *
+   * @param in the stream holding the encoded messages, read until its end.
+   * @return the decoded messages.
+   * @throws IOException if the stream cannot be read or does not hold valid messages.
+   */
+  static List<ForwardedMessage> decode(InputStream in) throws IOException {
+    return decode(in, MAX_LENGTH);
+  }
+
+  /**
+   * Decode messages.
+   *
+   * @param in the stream holding the encoded messages, read until its end.
+   * @param maxLength the maximum number of bytes of the encoded messages, e.g. the length of the
+   *     request holding them; frames claiming to be longer are rejected before being read.
+   * @return the decoded messages.
+   * @throws IOException if the stream cannot be read or does not hold valid messages.
+   */
+  static List<ForwardedMessage> decode(InputStream in, long maxLength) throws IOException {
+    List<ForwardedMessage> messages = new ArrayList<>();
+    long remaining = Math.min(maxLength, MAX_LENGTH);
+    int first;
+    while ((first = in.read()) != -1) {
+      long length = readVarint(in, first);
+      remaining -= varintSize(length) + length;
+      if (length > Integer.MAX_VALUE || remaining < 0) {
+        throw new IOException("Invalid frame length: " + length);
+      }
+      Input frame = new Input(readFully(in, (int) length));
+      int type = frame.read();
+      if (type >= TYPES.length) {
+        throw new IOException("Invalid message type: " + type);
+      }
+      messages.add(new ForwardedMessage(TYPES[type], frame.readString(), frame.readValue()));
+    }
+    return messages;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static int varintSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+
+  private static long readVarint(InputStream in, int first) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b = first;
+    while (true) {
+      if (b == -1) {
+        throw new EOFException();
+      }
+      if (shift > 63) {
+        throw new IOException("Malformed variable-length number");
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+      b = in.read();
+    }
+  }
+
+  private static byte[] readFully(InputStream in, int length) throws IOException {
+    byte[] data = new byte[length];
+    int read = 0;
+    while (read < length) {
+      int n = in.read(data, read, length - read);
+      if (n == -1) {
+        throw new EOFException();
+      }
+      read += n;
+    }
+    return data;
+  }
+
+  private static class Output extends ByteArrayOutputStream {
+    void copyTo(ByteArrayOutputStream out) {
+      out.write(buf, 0, count);
+    }
+
+    void writeValue(JsonElement value) {
+      if (value == null || value.isJsonNull()) {
+        write(NULL);
+      } else if (value.isJsonObject()) {
+        write(OBJECT);
+        Set<Map.Entry<String, JsonElement>> members = value.getAsJsonObject().entrySet();
+        writeVarint(this, members.size());
+        for (Map.Entry<String, JsonElement> e : members) {
+          writeString(e.getKey());
+          writeValue(e.getValue());
+        }
+      } else if (value.isJsonArray()) {
+        write(ARRAY);
+        writeVarint(this, value.getAsJsonArray().size());
+        for (JsonElement e : value.getAsJsonArray()) {
+          writeValue(e);
+        }
+      } else {
+        writePrimitive(value.getAsJsonPrimitive());
+      }
+    }
+
+    private void writePrimitive(JsonPrimitive value) {
+      if (value.isBoolean()) {
+        write(value.getAsBoolean() ? TRUE : FALSE);
+      } else if (value.isNumber()) {
+        BigDecimal number = value.getAsBigDecimal();
+        try {
+          long integer = number.longValueExact();
+          write(INTEGER);
+          writeVarint(this, (integer << 1) ^ (integer >> 63));
+        } catch (ArithmeticException e) {
+          write(DECIMAL);
+          writeString(number.toString());
+        }
+      } else {
+        write(STRING);
+        writeString(value.getAsString());
+      }
+    }
+
+    void writeString(String value) {
+      byte[] data = value.getBytes(UTF_8);
+      writeVarint(this, data.length);
+      write(data, 0, data.length);
+    }
+  }
+
+  private static class Input {
+    private final byte[] data;
+    private int position;
+
+    Input(byte[] data) {
+      this.data = data;
+    }
+
+    int read() throws IOException {
+      if (position >= data.length) {
+        throw new EOFException();
+      }
+      return data[position++] & 0xFF;
+    }
+
+    long readVarint() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = read();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed variable-length number");
+    }
+
+    int readLength() throws IOException {
+      long length = readVarint();
+      if (length < 0 || length > data.length - position) {
+        throw new IOException("Invalid length: " + length);
+      }
+      return (int) length;
+    }
+
+    String readString() throws IOException {
+      int length = readLength();
+      String value = new String(data, position, length, UTF_8);
+      position += length;
+      return value;
+    }
+
+    JsonElement readValue() throws IOException {
+      int tag = read();
+      switch (tag) {
+        case NULL:
+          return JsonNull.INSTANCE;
+        case TRUE:
+          return new JsonPrimitive(true);
+        case FALSE:
+          return new JsonPrimitive(false);
+        case INTEGER:
+          long zigzag = readVarint();
+          return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+        case DECIMAL:
+          String decimal = readString();
+          try {
+            return new JsonPrimitive(new BigDecimal(decimal));
+          } catch (NumberFormatException e) {
+            throw new IOException("Invalid decimal: " + decimal, e);
+          }
+        case STRING:
+          return new JsonPrimitive(readString());
+        case ARRAY:
+          JsonArray array = new JsonArray();
+          for (long i = readVarint(); i > 0; i--) {
+            array.add(readValue());
+          }
+          return array;
+        case OBJECT:
+          JsonObject object = new JsonObject();
+          for (long i = readVarint(); i > 0; i--) {
+            String key = readString();
+            object.add(key, readValue());
+          }
+          return object;
+        default:
+          throw new IOException("Invalid value tag: " + tag);
+      }
+    }
+  }
+}
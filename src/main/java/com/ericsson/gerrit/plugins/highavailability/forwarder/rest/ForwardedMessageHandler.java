@@ -0,0 +1,217 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEntry;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheNotFoundException;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedCacheEvictionHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedEventHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexAccountHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexChangeHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexGroupHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexProjectHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedProjectListUpdateHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Apply a {@link ForwardedMessage} to the local node by handing it over to the matching forwarded
+ * indexing, cache eviction, event or project list update handler.
+ */
+@Singleton
+public class ForwardedMessageHandler {
+  private final ForwardedIndexChangeHandler indexChangeHandler;
+  private final ForwardedIndexAccountHandler indexAccountHandler;
+  private final ForwardedIndexGroupHandler indexGroupHandler;
+  private final ForwardedIndexProjectHandler indexProjectHandler;
+  private final ForwardedCacheEvictionHandler cacheEvictionHandler;
+  private final ForwardedEventHandler eventHandler;
+  private final ForwardedProjectListUpdateHandler projectListUpdateHandler;
+  private final CacheKeyCodecs codecs;
+  private final Gson gson;
+
+  @Inject
+  ForwardedMessageHandler(
+      ForwardedIndexChangeHandler indexChangeHandler,
+      ForwardedIndexAccountHandler indexAccountHandler,
+      ForwardedIndexGroupHandler indexGroupHandler,
+      ForwardedIndexProjectHandler indexProjectHandler,
+      ForwardedCacheEvictionHandler cacheEvictionHandler,
+      ForwardedEventHandler eventHandler,
+      ForwardedProjectListUpdateHandler projectListUpdateHandler,
+      CacheKeyCodecs codecs,
+      @EventGson Gson gson) {
+    this.indexChangeHandler = indexChangeHandler;
+    this.indexAccountHandler = indexAccountHandler;
+    this.indexGroupHandler = indexGroupHandler;
+    this.indexProjectHandler = indexProjectHandler;
+    this.cacheEvictionHandler = cacheEvictionHandler;
+    this.eventHandler = eventHandler;
+    this.projectListUpdateHandler = projectListUpdateHandler;
+    this.codecs = codecs;
+    this.gson = gson;
+  }
+
+  /**
+   * Apply a forwarded message in the local node, it will not be forwarded again to the other node.
+   *
+   * @param message the message to apply.
+   * @throws IOException if an error occur while indexing.
+   * @throws CacheNotFoundException if the cache to evict from does not exist.
+   * @throws PermissionBackendException if the event cannot be dispatched.
+   */
+  public void handle(ForwardedMessage message)
+      throws IOException, CacheNotFoundException, PermissionBackendException {
+    String id = message.getId();
+    switch (message.getType()) {
+      case INDEX_CHANGE:
+      case DELETE_CHANGE:
+      case INDEX_ACCOUNT:
+      case INDEX_GROUP:
+      case INDEX_PROJECT:
+        index(message);
+        break;
+      case EVICT:
+        evict(id, message.getPayload());
+        break;
+      case EVICT_ALL:
+        evictAll(id, message.getPayload());
+        break;
+      case FLUSH_CACHE:
+        cacheEvictionHandler.flush(id);
+        break;
+      case EVENT:
+        eventHandler.dispatch(gson.fromJson(message.getPayload(), Event.class));
+        break;
+      case ADD_TO_PROJECT_LIST:
+        projectListUpdateHandler.update(id, false);
+        break;
+      case REMOVE_FROM_PROJECT_LIST:
+        projectListUpdateHandler.update(id, true);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported message type: " + message.getType());
+    }
+  }
+
+  /**
+   * @param type the type of a message.
+   * @return true if the message updates the index, false otherwise.
+   */
+  public static boolean isIndexing(ForwardedMessage.Type type) {
+    switch (type) {
+      case INDEX_CHANGE:
+      case DELETE_CHANGE:
+      case INDEX_ACCOUNT:
+      case INDEX_GROUP:
+      case INDEX_PROJECT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Apply a forwarded indexing message in the local node.
+   *
+   * @param message the message to apply, see {@link #isIndexing}.
+   * @throws IOException if an error occur while indexing.
+   * @throws IllegalArgumentException if the message does not update the index.
+   */
+  public void index(ForwardedMessage message) throws IOException {
+    String id = message.getId();
+    switch (message.getType()) {
+      case INDEX_CHANGE:
+        indexChangeHandler.index(id, Operation.INDEX, parseIndexEvent(message));
+        break;
+      case DELETE_CHANGE:
+        indexChangeHandler.index(id, Operation.DELETE, parseIndexEvent(message));
+        break;
+      case INDEX_ACCOUNT:
+        indexAccountHandler.index(
+            Account.id(Integer.parseInt(id)), Operation.INDEX, parseIndexEvent(message));
+        break;
+      case INDEX_GROUP:
+        indexGroupHandler.index(AccountGroup.uuid(id), Operation.INDEX, parseIndexEvent(message));
+        break;
+      case INDEX_PROJECT:
+        indexProjectHandler.index(Project.nameKey(id), Operation.INDEX, parseIndexEvent(message));
+        break;
+      default:
+        throw new IllegalArgumentException("Not an indexing message: " + message.getType());
+    }
+  }
+
+  /**
+   * Index the changes of several {@link ForwardedMessage.Type#INDEX_CHANGE} messages at once, see
+   * {@link ForwardedIndexChangeHandler#indexChanges}.
+   *
+   * @param messages the messages indexing changes.
+   * @throws IOException if some changes could not be indexed.
+   * @throws IllegalArgumentException if some ids are invalid, once the other changes are indexed.
+   */
+  public void indexChanges(List<ForwardedMessage> messages) throws IOException {
+    Map<String, Optional<IndexEvent>> changes = new LinkedHashMap<>();
+    for (ForwardedMessage message : messages) {
+      changes.put(message.getId(), parseIndexEvent(message));
+    }
+    indexChangeHandler.indexChanges(changes);
+  }
+
+  private Optional<IndexEvent> parseIndexEvent(ForwardedMessage message) {
+    JsonElement payload = message.getPayload();
+    if (payload == null || payload.isJsonNull()) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(gson.fromJson(payload, IndexEvent.class));
+  }
+
+  private void evict(String cacheName, JsonElement payload)
+      throws IOException, CacheNotFoundException {
+    Optional<Object> key = codecs.decode(cacheName, payload.toString());
+    if (key.isPresent()) {
+      cacheEvictionHandler.evict(CacheEntry.from(cacheName, key.get()));
+    } else {
+      cacheEvictionHandler.flush(cacheName);
+    }
+  }
+
+  private void evictAll(String cacheName, JsonElement payload)
+      throws IOException, CacheNotFoundException {
+    Optional<Set<Object>> keys = codecs.decodeAll(cacheName, payload.toString());
+    if (keys.isPresent()) {
+      cacheEvictionHandler.evictAll(cacheName, keys.get());
+    } else {
+      cacheEvictionHandler.flush(cacheName);
+    }
+  }
+}
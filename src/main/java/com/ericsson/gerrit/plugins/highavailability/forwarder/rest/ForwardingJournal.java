@@ -0,0 +1,364 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Append-only journal of the messages to forward to the other masters, stored in memory-mapped
+ * segment files under the plugin data directory.
+ *
+ * <p>Messages are identified by their offset in the journal. The offset of the first message not
+ * yet acknowledged by each peer is persisted along with the segments, so forwarding resumes where
+ * it stopped after a restart of this node or an outage of the peer. Segments acknowledged by every
+ * current peer are deleted; when the journal grows beyond {@code journal.maxSegments} segments the
+ * oldest one is dropped.
+ *
+ * <p>The messages are written to the mapped segments, which the operating system writes to disk
+ * when it sees fit; a segment is only forced to disk once full or when the journal is closed. The
+ * messages therefore survive a crash of the JVM, but the latest ones may be lost on a crash of the
+ * host.
+ */
+@Singleton
+class ForwardingJournal {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  static final String JOURNAL_DIR = "journal";
+  static final String SEGMENT_SUFFIX = ".segment";
+  static final String ACKS_FILE = "acks";
+  private static final int LENGTH_BYTES = Integer.BYTES;
+
+  static class Entry {
+    private final long nextOffset;
+    private final ForwardedMessage message;
+
+    Entry(long nextOffset, ForwardedMessage message) {
+      this.nextOffset = nextOffset;
+      this.message = message;
+    }
+
+    /** @return the offset of the message following this one in the journal. */
+    long nextOffset() {
+      return nextOffset;
+    }
+
+    ForwardedMessage message() {
+      return message;
+    }
+  }
+
+  private final Path dir;
+  private final Path acksFile;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final Gson gson;
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  private final Map<String, Long> acks = new HashMap<>();
+
+  @Inject
+  ForwardingJournal(@PluginData Path dataDir, Configuration cfg, @EventGson Gson gson) {
+    this.dir = dataDir.resolve(JOURNAL_DIR);
+    this.acksFile = dir.resolve(ACKS_FILE);
+    this.segmentSize = Math.max(LENGTH_BYTES, cfg.journal().segmentSize());
+    this.maxSegments = Math.max(1, cfg.journal().maxSegments());
+    this.gson = gson;
+  }
+
+  /**
+   * Open the journal, recovering the segments and acknowledged offsets stored on disk.
+   *
+   * @throws IOException if the journal cannot be read or created.
+   */
+  synchronized void open() throws IOException {
+    Files.createDirectories(dir);
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        segments.put(base, Segment.map(file, base, (int) Files.size(file)));
+      }
+    }
+    if (segments.isEmpty()) {
+      newSegment(0, segmentSize);
+    }
+    if (Files.exists(acksFile)) {
+      Properties stored = new Properties();
+      try (InputStream in = Files.newInputStream(acksFile)) {
+        stored.load(in);
+      }
+      for (String peer : stored.stringPropertyNames()) {
+        acks.put(peer, Long.parseLong(stored.getProperty(peer)));
+      }
+    }
+    log.atInfo().log(
+        "Opened forwarding journal with %d segments from offset %d to %d",
+        segments.size(), head(), tail());
+  }
+
+  /** Flush the segments to disk and release them. */
+  synchronized void close() {
+    for (Segment segment : segments.values()) {
+      segment.buffer.force();
+    }
+    segments.clear();
+  }
+
+  /**
+   * Append a message at the end of the journal.
+   *
+   * @param message the message to append.
+   * @return the offset of the message.
+   * @throws IOException if a new segment cannot be created.
+   */
+  synchronized long append(ForwardedMessage message) throws IOException {
+    byte[] data = gson.toJson(message).getBytes(UTF_8);
+    int recordSize = LENGTH_BYTES + data.length;
+    Segment segment = segments.lastEntry().getValue();
+    if (segment.remaining() < recordSize) {
+      segment.buffer.force();
+      segment = newSegment(segment.tail(), Math.max(segmentSize, recordSize));
+      dropOverflowingSegments();
+    }
+    long offset = segment.tail();
+    segment.write(data);
+    return offset;
+  }
+
+  /**
+   * Read the messages stored in the journal.
+   *
+   * @param from the offset of the first message to read.
+   * @param max the maximum number of messages to read.
+   * @return the messages following the offset, in the order they were appended.
+   */
+  synchronized List<Entry> read(long from, int max) {
+    List<Entry> entries = new ArrayList<>();
+    long offset = Math.max(from, head());
+    while (entries.size() < max) {
+      Map.Entry<Long, Segment> floor = segments.floorEntry(offset);
+      if (floor == null) {
+        break;
+      }
+      Segment segment = floor.getValue();
+      if (offset >= segment.tail()) {
+        Long next = segments.higherKey(segment.base);
+        if (next == null) {
+          break;
+        }
+        offset = next;
+        continue;
+      }
+      byte[] data = segment.read((int) (offset - segment.base));
+      offset += LENGTH_BYTES + data.length;
+      ForwardedMessage message = gson.fromJson(new String(data, UTF_8), ForwardedMessage.class);
+      entries.add(new Entry(offset, message));
+    }
+    return entries;
+  }
+
+  /**
+   * Get the offset of the first message the peer did not acknowledge yet.
+   *
+   * @param peer the URL of the peer.
+   * @return the acknowledged offset, or the oldest offset of the journal if the peer never
+   *     acknowledged a message or missed messages which were dropped.
+   */
+  synchronized long ackedOffset(String peer) {
+    long head = head();
+    Long acked = acks.get(peer);
+    if (acked != null && acked < head) {
+      log.atWarning().log(
+          "Messages from offset %d to %d were dropped before being forwarded to %s",
+          acked, head, peer);
+    }
+    return acked == null ? head : Math.max(acked, head);
+  }
+
+  /**
+   * Record that the peer received all the messages before an offset.
+   *
+   * @param peer the URL of the peer.
+   * @param offset the offset of the first message the peer did not receive yet.
+   * @throws IOException if the acknowledged offsets cannot be persisted.
+   */
+  synchronized void ack(String peer, long offset) throws IOException {
+    acks.put(peer, offset);
+    storeAcks();
+  }
+
+  private void storeAcks() throws IOException {
+    Properties stored = new Properties();
+    acks.forEach((p, o) -> stored.setProperty(p, Long.toString(o)));
+    Path tmp = Files.createTempFile(dir, ACKS_FILE, ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      stored.store(out, null);
+    }
+    Files.move(tmp, acksFile, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  /**
+   * Delete the segments whose messages were all received by the current peers. Segments still
+   * needed by a current peer, even if it is unreachable, are kept so that it can catch up when it
+   * comes back. The acknowledged offsets of the peers which left are dropped: they no longer hold
+   * back the deletion of the segments, and a peer which comes back after leaving is forwarded the
+   * messages from the oldest one of the journal.
+   *
+   * @param peers the URLs of the current peers.
+   */
+  synchronized void trim(Set<String> peers) {
+    if (peers.isEmpty()) {
+      return;
+    }
+    if (acks.keySet().retainAll(peers)) {
+      try {
+        storeAcks();
+      } catch (IOException e) {
+        log.atWarning().withCause(e).log("Unable to drop the journal offsets of the left peers");
+      }
+    }
+    long head = head();
+    long limit = peers.stream().mapToLong(peer -> acks.getOrDefault(peer, head)).min().getAsLong();
+    while (segments.size() > 1 && segments.firstEntry().getValue().tail() <= limit) {
+      deleteSegment(segments.pollFirstEntry().getValue());
+    }
+  }
+
+  /** @return the offset of the oldest message of the journal. */
+  synchronized long head() {
+    return segments.isEmpty() ? 0 : segments.firstKey();
+  }
+
+  /** @return the offset following the last message of the journal. */
+  synchronized long tail() {
+    return segments.isEmpty() ? 0 : segments.lastEntry().getValue().tail();
+  }
+
+  private Segment newSegment(long base, int size) throws IOException {
+    Path file = dir.resolve(String.format("%019d%s", base, SEGMENT_SUFFIX));
+    Segment segment = Segment.map(file, base, size);
+    segments.put(base, segment);
+    return segment;
+  }
+
+  private void dropOverflowingSegments() {
+    while (segments.size() > maxSegments) {
+      Segment dropped = segments.pollFirstEntry().getValue();
+      log.atWarning().log(
+          "Forwarding journal is full, dropping messages from offset %d to %d",
+          dropped.base, dropped.tail());
+      deleteSegment(dropped);
+    }
+  }
+
+  private static void deleteSegment(Segment segment) {
+    try {
+      Files.deleteIfExists(segment.file);
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to delete journal segment %s", segment.file);
+    }
+  }
+
+  /**
+   * A memory-mapped file holding the messages from a base offset. Each message is stored as its
+   * length followed by its JSON representation; the length is written last so that a partially
+   * written message is ignored when recovering the segment.
+   */
+  private static class Segment {
+    private final long base;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+
+    private Segment(long base, Path file, MappedByteBuffer buffer) {
+      this.base = base;
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    static Segment map(Path file, long base, int size) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+        Segment segment =
+            new Segment(base, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segment.recover();
+        return segment;
+      }
+    }
+
+    private void recover() {
+      int position = 0;
+      while (position + LENGTH_BYTES <= buffer.capacity()) {
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + LENGTH_BYTES + length > buffer.capacity()) {
+          break;
+        }
+        position += LENGTH_BYTES + length;
+      }
+      writePosition = position;
+    }
+
+    long tail() {
+      return base + writePosition;
+    }
+
+    int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+
+    void write(byte[] data) {
+      ByteBuffer target = buffer.duplicate();
+      target.position(writePosition + LENGTH_BYTES);
+      target.put(data);
+      buffer.putInt(writePosition, data.length);
+      writePosition += LENGTH_BYTES + data.length;
+    }
+
+    byte[] read(int position) {
+      byte[] data = new byte[buffer.getInt(position)];
+      ByteBuffer source = buffer.duplicate();
+      source.position(position + LENGTH_BYTES);
+      source.get(data);
+      return data;
+    }
+  }
+}
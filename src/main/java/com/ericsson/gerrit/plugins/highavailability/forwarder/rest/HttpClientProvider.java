@@ -93,7 +93,7 @@ class HttpClientProvider implements Provider<CloseableHttpClient> {
     return new SSLConnectionSocketFactory(buildSslContext(), NoopHostnameVerifier.INSTANCE);
   }
 
-  private static SSLContext buildSslContext() {
+  static SSLContext buildSslContext() {
     try {
       TrustManager[] trustAllCerts = new TrustManager[] {new DummyX509TrustManager()};
       SSLContext context = SSLContext.getInstance("TLS");
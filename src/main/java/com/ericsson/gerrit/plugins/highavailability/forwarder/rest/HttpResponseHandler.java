@@ -14,11 +14,14 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
 import com.google.common.flogger.FluentLogger;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ResponseHandler;
@@ -29,10 +32,24 @@ class HttpResponseHandler implements ResponseHandler<HttpResult> {
   static class HttpResult {
     private final boolean successful;
     private final String message;
+    private final long retryAfter;
+    private final int status;
+    private final int processed;
 
     HttpResult(boolean successful, String message) {
+      this(successful, message, 0);
+    }
+
+    HttpResult(boolean successful, String message, long retryAfter) {
+      this(successful, message, retryAfter, 0, -1);
+    }
+
+    HttpResult(boolean successful, String message, long retryAfter, int status, int processed) {
       this.successful = successful;
       this.message = message;
+      this.retryAfter = retryAfter;
+      this.status = status;
+      this.processed = processed;
     }
 
     boolean isSuccessful() {
@@ -42,17 +59,91 @@ class HttpResponseHandler implements ResponseHandler<HttpResult> {
     String getMessage() {
       return message;
     }
+
+    /** @return the delay in milliseconds the peer asked to wait before retrying, or 0. */
+    long getRetryAfter() {
+      return retryAfter;
+    }
+
+    /** @return the HTTP status code of the response, or 0 if unknown. */
+    int getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the number of leading messages of a batch the peer processed before one failed, or -1
+     *     if the peer did not report it.
+     */
+    int getProcessed() {
+      return processed;
+    }
   }
 
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
+  static final int SC_TOO_MANY_REQUESTS = 429;
+  static final String RETRY_AFTER = "Retry-After";
+  static final String PROCESSED_MESSAGES = "X-Processed-Messages";
+
   @Override
   public HttpResult handleResponse(HttpResponse response) {
-    return new HttpResult(isSuccessful(response), parseResponse(response));
+    int status = response.getStatusLine().getStatusCode();
+    Header retryAfter = response.getFirstHeader(RETRY_AFTER);
+    Header processed = response.getFirstHeader(PROCESSED_MESSAGES);
+    return new HttpResult(
+        isSuccessful(status),
+        parseResponse(response),
+        retryAfter(status, retryAfter != null ? retryAfter.getValue() : null),
+        status,
+        processed(processed != null ? processed.getValue() : null));
+  }
+
+  /**
+   * Check whether the peer processed the request, or accepted it to process it later.
+   *
+   * @param status the HTTP status code of the response.
+   * @return true if the request succeeded.
+   */
+  static boolean isSuccessful(int status) {
+    return status == SC_NO_CONTENT || status == SC_ACCEPTED;
   }
 
-  private static boolean isSuccessful(HttpResponse response) {
-    return response.getStatusLine().getStatusCode() == SC_NO_CONTENT;
+  /**
+   * Get the delay the peer asked to wait before retrying a request it refused because it is
+   * overloaded.
+   *
+   * @param status the HTTP status code of the response.
+   * @param retryAfter the value of the {@code Retry-After} header, in seconds, or null.
+   * @return the delay in milliseconds, or 0 if the peer did not ask to wait.
+   */
+  static long retryAfter(int status, String retryAfter) {
+    if (status != SC_TOO_MANY_REQUESTS || retryAfter == null) {
+      return 0;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException e) {
+      log.atFine().log("Ignoring Retry-After header with unsupported value %s", retryAfter);
+      return 0;
+    }
+  }
+
+  /**
+   * Get the number of leading messages of a batch the peer processed before one failed.
+   *
+   * @param processed the value of the {@code X-Processed-Messages} header, or null.
+   * @return the number of processed messages, or -1 if the peer did not report it.
+   */
+  static int processed(String processed) {
+    if (processed == null) {
+      return -1;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(processed.trim()));
+    } catch (NumberFormatException e) {
+      log.atFine().log("Ignoring %s header with invalid value %s", PROCESSED_MESSAGES, processed);
+      return -1;
+    }
   }
 
   private static String parseResponse(HttpResponse response) {
@@ -25,6 +25,8 @@ import java.nio.charset.StandardCharsets;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 
@@ -48,6 +50,12 @@ class HttpSession {
     return httpClient.execute(post, new HttpResponseHandler());
   }
 
+  HttpResult post(String uri, byte[] content, String contentType) throws IOException {
+    HttpPost post = new HttpPost(uri);
+    post.setEntity(new ByteArrayEntity(content, ContentType.create(contentType)));
+    return httpClient.execute(post, new HttpResponseHandler());
+  }
+
   HttpResult delete(String uri) throws IOException {
     return delete(uri, null);
   }
@@ -15,6 +15,7 @@
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexAccountHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
 import com.google.gerrit.entities.Account;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -24,8 +25,8 @@ class IndexAccountRestApiServlet extends AbstractIndexRestApiServlet<Account.Id>
   private static final long serialVersionUID = -1L;
 
   @Inject
-  IndexAccountRestApiServlet(ForwardedIndexAccountHandler handler) {
-    super(handler, IndexName.ACCOUNT);
+  IndexAccountRestApiServlet(ForwardedIndexAccountHandler handler, ForwardedIndexingQueue queue) {
+    super(handler, queue, IndexName.ACCOUNT);
   }
 
   @Override
@@ -15,6 +15,7 @@
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexChangeHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
 import com.google.gerrit.extensions.restapi.Url;
 import com.google.gerrit.server.events.EventGson;
 import com.google.gson.Gson;
@@ -26,8 +27,9 @@ class IndexChangeRestApiServlet extends AbstractIndexRestApiServlet<String> {
   private static final long serialVersionUID = -1L;
 
   @Inject
-  IndexChangeRestApiServlet(ForwardedIndexChangeHandler handler, @EventGson Gson gson) {
-    super(handler, IndexName.CHANGE, true, gson);
+  IndexChangeRestApiServlet(
+      ForwardedIndexChangeHandler handler, ForwardedIndexingQueue queue, @EventGson Gson gson) {
+    super(handler, queue, IndexName.CHANGE, true, gson);
   }
 
   @Override
@@ -15,6 +15,7 @@
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexProjectHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.restapi.Url;
 import com.google.inject.Inject;
@@ -25,8 +26,8 @@ class IndexProjectRestApiServlet extends AbstractIndexRestApiServlet<Project.Nam
   private static final long serialVersionUID = -1L;
 
   @Inject
-  IndexProjectRestApiServlet(ForwardedIndexProjectHandler handler) {
-    super(handler, IndexName.PROJECT);
+  IndexProjectRestApiServlet(ForwardedIndexProjectHandler handler, ForwardedIndexingQueue queue) {
+    super(handler, queue, IndexName.PROJECT);
   }
 
   @Override
@@ -0,0 +1,262 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Record the indexing, cache eviction and stream event messages in the {@link ForwardingJournal}
+ * and replay them to each peer from its acknowledged offset. Each peer is replayed to from its own
+ * delivery queue, so that a slow or unreachable peer does not hold back the other peers. A peer
+ * failing to receive a batch of messages is retried after {@code http.retryInterval} milliseconds,
+ * or later if the peer asked so. The messages the peer processed before one failed are
+ * acknowledged, so that only the remaining ones are replayed; messages are never given up, unless
+ * they are dropped from the journal or the peer reports that they can never be processed.
+ *
+ * <p>Journaled messages are reported as successfully forwarded.
+ */
+@Singleton
+class JournalingForwarder extends MessageForwarder implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final ForwardingJournal journal;
+  private final Provider<Set<PeerInfo>> peerInfoProvider;
+  private final PeerDeliveryQueues queues;
+  private final int replayBatchSize;
+  private final int retryInterval;
+  private final ScheduledExecutorService replayExecutor;
+  private final ConcurrentMap<String, PeerReplay> peerReplays = new ConcurrentHashMap<>();
+
+  private ScheduledFuture<?> scheduledReplay;
+
+  @Inject
+  JournalingForwarder(
+      RestForwarder restForwarder,
+      ForwardingJournal journal,
+      Configuration cfg,
+      Provider<Set<PeerInfo>> peerInfoProvider,
+      PeerDeliveryQueues queues,
+      WorkQueue workQueue,
+      @EventGson Gson gson,
+      CacheKeyCodecs codecs) {
+    super(restForwarder, gson, codecs);
+    this.journal = journal;
+    this.peerInfoProvider = peerInfoProvider;
+    this.queues = queues;
+    this.replayBatchSize = Math.max(1, cfg.journal().replayBatchSize());
+    this.retryInterval = cfg.http().retryInterval();
+    this.replayExecutor = workQueue.createQueue(1, "Forward-Journal");
+  }
+
+  @Override
+  public void start() {
+    try {
+      journal.open();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to open the forwarding journal", e);
+    }
+    scheduleReplay(0);
+  }
+
+  @Override
+  public void stop() {
+    replayExecutor.shutdownNow();
+    try {
+      replayExecutor.awaitTermination(retryInterval, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    journal.close();
+  }
+
+  @Override
+  protected boolean forward(ForwardedMessage message) {
+    try {
+      journal.append(message);
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Unable to journal %s", message);
+      return false;
+    }
+    scheduleReplay(0);
+    return true;
+  }
+
+  private synchronized void scheduleReplay(long delay) {
+    if (scheduledReplay != null) {
+      if (scheduledReplay.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+        return;
+      }
+      scheduledReplay.cancel(false);
+    }
+    scheduledReplay = replayExecutor.schedule(this::replay, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /** Replay the journal to each peer which is not already being replayed to or waiting to be. */
+  void replay() {
+    synchronized (this) {
+      scheduledReplay = null;
+    }
+    Set<PeerInfo> peers = peerInfoProvider.get();
+    Set<String> urls = peers.stream().map(PeerInfo::getDirectUrl).collect(Collectors.toSet());
+    peerReplays.keySet().retainAll(urls);
+    for (PeerInfo peer : peers) {
+      peerReplays.computeIfAbsent(peer.getDirectUrl(), url -> new PeerReplay(peer)).submit();
+    }
+  }
+
+  private void trim() {
+    journal.trim(
+        peerInfoProvider.get().stream().map(PeerInfo::getDirectUrl).collect(Collectors.toSet()));
+  }
+
+  /** The replay of the journal to a peer, running on the delivery queue of the peer. */
+  private class PeerReplay {
+    private final PeerInfo peer;
+    private final String url;
+    private boolean running;
+    private boolean again;
+    private long retryAt;
+
+    PeerReplay(PeerInfo peer) {
+      this.peer = peer;
+      this.url = peer.getDirectUrl();
+    }
+
+    /**
+     * Replay from the delivery queue of the peer, unless the peer waits to be retried. When it is
+     * already being replayed to, the replay goes on until the end of the journal instead.
+     */
+    void submit() {
+      synchronized (this) {
+        if (System.currentTimeMillis() < retryAt) {
+          return;
+        }
+        if (running) {
+          again = true;
+          return;
+        }
+        running = true;
+      }
+      try {
+        queues.submit(url, this::run);
+      } catch (RejectedExecutionException e) {
+        log.atFine().withCause(e).log("Not replaying the forwarding journal to %s", url);
+        synchronized (this) {
+          running = false;
+        }
+        peerReplays.remove(url, this);
+      }
+    }
+
+    private void run() {
+      for (; ; ) {
+        long delay;
+        try {
+          delay = replayBatch();
+        } catch (RuntimeException e) {
+          log.atSevere().withCause(e).log("Unable to replay the forwarding journal to %s", url);
+          delay = retryInterval;
+        }
+        synchronized (this) {
+          if (delay > 0) {
+            running = false;
+            again = false;
+            retryAt = System.currentTimeMillis() + delay;
+            scheduleRetry(delay);
+            return;
+          }
+          if (delay < 0 && !again) {
+            running = false;
+            return;
+          }
+          again = false;
+        }
+      }
+    }
+
+    private void scheduleRetry(long delay) {
+      try {
+        replayExecutor.schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        log.atFine().withCause(e).log("Not retrying to replay the forwarding journal to %s", url);
+      }
+    }
+
+    private void retry() {
+      synchronized (this) {
+        retryAt = 0;
+      }
+      submit();
+    }
+
+    /**
+     * Replay a batch of messages to the peer.
+     *
+     * @return 0 to replay the next batch, the delay before retrying in milliseconds if the peer
+     *     failed to receive some messages, or -1 if the peer received all the messages.
+     */
+    private long replayBatch() {
+      long from = journal.ackedOffset(url);
+      List<ForwardingJournal.Entry> entries = journal.read(from, replayBatchSize);
+      if (entries.isEmpty()) {
+        return -1;
+      }
+      List<ForwardedMessage> batch =
+          entries.stream().map(ForwardingJournal.Entry::message).collect(Collectors.toList());
+      RestForwarder.BatchResult result = restForwarder.tryForwardBatch(peer, from, batch);
+      int processed = result.getProcessed();
+      if (processed > 0 && !acknowledge(url, entries.get(processed - 1))) {
+        processed = 0;
+      }
+      if (processed > 0) {
+        trim();
+      }
+      if (processed == entries.size()) {
+        return 0;
+      }
+      return Math.max(retryInterval, result.getRetryAfter());
+    }
+  }
+
+  private boolean acknowledge(String peer, ForwardingJournal.Entry last) {
+    try {
+      journal.ack(peer, last.nextOffset());
+      return true;
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Unable to store the journal offset of %s", peer);
+      return false;
+    }
+  }
+}
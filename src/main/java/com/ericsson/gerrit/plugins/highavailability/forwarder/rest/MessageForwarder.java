@@ -0,0 +1,110 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.gerrit.server.events.Event;
+import com.google.gson.Gson;
+import com.google.gson.JsonNull;
+import java.util.Collection;
+
+/**
+ * Base class of the forwarders turning the indexing, cache eviction and stream event messages into
+ * {@link ForwardedMessage}s. Updates of the project list are forwarded immediately by the {@link
+ * RestForwarder}.
+ */
+abstract class MessageForwarder implements Forwarder {
+  protected final RestForwarder restForwarder;
+  private final Gson gson;
+  private final CacheKeyCodecs codecs;
+
+  MessageForwarder(RestForwarder restForwarder, Gson gson, CacheKeyCodecs codecs) {
+    this.restForwarder = restForwarder;
+    this.gson = gson;
+    this.codecs = codecs;
+  }
+
+  @Override
+  public boolean indexAccount(int accountId, IndexEvent indexEvent) {
+    return forward(Type.INDEX_ACCOUNT, String.valueOf(accountId), indexEvent);
+  }
+
+  @Override
+  public boolean indexChange(String projectName, int changeId, IndexEvent indexEvent) {
+    return forward(Type.INDEX_CHANGE, projectName + "~" + changeId, indexEvent);
+  }
+
+  @Override
+  public boolean deleteChangeFromIndex(int changeId, IndexEvent indexEvent) {
+    return forward(Type.DELETE_CHANGE, "~" + changeId, indexEvent);
+  }
+
+  @Override
+  public boolean indexGroup(String uuid, IndexEvent indexEvent) {
+    return forward(Type.INDEX_GROUP, uuid, indexEvent);
+  }
+
+  @Override
+  public boolean indexProject(String projectName, IndexEvent indexEvent) {
+    return forward(Type.INDEX_PROJECT, projectName, indexEvent);
+  }
+
+  @Override
+  public boolean send(Event event) {
+    return forward(Type.EVENT, event.type, event);
+  }
+
+  @Override
+  public boolean evict(String cacheName, Object key) {
+    return forward(
+        new ForwardedMessage(Type.EVICT, cacheName, codecs.encodeTree(cacheName, key)));
+  }
+
+  @Override
+  public boolean evictAll(String cacheName, Collection<?> keys) {
+    return forward(
+        new ForwardedMessage(Type.EVICT_ALL, cacheName, codecs.encodeAllTree(cacheName, keys)));
+  }
+
+  @Override
+  public boolean flushCache(String cacheName) {
+    return forward(new ForwardedMessage(Type.FLUSH_CACHE, cacheName, JsonNull.INSTANCE));
+  }
+
+  @Override
+  public boolean addToProjectList(String projectName) {
+    return restForwarder.addToProjectList(projectName);
+  }
+
+  @Override
+  public boolean removeFromProjectList(String projectName) {
+    return restForwarder.removeFromProjectList(projectName);
+  }
+
+  private boolean forward(Type type, String id, Object payload) {
+    return forward(new ForwardedMessage(type, id, gson.toJsonTree(payload)));
+  }
+
+  /**
+   * Forward a message to the other master.
+   *
+   * @param message the message to forward.
+   * @return true if successful, otherwise false.
+   */
+  protected abstract boolean forward(ForwardedMessage message);
+}
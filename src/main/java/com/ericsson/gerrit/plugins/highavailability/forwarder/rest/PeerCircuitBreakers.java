@@ -0,0 +1,229 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breakers pausing the forwarding to the peers which cannot be reached.
+ *
+ * <p>After {@code http.circuitBreakerThreshold} consecutive failures to reach a peer, its circuit
+ * opens: the messages to forward to it are parked instead of being sent. Once the backoff delay
+ * elapses, the circuit is half-open and a single message is sent to probe the peer. The circuit
+ * closes as soon as the peer responds, and the parked messages are then forwarded; otherwise it
+ * opens again for a longer delay. The outcome of a parked message is only known once it is
+ * forwarded, or given up when too many messages are parked or it was parked for too long.
+ */
+@Singleton
+class PeerCircuitBreakers {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /** A request which can be parked while the circuit of its peer is open. */
+  interface ParkedRequest {
+    /** Resubmit the request to the delivery queue of its peer; must not block. */
+    void resume();
+
+    /** Give up the request, which will never be sent. */
+    void giveUp();
+
+    /** @return the time in milliseconds after which the request is given up if still parked. */
+    long deadline();
+  }
+
+  private final int threshold;
+  private final int maxParkedMessages;
+  private final int retryInterval;
+  private final int maxRetryInterval;
+  private final ScheduledExecutorService executor;
+  private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  @Inject
+  PeerCircuitBreakers(Configuration cfg, WorkQueue workQueue) {
+    this.threshold = cfg.http().circuitBreakerThreshold();
+    this.maxParkedMessages = Math.max(1, cfg.http().maxParkedMessages());
+    this.retryInterval = cfg.http().retryInterval();
+    this.maxRetryInterval = Math.max(retryInterval, cfg.http().maxRetryInterval());
+    this.executor = threshold > 0 ? workQueue.createQueue(1, "Forward-CircuitBreaker") : null;
+  }
+
+  /**
+   * Get the circuit breaker of a peer.
+   *
+   * @param peer the URL of the peer.
+   * @return the circuit breaker of the peer.
+   */
+  CircuitBreaker forPeer(String peer) {
+    return breakers.computeIfAbsent(peer, CircuitBreaker::new);
+  }
+
+  /**
+   * Compute the delay before retrying, doubling {@code http.retryInterval} after each failed
+   * attempt up to {@code http.maxRetryInterval}. The delay is randomly reduced by up to a half so
+   * that the retries to a peer coming back are spread.
+   *
+   * @param attempt the number of failed attempts.
+   * @return the delay in milliseconds.
+   */
+  long retryDelay(int attempt) {
+    long delay = retryInterval;
+    for (int i = 1; i < attempt && delay < maxRetryInterval; i++) {
+      delay *= 2;
+    }
+    delay = Math.min(delay, maxRetryInterval);
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+  }
+
+  /**
+   * Compute how long a request may be retried, including while it is parked: the longest delay
+   * before each of its tries.
+   *
+   * @param maxTries the maximum number of tries of the request.
+   * @return the period in milliseconds.
+   */
+  long retryPeriod(int maxTries) {
+    return (long) Math.max(1, maxTries) * maxRetryInterval;
+  }
+
+  class CircuitBreaker {
+    private final String peer;
+    private final Deque<ParkedRequest> parked = new ArrayDeque<>();
+    private State state = State.CLOSED;
+    private int failures;
+    private int openings;
+    private boolean probing;
+
+    private CircuitBreaker(String peer) {
+      this.peer = peer;
+    }
+
+    /**
+     * Acquire the permission to send a request to the peer, or park the request while the circuit
+     * is open. The request is resumed once the circuit closes, or given up if too many requests are
+     * parked.
+     *
+     * @param request the request.
+     * @return true if the request can be sent, false if it was parked.
+     */
+    boolean acquire(ParkedRequest request) {
+      ParkedRequest givenUp = null;
+      synchronized (this) {
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !probing)) {
+          probing = state == State.HALF_OPEN;
+          return true;
+        }
+        if (parked.size() >= maxParkedMessages) {
+          givenUp = parked.pollFirst();
+          log.atSevere().log("Too many messages parked for %s; giving up %s", peer, givenUp);
+        }
+        parked.addLast(request);
+      }
+      if (givenUp != null) {
+        givenUp.giveUp();
+      }
+      return false;
+    }
+
+    /** Record that the peer responded, closing the circuit. */
+    void recordSuccess() {
+      List<ParkedRequest> resumed;
+      synchronized (this) {
+        failures = 0;
+        openings = 0;
+        probing = false;
+        if (state == State.CLOSED) {
+          return;
+        }
+        state = State.CLOSED;
+        log.atInfo().log(
+            "%s is reachable again; forwarding %d parked messages", peer, parked.size());
+        resumed = new ArrayList<>(parked);
+        parked.clear();
+      }
+      resumed.forEach(ParkedRequest::resume);
+    }
+
+    /** Record that the peer could not be reached, opening the circuit when needed. */
+    synchronized void recordFailure() {
+      if (threshold <= 0) {
+        return;
+      }
+      probing = false;
+      failures++;
+      if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= threshold)) {
+        open();
+      }
+    }
+
+    synchronized State state() {
+      return state;
+    }
+
+    private void open() {
+      state = State.OPEN;
+      openings++;
+      long delay = retryDelay(openings);
+      log.atWarning().log(
+          "Pausing forwarding to %s for %d ms after %d consecutive failures",
+          peer, delay, failures);
+      executor.schedule(this::halfOpen, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void halfOpen() {
+      List<ParkedRequest> expired = new ArrayList<>();
+      ParkedRequest probe;
+      synchronized (this) {
+        state = State.HALF_OPEN;
+        long now = System.currentTimeMillis();
+        for (Iterator<ParkedRequest> it = parked.iterator(); it.hasNext(); ) {
+          ParkedRequest request = it.next();
+          if (request.deadline() <= now) {
+            expired.add(request);
+            it.remove();
+          }
+        }
+        probe = parked.pollFirst();
+      }
+      if (!expired.isEmpty()) {
+        log.atSevere().log(
+            "Giving up %d messages parked for %s for too long", expired.size(), peer);
+        expired.forEach(ParkedRequest::giveUp);
+      }
+      if (probe != null) {
+        probe.resume();
+      }
+    }
+  }
+}
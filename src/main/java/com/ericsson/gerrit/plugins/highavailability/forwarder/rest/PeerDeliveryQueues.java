@@ -0,0 +1,167 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.ExecutorMode;
+import com.ericsson.gerrit.plugins.highavailability.ExecutorProvider;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Independent delivery queues, one per peer, so that the requests to a slow or unreachable peer do
+ * not hold up the requests to the other peers.
+ *
+ * <p>In the {@code elastic} executor mode, the queues are not bounded by {@code
+ * http.peerThreadPoolSize} threads: the number of requests being sent to each peer is bounded
+ * instead, so that the requests waiting to be retried do not hold up the others.
+ *
+ * <p>The queue and the permits of a peer are dropped once it is not a peer anymore, e.g. when it
+ * left the jgroups cluster; the requests already queued are still delivered.
+ */
+@Singleton
+class PeerDeliveryQueues implements LifecycleListener {
+  interface Send {
+    HttpResult send() throws IOException;
+  }
+
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final Configuration cfg;
+  private final WorkQueue workQueue;
+  private final Provider<Set<PeerInfo>> peerInfoProvider;
+  private final int threadPoolSize;
+  private final boolean elastic;
+  private final ConcurrentMap<String, ScheduledExecutorService> queues = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Semaphore> sendPermits = new ConcurrentHashMap<>();
+  private volatile Set<PeerInfo> knownPeers;
+
+  @Inject
+  PeerDeliveryQueues(
+      Configuration cfg, WorkQueue workQueue, Provider<Set<PeerInfo>> peerInfoProvider) {
+    this.cfg = cfg;
+    this.workQueue = workQueue;
+    this.peerInfoProvider = peerInfoProvider;
+    this.threadPoolSize = Math.max(1, cfg.http().peerThreadPoolSize());
+    this.elastic = cfg.forwarder().executor() == ExecutorMode.ELASTIC;
+  }
+
+  /**
+   * Deliver a request to a peer from the queue of the peer.
+   *
+   * @param peer the URL of the peer.
+   * @param delivery the delivery of the request.
+   * @return the completion of the delivery task.
+   * @throws RejectedExecutionException if the peer is not a peer anymore.
+   */
+  CompletableFuture<Void> submit(String peer, Runnable delivery) {
+    Set<PeerInfo> peers = peerInfoProvider.get();
+    if (peers != knownPeers) {
+      removeLeftPeers(peers);
+    }
+    ScheduledExecutorService queue =
+        queues.computeIfAbsent(
+            peer,
+            p -> {
+              if (!isPeer(p)) {
+                throw new RejectedExecutionException(p + " is not a peer anymore");
+              }
+              return ExecutorProvider.createQueue(workQueue, cfg, threadPoolSize, "Forward-" + p);
+            });
+    return CompletableFuture.runAsync(delivery, queue);
+  }
+
+  private synchronized void removeLeftPeers(Set<PeerInfo> peers) {
+    if (peers == knownPeers) {
+      return;
+    }
+    knownPeers = peers;
+    Set<String> urls = peers.stream().map(PeerInfo::getDirectUrl).collect(Collectors.toSet());
+    for (String peer : queues.keySet()) {
+      if (!urls.contains(peer)) {
+        ScheduledExecutorService queue = queues.remove(peer);
+        if (queue != null) {
+          log.atInfo().log("Removing the delivery queue of %s which is not a peer anymore", peer);
+          queue.shutdown();
+        }
+      }
+    }
+    sendPermits.keySet().retainAll(urls);
+  }
+
+  private boolean isPeer(String peer) {
+    return peerInfoProvider.get().stream().anyMatch(p -> p.getDirectUrl().equals(peer));
+  }
+
+  /**
+   * Send a request to a peer, waiting for one of the {@code http.peerThreadPoolSize} permits of the
+   * peer in the {@code elastic} executor mode. The last requests to a peer which is not a peer
+   * anymore are sent without waiting.
+   *
+   * @param peer the URL of the peer.
+   * @param send the sending of the request.
+   * @return the result of the request.
+   * @throws IOException if the request failed or the wait for a permit was interrupted.
+   */
+  HttpResult send(String peer, Send send) throws IOException {
+    if (!elastic) {
+      return send.send();
+    }
+    Semaphore permits =
+        sendPermits.computeIfAbsent(peer, p -> isPeer(p) ? new Semaphore(threadPoolSize) : null);
+    if (permits == null) {
+      return send.send();
+    }
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to send to " + peer);
+    }
+    try {
+      return send.send();
+    } finally {
+      permits.release();
+    }
+  }
+
+  @Override
+  public void start() {
+    // do nothing
+  }
+
+  @Override
+  public void stop() {
+    queues.values().forEach(ScheduledExecutorService::shutdown);
+    queues.clear();
+    sendPermits.clear();
+  }
+}
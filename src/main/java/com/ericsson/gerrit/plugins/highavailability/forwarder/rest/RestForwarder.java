@@ -14,11 +14,18 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEvictionMetrics;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.PeerCircuitBreakers.CircuitBreaker;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.PeerCircuitBreakers.ParkedRequest;
 import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
 import com.google.common.base.Joiner;
 import com.google.common.flogger.FluentLogger;
@@ -30,9 +37,12 @@ import com.google.gson.Gson;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.net.ssl.SSLException;
 import org.apache.http.HttpException;
@@ -51,6 +61,10 @@ class RestForwarder implements Forwarder {
   private final Configuration cfg;
   private final Provider<Set<PeerInfo>> peerInfoProvider;
   private final Gson gson;
+  private final CacheKeyCodecs codecs;
+  private final PeerCircuitBreakers breakers;
+  private final PeerDeliveryQueues queues;
+  private final CacheEvictionMetrics evictionMetrics;
 
   @Inject
   RestForwarder(
@@ -58,12 +72,20 @@ class RestForwarder implements Forwarder {
       @PluginName String pluginName,
       Configuration cfg,
       Provider<Set<PeerInfo>> peerInfoProvider,
-      @EventGson Gson gson) {
+      @EventGson Gson gson,
+      CacheKeyCodecs codecs,
+      PeerCircuitBreakers breakers,
+      PeerDeliveryQueues queues,
+      CacheEvictionMetrics evictionMetrics) {
     this.httpSession = httpClient;
     this.pluginRelativePath = Joiner.on("/").join("plugins", pluginName);
     this.cfg = cfg;
     this.peerInfoProvider = peerInfoProvider;
     this.gson = gson;
+    this.codecs = codecs;
+    this.breakers = breakers;
+    this.queues = queues;
+    this.evictionMetrics = evictionMetrics;
   }
 
   @Override
@@ -114,8 +136,23 @@ class RestForwarder implements Forwarder {
 
   @Override
   public boolean evict(final String cacheName, final Object key) {
-    String json = gson.toJson(key);
-    return execute(RequestMethod.POST, "invalidate cache " + cacheName, "cache", cacheName, json);
+    String json = codecs.encode(cacheName, key);
+    return executeEviction(cacheName, "invalidate cache " + cacheName, cacheName, json);
+  }
+
+  @Override
+  public boolean evictAll(String cacheName, Collection<?> keys) {
+    return executeEviction(
+        cacheName,
+        "invalidate " + keys.size() + " keys of cache " + cacheName,
+        buildEvictAllEndpoint(cacheName),
+        codecs.encodeAll(cacheName, keys));
+  }
+
+  @Override
+  public boolean flushCache(String cacheName) {
+    return executeEviction(
+        cacheName, "flush cache", Joiner.on("/").join(cacheName, CacheRestApiServlet.FLUSH), null);
   }
 
   @Override
@@ -136,6 +173,91 @@ class RestForwarder implements Forwarder {
         Url.encode(projectName));
   }
 
+  /**
+   * Forward several messages to the other master in a single request, using the binary encoding
+   * of {@link ForwardedMessageCodec}.
+   *
+   * <p>When some message fails, only the messages the peer did not process are forwarded again; a
+   * batch the peer rejects as invalid is given up without retrying.
+   *
+   * @param batchId the sequence number identifying the batch.
+   * @param messages the messages to forward.
+   * @return true if successful, otherwise false.
+   */
+  boolean forwardBatch(long batchId, List<ForwardedMessage> messages) {
+    return execute(peer -> new BatchRequest(peer, batchId, messages));
+  }
+
+  /**
+   * Try once to forward several messages to a single peer, without retrying on failure.
+   *
+   * <p>When some message fails, the peer reports how many of the messages preceding it were
+   * processed, so that only the remaining ones are forwarded again. A batch the peer rejects as
+   * invalid can never be processed and is reported as processed, not to be forwarded forever.
+   *
+   * @param peer the peer to forward the messages to.
+   * @param batchId the sequence number identifying the batch.
+   * @param messages the messages to forward.
+   * @return the number of leading messages which are not to be forwarded again, all of them if
+   *     successful, and how long the peer asked to wait before forwarding the other ones.
+   */
+  BatchResult tryForwardBatch(PeerInfo peer, long batchId, List<ForwardedMessage> messages) {
+    HttpResult result;
+    try {
+      result = new BatchRequest(peer, batchId, messages).sendOnce();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log(
+          "Failed to forward batch %d towards %s", batchId, peer.getDirectUrl());
+      return new BatchResult(0, 0);
+    }
+    if (result.isSuccessful()) {
+      return new BatchResult(messages.size(), 0);
+    }
+    if (result.getStatus() == SC_BAD_REQUEST) {
+      log.atSevere().log(
+          "Batch %d was rejected by %s, skipping its %d messages: %s",
+          batchId, peer.getDirectUrl(), messages.size(), result.getMessage());
+      return new BatchResult(messages.size(), 0);
+    }
+    int processed = processed(result, messages.size());
+    log.atWarning().log(
+        "Failed to forward batch %d towards %s after %d of its %d messages: %s",
+        batchId, peer.getDirectUrl(), processed, messages.size(), result.getMessage());
+    return new BatchResult(processed, result.getRetryAfter());
+  }
+
+  /** The outcome of forwarding a batch of messages once. */
+  static class BatchResult {
+    private final int processed;
+    private final long retryAfter;
+
+    BatchResult(int processed, long retryAfter) {
+      this.processed = processed;
+      this.retryAfter = retryAfter;
+    }
+
+    /** @return the number of leading messages which are not to be forwarded again. */
+    int getProcessed() {
+      return processed;
+    }
+
+    /**
+     * @return the milliseconds the peer asked to wait before forwarding the other messages again,
+     *     or 0.
+     */
+    long getRetryAfter() {
+      return retryAfter;
+    }
+  }
+
+  private static int processed(HttpResult result, int size) {
+    return Math.min(Math.max(0, result.getProcessed()), size);
+  }
+
+  private static String buildEvictAllEndpoint(String cacheName) {
+    return Joiner.on("/").join(cacheName, CacheRestApiServlet.KEYS);
+  }
+
   private static String buildProjectListEndpoint() {
     return Joiner.on("/").join("cache", Constants.PROJECT_LIST);
   }
@@ -146,13 +268,29 @@ class RestForwarder implements Forwarder {
 
   private boolean execute(
       RequestMethod method, String action, String endpoint, Object id, Object payload) {
-    List<CompletableFuture<Boolean>> futures =
+    return execute(method, action, endpoint, id, payload, null);
+  }
+
+  private boolean executeEviction(String cacheName, String action, String id, Object payload) {
+    return execute(RequestMethod.POST, action, "cache", id, payload, cacheName);
+  }
+
+  private boolean execute(
+      RequestMethod method,
+      String action,
+      String endpoint,
+      Object id,
+      Object payload,
+      String cacheName) {
+    return execute(peer -> createRequest(method, peer, action, endpoint, id, payload, cacheName));
+  }
+
+  private boolean execute(Function<PeerInfo, Request> requestFactory) {
+    List<CompletableFuture<Boolean>> deliveries =
         peerInfoProvider.get().stream()
-            .map(peer -> createRequest(method, peer, action, endpoint, id, payload))
-            .map(request -> CompletableFuture.supplyAsync(request::execute))
+            .map(peer -> requestFactory.apply(peer).submit())
             .collect(Collectors.toList());
-    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-    return futures.stream().allMatch(CompletableFuture::join);
+    return Acknowledgements.await(cfg.http().ackPolicy(), deliveries).join();
   }
 
   private Request createRequest(
@@ -161,9 +299,10 @@ class RestForwarder implements Forwarder {
       String action,
       String endpoint,
       Object id,
-      Object payload) {
+      Object payload,
+      String cacheName) {
     String destination = peer.getDirectUrl();
-    return new Request(action, id, destination) {
+    return new Request(action, id, destination, cacheName) {
       @Override
       HttpResult send() throws IOException {
         String request = Joiner.on("/").join(destination, pluginRelativePath, endpoint, id);
@@ -178,28 +317,96 @@ class RestForwarder implements Forwarder {
     };
   }
 
-  private abstract class Request {
+  private abstract class Request implements ParkedRequest {
     private final String action;
     private final Object key;
     private final String destination;
+    private final CircuitBreaker breaker;
+    private final String cacheName;
+    private final CompletableFuture<Boolean> delivery = new CompletableFuture<>();
 
     private int execCnt;
+    private long retryAfter;
+    private int status;
+    private long deadline;
 
-    Request(String action, Object key, String destination) {
+    /**
+     * @param action the description of the request, for logging.
+     * @param key the id of the forwarded item, for logging.
+     * @param destination the URL of the peer.
+     * @param cacheName the cache whose evictions are forwarded, or null if the request is not about
+     *     a cache.
+     */
+    Request(String action, Object key, String destination, String cacheName) {
       this.action = action;
       this.key = key;
       this.destination = destination;
+      this.breaker = breakers.forPeer(destination);
+      this.cacheName = cacheName;
+    }
+
+    /**
+     * Forward the message from the delivery queue of the peer, retrying on failure. While the peer
+     * cannot be reached, the message is parked and forwarded once the peer is back. The message is
+     * given up after {@code http.maxTries} tries, or once it could not be forwarded within {@link
+     * PeerCircuitBreakers#retryPeriod} whatever the state of the circuit.
+     *
+     * @return the result of the delivery, completed once the message is forwarded or given up.
+     */
+    CompletableFuture<Boolean> submit() {
+      deadline = System.currentTimeMillis() + breakers.retryPeriod(cfg.http().maxTries());
+      resume();
+      return delivery;
+    }
+
+    @Override
+    public void resume() {
+      try {
+        queues
+            .submit(destination, this::execute)
+            .whenComplete(
+                (v, e) -> {
+                  if (e != null) {
+                    delivery.completeExceptionally(e);
+                  }
+                });
+      } catch (RejectedExecutionException e) {
+        log.atSevere().withCause(e).log(
+            "Unable to %s %s towards %s; giving up", action, key, destination);
+        delivery.complete(false);
+      }
+    }
+
+    @Override
+    public void giveUp() {
+      delivery.complete(false);
+    }
+
+    @Override
+    public long deadline() {
+      return deadline;
     }
 
-    boolean execute() {
+    private void execute() {
       log.atFine().log("Executing %s %s towards %s", action, key, destination);
       for (; ; ) {
+        if (!breaker.acquire(this)) {
+          log.atFine().log("Parked %s %s towards %s", action, key, destination);
+          return;
+        }
         try {
           execCnt++;
           tryOnce();
+          breaker.recordSuccess();
           log.atFine().log("%s %s towards %s OK", action, key, destination);
-          return true;
+          delivery.complete(true);
+          return;
         } catch (ForwardingException e) {
+          if (isPeerFailure(e)) {
+            breaker.recordFailure();
+          } else {
+            breaker.recordSuccess();
+          }
           int maxTries = cfg.http().maxTries();
           log.atFine().withCause(e).log(
               "Failed to %s %s on %s [%d/%d]", action, key, destination, execCnt, maxTries);
@@ -207,42 +414,93 @@ class RestForwarder implements Forwarder {
             log.atSevere().withCause(e).log(
                 "%s %s towards %s failed with unrecoverable error; giving up",
                 action, key, destination);
-            return false;
+            delivery.complete(false);
+            return;
           }
           if (execCnt >= maxTries) {
             log.atSevere().log(
                 "Failed to %s %s on %s after %d tries; giving up",
                 action, key, destination, maxTries);
-            return false;
+            delivery.complete(false);
+            return;
+          }
+          if (cacheName != null) {
+            evictionMetrics.retried(cacheName);
           }
 
+          if (breaker.state() != PeerCircuitBreakers.State.CLOSED) {
+            if (System.currentTimeMillis() >= deadline) {
+              log.atSevere().log(
+                  "Failed to %s %s on %s within %d ms; giving up",
+                  action, key, destination, breakers.retryPeriod(maxTries));
+              delivery.complete(false);
+              return;
+            }
+            continue;
+          }
           log.atFine().log("Retrying to %s %s on %s", action, key, destination);
           try {
-            Thread.sleep(cfg.http().retryInterval());
+            Thread.sleep(Math.max(breakers.retryDelay(execCnt), retryAfter));
           } catch (InterruptedException ie) {
             log.atSevere().withCause(ie).log(
                 "%s %s towards %s was interrupted; giving up", action, key, destination);
             Thread.currentThread().interrupt();
-            return false;
+            delivery.complete(false);
+            return;
           }
         }
       }
     }
 
     void tryOnce() throws ForwardingException {
+      status = 0;
       try {
-        HttpResult result = send();
+        HttpResult result = sendOnce();
+        retryAfter = result.getRetryAfter();
+        status = result.getStatus();
         if (!result.isSuccessful()) {
           throw new ForwardingException(
-              true, String.format("Unable to %s %s : %s", action, key, result.getMessage()));
+              isRecoverable(result),
+              String.format("Unable to %s %s : %s", action, key, result.getMessage()));
         }
       } catch (IOException e) {
         throw new ForwardingException(isRecoverable(e), e.getMessage(), e);
       }
     }
 
+    HttpResult sendOnce() throws IOException {
+      return queues.send(destination, this::send);
+    }
+
     abstract HttpResult send() throws IOException;
 
+    @Override
+    public String toString() {
+      return String.format("%s %s towards %s", action, key, destination);
+    }
+
+    /**
+     * @param result the unsuccessful result of the last try.
+     * @return true if the request is to be tried again.
+     */
+    boolean isRecoverable(HttpResult result) {
+      return true;
+    }
+
+    /**
+     * Check whether a failure to forward the request means the peer is unhealthy: it could not be
+     * reached in time, failed with a server error or asked to slow down. Other failures are
+     * answers of a healthy peer refusing this particular request.
+     *
+     * @param e the failure of the last try.
+     * @return true if the failure is to be counted by the circuit breaker of the peer.
+     */
+    private boolean isPeerFailure(ForwardingException e) {
+      return e.getCause() instanceof IOException
+          || status >= SC_INTERNAL_SERVER_ERROR
+          || status == HttpResponseHandler.SC_TOO_MANY_REQUESTS;
+    }
+
     boolean isRecoverable(IOException e) {
       Throwable cause = e.getCause();
       return !(e instanceof SSLException
@@ -250,4 +508,41 @@ class RestForwarder implements Forwarder {
           || cause instanceof ClientProtocolException);
     }
   }
+
+  /**
+   * Forward a batch of messages to a peer, forwarding again only the messages the peer did not
+   * process when some of them failed.
+   */
+  private class BatchRequest extends Request {
+    private final String url;
+    private List<ForwardedMessage> remaining;
+    private byte[] payload;
+
+    BatchRequest(PeerInfo peer, long batchId, List<ForwardedMessage> messages) {
+      super("forward batch", batchId, peer.getDirectUrl(), null);
+      this.url = Joiner.on("/").join(peer.getDirectUrl(), pluginRelativePath, "batch", batchId);
+      this.remaining = messages;
+    }
+
+    @Override
+    HttpResult send() throws IOException {
+      if (payload == null) {
+        payload = ForwardedMessageCodec.encode(remaining);
+      }
+      return httpSession.post(url, payload, ForwardedMessageCodec.MEDIA_TYPE);
+    }
+
+    @Override
+    boolean isRecoverable(HttpResult result) {
+      if (result.getStatus() == SC_BAD_REQUEST) {
+        return false;
+      }
+      int processed = processed(result, remaining.size());
+      if (processed > 0) {
+        remaining = remaining.subList(processed, remaining.size());
+        payload = null;
+      }
+      return true;
+    }
+  }
 }
@@ -14,17 +14,45 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.HttpTransport;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.AsyncForwarder;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.AsyncForwarderAdapter;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.apache.http.impl.client.CloseableHttpClient;
 
 public class RestForwarderModule extends AbstractModule {
+  private final Configuration config;
+
+  public RestForwarderModule(Configuration config) {
+    this.config = config;
+  }
 
   @Override
   protected void configure() {
     bind(CloseableHttpClient.class).toProvider(HttpClientProvider.class).in(Scopes.SINGLETON);
     bind(HttpSession.class);
-    bind(Forwarder.class).to(RestForwarder.class);
+    DynamicSet.bind(binder(), LifecycleListener.class).to(PeerDeliveryQueues.class);
+    if (config.journal().enabled()) {
+      bind(Forwarder.class).to(JournalingForwarder.class);
+      DynamicSet.bind(binder(), LifecycleListener.class).to(JournalingForwarder.class);
+    } else if (config.batch().enabled()) {
+      bind(Forwarder.class).to(BatchingForwarder.class);
+      DynamicSet.bind(binder(), LifecycleListener.class).to(BatchingForwarder.class);
+    } else if (config.http().transport() != HttpTransport.BLOCKING) {
+      bind(CloseableHttpAsyncClient.class)
+          .toProvider(AsyncHttpClientProvider.class)
+          .in(Scopes.SINGLETON);
+      bind(AsyncForwarder.class).to(AsyncRestForwarder.class);
+      bind(Forwarder.class).to(AsyncForwarderAdapter.class);
+      DynamicSet.bind(binder(), LifecycleListener.class).to(AsyncRestForwarder.class);
+    } else {
+      bind(Forwarder.class).to(RestForwarder.class);
+    }
   }
 }
@@ -26,5 +26,6 @@ public class RestForwarderServletModule extends ServletModule {
     serve("/event/*").with(EventRestApiServlet.class);
     serve("/cache/project_list/*").with(ProjectListApiServlet.class);
     serve("/cache/*").with(CacheRestApiServlet.class);
+    serveRegex("/batch/\\d+$").with(BatchRestApiServlet.class);
   }
 }
@@ -0,0 +1,141 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.RefCache;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Load the notes of several changes of a project at once: the repository of the project is opened
+ * once, and the meta refs of the changes and the refs of their target branches are looked up in a
+ * single call each, instead of once per change.
+ */
+@Singleton
+public class ChangeBatchLoader {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final GitRepositoryManager gitRepoMgr;
+  private final ChangeNotes.Factory notesFactory;
+
+  @Inject
+  ChangeBatchLoader(GitRepositoryManager gitRepoMgr, ChangeNotes.Factory notesFactory) {
+    this.gitRepoMgr = gitRepoMgr;
+    this.notesFactory = notesFactory;
+  }
+
+  /**
+   * Load the notes of changes of a project.
+   *
+   * @param project the project of the changes.
+   * @param ids the ids of the changes.
+   * @return the loaded changes, by id. Changes which are not present in the local repository or
+   *     cannot be loaded are left out.
+   * @throws IOException if the repository of the project cannot be opened or its refs read.
+   */
+  public Map<Change.Id, LoadedChange> load(Project.NameKey project, Collection<Change.Id> ids)
+      throws IOException {
+    Map<Change.Id, LoadedChange> loaded = new LinkedHashMap<>();
+    try (Repository repo = gitRepoMgr.openRepository(project)) {
+      Map<String, Ref> metaRefs =
+          repo.getRefDatabase()
+              .exactRef(ids.stream().map(RefNames::changeMetaRef).toArray(String[]::new));
+      RefCache refs = refName -> lookup(repo, metaRefs, refName);
+
+      Map<Change.Id, ChangeNotes> notes = new LinkedHashMap<>();
+      for (Change.Id id : ids) {
+        if (!metaRefs.containsKey(RefNames.changeMetaRef(id))) {
+          continue;
+        }
+        try {
+          notes.put(id, notesFactory.create(ChangeNotes.Factory.newChange(project, id), refs));
+        } catch (RuntimeException e) {
+          log.atWarning().withCause(e).log("Unable to load change %s of %s", id, project);
+        }
+      }
+
+      Map<String, Ref> branches =
+          repo.getRefDatabase()
+              .exactRef(
+                  notes.values().stream()
+                      .map(n -> n.getChange().getDest().branch())
+                      .distinct()
+                      .toArray(String[]::new));
+      notes.forEach(
+          (id, n) -> {
+            Ref branch = branches.get(n.getChange().getDest().branch());
+            loaded.put(
+                id,
+                new LoadedChange(
+                    n, branch != null ? branch.getTarget().getObjectId().getName() : null));
+          });
+    }
+    return loaded;
+  }
+
+  private static Optional<ObjectId> lookup(Repository repo, Map<String, Ref> refs, String refName)
+      throws IOException {
+    Ref ref = refs.containsKey(refName) ? refs.get(refName) : repo.exactRef(refName);
+    return Optional.ofNullable(ref).map(Ref::getObjectId);
+  }
+
+  public static class LoadedChange {
+    private final ChangeNotes notes;
+    private final String targetSha;
+
+    LoadedChange(ChangeNotes notes, String targetSha) {
+      this.notes = notes;
+      this.targetSha = targetSha;
+    }
+
+    public ChangeNotes notes() {
+      return notes;
+    }
+
+    /**
+     * Check if the loaded change is aligned with the index event received, like {@link
+     * ChangeChecker#isChangeUpToDate(Optional)} does, without accounting for the draft comments.
+     *
+     * @param indexEvent indexing event
+     * @return true if the loaded change is up-to-date, false otherwise.
+     */
+    public boolean isUpToDate(Optional<IndexEvent> indexEvent) {
+      long changeTs = notes.getChange().getLastUpdatedOn().getTime() / 1000;
+      return indexEvent
+          .map(
+              e ->
+                  changeTs > e.eventCreatedOn
+                      || (changeTs == e.eventCreatedOn
+                          && (e.targetSha == null || Objects.equals(targetSha, e.targetSha))))
+          .orElse(true);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Remember the timestamps computed by {@link ChangeCheckerImpl}, so that checking a change which
+ * did not change since its last check does not load it again from NoteDb.
+ *
+ * <p>The timestamps are keyed by the SHA-1 of the meta ref of the change and the SHA-1s of its
+ * draft comment refs, which are cheap to read: an entry is never stale, it is just not looked up
+ * anymore once the change or its drafts are updated.
+ */
+@Singleton
+class ChangeCheckerCache {
+  static final long EXPIRE_AFTER_ACCESS_MINUTES = 5;
+
+  private final GitRepositoryManager gitRepoMgr;
+  private final AllUsersName allUsers;
+  private final Cache<Key, Value> cache;
+  private final Counter0 hits;
+  private final Counter0 misses;
+
+  @Inject
+  ChangeCheckerCache(
+      GitRepositoryManager gitRepoMgr,
+      AllUsersName allUsers,
+      Configuration cfg,
+      MetricMaker metricMaker) {
+    this.gitRepoMgr = gitRepoMgr;
+    this.allUsers = allUsers;
+    int size = cfg.index().checkerCacheSize();
+    this.cache =
+        size > 0
+            ? CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterAccess(EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES)
+                .build()
+            : null;
+    this.hits =
+        metricMaker.newCounter(
+            "index/change_checker/cache_hits",
+            new Description("Change checks answered without loading the change")
+                .setRate()
+                .setUnit("checks"));
+    this.misses =
+        metricMaker.newCounter(
+            "index/change_checker/cache_misses",
+            new Description("Change checks which loaded the change")
+                .setRate()
+                .setUnit("checks"));
+  }
+
+  boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * Read the current state of a change.
+   *
+   * @param project the project of the change.
+   * @param id the id of the change.
+   * @param metaId the SHA-1 of the meta ref of the change when already known, null to read it.
+   * @return the key of the current state of the change, empty if the change is not present.
+   * @throws IOException if the refs of the change cannot be read.
+   */
+  Optional<Key> key(Project.NameKey project, Change.Id id, ObjectId metaId) throws IOException {
+    if (metaId == null) {
+      try (Repository repo = gitRepoMgr.openRepository(project)) {
+        Ref metaRef = repo.exactRef(RefNames.changeMetaRef(id));
+        if (metaRef == null) {
+          return Optional.empty();
+        }
+        metaId = metaRef.getObjectId();
+      }
+    }
+    ImmutableMap.Builder<String, ObjectId> drafts = ImmutableMap.builder();
+    try (Repository repo = gitRepoMgr.openRepository(allUsers)) {
+      for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.refsDraftCommentsPrefix(id))) {
+        drafts.put(ref.getName(), ref.getObjectId());
+      }
+    }
+    return Optional.of(new Key(project.get(), id.get(), metaId, drafts.build()));
+  }
+
+  Optional<Value> get(Key key) {
+    Value value = cache.getIfPresent(key);
+    if (value != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return Optional.ofNullable(value);
+  }
+
+  void put(Key key, Value value) {
+    cache.put(key, value);
+  }
+
+  static class Key {
+    private final String project;
+    private final int id;
+    private final ObjectId metaId;
+    private final ImmutableMap<String, ObjectId> drafts;
+
+    Key(String project, int id, ObjectId metaId, ImmutableMap<String, ObjectId> drafts) {
+      this.project = project;
+      this.id = id;
+      this.metaId = metaId.copy();
+      this.drafts = drafts;
+    }
+
+    ObjectId metaId() {
+      return metaId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return id == other.id
+          && project.equals(other.project)
+          && metaId.equals(other.metaId)
+          && drafts.equals(other.drafts);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(project, id, metaId, drafts);
+    }
+  }
+
+  static class Value {
+    private final long changeTs;
+    private final String branch;
+
+    Value(long changeTs, String branch) {
+      this.changeTs = changeTs;
+      this.branch = branch;
+    }
+
+    long changeTs() {
+      return changeTs;
+    }
+
+    String branch() {
+      return branch;
+    }
+  }
+}
@@ -16,8 +16,10 @@ package com.ericsson.gerrit.plugins.highavailability.index;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.primitives.Ints;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Comment;
+import com.google.gerrit.entities.Project;
 import com.google.gerrit.server.CommentsUtil;
 import com.google.gerrit.server.change.ChangeFinder;
 import com.google.gerrit.server.git.GitRepositoryManager;
@@ -40,8 +42,13 @@ public class ChangeCheckerImpl implements ChangeChecker {
   private final OneOffRequestContext oneOffReqCtx;
   private final String changeId;
   private final ChangeFinder changeFinder;
+  private final ChangeCheckerCache cache;
   private Optional<Long> computedChangeTs = Optional.empty();
   private Optional<ChangeNotes> changeNotes = Optional.empty();
+  private Project.NameKey project;
+  private String branch;
+  private boolean targetShaResolved;
+  private String targetSha;
 
   public interface Factory {
     ChangeChecker create(String changeId);
@@ -53,11 +60,13 @@ public class ChangeCheckerImpl implements ChangeChecker {
       CommentsUtil commentsUtil,
       ChangeFinder changeFinder,
       OneOffRequestContext oneOffReqCtx,
+      ChangeCheckerCache cache,
       @Assisted String changeId) {
     this.changeFinder = changeFinder;
     this.gitRepoMgr = gitRepoMgr;
     this.commentsUtil = commentsUtil;
     this.oneOffReqCtx = oneOffReqCtx;
+    this.cache = cache;
     this.changeId = changeId;
   }
 
@@ -77,6 +86,11 @@ public class ChangeCheckerImpl implements ChangeChecker {
   public Optional<ChangeNotes> getChangeNotes() {
     try (ManualRequestContext ctx = oneOffReqCtx.open()) {
       changeNotes = Optional.ofNullable(changeFinder.findOne(changeId));
+      changeNotes.ifPresent(
+          notes -> {
+            project = notes.getProjectName();
+            branch = notes.getChange().getDest().branch();
+          });
       return changeNotes;
     }
   }
@@ -122,11 +136,18 @@ public class ChangeCheckerImpl implements ChangeChecker {
   }
 
   private String getBranchTargetSha() {
-    try (Repository repo = gitRepoMgr.openRepository(changeNotes.get().getProjectName())) {
-      String refName = changeNotes.get().getChange().getDest().branch();
-      Ref ref = repo.exactRef(refName);
+    if (!targetShaResolved && branch != null) {
+      targetSha = resolveBranchTargetSha();
+      targetShaResolved = true;
+    }
+    return targetSha;
+  }
+
+  private String resolveBranchTargetSha() {
+    try (Repository repo = gitRepoMgr.openRepository(project)) {
+      Ref ref = repo.exactRef(branch);
       if (ref == null) {
-        log.atWarning().log("Unable to find target ref %s for change %s", refName, changeId);
+        log.atWarning().log("Unable to find target ref %s for change %s", branch, changeId);
         return null;
       }
       return ref.getTarget().getObjectId().getName();
@@ -138,7 +159,44 @@ public class ChangeCheckerImpl implements ChangeChecker {
   }
 
   private Optional<Long> computeLastChangeTs() {
-    return getChangeNotes().map(this::getTsFromChangeAndDraftComments);
+    Optional<ChangeCheckerCache.Key> key = getCacheKey();
+    Optional<ChangeCheckerCache.Value> cached = key.flatMap(cache::get);
+    if (cached.isPresent()) {
+      branch = cached.get().branch();
+      return Optional.of(cached.get().changeTs());
+    }
+
+    if (!changeNotes.isPresent()) {
+      getChangeNotes();
+    }
+    Optional<Long> changeTs = changeNotes.map(this::getTsFromChangeAndDraftComments);
+    if (changeTs.isPresent()
+        && key.isPresent()
+        && key.get().metaId().equals(changeNotes.get().getMetaId())) {
+      cache.put(key.get(), new ChangeCheckerCache.Value(changeTs.get(), branch));
+    }
+    return changeTs;
+  }
+
+  private Optional<ChangeCheckerCache.Key> getCacheKey() {
+    if (!cache.isEnabled()) {
+      return Optional.empty();
+    }
+    int separator = changeId.lastIndexOf('~');
+    Integer number = separator > 0 ? Ints.tryParse(changeId.substring(separator + 1)) : null;
+    if (number == null) {
+      return Optional.empty();
+    }
+    if (project == null) {
+      project = Project.nameKey(changeId.substring(0, separator));
+    }
+    try {
+      return cache.key(
+          project, Change.id(number), changeNotes.map(ChangeNotes::getMetaId).orElse(null));
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to read the refs of change %s", changeId);
+      return Optional.empty();
+    }
   }
 
   private long getTsFromChangeAndDraftComments(ChangeNotes notes) {
@@ -0,0 +1,172 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Notify when refs are updated, so that a forwarded change which is missing or stale locally is
+ * indexed again as soon as its refs move instead of after {@code index.retryInterval}.
+ *
+ * <p>The updates done through this node are notified by Gerrit. The updates done by the other
+ * nodes on a shared repository are detected by reading the awaited refs every {@code
+ * index.refPollInterval}, as long as some refs are awaited.
+ */
+@Singleton
+public class ChangeRefWaiter implements GitReferenceUpdatedListener, LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final GitRepositoryManager gitRepoMgr;
+  private final WorkQueue workQueue;
+  private final int pollInterval;
+  private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService executor;
+
+  @Inject
+  ChangeRefWaiter(GitRepositoryManager gitRepoMgr, WorkQueue workQueue, Configuration cfg) {
+    this.gitRepoMgr = gitRepoMgr;
+    this.workQueue = workQueue;
+    this.pollInterval = cfg.index().refPollInterval();
+  }
+
+  @Override
+  public void start() {
+    if (pollInterval > 0) {
+      executor = workQueue.createQueue(1, "Forwarded-Index-RefPoll");
+      executor.scheduleWithFixedDelay(
+          this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    waiters.clear();
+  }
+
+  /**
+   * Wait for refs of a project to be updated.
+   *
+   * @param project the project of the refs.
+   * @param refNames the names of the refs.
+   * @return a future completed as soon as one of the refs is updated. It can be completed by the
+   *     caller to stop waiting.
+   */
+  public CompletableFuture<Void> await(Project.NameKey project, Collection<String> refNames) {
+    Map<String, ObjectId> current = new HashMap<>();
+    try {
+      current = read(project, refNames);
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Unable to read refs %s of %s", refNames, project);
+    }
+    Waiter waiter = new Waiter(project.get(), current, refNames);
+    waiters.add(waiter);
+    waiter.updated.whenComplete((v, e) -> waiters.remove(waiter));
+    return waiter.updated;
+  }
+
+  /** @return the number of callers still waiting for refs to be updated. */
+  @VisibleForTesting
+  int pendingWaiters() {
+    return waiters.size();
+  }
+
+  @Override
+  public void onGitReferenceUpdated(Event event) {
+    for (Waiter waiter : waiters) {
+      if (waiter.project.equals(event.getProjectName())
+          && waiter.initial.containsKey(event.getRefName())) {
+        log.atFine().log("%s of %s was updated", event.getRefName(), waiter.project);
+        waiter.updated.complete(null);
+      }
+    }
+  }
+
+  void poll() {
+    Map<String, List<Waiter>> byProject =
+        waiters.stream().collect(Collectors.groupingBy(w -> w.project));
+    for (Map.Entry<String, List<Waiter>> project : byProject.entrySet()) {
+      Set<String> refNames =
+          project.getValue().stream()
+              .flatMap(w -> w.initial.keySet().stream())
+              .collect(Collectors.toSet());
+      try {
+        Map<String, ObjectId> current = read(Project.nameKey(project.getKey()), refNames);
+        for (Waiter waiter : project.getValue()) {
+          if (waiter.isUpdated(current)) {
+            log.atFine().log("Refs %s of %s were updated", waiter.initial.keySet(), waiter.project);
+            waiter.updated.complete(null);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        log.atWarning().withCause(e).log("Unable to read refs of %s", project.getKey());
+      }
+    }
+  }
+
+  private Map<String, ObjectId> read(Project.NameKey project, Collection<String> refNames)
+      throws IOException {
+    try (Repository repo = gitRepoMgr.openRepository(project)) {
+      Map<String, ObjectId> values = new HashMap<>();
+      for (Ref ref : repo.getRefDatabase().exactRef(refNames.toArray(new String[0])).values()) {
+        values.put(ref.getName(), ref.getObjectId());
+      }
+      return values;
+    }
+  }
+
+  private static class Waiter {
+    private final String project;
+    private final Map<String, ObjectId> initial = new HashMap<>();
+    private final CompletableFuture<Void> updated = new CompletableFuture<>();
+
+    Waiter(String project, Map<String, ObjectId> current, Collection<String> refNames) {
+      this.project = project;
+      refNames.forEach(refName -> initial.put(refName, current.get(refName)));
+    }
+
+    boolean isUpdated(Map<String, ObjectId> current) {
+      return initial.entrySet().stream()
+          .anyMatch(e -> !Objects.equals(e.getValue(), current.get(e.getKey())));
+    }
+  }
+}
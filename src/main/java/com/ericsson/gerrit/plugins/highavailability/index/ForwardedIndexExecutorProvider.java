@@ -25,6 +25,6 @@ class ForwardedIndexExecutorProvider extends ExecutorProvider {
 
   @Inject
   ForwardedIndexExecutorProvider(WorkQueue workQueue, Configuration config) {
-    super(workQueue, config.index().threadPoolSize(), "Forwarded-Index-Event");
+    super(workQueue, config, config.index().threadPoolSize(), "Forwarded-Index-Event");
   }
 }
@@ -25,11 +25,19 @@ import com.google.gerrit.extensions.events.ChangeIndexedListener;
 import com.google.gerrit.extensions.events.GroupIndexedListener;
 import com.google.gerrit.extensions.events.ProjectIndexedListener;
 import com.google.inject.Inject;
-import java.util.Collections;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Forward the indexing events to the other masters.
+ *
+ * <p>Pending forwards are keyed by the indexed entity: an event for an entity whose forward is
+ * still queued is merged into it, the latest event winning, so that a burst of updates to the same
+ * entity results in a single forward.
+ */
 class IndexEventHandler
     implements ChangeIndexedListener,
         AccountIndexedListener,
@@ -39,9 +47,10 @@ class IndexEventHandler
   private final Executor executor;
   private final Forwarder forwarder;
   private final String pluginName;
-  private final Set<IndexTask> queuedTasks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private final ConcurrentMap<IndexTask, IndexTask> queuedTasks = new ConcurrentHashMap<>();
   private final ChangeCheckerImpl.Factory changeChecker;
   private final CurrentRequestContext currCtx;
+  private final IndexForwardingMetrics metrics;
 
   @Inject
   IndexEventHandler(
@@ -49,12 +58,14 @@ class IndexEventHandler
       @PluginName String pluginName,
       Forwarder forwarder,
       ChangeCheckerImpl.Factory changeChecker,
-      CurrentRequestContext currCtx) {
+      CurrentRequestContext currCtx,
+      IndexForwardingMetrics metrics) {
     this.forwarder = forwarder;
     this.executor = executor;
     this.pluginName = pluginName;
     this.changeChecker = changeChecker;
     this.currCtx = currCtx;
+    this.metrics = metrics;
   }
 
   @Override
@@ -62,10 +73,7 @@ class IndexEventHandler
     currCtx.onlyWithContext(
         (ctx) -> {
           if (!Context.isForwardedEvent()) {
-            IndexAccountTask task = new IndexAccountTask(id);
-            if (queuedTasks.add(task)) {
-              executor.execute(task);
-            }
+            queue(new IndexAccountTask(id));
           }
         });
   }
@@ -85,10 +93,7 @@ class IndexEventHandler
     currCtx.onlyWithContext(
         (ctx) -> {
           if (!Context.isForwardedEvent()) {
-            IndexGroupTask task = new IndexGroupTask(groupUUID);
-            if (queuedTasks.add(task)) {
-              executor.execute(task);
-            }
+            queue(new IndexGroupTask(groupUUID));
           }
         });
   }
@@ -98,10 +103,7 @@ class IndexEventHandler
     currCtx.onlyWithContext(
         (ctx) -> {
           if (!Context.isForwardedEvent()) {
-            IndexProjectTask task = new IndexProjectTask(projectName);
-            if (queuedTasks.add(task)) {
-              executor.execute(task);
-            }
+            queue(new IndexProjectTask(projectName));
           }
         });
   }
@@ -113,12 +115,7 @@ class IndexEventHandler
         checker
             .newIndexEvent()
             .map(event -> new IndexChangeTask(projectName, id, false, event))
-            .ifPresent(
-                task -> {
-                  if (queuedTasks.add(task)) {
-                    executor.execute(task);
-                  }
-                });
+            .ifPresent(this::queue);
       } catch (Exception e) {
         log.atWarning().withCause(e).log(
             "Unable to create task to handle change %s~%s", projectName, id);
@@ -129,18 +126,40 @@ class IndexEventHandler
   private void executeDeleteChangeTask(int id) {
     if (!Context.isForwardedEvent()) {
       try {
-        IndexChangeTask deleteTask = new IndexChangeTask("", id, true, null);
-        if (queuedTasks.add(deleteTask)) {
-          executor.execute(deleteTask);
-        }
+        queue(new IndexChangeTask("", id, true, null));
       } catch (Exception e) {
         log.atWarning().withCause(e).log("Unable to create task to handle deleted change %s", id);
       }
     }
   }
 
+  private void queue(IndexTask task) {
+    boolean[] added = new boolean[1];
+    queuedTasks.compute(
+        task,
+        (key, queued) -> {
+          if (queued == null) {
+            added[0] = true;
+            return task;
+          }
+          queued.coalesce(task);
+          return queued;
+        });
+    if (!added[0]) {
+      metrics.coalesced();
+      return;
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      queuedTasks.remove(task);
+      metrics.dropped();
+      log.atWarning().withCause(e).log("Unable to queue %s", task);
+    }
+  }
+
   abstract class IndexTask implements Runnable {
-    protected final IndexEvent indexEvent;
+    protected IndexEvent indexEvent;
 
     IndexTask() {
       indexEvent = new IndexEvent();
@@ -150,13 +169,34 @@ class IndexEventHandler
       this.indexEvent = indexEvent;
     }
 
+    /**
+     * Merge the event of a task for the same entity, keeping the most recent one. Only called while
+     * this task is queued.
+     *
+     * @param newer the task to merge.
+     */
+    void coalesce(IndexTask newer) {
+      if (indexEvent == null
+          || (newer.indexEvent != null
+              && newer.indexEvent.eventCreatedOn >= indexEvent.eventCreatedOn)) {
+        indexEvent = newer.indexEvent;
+      }
+    }
+
     @Override
     public void run() {
       queuedTasks.remove(this);
-      execute();
+      execute()
+          .whenComplete(
+              (forwarded, e) -> {
+                if (e != null || !forwarded) {
+                  metrics.dropped();
+                }
+              });
     }
 
-    abstract void execute();
+    /** @return the outcome of the forwarding, completed once it is forwarded or given up. */
+    abstract CompletableFuture<Boolean> execute();
   }
 
   class IndexChangeTask extends IndexTask {
@@ -172,12 +212,11 @@ class IndexEventHandler
     }
 
     @Override
-    public void execute() {
+    public CompletableFuture<Boolean> execute() {
       if (deleted) {
-        forwarder.deleteChangeFromIndex(changeId, indexEvent);
-      } else {
-        forwarder.indexChange(projectName, changeId, indexEvent);
+        return forwarder.deleteChangeFromIndexAsync(changeId, indexEvent);
       }
+      return forwarder.indexChangeAsync(projectName, changeId, indexEvent);
     }
 
     @Override
@@ -208,8 +247,8 @@ class IndexEventHandler
     }
 
     @Override
-    public void execute() {
-      forwarder.indexAccount(accountId, indexEvent);
+    public CompletableFuture<Boolean> execute() {
+      return forwarder.indexAccountAsync(accountId, indexEvent);
     }
 
     @Override
@@ -240,8 +279,8 @@ class IndexEventHandler
     }
 
     @Override
-    public void execute() {
-      forwarder.indexGroup(groupUUID, indexEvent);
+    public CompletableFuture<Boolean> execute() {
+      return forwarder.indexGroupAsync(groupUUID, indexEvent);
     }
 
     @Override
@@ -272,8 +311,8 @@ class IndexEventHandler
     }
 
     @Override
-    public void execute() {
-      forwarder.indexProject(projectName, indexEvent);
+    public CompletableFuture<Boolean> execute() {
+      return forwarder.indexProjectAsync(projectName, indexEvent);
     }
 
     @Override
@@ -25,6 +25,6 @@ class IndexExecutorProvider extends ExecutorProvider {
 
   @Inject
   IndexExecutorProvider(WorkQueue workQueue, Configuration config) {
-    super(workQueue, config.index().threadPoolSize(), "Forward-Index-Event");
+    super(workQueue, config, config.index().threadPoolSize(), "Forward-Index-Event");
   }
 }
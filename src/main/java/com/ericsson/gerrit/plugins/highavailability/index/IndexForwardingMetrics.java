@@ -0,0 +1,51 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+@Singleton
+class IndexForwardingMetrics {
+  private final Counter0 coalesced;
+  private final Counter0 dropped;
+
+  @Inject
+  IndexForwardingMetrics(MetricMaker metricMaker) {
+    this.coalesced =
+        metricMaker.newCounter(
+            "forwarding/index/coalesced",
+            new Description("Indexing events merged into the pending forward of the same entity")
+                .setRate()
+                .setUnit("events"));
+    this.dropped =
+        metricMaker.newCounter(
+            "forwarding/index/dropped",
+            new Description("Indexing events which could not be forwarded")
+                .setRate()
+                .setUnit("events"));
+  }
+
+  void coalesced() {
+    coalesced.increment();
+  }
+
+  void dropped() {
+    dropped.increment();
+  }
+}
@@ -16,6 +16,7 @@ package com.ericsson.gerrit.plugins.highavailability.index;
 
 import com.google.gerrit.extensions.events.AccountIndexedListener;
 import com.google.gerrit.extensions.events.ChangeIndexedListener;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.extensions.events.GroupIndexedListener;
 import com.google.gerrit.extensions.events.ProjectIndexedListener;
 import com.google.gerrit.extensions.registration.DynamicSet;
@@ -37,6 +38,8 @@ public class IndexModule extends LifecycleModule {
     DynamicSet.bind(binder(), AccountIndexedListener.class).to(IndexEventHandler.class);
     DynamicSet.bind(binder(), GroupIndexedListener.class).to(IndexEventHandler.class);
     DynamicSet.bind(binder(), ProjectIndexedListener.class).to(IndexEventHandler.class);
+    DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ChangeRefWaiter.class);
+    listener().to(ChangeRefWaiter.class);
 
     install(
         new FactoryModuleBuilder()
@@ -24,6 +24,8 @@ import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.net.InetAddress;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import org.jgroups.Address;
@@ -37,9 +39,8 @@ import org.jgroups.View;
  * creates its own channel and joins jgroup cluster. Whenever the set of cluster members changes
  * each gerrit server publishes its url to all cluster members (publishes it to all channels).
  *
- * <p>This provider maintains a list of all members which joined the jgroups cluster. This may be
- * more than two. But will always pick the first node which sent its url as the peer to be returned
- * by {@link #get()}. It will continue to return that node until that node leaves the jgroups
+ * <p>This provider maintains the url of every member which joined the jgroups cluster and returns
+ * all of them as peers from {@link #get()}. A member is removed as soon as it leaves the jgroups
  * cluster.
  */
 @Singleton
@@ -59,8 +60,8 @@ public class JGroupsPeerInfoProvider extends ReceiverAdapter
   private final String myUrl;
 
   private JChannel channel;
-  private Optional<PeerInfo> peerInfo = Optional.empty();
-  private Address peerAddress;
+  private final Map<Address, PeerInfo> peers = new LinkedHashMap<>();
+  private volatile Set<PeerInfo> peerInfos = ImmutableSet.of();
 
   @Inject
   JGroupsPeerInfoProvider(
@@ -73,13 +74,12 @@ public class JGroupsPeerInfoProvider extends ReceiverAdapter
   @Override
   public void receive(Message msg) {
     synchronized (this) {
-      if (peerAddress != null) {
-        return;
-      }
-      peerAddress = msg.getSrc();
       String url = (String) msg.getObject();
-      peerInfo = Optional.of(new PeerInfo(url));
-      log.atInfo().log("receive(): Set new peerInfo: %s", url);
+      PeerInfo previous = peers.put(msg.getSrc(), new PeerInfo(url));
+      if (previous == null || !previous.getDirectUrl().equals(url)) {
+        log.atInfo().log("receive(): Set new peerInfo: %s", url);
+        updatePeerInfos();
+      }
     }
   }
 
@@ -87,19 +87,9 @@ public class JGroupsPeerInfoProvider extends ReceiverAdapter
   public void viewAccepted(View view) {
     log.atInfo().log("viewAccepted(view: %s) called", view);
     synchronized (this) {
-      if (view.getMembers().size() > 2) {
-        log.atWarning().log(
-            "%d members joined the jgroups cluster %s (%s). "
-                + " Only two members are supported. Members: %s",
-            view.getMembers().size(),
-            jgroupsConfig.clusterName(),
-            channel.getName(),
-            view.getMembers());
-      }
-      if (peerAddress != null && !view.getMembers().contains(peerAddress)) {
+      if (peers.keySet().removeIf(address -> !view.getMembers().contains(address))) {
         log.atInfo().log("viewAccepted(): removed peerInfo");
-        peerAddress = null;
-        peerInfo = Optional.empty();
+        updatePeerInfos();
       }
     }
     if (view.size() > 1) {
@@ -157,9 +147,13 @@ public class JGroupsPeerInfoProvider extends ReceiverAdapter
     }
   }
 
+  private void updatePeerInfos() {
+    peerInfos = ImmutableSet.copyOf(peers.values());
+  }
+
   @Override
   public Set<PeerInfo> get() {
-    return peerInfo.isPresent() ? ImmutableSet.of(peerInfo.get()) : ImmutableSet.of();
+    return peerInfos;
   }
 
   @Override
@@ -175,7 +169,9 @@ public class JGroupsPeerInfoProvider extends ReceiverAdapter
           channel.getName(), jgroupsConfig.clusterName());
       channel.close();
     }
-    peerInfo = Optional.empty();
-    peerAddress = null;
+    synchronized (this) {
+      peers.clear();
+      updatePeerInfos();
+    }
   }
 }
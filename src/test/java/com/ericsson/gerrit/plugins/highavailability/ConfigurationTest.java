@@ -14,9 +14,19 @@
 
 package com.ericsson.gerrit.plugins.highavailability;
 
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.BATCH_SECTION;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.DEFAULT_BATCH_ENABLED;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.DEFAULT_MAX_DELAY_MS;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.DEFAULT_MAX_SIZE;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.ENABLED_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.MAX_DELAY_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Batch.MAX_SIZE_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Cache.BATCH_WINDOW_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Cache.CACHE_SECTION;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Cache.DEFAULT_BATCH_WINDOW_MS;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Cache.DEFAULT_FLUSH_THRESHOLD;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Cache.FLUSH_THRESHOLD_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Cache.PATTERN_KEY;
-import static com.ericsson.gerrit.plugins.highavailability.Configuration.DEFAULT_NUM_STRIPED_LOCKS;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.DEFAULT_THREAD_POOL_SIZE;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Event.EVENT_SECTION;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Forwarding.DEFAULT_SYNCHRONIZE;
@@ -28,13 +38,23 @@ import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.CO
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.DEFAULT_MAX_TRIES;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.DEFAULT_RETRY_INTERVAL;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.DEFAULT_TIMEOUT_MS;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.DEFAULT_TRANSPORT;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.HTTP_SECTION;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.MAX_TRIES_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.PASSWORD_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.RETRY_INTERVAL_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.SOCKET_TIMEOUT_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.TRANSPORT_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Http.USER_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.CHECKER_CACHE_SIZE_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.DEFAULT_CHECKER_CACHE_SIZE;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.DEFAULT_DRAIN_TIMEOUT;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.DEFAULT_MAX_QUEUED_REQUESTS;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.DEFAULT_REF_POLL_INTERVAL;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.DRAIN_TIMEOUT_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.INDEX_SECTION;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.MAX_QUEUED_REQUESTS_KEY;
+import static com.ericsson.gerrit.plugins.highavailability.Configuration.Index.REF_POLL_INTERVAL_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.JGroups.CLUSTER_NAME_KEY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.JGroups.DEFAULT_CLUSTER_NAME;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.JGroups.DEFAULT_SKIP_INTERFACE_LIST;
@@ -44,7 +64,6 @@ import static com.ericsson.gerrit.plugins.highavailability.Configuration.JGroups
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Main.DEFAULT_SHARED_DIRECTORY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Main.MAIN_SECTION;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.Main.SHARED_DIRECTORY_KEY;
-import static com.ericsson.gerrit.plugins.highavailability.Configuration.NUM_STRIPED_LOCKS;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.PEER_INFO_SECTION;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.PeerInfo.DEFAULT_PEER_INFO_STRATEGY;
 import static com.ericsson.gerrit.plugins.highavailability.Configuration.PeerInfo.STRATEGY_KEY;
@@ -62,6 +81,14 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.when;
 
+import com.ericsson.gerrit.plugins.highavailability.Configuration.AckPolicy;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.Broker;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.ExecutorMode;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.Forwarder;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.ForwarderStrategy;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.Http;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.HttpTransport;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.Journal;
 import com.ericsson.gerrit.plugins.highavailability.Configuration.PeerInfoStrategy;
 import com.google.common.collect.ImmutableList;
 import com.google.gerrit.server.config.PluginConfigFactory;
@@ -251,6 +278,46 @@ public class ConfigurationTest {
     assertThat(getConfiguration().http().retryInterval()).isEqualTo(DEFAULT_RETRY_INTERVAL);
   }
 
+  @Test
+  public void testGetCircuitBreaker() throws Exception {
+    assertThat(getConfiguration().http().maxRetryInterval())
+        .isEqualTo(Http.DEFAULT_MAX_RETRY_INTERVAL);
+    assertThat(getConfiguration().http().circuitBreakerThreshold())
+        .isEqualTo(Http.DEFAULT_CIRCUIT_BREAKER_THRESHOLD);
+    assertThat(getConfiguration().http().maxParkedMessages())
+        .isEqualTo(Http.DEFAULT_MAX_PARKED_MESSAGES);
+
+    globalPluginConfig.setInt(HTTP_SECTION, null, Http.MAX_RETRY_INTERVAL_KEY, 30000);
+    globalPluginConfig.setInt(HTTP_SECTION, null, Http.CIRCUIT_BREAKER_THRESHOLD_KEY, 0);
+    globalPluginConfig.setInt(HTTP_SECTION, null, Http.MAX_PARKED_MESSAGES_KEY, 100);
+    assertThat(getConfiguration().http().maxRetryInterval()).isEqualTo(30000);
+    assertThat(getConfiguration().http().circuitBreakerThreshold()).isEqualTo(0);
+    assertThat(getConfiguration().http().maxParkedMessages()).isEqualTo(100);
+  }
+
+  @Test
+  public void testGetAckPolicy() throws Exception {
+    assertThat(getConfiguration().http().ackPolicy()).isSameInstanceAs(Http.DEFAULT_ACK_POLICY);
+    assertThat(getConfiguration().http().peerThreadPoolSize())
+        .isEqualTo(Http.DEFAULT_PEER_THREAD_POOL_SIZE);
+
+    globalPluginConfig.setString(HTTP_SECTION, null, Http.ACK_POLICY_KEY, "quorum");
+    globalPluginConfig.setInt(HTTP_SECTION, null, Http.PEER_THREAD_POOL_SIZE_KEY, 2);
+    assertThat(getConfiguration().http().ackPolicy()).isSameInstanceAs(AckPolicy.QUORUM);
+    assertThat(getConfiguration().http().peerThreadPoolSize()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGetTransport() throws Exception {
+    assertThat(getConfiguration().http().transport()).isSameInstanceAs(DEFAULT_TRANSPORT);
+
+    globalPluginConfig.setString(HTTP_SECTION, null, TRANSPORT_KEY, HttpTransport.ASYNC.name());
+    assertThat(getConfiguration().http().transport()).isSameInstanceAs(HttpTransport.ASYNC);
+
+    globalPluginConfig.setString(HTTP_SECTION, null, TRANSPORT_KEY, HttpTransport.HTTP2.name());
+    assertThat(getConfiguration().http().transport()).isSameInstanceAs(HttpTransport.HTTP2);
+  }
+
   @Test
   public void testGetIndexThreadPoolSize() throws Exception {
     assertThat(getConfiguration().index().threadPoolSize()).isEqualTo(DEFAULT_THREAD_POOL_SIZE);
@@ -368,6 +435,25 @@ public class ConfigurationTest {
         .inOrder();
   }
 
+  @Test
+  public void testGetCacheBatchWindow() throws Exception {
+    assertThat(getConfiguration().cache().batchWindowMs()).isEqualTo(DEFAULT_BATCH_WINDOW_MS);
+
+    globalPluginConfig.setString(CACHE_SECTION, null, BATCH_WINDOW_KEY, "1 second");
+    assertThat(getConfiguration().cache().batchWindowMs()).isEqualTo(1000L);
+
+    globalPluginConfig.setInt(CACHE_SECTION, null, BATCH_WINDOW_KEY, 0);
+    assertThat(getConfiguration().cache().batchWindowMs()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testGetCacheFlushThreshold() throws Exception {
+    assertThat(getConfiguration().cache().flushThreshold()).isEqualTo(DEFAULT_FLUSH_THRESHOLD);
+
+    globalPluginConfig.setInt(CACHE_SECTION, null, FLUSH_THRESHOLD_KEY, 0);
+    assertThat(getConfiguration().cache().flushThreshold()).isEqualTo(0);
+  }
+
   @Test
   public void testHealthCheckEnabled() throws Exception {
     assertThat(getConfiguration().healthCheck().enabled()).isEqualTo(DEFAULT_HEALTH_CHECK_ENABLED);
@@ -380,10 +466,117 @@ public class ConfigurationTest {
   }
 
   @Test
-  public void testGetIndexNumStripedLocks() throws Exception {
-    assertThat(getConfiguration().index().numStripedLocks()).isEqualTo(DEFAULT_NUM_STRIPED_LOCKS);
+  public void testGetIndexMaxQueuedRequests() throws Exception {
+    assertThat(getConfiguration().index().maxQueuedRequests())
+        .isEqualTo(DEFAULT_MAX_QUEUED_REQUESTS);
 
-    globalPluginConfig.setInt(INDEX_SECTION, null, NUM_STRIPED_LOCKS, 100);
-    assertThat(getConfiguration().index().numStripedLocks()).isEqualTo(100);
+    globalPluginConfig.setInt(INDEX_SECTION, null, MAX_QUEUED_REQUESTS_KEY, 1000);
+    assertThat(getConfiguration().index().maxQueuedRequests()).isEqualTo(1000);
+  }
+
+  @Test
+  public void testGetIndexRefPollInterval() throws Exception {
+    assertThat(getConfiguration().index().refPollInterval()).isEqualTo(DEFAULT_REF_POLL_INTERVAL);
+
+    globalPluginConfig.setInt(INDEX_SECTION, null, REF_POLL_INTERVAL_KEY, 0);
+    assertThat(getConfiguration().index().refPollInterval()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGetIndexCheckerCacheSize() throws Exception {
+    assertThat(getConfiguration().index().checkerCacheSize()).isEqualTo(DEFAULT_CHECKER_CACHE_SIZE);
+
+    globalPluginConfig.setInt(INDEX_SECTION, null, CHECKER_CACHE_SIZE_KEY, 0);
+    assertThat(getConfiguration().index().checkerCacheSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGetIndexDrainTimeout() throws Exception {
+    assertThat(getConfiguration().index().drainTimeout()).isEqualTo(DEFAULT_DRAIN_TIMEOUT);
+
+    globalPluginConfig.setInt(INDEX_SECTION, null, DRAIN_TIMEOUT_KEY, 1000);
+    assertThat(getConfiguration().index().drainTimeout()).isEqualTo(1000);
+  }
+
+  @Test
+  public void testGetBatch() throws Exception {
+    assertThat(getConfiguration().batch().enabled()).isEqualTo(DEFAULT_BATCH_ENABLED);
+    assertThat(getConfiguration().batch().maxSize()).isEqualTo(DEFAULT_MAX_SIZE);
+    assertThat(getConfiguration().batch().maxDelay()).isEqualTo(DEFAULT_MAX_DELAY_MS);
+
+    globalPluginConfig.setBoolean(BATCH_SECTION, null, ENABLED_KEY, true);
+    globalPluginConfig.setInt(BATCH_SECTION, null, MAX_SIZE_KEY, 500);
+    globalPluginConfig.setInt(BATCH_SECTION, null, MAX_DELAY_KEY, 50);
+    assertThat(getConfiguration().batch().enabled()).isTrue();
+    assertThat(getConfiguration().batch().maxSize()).isEqualTo(500);
+    assertThat(getConfiguration().batch().maxDelay()).isEqualTo(50);
+
+    globalPluginConfig.setString(BATCH_SECTION, null, MAX_SIZE_KEY, INVALID_INT);
+    assertThat(getConfiguration().batch().maxSize()).isEqualTo(DEFAULT_MAX_SIZE);
+  }
+
+  @Test
+  public void testGetJournal() throws Exception {
+    assertThat(getConfiguration().journal().enabled()).isEqualTo(Journal.DEFAULT_JOURNAL_ENABLED);
+    assertThat(getConfiguration().journal().segmentSize()).isEqualTo(Journal.DEFAULT_SEGMENT_SIZE);
+    assertThat(getConfiguration().journal().maxSegments()).isEqualTo(Journal.DEFAULT_MAX_SEGMENTS);
+    assertThat(getConfiguration().journal().replayBatchSize())
+        .isEqualTo(Journal.DEFAULT_REPLAY_BATCH_SIZE);
+
+    globalPluginConfig.setBoolean(Journal.JOURNAL_SECTION, null, Journal.ENABLED_KEY, true);
+    globalPluginConfig.setString(Journal.JOURNAL_SECTION, null, Journal.SEGMENT_SIZE_KEY, "1m");
+    globalPluginConfig.setInt(Journal.JOURNAL_SECTION, null, Journal.MAX_SEGMENTS_KEY, 4);
+    globalPluginConfig.setInt(Journal.JOURNAL_SECTION, null, Journal.REPLAY_BATCH_SIZE_KEY, 10);
+    assertThat(getConfiguration().journal().enabled()).isTrue();
+    assertThat(getConfiguration().journal().segmentSize()).isEqualTo(1024 * 1024);
+    assertThat(getConfiguration().journal().maxSegments()).isEqualTo(4);
+    assertThat(getConfiguration().journal().replayBatchSize()).isEqualTo(10);
+
+    globalPluginConfig.setString(
+        Journal.JOURNAL_SECTION, null, Journal.MAX_SEGMENTS_KEY, INVALID_INT);
+    assertThat(getConfiguration().journal().maxSegments()).isEqualTo(Journal.DEFAULT_MAX_SEGMENTS);
+  }
+
+  @Test
+  public void testGetForwarderStrategy() throws Exception {
+    assertThat(getConfiguration().forwarder().strategy())
+        .isSameInstanceAs(Forwarder.DEFAULT_FORWARDER_STRATEGY);
+
+    globalPluginConfig.setString(
+        Forwarder.FORWARDER_SECTION, null, Forwarder.STRATEGY_KEY, "broker");
+    assertThat(getConfiguration().forwarder().strategy())
+        .isSameInstanceAs(ForwarderStrategy.BROKER);
+  }
+
+  @Test
+  public void testGetForwarderExecutor() throws Exception {
+    assertThat(getConfiguration().forwarder().executor())
+        .isSameInstanceAs(Forwarder.DEFAULT_EXECUTOR_MODE);
+    assertThat(getConfiguration().forwarder().maxThreads())
+        .isEqualTo(Forwarder.DEFAULT_MAX_THREADS);
+
+    globalPluginConfig.setString(
+        Forwarder.FORWARDER_SECTION, null, Forwarder.EXECUTOR_KEY, "elastic");
+    globalPluginConfig.setInt(Forwarder.FORWARDER_SECTION, null, Forwarder.MAX_THREADS_KEY, 32);
+    assertThat(getConfiguration().forwarder().executor()).isSameInstanceAs(ExecutorMode.ELASTIC);
+    assertThat(getConfiguration().forwarder().maxThreads()).isEqualTo(32);
+  }
+
+  @Test
+  public void testGetBroker() throws Exception {
+    assertThat(getConfiguration().broker().partitions()).isEqualTo(Broker.DEFAULT_PARTITIONS);
+    assertThat(getConfiguration().broker().pollInterval())
+        .isEqualTo(Broker.DEFAULT_POLL_INTERVAL_MS);
+    assertThat(getConfiguration().broker().segmentSize()).isEqualTo(Broker.DEFAULT_SEGMENT_SIZE);
+    assertThat(getConfiguration().broker().retention()).isEqualTo(Broker.DEFAULT_RETENTION_MS);
+
+    globalPluginConfig.setInt(Broker.BROKER_SECTION, null, Broker.PARTITIONS_KEY, 4);
+    globalPluginConfig.setInt(Broker.BROKER_SECTION, null, Broker.POLL_INTERVAL_KEY, 500);
+    globalPluginConfig.setString(Broker.BROKER_SECTION, null, Broker.SEGMENT_SIZE_KEY, "1m");
+    globalPluginConfig.setString(Broker.BROKER_SECTION, null, Broker.RETENTION_KEY, "2 days");
+    assertThat(getConfiguration().broker().partitions()).isEqualTo(4);
+    assertThat(getConfiguration().broker().pollInterval()).isEqualTo(500);
+    assertThat(getConfiguration().broker().segmentSize()).isEqualTo(1024 * 1024);
+    assertThat(getConfiguration().broker().retention()).isEqualTo(2 * 24 * 3600 * 1000L);
   }
 }
@@ -0,0 +1,171 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexAccountHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Optional;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccountReindexRunnableTest {
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final Account.Id ACCOUNT = Account.id(1000001);
+  private static final Account.Id OTHER_ACCOUNT = Account.id(1000002);
+  private static final Timestamp SINCE_TS = new Timestamp(100_000L);
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private ForwardedIndexAccountHandler accountIdxMock;
+  @Mock private IndexTs indexTsMock;
+  @Mock private OneOffRequestContext ctxMock;
+  @Mock private GitRepositoryManager repoManagerMock;
+
+  private InMemoryRepository allUsers;
+
+  @Before
+  public void setUp() throws Exception {
+    allUsers = new InMemoryRepository(new DfsRepositoryDescription(ALL_USERS.get()));
+    when(repoManagerMock.openRepository(ALL_USERS)).thenReturn(allUsers);
+    when(configMock.autoReindex().threadPoolSize()).thenReturn(1);
+  }
+
+  @Test
+  public void accountsNeverReindexedAreFetchedWhenUpdatedSinceLastReindexing() throws Exception {
+    updateAccount(ACCOUNT, 200L);
+    updateAccount(OTHER_ACCOUNT, 50L);
+
+    assertThat(newRunnable().fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+  }
+
+  @Test
+  public void refOfAccountsNotUpdatedIsRecorded() throws Exception {
+    updateAccount(OTHER_ACCOUNT, 50L);
+
+    assertThat(newRunnable().fetchItems(SINCE_TS)).isEmpty();
+    RefSnapshot snapshot =
+        new RefSnapshot(tempFolder.getRoot().toPath(), AccountReindexRunnable.SNAPSHOT_FILE_NAME);
+    assertThat(snapshot.get(Integer.toString(OTHER_ACCOUNT.get()))).isPresent();
+  }
+
+  @Test
+  public void accountsAreFetchedAgainOnlyOnceTheirRefMoved() throws Exception {
+    updateAccount(ACCOUNT, 200L);
+    AccountReindexRunnable runnable = newRunnable();
+    assertThat(runnable.fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+    assertThat(runnable.indexIfNeeded(ACCOUNT, SINCE_TS).isPresent()).isTrue();
+    verify(accountIdxMock).index(ACCOUNT, Operation.INDEX, Optional.empty());
+
+    assertThat(newRunnable().fetchItems(SINCE_TS)).isEmpty();
+
+    updateAccount(ACCOUNT, 10L);
+    assertThat(newRunnable().fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+  }
+
+  @Test
+  public void accountIsFetchedAgainWhenItsReindexingFailed() throws Exception {
+    updateAccount(ACCOUNT, 200L);
+    AccountReindexRunnable runnable = newRunnable();
+    doThrow(new IOException("failed"))
+        .when(accountIdxMock)
+        .index(ACCOUNT, Operation.INDEX, Optional.empty());
+    assertThat(runnable.fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+    assertThat(runnable.indexIfNeeded(ACCOUNT, SINCE_TS).isPresent()).isFalse();
+
+    assertThat(newRunnable().fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+  }
+
+  @Test
+  public void lastReindexingMovesToCommitTimeOfReindexedAccount() throws Exception {
+    updateAccount(ACCOUNT, 200L);
+    AccountReindexRunnable runnable = newRunnable();
+    assertThat(runnable.fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+
+    assertThat(runnable.indexIfNeeded(ACCOUNT, SINCE_TS)).hasValue(new Timestamp(200_000L));
+  }
+
+  @Test
+  public void accountIsFetchedAgainWhenItsReindexingFailedAfterLaterReindexing() throws Exception {
+    updateAccount(ACCOUNT, 200L);
+    AccountReindexRunnable runnable = newRunnable();
+    doThrow(new IOException("failed"))
+        .when(accountIdxMock)
+        .index(ACCOUNT, Operation.INDEX, Optional.empty());
+    assertThat(runnable.fetchItems(SINCE_TS)).containsExactly(ACCOUNT);
+    assertThat(runnable.indexIfNeeded(ACCOUNT, SINCE_TS).isPresent()).isFalse();
+
+    assertThat(newRunnable().fetchItems(new Timestamp(300_000L))).containsExactly(ACCOUNT);
+  }
+
+  private AccountReindexRunnable newRunnable() {
+    return new AccountReindexRunnable(
+        accountIdxMock,
+        indexTsMock,
+        ctxMock,
+        repoManagerMock,
+        ALL_USERS,
+        tempFolder.getRoot().toPath(),
+        configMock);
+  }
+
+  private void updateAccount(Account.Id id, long timeSec) throws Exception {
+    try (ObjectInserter ins = allUsers.newObjectInserter()) {
+      PersonIdent ident = new PersonIdent("admin", "admin@example.com", timeSec * 1000L, 0);
+      CommitBuilder cb = new CommitBuilder();
+      cb.setTreeId(ins.insert(Constants.OBJ_TREE, new byte[0]));
+      cb.setAuthor(ident);
+      cb.setCommitter(ident);
+      cb.setMessage("Update account");
+      ObjectId commit = ins.insert(cb);
+      ins.flush();
+      RefUpdate ru = allUsers.updateRef(RefNames.refsUsers(id));
+      ru.setNewObjectId(commit);
+      ru.setForceUpdate(true);
+      ru.update();
+    }
+  }
+}
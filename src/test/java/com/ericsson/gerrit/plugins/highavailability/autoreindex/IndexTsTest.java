@@ -0,0 +1,112 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.AbstractIndexRestApiServlet.IndexName;
+import com.ericsson.gerrit.plugins.highavailability.index.CurrentRequestContext;
+import com.google.gerrit.server.change.ChangeFinder;
+import com.google.gerrit.server.git.WorkQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexTsTest {
+  private static final long FLUSH_INTERVAL_MS = 1000L;
+  private static final LocalDateTime TS = LocalDateTime.of(2020, 1, 1, 10, 0);
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private WorkQueue workQueueMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Mock private ChangeFinder changeFinderMock;
+  @Mock private CurrentRequestContext currCtxMock;
+
+  private Path dataDir;
+
+  @Before
+  public void setUp() {
+    dataDir = tempFolder.getRoot().toPath();
+    when(workQueueMock.getDefaultQueue()).thenReturn(executorMock);
+    when(configMock.autoReindex().flushIntervalMs()).thenReturn(FLUSH_INTERVAL_MS);
+  }
+
+  @Test
+  public void updatesAreCoalescedIntoOneFlush() throws Exception {
+    IndexTs indexTs = newIndexTs();
+    indexTs.update(IndexName.CHANGE, TS);
+    indexTs.update(IndexName.CHANGE, TS.plusSeconds(2));
+    indexTs.update(IndexName.ACCOUNT, TS.plusSeconds(1));
+
+    verify(executorMock, times(1))
+        .schedule(any(Runnable.class), eq(FLUSH_INTERVAL_MS), eq(TimeUnit.MILLISECONDS));
+    assertThat(indexTs.getUpdateTs(IndexName.CHANGE)).hasValue(TS.plusSeconds(2));
+    assertThat(Files.exists(dataDir.resolve("change"))).isFalse();
+
+    indexTs.flush();
+    IndexTs reloaded = newIndexTs();
+    assertThat(reloaded.getUpdateTs(IndexName.CHANGE)).hasValue(TS.plusSeconds(2));
+    assertThat(reloaded.getUpdateTs(IndexName.ACCOUNT)).hasValue(TS.plusSeconds(1));
+    assertThat(reloaded.getUpdateTs(IndexName.GROUP)).isEmpty();
+  }
+
+  @Test
+  public void nextUpdateIsFlushedAgain() throws Exception {
+    IndexTs indexTs = newIndexTs();
+    indexTs.update(IndexName.GROUP, TS);
+    indexTs.flush();
+    indexTs.update(IndexName.GROUP, TS.plusSeconds(1));
+
+    verify(executorMock, times(2))
+        .schedule(any(Runnable.class), eq(FLUSH_INTERVAL_MS), eq(TimeUnit.MILLISECONDS));
+    indexTs.stop();
+    assertThat(newIndexTs().getUpdateTs(IndexName.GROUP)).hasValue(TS.plusSeconds(1));
+  }
+
+  @Test
+  public void olderTimestampIsIgnored() throws Exception {
+    IndexTs indexTs = newIndexTs();
+    indexTs.update(IndexName.PROJECT, TS);
+    indexTs.update(IndexName.PROJECT, TS.minusSeconds(1));
+
+    assertThat(indexTs.getUpdateTs(IndexName.PROJECT)).hasValue(TS);
+  }
+
+  private IndexTs newIndexTs() {
+    return new IndexTs(dataDir, workQueueMock, configMock, changeFinderMock, currCtxMock);
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.ericsson.gerrit.plugins.highavailability.autoreindex.ProjectHighWaterMarks.Mark;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Project;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectHighWaterMarksTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("some project");
+  private static final Project.NameKey OTHER_PROJECT = Project.nameKey("other");
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path dataDir;
+
+  @Before
+  public void setUp() {
+    dataDir = tempFolder.getRoot().toPath();
+  }
+
+  @Test
+  public void shouldReadMarksStoredByPreviousInstance() {
+    Mark mark = new Mark(new Timestamp(1000L), "digest");
+    new ProjectHighWaterMarks(dataDir).put(PROJECT, mark);
+
+    ProjectHighWaterMarks marks = new ProjectHighWaterMarks(dataDir);
+    assertThat(marks.get(PROJECT)).hasValue(mark);
+    assertThat(marks.get(OTHER_PROJECT)).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepLatestMarkOfProject() {
+    ProjectHighWaterMarks marks = new ProjectHighWaterMarks(dataDir);
+    marks.put(PROJECT, new Mark(new Timestamp(1000L), "old"));
+    Mark latest = new Mark(new Timestamp(2000L), "new");
+    marks.put(PROJECT, latest);
+
+    assertThat(marks.get(PROJECT)).hasValue(latest);
+    assertThat(new ProjectHighWaterMarks(dataDir).get(PROJECT)).hasValue(latest);
+  }
+
+  @Test
+  public void shouldDropOutdatedLinesAndDeletedProjectsOnCompaction() throws Exception {
+    ProjectHighWaterMarks marks = new ProjectHighWaterMarks(dataDir);
+    Mark latest = new Mark(new Timestamp(3000L), "3");
+    marks.put(PROJECT, new Mark(new Timestamp(1000L), "1"));
+    marks.put(PROJECT, new Mark(new Timestamp(2000L), "2"));
+    marks.put(PROJECT, latest);
+    marks.put(OTHER_PROJECT, new Mark(new Timestamp(1000L), "1"));
+
+    marks.compact(ImmutableSet.of(PROJECT));
+    assertThat(Files.readAllLines(dataDir.resolve(ProjectHighWaterMarks.FILE_NAME))).hasSize(1);
+    assertThat(marks.get(OTHER_PROJECT)).isEmpty();
+
+    ProjectHighWaterMarks reloaded = new ProjectHighWaterMarks(dataDir);
+    assertThat(reloaded.get(PROJECT)).hasValue(latest);
+    assertThat(reloaded.get(OTHER_PROJECT)).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreInvalidLines() throws Exception {
+    Files.write(
+        dataDir.resolve(ProjectHighWaterMarks.FILE_NAME),
+        "invalid\nnot-a-number digest project\n1000 digest some project\n".getBytes());
+
+    assertThat(new ProjectHighWaterMarks(dataDir).get(PROJECT))
+        .hasValue(new Mark(new Timestamp(1000L), "digest"));
+  }
+}
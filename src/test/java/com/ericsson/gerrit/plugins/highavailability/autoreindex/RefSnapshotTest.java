@@ -0,0 +1,149 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.autoreindex;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RefSnapshotTest {
+  private static final String FILE_NAME = "refs";
+  private static final String KEY = "some key";
+  private static final String OTHER_KEY = "other";
+  private static final ObjectId ID =
+      ObjectId.fromString("0000000000000000000000000000000000000001");
+  private static final ObjectId NEW_ID =
+      ObjectId.fromString("0000000000000000000000000000000000000002");
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path dataDir;
+
+  @Before
+  public void setUp() {
+    dataDir = tempFolder.getRoot().toPath();
+  }
+
+  @Test
+  public void shouldReadIdsStoredByPreviousInstance() {
+    new RefSnapshot(dataDir, FILE_NAME).put(KEY, ID);
+
+    RefSnapshot snapshot = new RefSnapshot(dataDir, FILE_NAME);
+    assertThat(snapshot.get(KEY)).hasValue(ID);
+    assertThat(snapshot.get(OTHER_KEY)).isEmpty();
+  }
+
+  @Test
+  public void shouldDropOutdatedLinesAndDeletedItemsOnCompaction() throws Exception {
+    RefSnapshot snapshot = new RefSnapshot(dataDir, FILE_NAME);
+    snapshot.put(KEY, ID);
+    snapshot.put(KEY, NEW_ID);
+    snapshot.put(OTHER_KEY, ID);
+
+    snapshot.compact(ImmutableSet.of(KEY));
+    assertThat(Files.readAllLines(dataDir.resolve(FILE_NAME))).hasSize(1);
+
+    RefSnapshot reloaded = new RefSnapshot(dataDir, FILE_NAME);
+    assertThat(reloaded.get(KEY)).hasValue(NEW_ID);
+    assertThat(reloaded.get(OTHER_KEY)).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreInvalidLines() throws Exception {
+    Files.write(
+        dataDir.resolve(FILE_NAME),
+        ("invalid\nnot-an-id key\n" + ID.name() + " " + KEY + "\n").getBytes());
+
+    assertThat(new RefSnapshot(dataDir, FILE_NAME).get(KEY)).hasValue(ID);
+  }
+
+  @Test
+  public void itemIsUpdatedWhenItsRefMoved() throws Exception {
+    RefSnapshot snapshot = new RefSnapshot(dataDir, FILE_NAME);
+    snapshot.put(KEY, ID);
+
+    try (InMemoryRepository repo = newRepository();
+        RevWalk rw = new RevWalk(repo)) {
+      assertThat(snapshot.isUpdated(KEY, ID, rw, new Timestamp(0L))).isFalse();
+      assertThat(snapshot.isUpdated(KEY, NEW_ID, rw, new Timestamp(0L))).isTrue();
+    }
+  }
+
+  @Test
+  public void itemNeverReindexedIsUpdatedWhenItsCommitIsNotOlderThanLastReindexing()
+      throws Exception {
+    RefSnapshot snapshot = new RefSnapshot(dataDir, FILE_NAME);
+
+    try (InMemoryRepository repo = newRepository();
+        RevWalk rw = new RevWalk(repo)) {
+      ObjectId commit = commit(repo, 10L);
+      assertThat(snapshot.isUpdated(KEY, commit, rw, new Timestamp(10_000L))).isTrue();
+      assertThat(snapshot.isUpdated(KEY, commit, rw, new Timestamp(11_000L))).isFalse();
+    }
+  }
+
+  @Test
+  public void itemNeverReindexedAndNotUpdatedIsRecordedWithItsCurrentId() throws Exception {
+    RefSnapshot snapshot = new RefSnapshot(dataDir, FILE_NAME);
+    ObjectId commit;
+    try (InMemoryRepository repo = newRepository();
+        RevWalk rw = new RevWalk(repo)) {
+      commit = commit(repo, 10L);
+      assertThat(snapshot.isUpdated(KEY, commit, rw, new Timestamp(11_000L))).isFalse();
+    }
+    snapshot.compact(ImmutableSet.of(KEY));
+
+    RefSnapshot reloaded = new RefSnapshot(dataDir, FILE_NAME);
+    assertThat(reloaded.get(KEY)).hasValue(commit);
+    try (InMemoryRepository empty = newRepository();
+        RevWalk rw = new RevWalk(empty)) {
+      assertThat(reloaded.isUpdated(KEY, commit, rw, new Timestamp(0L))).isFalse();
+    }
+  }
+
+  private static InMemoryRepository newRepository() {
+    return new InMemoryRepository(new DfsRepositoryDescription("repo"));
+  }
+
+  private static ObjectId commit(InMemoryRepository repo, long timeSec) throws Exception {
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      PersonIdent ident = new PersonIdent("author", "author@example.com", timeSec * 1000L, 0);
+      CommitBuilder cb = new CommitBuilder();
+      cb.setTreeId(ins.insert(Constants.OBJ_TREE, new byte[0]));
+      cb.setAuthor(ident);
+      cb.setCommitter(ident);
+      cb.setMessage("update");
+      ObjectId id = ins.insert(cb);
+      ins.flush();
+      return id;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEvictionMetrics;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.Context;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CacheEvictionHandlerTest {
+  private static final String PLUGIN_NAME = "high-availability";
+  private static final String CACHE = "accounts";
+  private static final long BATCH_WINDOW_MS = 50L;
+  private static final int FLUSH_THRESHOLD = 2;
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private Forwarder forwarderMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Mock private CachePatternMatcher matcherMock;
+  @Mock private CacheEvictionMetrics metricsMock;
+
+  private CacheEvictionHandler<Object, Object> handler;
+
+  @Before
+  public void setUp() {
+    when(configMock.cache().batchWindowMs()).thenReturn(BATCH_WINDOW_MS);
+    when(configMock.cache().flushThreshold()).thenReturn(FLUSH_THRESHOLD);
+    when(matcherMock.matches(CACHE)).thenReturn(true);
+    handler =
+        new CacheEvictionHandler<>(
+            forwarderMock, executorMock, PLUGIN_NAME, matcherMock, metricsMock, configMock);
+  }
+
+  @Test
+  public void shouldForwardSingleKeyEviction() {
+    when(forwarderMock.evictAsync(CACHE, "key"))
+        .thenReturn(CompletableFuture.completedFuture(true));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key"));
+
+    runScheduledTask();
+    verify(forwarderMock).evictAsync(CACHE, "key");
+  }
+
+  @Test
+  public void shouldRecordForwardedAndFailedEvictions() {
+    when(forwarderMock.evictAllAsync(CACHE, ImmutableSet.of("key1", "key2")))
+        .thenReturn(CompletableFuture.completedFuture(true));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key1"));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key2"));
+    runScheduledTask();
+    verify(metricsMock).queued(eq(CACHE), anyLong());
+    verify(metricsMock).sent(eq(CACHE), eq(2), anyLong());
+
+    when(forwarderMock.evictAsync(CACHE, "key3"))
+        .thenReturn(CompletableFuture.completedFuture(false));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key3"));
+    runLastScheduledTask();
+    verify(metricsMock).failed(CACHE, 1);
+  }
+
+  @Test
+  public void shouldRecordEvictionsOnceForwardingCompletes() {
+    CompletableFuture<Boolean> forwarded = new CompletableFuture<>();
+    when(forwarderMock.evictAsync(CACHE, "key")).thenReturn(forwarded);
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key"));
+    runScheduledTask();
+    verify(metricsMock, never()).sent(eq(CACHE), anyInt(), anyLong());
+
+    forwarded.complete(true);
+    verify(metricsMock).sent(eq(CACHE), eq(1), anyLong());
+  }
+
+  @Test
+  public void shouldForwardKeysEvictedInWindowInOneMessageWithoutDuplicates() {
+    when(forwarderMock.evictAllAsync(CACHE, ImmutableSet.of("key1", "key2")))
+        .thenReturn(CompletableFuture.completedFuture(true));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key1"));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key2"));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key1"));
+
+    runScheduledTask();
+    verify(forwarderMock).evictAllAsync(CACHE, ImmutableSet.of("key1", "key2"));
+
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key3"));
+    verify(executorMock, times(2))
+        .schedule(any(Runnable.class), eq(BATCH_WINDOW_MS), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldForwardCacheFlushWhenMoreKeysThanThresholdAreEvicted() {
+    when(forwarderMock.flushCacheAsync(CACHE)).thenReturn(CompletableFuture.completedFuture(true));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key1"));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key2"));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key3"));
+    handler.onRemoval(PLUGIN_NAME, CACHE, removal("key4"));
+
+    runScheduledTask();
+    verify(forwarderMock).flushCacheAsync(CACHE);
+    verifyNoMoreInteractions(forwarderMock);
+  }
+
+  @Test
+  public void shouldNotForwardEvictionsOfForwardedOrUnmatchedEntries() {
+    Context.setForwardedEvent(true);
+    try {
+      handler.onRemoval(PLUGIN_NAME, CACHE, removal("key"));
+    } finally {
+      Context.unsetForwardedEvent();
+    }
+    handler.onRemoval(PLUGIN_NAME, "other", removal("key"));
+    handler.onRemoval(
+        PLUGIN_NAME, CACHE, RemovalNotification.create("key", "value", RemovalCause.SIZE));
+
+    verifyZeroInteractions(executorMock, forwarderMock);
+  }
+
+  private void runScheduledTask() {
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(executorMock).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+    task.getValue().run();
+  }
+
+  private void runLastScheduledTask() {
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(executorMock, atLeastOnce()).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+    task.getValue().run();
+  }
+
+  private static RemovalNotification<Object, Object> removal(Object key) {
+    return RemovalNotification.create(key, "value", RemovalCause.EXPLICIT);
+  }
+}
@@ -16,10 +16,19 @@ package com.ericsson.gerrit.plugins.highavailability.cache;
 
 import static com.google.common.truth.Truth.assertWithMessage;
 import static org.mockito.Answers.RETURNS_DEEP_STUBS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.google.common.collect.ImmutableList;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -31,10 +40,15 @@ public class CachePatternMatcherTest {
   @Mock(answer = RETURNS_DEEP_STUBS)
   private Configuration configurationMock;
 
+  @Mock private MetricMaker metricMakerMock;
+  @Mock private Counter1<String> matchedMock;
+
   @Test
   public void testCachePatternMatcher() throws Exception {
-    when(configurationMock.cache().patterns()).thenReturn(ImmutableList.of("^my_cache.*", "other"));
-    CachePatternMatcher matcher = new CachePatternMatcher(configurationMock);
+    when(configurationMock.cache().patterns())
+        .thenReturn(ImmutableList.of("^my_cache.*", "other", "my_plugin.my_cache"));
+    CachePatternMatcher matcher =
+        new CachePatternMatcher(configurationMock, new DisabledMetricMaker());
     for (String cache :
         ImmutableList.of(
             "accounts",
@@ -51,6 +65,7 @@ public class CachePatternMatcherTest {
             "sshkeys",
             "my_cache_a",
             "my_cache_b",
+            "my_plugin.my_cache",
             "other")) {
       assertWithMessage(cache + " should match").that(matcher.matches(cache)).isTrue();
     }
@@ -78,4 +93,19 @@ public class CachePatternMatcherTest {
       assertWithMessage(cache + " should not match").that(matcher.matches(cache)).isFalse();
     }
   }
+
+  @Test
+  public void matchedRemovalsAreCountedPerCache() throws Exception {
+    when(configurationMock.cache().patterns()).thenReturn(ImmutableList.of());
+    when(metricMakerMock.<String>newCounter(anyString(), any(Description.class), any()))
+        .thenReturn(matchedMock);
+    CachePatternMatcher matcher = new CachePatternMatcher(configurationMock, metricMakerMock);
+
+    matcher.matches("projects");
+    matcher.matches("projects");
+    matcher.matches("diff");
+
+    verify(matchedMock, times(2)).increment("projects");
+    verify(matchedMock, never()).increment("diff");
+  }
 }
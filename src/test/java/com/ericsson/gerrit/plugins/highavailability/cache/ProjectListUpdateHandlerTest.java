@@ -26,6 +26,7 @@ import com.ericsson.gerrit.plugins.highavailability.forwarder.Forwarder;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gerrit.extensions.events.NewProjectCreatedListener;
 import com.google.gerrit.extensions.events.ProjectDeletedListener;
+import java.util.concurrent.CompletableFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -50,8 +51,10 @@ public class ProjectListUpdateHandlerTest {
     String projectName = "projectToAdd";
     NewProjectCreatedListener.Event event = mock(NewProjectCreatedListener.Event.class);
     when(event.getProjectName()).thenReturn(projectName);
+    when(forwarder.addToProjectListAsync(projectName))
+        .thenReturn(CompletableFuture.completedFuture(true));
     handler.onNewProjectCreated(event);
-    verify(forwarder).addToProjectList(projectName);
+    verify(forwarder).addToProjectListAsync(projectName);
   }
 
   @Test
@@ -59,8 +62,10 @@ public class ProjectListUpdateHandlerTest {
     String projectName = "projectToDelete";
     ProjectDeletedListener.Event event = mock(ProjectDeletedListener.Event.class);
     when(event.getProjectName()).thenReturn(projectName);
+    when(forwarder.removeFromProjectListAsync(projectName))
+        .thenReturn(CompletableFuture.completedFuture(true));
     handler.onProjectDeleted(event);
-    verify(forwarder).removeFromProjectList(projectName);
+    verify(forwarder).removeFromProjectListAsync(projectName);
   }
 
   @Test
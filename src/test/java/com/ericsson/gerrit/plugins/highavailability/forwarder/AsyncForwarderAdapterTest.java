@@ -0,0 +1,78 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncForwarderAdapterTest {
+  private static final String PROJECT_NAME = "test/project";
+  private static final int CHANGE_NUMBER = 1;
+  private static final String CACHE_NAME = "accounts";
+
+  @Mock private AsyncForwarder asyncForwarderMock;
+  private IndexEvent indexEvent = new IndexEvent();
+  private AsyncForwarderAdapter forwarder;
+
+  @Before
+  public void setUp() {
+    forwarder = new AsyncForwarderAdapter(asyncForwarderMock);
+  }
+
+  @Test
+  public void shouldReportSuccessWhileForwardingIsInFlight() {
+    when(asyncForwarderMock.indexChange(PROJECT_NAME, CHANGE_NUMBER, indexEvent))
+        .thenReturn(new CompletableFuture<>());
+    assertThat(forwarder.indexChange(PROJECT_NAME, CHANGE_NUMBER, indexEvent)).isTrue();
+  }
+
+  @Test
+  public void shouldReportFailureWhenForwardingAlreadyFailed() {
+    when(asyncForwarderMock.deleteChangeFromIndex(CHANGE_NUMBER, indexEvent))
+        .thenReturn(CompletableFuture.completedFuture(false));
+    assertThat(forwarder.deleteChangeFromIndex(CHANGE_NUMBER, indexEvent)).isFalse();
+  }
+
+  @Test
+  public void shouldExposeOutcomeOfIndexingInFlight() {
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    when(asyncForwarderMock.indexChange(PROJECT_NAME, CHANGE_NUMBER, indexEvent))
+        .thenReturn(result);
+    assertThat(forwarder.indexChangeAsync(PROJECT_NAME, CHANGE_NUMBER, indexEvent))
+        .isSameInstanceAs(result);
+  }
+
+  @Test
+  public void shouldExposeOutcomeOfProjectListUpdatesInFlight() {
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    when(asyncForwarderMock.addToProjectList(PROJECT_NAME)).thenReturn(result);
+    assertThat(forwarder.addToProjectListAsync(PROJECT_NAME)).isSameInstanceAs(result);
+  }
+
+  @Test
+  public void shouldExposeOutcomeOfCacheEvictionsInFlight() {
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    when(asyncForwarderMock.evict(CACHE_NAME, "key")).thenReturn(result);
+    assertThat(forwarder.evictAsync(CACHE_NAME, "key")).isSameInstanceAs(result);
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.server.events.EventGsonProvider;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CacheKeyCodecsTest {
+  private static final String PLUGIN_NAME = "my_plugin";
+  private static final String PLUGIN_CACHE = "my_cache";
+
+  @Mock private DynamicMap<CacheKeyCodec<?>> pluginCodecsMock;
+
+  private final Gson gson = new EventGsonProvider().get();
+  private CacheKeyCodecs objectUnderTest;
+
+  @Before
+  public void setUp() {
+    objectUnderTest = new CacheKeyCodecs(gson, pluginCodecsMock);
+  }
+
+  @Test
+  public void accountIDParse() throws Exception {
+    Account.Id accountId = Account.id(1);
+    String json = gson.toJson(accountId);
+    assertThat(objectUnderTest.encode(Constants.ACCOUNTS, accountId)).isEqualTo(json);
+    assertThat(objectUnderTest.decode(Constants.ACCOUNTS, json)).hasValue(accountId);
+  }
+
+  @Test
+  public void accountGroupIDParse() throws Exception {
+    AccountGroup.Id accountGroupId = AccountGroup.id(1);
+    String json = gson.toJson(accountGroupId);
+    assertThat(objectUnderTest.encode(Constants.GROUPS, accountGroupId)).isEqualTo(json);
+    assertThat(objectUnderTest.decode(Constants.GROUPS, json)).hasValue(accountGroupId);
+  }
+
+  @Test
+  public void accountGroupUUIDParse() throws Exception {
+    AccountGroup.UUID accountGroupUuid = AccountGroup.uuid("abc123");
+    String json = gson.toJson(accountGroupUuid);
+    assertThat(objectUnderTest.encode(Constants.GROUPS_BYINCLUDE, accountGroupUuid))
+        .isEqualTo(json);
+    assertThat(objectUnderTest.decode(Constants.GROUPS_BYINCLUDE, json))
+        .hasValue(accountGroupUuid);
+    assertThat(objectUnderTest.decode(Constants.GROUPS_BYSUBGROUP, json))
+        .hasValue(accountGroupUuid);
+  }
+
+  @Test
+  public void accountIDOfGroupsByMemberParse() throws Exception {
+    Account.Id accountId = Account.id(1);
+    assertThat(objectUnderTest.decode(Constants.GROUPS_BYMEMBER, gson.toJson(accountId)))
+        .hasValue(accountId);
+  }
+
+  @Test
+  public void unknownFieldsAreIgnored() throws Exception {
+    assertThat(objectUnderTest.decode(Constants.ACCOUNTS, "{\"other\":[1,2],\"id\":3}"))
+        .hasValue(Account.id(3));
+  }
+
+  @Test
+  public void keysParse() throws Exception {
+    ImmutableList<Account.Id> keys =
+        ImmutableList.of(Account.id(1), Account.id(2), Account.id(1), Account.id(3));
+    String json = gson.toJson(keys);
+    assertThat(objectUnderTest.encodeAll(Constants.ACCOUNTS, keys)).isEqualTo(json);
+    assertThat(objectUnderTest.decodeAll(Constants.ACCOUNTS, json).get())
+        .containsExactly(Account.id(1), Account.id(2), Account.id(3))
+        .inOrder();
+  }
+
+  @Test
+  public void keysAreEncodedAsTree() throws Exception {
+    AccountGroup.UUID uuid = AccountGroup.uuid("abc123");
+    ImmutableList<Account.Id> keys = ImmutableList.of(Account.id(1), Account.id(2));
+    assertThat(objectUnderTest.encodeTree(Constants.GROUPS_BYINCLUDE, uuid))
+        .isEqualTo(gson.toJsonTree(uuid));
+    assertThat(objectUnderTest.encodeAllTree(Constants.ACCOUNTS, keys))
+        .isEqualTo(gson.toJsonTree(keys));
+    assertThat(objectUnderTest.encodeTree(Constants.PROJECTS, "key"))
+        .isEqualTo(gson.toJsonTree("key"));
+  }
+
+  @Test
+  public void stringParse() throws Exception {
+    String key = "key";
+    String json = gson.toJson(key);
+    assertThat(objectUnderTest.encode(Constants.PROJECTS, key)).isEqualTo(json);
+    assertThat(objectUnderTest.decode(Constants.PROJECTS, json)).hasValue(key);
+  }
+
+  @Test
+  public void structuredKeyOfCacheWithoutCodecIsNotDecoded() throws Exception {
+    assertThat(objectUnderTest.decode(Constants.PROJECT_LIST, "{}")).isEmpty();
+    assertThat(objectUnderTest.decodeAll(Constants.PROJECT_LIST, "[\"a\",{}]")).isEmpty();
+  }
+
+  @Test
+  public void pluginCodecIsUsed() throws Exception {
+    doReturn(new ProjectNameKeyCodec()).when(pluginCodecsMock).get(PLUGIN_NAME, PLUGIN_CACHE);
+    String cacheName = PLUGIN_NAME + "." + PLUGIN_CACHE;
+    Project.NameKey key = Project.nameKey("some/project");
+
+    String json = objectUnderTest.encode(cacheName, key);
+    assertThat(json).isEqualTo("\"some/project\"");
+    assertThat(objectUnderTest.decode(cacheName, json)).hasValue(key);
+  }
+
+  @Test(expected = IOException.class)
+  public void invalidKeyIsReported() throws Exception {
+    objectUnderTest.decode(Constants.ACCOUNTS, "{\"id\":\"abc\"}");
+  }
+
+  private static class ProjectNameKeyCodec implements CacheKeyCodec<Project.NameKey> {
+    @Override
+    public Class<Project.NameKey> keyType() {
+      return Project.NameKey.class;
+    }
+
+    @Override
+    public void encode(JsonWriter out, Project.NameKey key) throws IOException {
+      out.value(key.get());
+    }
+
+    @Override
+    public Project.NameKey decode(JsonReader in) throws IOException {
+      return Project.nameKey(in.nextString());
+    }
+  }
+}
@@ -21,8 +21,10 @@ import static org.mockito.Mockito.verify;
 
 import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
 import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.registration.DynamicMap;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,11 +40,12 @@ public class ForwardedCacheEvictionHandlerTest {
   @Rule public ExpectedException exception = ExpectedException.none();
   @Mock private DynamicMap<Cache<?, ?>> cacheMapMock;
   @Mock private Cache<?, ?> cacheMock;
+  @Mock private CacheEvictionMetrics metricsMock;
   private ForwardedCacheEvictionHandler handler;
 
   @Before
   public void setUp() throws Exception {
-    handler = new ForwardedCacheEvictionHandler(cacheMapMock);
+    handler = new ForwardedCacheEvictionHandler(cacheMapMock, metricsMock);
   }
 
   @Test
@@ -62,6 +65,7 @@ public class ForwardedCacheEvictionHandlerTest {
 
     handler.evict(entry);
     verify(cacheMock).invalidate(entry.getKey());
+    verify(metricsMock).received(Constants.ACCOUNTS, 1);
   }
 
   @Test
@@ -73,6 +77,32 @@ public class ForwardedCacheEvictionHandlerTest {
     verify(cacheMock).invalidateAll();
   }
 
+  @Test
+  public void testSuccessfulCacheEvictionOfSeveralKeys() throws Exception {
+    List<Account.Id> keys = ImmutableList.of(Account.id(123), Account.id(456));
+    doReturn(cacheMock).when(cacheMapMock).get(Constants.GERRIT, Constants.ACCOUNTS);
+
+    handler.evictAll(Constants.ACCOUNTS, keys);
+    verify(cacheMock).invalidateAll(keys);
+  }
+
+  @Test
+  public void testSuccessfulPluginCacheEvictionOfSeveralKeys() throws Exception {
+    List<String> keys = ImmutableList.of("a", "b");
+    doReturn(cacheMock).when(cacheMapMock).get("my-plugin", "my-cache");
+
+    handler.evictAll("my-plugin.my-cache", keys);
+    verify(cacheMock).invalidateAll(keys);
+  }
+
+  @Test
+  public void testSuccessfulCacheFlush() throws Exception {
+    doReturn(cacheMock).when(cacheMapMock).get("my-plugin", "my-cache");
+
+    handler.flush("my-plugin.my-cache");
+    verify(cacheMock).invalidateAll();
+  }
+
   @Test
   public void shouldSetAndUnsetForwardedContext() throws Exception {
     CacheEntry entry = new CacheEntry(Constants.GERRIT, Constants.ACCOUNTS, Account.id(456));
@@ -17,28 +17,52 @@ package com.ericsson.gerrit.plugins.highavailability.forwarder;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeBatchLoader;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeBatchLoader.LoadedChange;
 import com.ericsson.gerrit.plugins.highavailability.index.ChangeChecker;
 import com.ericsson.gerrit.plugins.highavailability.index.ChangeCheckerImpl;
+import com.ericsson.gerrit.plugins.highavailability.index.ChangeRefWaiter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.BranchNameKey;
 import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.server.index.change.ChangeIndexer;
 import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.util.OneOffRequestContext;
 import com.google.gerrit.server.util.time.TimeUtil;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
@@ -64,20 +88,39 @@ public class ForwardedIndexChangeHandlerTest {
   @Mock private ChangeCheckerImpl.Factory changeCheckerFactoryMock;
   @Mock private ChangeChecker changeCheckerAbsentMock;
   @Mock private ChangeChecker changeCheckerPresentMock;
+  @Mock private ChangeBatchLoader batchLoaderMock;
+  @Mock private ChangeData.Factory changeDataFactoryMock;
+  @Mock private ChangeData changeDataMock;
+  @Mock private LoadedChange loadedChangeMock;
+  @Mock private ChangeRefWaiter refWaiterMock;
+  @Mock private ScheduledFuture<?> futureMock;
+  @Captor private ArgumentCaptor<Callable<Boolean>> fallbackCaptor;
   private ForwardedIndexChangeHandler handler;
   private Change.Id id;
 
   @Before
   public void setUp() throws Exception {
     id = Change.id(TEST_CHANGE_NUMBER);
-    Change change = new Change(null, id, null, null, TimeUtil.nowTs());
+    Change change =
+        new Change(
+            null,
+            id,
+            null,
+            BranchNameKey.create(Project.nameKey(TEST_PROJECT), "master"),
+            TimeUtil.nowTs());
     when(changeNotes.getChange()).thenReturn(change);
     when(configMock.index()).thenReturn(indexMock);
-    when(indexMock.numStripedLocks()).thenReturn(10);
     when(changeCheckerFactoryMock.create(any())).thenReturn(changeCheckerAbsentMock);
     handler =
         new ForwardedIndexChangeHandler(
-            indexerMock, configMock, indexExecutorMock, ctxMock, changeCheckerFactoryMock);
+            indexerMock,
+            configMock,
+            indexExecutorMock,
+            ctxMock,
+            changeCheckerFactoryMock,
+            batchLoaderMock,
+            changeDataFactoryMock,
+            refWaiterMock);
   }
 
   @Test
@@ -137,6 +180,177 @@ public class ForwardedIndexChangeHandlerTest {
     verify(indexerMock, times(1)).index(any(Change.class));
   }
 
+  @Test
+  public void changesAreLoadedOncePerProjectAndIndexed() throws Exception {
+    Change.Id otherId = Change.id(TEST_CHANGE_NUMBER + 1);
+    when(batchLoaderMock.load(eq(Project.nameKey(TEST_PROJECT)), changeIds(id, otherId)))
+        .thenReturn(ImmutableMap.of(id, loadedChangeMock, otherId, loadedChangeMock));
+    when(loadedChangeMock.isUpToDate(any())).thenReturn(true);
+    when(loadedChangeMock.notes()).thenReturn(changeNotes);
+    when(changeDataFactoryMock.create(changeNotes)).thenReturn(changeDataMock);
+
+    Map<String, Optional<IndexEvent>> changes = new LinkedHashMap<>();
+    changes.put(TEST_CHANGE_ID, Optional.empty());
+    changes.put(TEST_PROJECT + "~" + otherId.get(), Optional.empty());
+    handler.indexChanges(changes);
+
+    verify(indexerMock, times(2)).index(changeDataMock);
+    verify(changeCheckerFactoryMock, never()).create(any());
+    assertThat(Context.isForwardedEvent()).isFalse();
+  }
+
+  @Test
+  public void invalidChangeIdsDoNotPreventIndexingTheOthers() throws Exception {
+    when(batchLoaderMock.load(eq(Project.nameKey(TEST_PROJECT)), changeIds(id)))
+        .thenReturn(ImmutableMap.of(id, loadedChangeMock));
+    when(loadedChangeMock.isUpToDate(any())).thenReturn(true);
+    when(loadedChangeMock.notes()).thenReturn(changeNotes);
+    when(changeDataFactoryMock.create(changeNotes)).thenReturn(changeDataMock);
+
+    Map<String, Optional<IndexEvent>> changes = new LinkedHashMap<>();
+    changes.put(TEST_PROJECT, Optional.empty());
+    changes.put(TEST_CHANGE_ID, Optional.empty());
+    changes.put(TEST_PROJECT + "~x", Optional.empty());
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> handler.indexChanges(changes));
+
+    assertThat(thrown).hasMessageThat().isEqualTo("2 of 3 change ids are invalid");
+    verify(indexerMock).index(changeDataMock);
+  }
+
+  @Test
+  public void changesNotLoadedAreIndexedOneAtATime() throws Exception {
+    setupChangeAccessRelatedMocks(CHANGE_EXISTS, CHANGE_UP_TO_DATE);
+    when(batchLoaderMock.load(eq(Project.nameKey(TEST_PROJECT)), changeIds(id)))
+        .thenReturn(ImmutableMap.of());
+
+    handler.indexChanges(ImmutableMap.of(TEST_CHANGE_ID, Optional.empty()));
+
+    verify(indexerMock, times(1)).index(any(Change.class));
+    verify(indexerMock, never()).index(any(ChangeData.class));
+  }
+
+  @Test
+  public void staleChangesAreIndexedOneAtATime() throws Exception {
+    setupChangeAccessRelatedMocks(CHANGE_EXISTS, CHANGE_UP_TO_DATE);
+    when(batchLoaderMock.load(eq(Project.nameKey(TEST_PROJECT)), changeIds(id)))
+        .thenReturn(ImmutableMap.of(id, loadedChangeMock));
+    when(loadedChangeMock.isUpToDate(any())).thenReturn(false);
+
+    handler.indexChanges(ImmutableMap.of(TEST_CHANGE_ID, Optional.of(new IndexEvent())));
+
+    verify(indexerMock, times(1)).index(any(Change.class));
+    verify(indexerMock, never()).index(any(ChangeData.class));
+  }
+
+  @Test
+  public void outdatedChangeIsIndexedAgainWhenItsRefsAreUpdated() throws Exception {
+    setupChangeAccessRelatedMocks(CHANGE_EXISTS, CHANGE_OUTDATED);
+    CompletableFuture<Void> updated = new CompletableFuture<>();
+    when(indexMock.maxTries()).thenReturn(1);
+    handler =
+        new ForwardedIndexChangeHandler(
+            indexerMock,
+            configMock,
+            indexExecutorMock,
+            ctxMock,
+            changeCheckerFactoryMock,
+            batchLoaderMock,
+            changeDataFactoryMock,
+            refWaiterMock);
+    when(refWaiterMock.await(
+            Project.nameKey(TEST_PROJECT),
+            ImmutableList.of(RefNames.changeMetaRef(id), "refs/heads/master")))
+        .thenReturn(updated);
+    runIndexExecutorInline();
+
+    handler.index(TEST_CHANGE_ID, Operation.INDEX, Optional.of(new IndexEvent()));
+    verify(indexerMock, times(1)).index(any(Change.class));
+
+    updated.complete(null);
+    verify(indexerMock, times(2)).index(any(Change.class));
+    verify(futureMock).cancel(false);
+  }
+
+  @Test
+  public void onlyFallbackTimeoutsCountAgainstMaxTries() throws Exception {
+    setupChangeAccessRelatedMocks(CHANGE_EXISTS, CHANGE_OUTDATED);
+    when(indexMock.maxTries()).thenReturn(1);
+    when(indexMock.retryInterval()).thenReturn(60000);
+    handler =
+        new ForwardedIndexChangeHandler(
+            indexerMock,
+            configMock,
+            indexExecutorMock,
+            ctxMock,
+            changeCheckerFactoryMock,
+            batchLoaderMock,
+            changeDataFactoryMock,
+            refWaiterMock);
+    CompletableFuture<Void> firstUpdate = new CompletableFuture<>();
+    CompletableFuture<Void> secondUpdate = new CompletableFuture<>();
+    when(refWaiterMock.await(any(), any()))
+        .thenReturn(firstUpdate)
+        .thenReturn(secondUpdate)
+        .thenReturn(new CompletableFuture<>());
+    runIndexExecutorInline();
+
+    handler.index(TEST_CHANGE_ID, Operation.INDEX, Optional.of(new IndexEvent()));
+    firstUpdate.complete(null);
+    secondUpdate.complete(null);
+    verify(indexerMock, times(3)).index(any(Change.class));
+    verify(refWaiterMock, times(3)).await(any(), any());
+
+    verify(indexExecutorMock, times(3)).schedule(fallbackCaptor.capture(), anyLong(), any());
+    fallbackCaptor.getValue().call();
+
+    verify(indexerMock, times(4)).index(any(Change.class));
+    verify(refWaiterMock, times(3)).await(any(), any());
+  }
+
+  @Test
+  public void refsAreNoLongerAwaitedOnceFallbackElapsed() throws Exception {
+    setupChangeAccessRelatedMocks(CHANGE_EXISTS, CHANGE_OUTDATED);
+    when(indexMock.maxTries()).thenReturn(1);
+    handler =
+        new ForwardedIndexChangeHandler(
+            indexerMock,
+            configMock,
+            indexExecutorMock,
+            ctxMock,
+            changeCheckerFactoryMock,
+            batchLoaderMock,
+            changeDataFactoryMock,
+            refWaiterMock);
+    CompletableFuture<Void> updated = new CompletableFuture<>();
+    when(refWaiterMock.await(any(), any())).thenReturn(updated);
+    runIndexExecutorInline();
+
+    handler.index(TEST_CHANGE_ID, Operation.INDEX, Optional.of(new IndexEvent()));
+    verify(indexExecutorMock).schedule(fallbackCaptor.capture(), anyLong(), any());
+    fallbackCaptor.getValue().call();
+
+    verify(indexerMock, times(2)).index(any(Change.class));
+    assertThat(updated.isDone()).isTrue();
+  }
+
+  private void runIndexExecutorInline() {
+    doReturn(futureMock)
+        .when(indexExecutorMock)
+        .schedule(ArgumentMatchers.<Callable<Boolean>>any(), anyLong(), any(TimeUnit.class));
+    doAnswer(
+            invocation -> {
+              invocation.getArgument(0, Runnable.class).run();
+              return null;
+            })
+        .when(indexExecutorMock)
+        .execute(any());
+  }
+
+  private static Collection<Change.Id> changeIds(Change.Id... ids) {
+    return argThat(c -> ImmutableList.copyOf(c).equals(ImmutableList.copyOf(ids)));
+  }
+
   private void setupChangeAccessRelatedMocks(boolean changeExists, boolean changeIsUpToDate)
       throws IOException {
     if (changeExists) {
@@ -0,0 +1,156 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.Priority;
+import com.google.gerrit.server.git.WorkQueue;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ForwardedIndexingQueueTest {
+  private static final int CAPACITY = 3;
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private WorkQueue workQueueMock;
+
+  private ScheduledThreadPoolExecutor executor;
+  private ForwardedIndexingQueue queue;
+  private CountDownLatch blocked;
+  private CountDownLatch release;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = new ScheduledThreadPoolExecutor(1);
+    when(configMock.index().maxQueuedRequests()).thenReturn(CAPACITY);
+    when(configMock.index().threadPoolSize()).thenReturn(1);
+    when(workQueueMock.createQueue(1, "Forwarded-Index-Queue")).thenReturn(executor);
+    queue = new ForwardedIndexingQueue(workQueueMock, configMock);
+    queue.start();
+    blocked = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    queue.stop();
+  }
+
+  @Test
+  public void shouldBeDisabledByDefault() {
+    when(configMock.index().maxQueuedRequests()).thenReturn(0);
+    ForwardedIndexingQueue disabled = new ForwardedIndexingQueue(workQueueMock, configMock);
+    disabled.start();
+    assertThat(disabled.isEnabled()).isFalse();
+    assertThat(disabled.offer(Priority.INTERACTIVE, "index", () -> {})).isFalse();
+  }
+
+  @Test
+  public void shouldProcessRequestsByPriorityThenInOrder() throws Exception {
+    List<String> processed = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(3);
+    blockWorker();
+
+    assertThat(queue.offer(Priority.BULK, "bulk", record(processed, "bulk", done))).isTrue();
+    assertThat(queue.offer(Priority.INTERACTIVE, "first", record(processed, "first", done)))
+        .isTrue();
+    assertThat(queue.offer(Priority.DELETE, "delete", record(processed, "delete", done))).isTrue();
+    release.countDown();
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(processed).containsExactly("delete", "first", "bulk").inOrder();
+  }
+
+  @Test
+  public void shouldRefuseRequestsWhenFull() throws Exception {
+    blockWorker();
+    for (int i = 0; i < CAPACITY; i++) {
+      assertThat(queue.offer(Priority.INTERACTIVE, "index", () -> {})).isTrue();
+    }
+    assertThat(queue.offer(Priority.DELETE, "delete", () -> {})).isFalse();
+    assertThat(queue.size()).isEqualTo(CAPACITY);
+  }
+
+  @Test
+  public void shouldKeepProcessingAfterFailure() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    assertThat(
+            queue.offer(
+                Priority.INTERACTIVE,
+                "fail",
+                () -> {
+                  throw new IOException("failure");
+                }))
+        .isTrue();
+    assertThat(queue.offer(Priority.INTERACTIVE, "index", done::countDown)).isTrue();
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void shouldProcessQueuedRequestsWhenStopping() throws Exception {
+    when(configMock.index().drainTimeout()).thenReturn(5000);
+    List<String> processed = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(2);
+    blockWorker();
+    assertThat(queue.offer(Priority.INTERACTIVE, "first", record(processed, "first", done)))
+        .isTrue();
+    assertThat(queue.offer(Priority.BULK, "second", record(processed, "second", done))).isTrue();
+    release.countDown();
+
+    queue.stop();
+
+    assertThat(processed).containsExactly("first", "second").inOrder();
+    assertThat(queue.offer(Priority.INTERACTIVE, "late", () -> {})).isFalse();
+  }
+
+  private void blockWorker() throws InterruptedException {
+    executor.execute(
+        () -> {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private static ForwardedIndexingQueue.IndexTask record(
+      List<String> processed, String name, CountDownLatch done) {
+    return () -> {
+      processed.add(name);
+      done.countDown();
+    };
+  }
+}
@@ -0,0 +1,201 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.IndexTask;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdSerializerTest {
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private IdSerializer<String> serializer;
+  private ExecutorService executor;
+  private List<String> ran;
+  private CountDownLatch running;
+  private CountDownLatch release;
+
+  @Before
+  public void setUp() {
+    serializer = new IdSerializer<>();
+    executor = Executors.newCachedThreadPool();
+    ran = new CopyOnWriteArrayList<>();
+    running = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void tasksOfSameIdRunOneAtATimeInOrder() throws Exception {
+    Future<?> first = submitBlocking("id", Operation.INDEX, "first");
+    running.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    Future<?> second = submit("id", Operation.DELETE, "second");
+    awaitWaiting("id", 1);
+    assertThat(ran).containsExactly("first");
+
+    release.countDown();
+    first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertThat(ran).containsExactly("first", "second").inOrder();
+    assertThat(serializer.waiting("id")).isEqualTo(0);
+  }
+
+  @Test
+  public void tasksOfDistinctIdsRunConcurrently() throws Exception {
+    Future<?> first = submitBlocking("id1", Operation.INDEX, "first");
+    running.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    submit("id2", Operation.INDEX, "second").get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertThat(ran).containsExactly("first", "second").inOrder();
+    assertThat(first.isDone()).isFalse();
+  }
+
+  @Test
+  public void waitingTaskIsSupersededByNewerTaskOfSameKind() throws Exception {
+    submitBlocking("id", Operation.INDEX, "running");
+    running.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    Future<?> older = submit("id", Operation.INDEX, "older");
+    awaitWaiting("id", 1);
+    Future<?> newer = submitAndAwaitParked("id", Operation.INDEX, () -> ran.add("newer"));
+
+    release.countDown();
+    older.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    newer.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertThat(ran).containsExactly("running", "newer").inOrder();
+  }
+
+  @Test
+  public void waitingTaskOfOtherKindIsNotSuperseded() throws Exception {
+    submitBlocking("id", Operation.INDEX, "running");
+    running.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    Future<?> delete = submit("id", Operation.DELETE, "delete");
+    awaitWaiting("id", 1);
+    Future<?> index = submit("id", Operation.INDEX, "index");
+    awaitWaiting("id", 2);
+
+    release.countDown();
+    delete.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    index.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertThat(ran).containsExactly("running", "delete", "index").inOrder();
+  }
+
+  @Test
+  public void failureIsReportedToSupersededSubmitter() throws Exception {
+    submitBlocking("id", Operation.INDEX, "running");
+    running.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    Future<?> older = submit("id", Operation.INDEX, "older");
+    awaitWaiting("id", 1);
+    Future<?> newer =
+        submitAndAwaitParked(
+            "id",
+            Operation.INDEX,
+            () -> {
+              throw new IOException("newer failed");
+            });
+
+    release.countDown();
+    assertFailsWithIOException(older);
+    assertFailsWithIOException(newer);
+
+    submit("id", Operation.INDEX, "next").get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertThat(ran).containsExactly("running", "next").inOrder();
+  }
+
+  private Future<?> submit(String id, Operation kind, String name) {
+    return executor.submit(
+        () -> {
+          serializer.run(id, kind, () -> ran.add(name));
+          return null;
+        });
+  }
+
+  private Future<?> submitAndAwaitParked(String id, Operation kind, IndexTask task)
+      throws InterruptedException {
+    FutureTask<Void> future =
+        new FutureTask<>(
+            () -> {
+              serializer.run(id, kind, task);
+              return null;
+            });
+    Thread thread = new Thread(future);
+    thread.start();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (thread.getState() != Thread.State.WAITING) {
+      if (System.nanoTime() > deadline) {
+        fail("Expected the submitter to wait for " + id);
+      }
+      Thread.sleep(1);
+    }
+    return future;
+  }
+
+  private Future<?> submitBlocking(String id, Operation kind, String name) {
+    return executor.submit(
+        () -> {
+          serializer.run(
+              id,
+              kind,
+              () -> {
+                ran.add(name);
+                running.countDown();
+                try {
+                  release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+          return null;
+        });
+  }
+
+  private void awaitWaiting(String id, int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (serializer.waiting(id) < count) {
+      if (System.nanoTime() > deadline) {
+        fail("Expected " + count + " waiting task(s) for " + id);
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  private static void assertFailsWithIOException(Future<?> future) throws Exception {
+    try {
+      future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      fail("Expected IOException");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+}
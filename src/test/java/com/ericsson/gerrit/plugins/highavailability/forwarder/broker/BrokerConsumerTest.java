@@ -0,0 +1,156 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessageHandler;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BrokerConsumerTest {
+  private static final String NODE_ID = "node";
+  private static final String OTHER_NODE_ID = "other-node";
+  private static final int POLL_INTERVAL = 1000;
+  private static final long END = 42;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private MessageLog messageLogMock;
+  @Mock private ForwardedMessageHandler handlerMock;
+  @Mock private BrokerNode nodeMock;
+  @Mock private WorkQueue workQueueMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Captor private ArgumentCaptor<ForwardedMessage> messageCaptor;
+
+  private Gson gson = new Gson();
+  private Path dataDir;
+  private BrokerConsumer consumer;
+
+  @Before
+  public void setUp() throws Exception {
+    when(configMock.broker().pollInterval()).thenReturn(POLL_INTERVAL);
+    when(messageLogMock.partitions()).thenReturn(1);
+    when(messageLogMock.endOffset(0)).thenReturn(END);
+    when(nodeMock.id()).thenReturn(NODE_ID);
+    when(workQueueMock.createQueue(1, "Broker-Consumer")).thenReturn(executorMock);
+    dataDir = tempFolder.getRoot().toPath();
+    consumer = newConsumer();
+  }
+
+  @Test
+  public void shouldStartFromEndOfLogAndSchedulePolling() throws Exception {
+    consumer.start();
+    consumer.poll();
+
+    verify(messageLogMock).read(0, END, BrokerConsumer.BATCH_SIZE);
+    verify(executorMock)
+        .scheduleWithFixedDelay(
+            any(Runnable.class), eq(0L), eq((long) POLL_INTERVAL), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldApplyMessagesFromOtherNodesOnly() throws Exception {
+    when(messageLogMock.read(0, END, BrokerConsumer.BATCH_SIZE))
+        .thenReturn(
+            ImmutableList.of(record(END + 10, OTHER_NODE_ID, "1"), record(END + 20, NODE_ID, "2")));
+    consumer.start();
+    consumer.poll();
+
+    verify(handlerMock).handle(messageCaptor.capture());
+    assertThat(messageCaptor.getValue().getId()).isEqualTo("1");
+    verify(messageLogMock).read(0, END + 20, BrokerConsumer.BATCH_SIZE);
+  }
+
+  @Test
+  public void shouldResumeFromStoredOffsetAfterRestart() throws Exception {
+    when(messageLogMock.read(0, END, BrokerConsumer.BATCH_SIZE))
+        .thenReturn(ImmutableList.of(record(END + 10, OTHER_NODE_ID, "1")));
+    consumer.start();
+    consumer.poll();
+    assertThat(Files.exists(dataDir.resolve(BrokerConsumer.OFFSETS_FILE))).isTrue();
+
+    consumer = newConsumer();
+    consumer.start();
+    consumer.poll();
+    verify(messageLogMock, times(2)).read(0, END + 10, BrokerConsumer.BATCH_SIZE);
+    verify(messageLogMock).read(0, END, BrokerConsumer.BATCH_SIZE);
+  }
+
+  @Test
+  public void shouldSkipMessagesWhichFailToApply() throws Exception {
+    when(messageLogMock.read(0, END, BrokerConsumer.BATCH_SIZE))
+        .thenReturn(
+            ImmutableList.of(
+                record(END + 10, OTHER_NODE_ID, "1"), record(END + 20, OTHER_NODE_ID, "2")));
+    doThrow(new RuntimeException()).doNothing().when(handlerMock).handle(any());
+    consumer.start();
+    consumer.poll();
+
+    verify(handlerMock, times(2)).handle(any());
+    verify(messageLogMock).read(anyInt(), eq(END + 20), anyInt());
+  }
+
+  @Test
+  public void shouldKeepPollingWhenLogCannotBeRead() throws Exception {
+    when(messageLogMock.read(anyInt(), anyLong(), anyInt())).thenThrow(new IOException());
+    consumer.start();
+    consumer.poll();
+    assertThat(Files.exists(dataDir.resolve(BrokerConsumer.OFFSETS_FILE))).isFalse();
+  }
+
+  private BrokerConsumer newConsumer() {
+    return new BrokerConsumer(
+        messageLogMock, handlerMock, nodeMock, configMock, workQueueMock, dataDir, gson);
+  }
+
+  private MessageLog.Record record(long nextOffset, String origin, String id) {
+    ForwardedMessage message = new ForwardedMessage(Type.EVICT, id, new JsonPrimitive("key"));
+    return new MessageLog.Record(
+        nextOffset, gson.toJson(new BrokerMessage(origin, message)).getBytes(UTF_8));
+  }
+}
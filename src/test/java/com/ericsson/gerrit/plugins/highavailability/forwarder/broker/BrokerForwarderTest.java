@@ -0,0 +1,104 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gson.Gson;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BrokerForwarderTest {
+  private static final int PARTITIONS = 4;
+  private static final String NODE_ID = "node";
+
+  @Mock private MessageLog messageLogMock;
+  @Mock private BrokerNode nodeMock;
+  @Captor private ArgumentCaptor<byte[]> dataCaptor;
+  @Captor private ArgumentCaptor<Integer> partitionCaptor;
+
+  private Gson gson = new Gson();
+  private BrokerForwarder forwarder;
+
+  @Before
+  public void setUp() {
+    when(messageLogMock.partitions()).thenReturn(PARTITIONS);
+    when(nodeMock.id()).thenReturn(NODE_ID);
+    forwarder =
+        new BrokerForwarder(
+            messageLogMock, nodeMock, gson, new CacheKeyCodecs(gson, DynamicMap.emptyMap()));
+  }
+
+  @Test
+  public void shouldPublishMessageWithOrigin() throws Exception {
+    assertThat(forwarder.indexChange("project", 1, new IndexEvent())).isTrue();
+
+    verify(messageLogMock).append(anyInt(), dataCaptor.capture());
+    BrokerMessage published = published(dataCaptor.getValue());
+    assertThat(published.getOrigin()).isEqualTo(NODE_ID);
+    assertThat(published.getMessage().getType()).isEqualTo(Type.INDEX_CHANGE);
+    assertThat(published.getMessage().getId()).isEqualTo("project~1");
+  }
+
+  @Test
+  public void shouldPublishMessagesAboutSameChangeToSamePartition() throws Exception {
+    forwarder.indexChange("project", 1, new IndexEvent());
+    forwarder.deleteChangeFromIndex(1, new IndexEvent());
+
+    verify(messageLogMock, times(2)).append(partitionCaptor.capture(), any());
+    assertThat(partitionCaptor.getAllValues().get(0))
+        .isEqualTo(partitionCaptor.getAllValues().get(1));
+    assertThat(partitionCaptor.getValue()).isLessThan(PARTITIONS);
+  }
+
+  @Test
+  public void shouldPublishProjectListUpdates() throws Exception {
+    assertThat(forwarder.addToProjectList("project")).isTrue();
+
+    verify(messageLogMock).append(anyInt(), dataCaptor.capture());
+    BrokerMessage published = published(dataCaptor.getValue());
+    assertThat(published.getMessage().getType()).isEqualTo(Type.ADD_TO_PROJECT_LIST);
+    assertThat(published.getMessage().getId()).isEqualTo("project");
+  }
+
+  @Test
+  public void shouldReportFailureWhenMessageCannotBePublished() throws Exception {
+    doThrow(new IOException()).when(messageLogMock).append(anyInt(), any());
+    assertThat(forwarder.evict("accounts", "key")).isFalse();
+    verify(messageLogMock).append(eq(Math.floorMod("cache/accounts".hashCode(), PARTITIONS)), any());
+  }
+
+  private BrokerMessage published(byte[] data) {
+    return gson.fromJson(new String(data, UTF_8), BrokerMessage.class);
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.ericsson.gerrit.plugins.highavailability.forwarder.broker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileMessageLogTest {
+  private static final int PARTITIONS = 2;
+  private static final int SEGMENT_SIZE = 32;
+  private static final long RETENTION = 60000;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  private Path sharedDir;
+  private FileMessageLog messageLog;
+
+  @Before
+  public void setUp() {
+    when(configMock.broker().partitions()).thenReturn(PARTITIONS);
+    when(configMock.broker().segmentSize()).thenReturn(SEGMENT_SIZE);
+    when(configMock.broker().retention()).thenReturn(RETENTION);
+    sharedDir = tempFolder.getRoot().toPath();
+    messageLog = new FileMessageLog(sharedDir, configMock);
+  }
+
+  @Test
+  public void shouldReadAppendedRecordsInOrder() throws Exception {
+    messageLog.append(0, bytes("1"));
+    messageLog.append(0, bytes("2"));
+
+    List<MessageLog.Record> records = messageLog.read(0, 0, 10);
+    assertThat(contents(records)).containsExactly("1", "2").inOrder();
+    assertThat(records.get(1).nextOffset()).isEqualTo(messageLog.endOffset(0));
+  }
+
+  @Test
+  public void shouldKeepPartitionsSeparate() throws Exception {
+    messageLog.append(0, bytes("1"));
+    messageLog.append(1, bytes("2"));
+
+    assertThat(contents(messageLog.read(0, 0, 10))).containsExactly("1");
+    assertThat(contents(messageLog.read(1, 0, 10))).containsExactly("2");
+  }
+
+  @Test
+  public void shouldResumeReadingFromOffset() throws Exception {
+    messageLog.append(0, bytes("1"));
+    messageLog.append(0, bytes("2"));
+    messageLog.append(0, bytes("3"));
+
+    List<MessageLog.Record> first = messageLog.read(0, 0, 2);
+    assertThat(contents(first)).containsExactly("1", "2").inOrder();
+    assertThat(contents(messageLog.read(0, first.get(1).nextOffset(), 10))).containsExactly("3");
+    assertThat(messageLog.read(0, messageLog.endOffset(0), 10)).isEmpty();
+  }
+
+  @Test
+  public void shouldReadRecordsAcrossSegments() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      messageLog.append(0, bytes("record-" + i));
+    }
+    assertThat(segmentFiles(0)).isGreaterThan(1);
+    assertThat(contents(messageLog.read(0, 0, 100))).hasSize(10);
+  }
+
+  @Test
+  public void shouldIgnorePartiallyWrittenRecord() throws Exception {
+    messageLog.append(0, bytes("1"));
+    long end = messageLog.endOffset(0);
+    Path segment =
+        sharedDir.resolve(FileMessageLog.BROKER_DIR).resolve("0").resolve(segmentName(0));
+    Files.write(segment, new byte[] {0, 0, 0, 8, 'x'}, StandardOpenOption.APPEND);
+
+    List<MessageLog.Record> records = messageLog.read(0, 0, 10);
+    assertThat(contents(records)).containsExactly("1");
+    assertThat(records.get(0).nextOffset()).isEqualTo(end);
+  }
+
+  @Test
+  public void shouldDeleteExpiredSegmentsWhenRolling() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      messageLog.append(0, bytes("record-" + i));
+    }
+    File[] segments = segments(0);
+    for (File segment : segments) {
+      segment.setLastModified(System.currentTimeMillis() - 2 * RETENTION);
+    }
+
+    messageLog.append(0, bytes("record-3"));
+    assertThat(segmentFiles(0)).isLessThan(segments.length + 1);
+    assertThat(contents(messageLog.read(0, 0, 100))).contains("record-3");
+  }
+
+  @Test
+  public void shouldReturnNothingForEmptyPartition() throws Exception {
+    assertThat(messageLog.read(1, 0, 10)).isEmpty();
+    assertThat(messageLog.endOffset(1)).isEqualTo(0);
+  }
+
+  private File[] segments(int partition) {
+    return sharedDir
+        .resolve(FileMessageLog.BROKER_DIR)
+        .resolve(Integer.toString(partition))
+        .toFile()
+        .listFiles((dir, name) -> name.endsWith(FileMessageLog.SEGMENT_SUFFIX));
+  }
+
+  private int segmentFiles(int partition) {
+    return segments(partition).length;
+  }
+
+  private static String segmentName(long base) {
+    return String.format("%019d%s", base, FileMessageLog.SEGMENT_SUFFIX);
+  }
+
+  private static byte[] bytes(String content) {
+    return content.getBytes(UTF_8);
+  }
+
+  private static List<String> contents(List<MessageLog.Record> records) {
+    return records.stream().map(r -> new String(r.data(), UTF_8)).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright (C) 2015 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration.AckPolicy;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class AcknowledgementsTest {
+
+  @Test
+  public void shouldComputeRequiredDeliveries() {
+    assertThat(Acknowledgements.required(AckPolicy.NONE, 4)).isEqualTo(0);
+    assertThat(Acknowledgements.required(AckPolicy.ANY, 4)).isEqualTo(1);
+    assertThat(Acknowledgements.required(AckPolicy.ANY, 0)).isEqualTo(0);
+    assertThat(Acknowledgements.required(AckPolicy.QUORUM, 1)).isEqualTo(1);
+    assertThat(Acknowledgements.required(AckPolicy.QUORUM, 2)).isEqualTo(1);
+    assertThat(Acknowledgements.required(AckPolicy.QUORUM, 3)).isEqualTo(2);
+    assertThat(Acknowledgements.required(AckPolicy.QUORUM, 4)).isEqualTo(2);
+    assertThat(Acknowledgements.required(AckPolicy.ALL, 4)).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldNotWaitForDeliveriesWithNonePolicy() {
+    CompletableFuture<Boolean> pending = new CompletableFuture<>();
+    assertThat(Acknowledgements.await(AckPolicy.NONE, ImmutableList.of(pending)).join()).isTrue();
+  }
+
+  @Test
+  public void shouldAcknowledgeAsSoonAsOnePeerReceivedWithAnyPolicy() {
+    CompletableFuture<Boolean> fast = new CompletableFuture<>();
+    CompletableFuture<Boolean> slow = new CompletableFuture<>();
+    CompletableFuture<Boolean> result =
+        Acknowledgements.await(AckPolicy.ANY, ImmutableList.of(fast, slow));
+
+    assertThat(result.isDone()).isFalse();
+    fast.complete(true);
+    assertThat(result.join()).isTrue();
+  }
+
+  @Test
+  public void shouldFailAsSoonAsQuorumCannotBeReached() {
+    List<CompletableFuture<Boolean>> deliveries =
+        ImmutableList.of(
+            new CompletableFuture<>(), new CompletableFuture<>(), new CompletableFuture<>());
+    CompletableFuture<Boolean> result = Acknowledgements.await(AckPolicy.QUORUM, deliveries);
+
+    deliveries.get(0).complete(false);
+    assertThat(result.isDone()).isFalse();
+    deliveries.get(1).completeExceptionally(new RuntimeException());
+    assertThat(result.join()).isFalse();
+  }
+
+  @Test
+  public void shouldRequireEveryPeerWithAllPolicy() {
+    CompletableFuture<Boolean> first = new CompletableFuture<>();
+    CompletableFuture<Boolean> second = new CompletableFuture<>();
+    CompletableFuture<Boolean> result =
+        Acknowledgements.await(AckPolicy.ALL, ImmutableList.of(first, second));
+
+    first.complete(true);
+    assertThat(result.isDone()).isFalse();
+    second.complete(true);
+    assertThat(result.join()).isTrue();
+  }
+
+  @Test
+  public void shouldAcknowledgeWhenThereIsNoPeer() {
+    assertThat(Acknowledgements.await(AckPolicy.ALL, ImmutableList.of()).join()).isTrue();
+  }
+}
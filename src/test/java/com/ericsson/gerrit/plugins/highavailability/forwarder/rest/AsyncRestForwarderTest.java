@@ -0,0 +1,216 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.AckPolicy;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.HttpTransport;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.TestEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.inject.Provider;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncRestForwarderTest {
+  private static final String URL = "http://fake.com";
+  private static final String PLUGIN_NAME = "high-availability";
+  private static final String EMPTY_MSG = "";
+  private static final boolean SUCCESSFUL = true;
+  private static final boolean FAILED = false;
+  private static final int MAX_TRIES = 3;
+  private static final int RETRY_INTERVAL = 10;
+
+  private static final int ACCOUNT_NUMBER = 2;
+  private static final String INDEX_ACCOUNT_ENDPOINT =
+      Joiner.on("/").join(URL, "plugins", PLUGIN_NAME, "index/account", ACCOUNT_NUMBER);
+  private static final int CHANGE_NUMBER = 1;
+  private static final String DELETE_CHANGE_ENDPOINT =
+      Joiner.on("/").join(URL, "plugins", PLUGIN_NAME, "index/change", "~" + CHANGE_NUMBER);
+  private static final Event event = new TestEvent();
+  private static final String EVENT_ENDPOINT =
+      Joiner.on("/").join(URL, "plugins", PLUGIN_NAME, "event", event.type);
+  private static final String BATCH_ENDPOINT =
+      Joiner.on("/").join(URL, "plugins", PLUGIN_NAME, "batch", 1);
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private AsyncHttpSession httpSessionMock;
+  @Mock private Provider<Set<PeerInfo>> peersMock;
+  @Mock private WorkQueue workQueueMock;
+  @Mock private ScheduledExecutorService executorMock;
+
+  private AsyncRestForwarder forwarder;
+
+  @Before
+  public void setUp() {
+    when(peersMock.get()).thenReturn(ImmutableSet.of(new PeerInfo(URL)));
+    when(workQueueMock.createQueue(1, "Forward-Retry")).thenReturn(executorMock);
+    when(configMock.http().ackPolicy()).thenReturn(AckPolicy.ALL);
+    forwarder = createForwarder();
+  }
+
+  @Test
+  public void testIndexAccountOK() {
+    when(httpSessionMock.post(eq(INDEX_ACCOUNT_ENDPOINT), any()))
+        .thenReturn(completed(new HttpResult(SUCCESSFUL, EMPTY_MSG)));
+    assertThat(forwarder.indexAccount(ACCOUNT_NUMBER, new IndexEvent()).join()).isTrue();
+  }
+
+  @Test
+  public void testDeleteChangeOK() {
+    when(httpSessionMock.delete(DELETE_CHANGE_ENDPOINT))
+        .thenReturn(completed(new HttpResult(SUCCESSFUL, EMPTY_MSG)));
+    assertThat(forwarder.deleteChangeFromIndex(CHANGE_NUMBER, new IndexEvent()).join()).isTrue();
+  }
+
+  @Test
+  public void testRequestIsNotCompletedWhileWaitingForResponse() {
+    CompletableFuture<HttpResult> response = new CompletableFuture<>();
+    when(httpSessionMock.post(eq(EVENT_ENDPOINT), any())).thenReturn(response);
+
+    CompletableFuture<Boolean> result = forwarder.send(event);
+    assertThat(result.isDone()).isFalse();
+
+    response.complete(new HttpResult(SUCCESSFUL, EMPTY_MSG));
+    assertThat(result.join()).isTrue();
+  }
+
+  @Test
+  public void testRetryIsScheduledOnFailure() {
+    when(configMock.http().maxTries()).thenReturn(MAX_TRIES);
+    when(configMock.http().retryInterval()).thenReturn(RETRY_INTERVAL);
+    when(httpSessionMock.post(eq(EVENT_ENDPOINT), any()))
+        .thenReturn(completed(new HttpResult(FAILED, EMPTY_MSG)))
+        .thenReturn(completed(new HttpResult(SUCCESSFUL, EMPTY_MSG)));
+    runScheduledTasksImmediately();
+
+    assertThat(forwarder.send(event).join()).isTrue();
+    verify(executorMock)
+        .schedule(any(Runnable.class), eq((long) RETRY_INTERVAL), eq(TimeUnit.MILLISECONDS));
+    verify(httpSessionMock, times(2)).post(eq(EVENT_ENDPOINT), any());
+  }
+
+  @Test
+  public void testGiveUpAfterMaxTries() {
+    when(configMock.http().maxTries()).thenReturn(MAX_TRIES);
+    when(configMock.http().retryInterval()).thenReturn(RETRY_INTERVAL);
+    when(httpSessionMock.post(eq(EVENT_ENDPOINT), any()))
+        .thenAnswer(invocation -> failed(new IOException()));
+    runScheduledTasksImmediately();
+
+    assertThat(forwarder.send(event).join()).isFalse();
+    verify(httpSessionMock, times(MAX_TRIES)).post(eq(EVENT_ENDPOINT), any());
+  }
+
+  @Test
+  public void testNoRetryOnUnrecoverableError() {
+    when(configMock.http().maxTries()).thenReturn(MAX_TRIES);
+    when(httpSessionMock.post(eq(EVENT_ENDPOINT), any()))
+        .thenReturn(failed(new SSLException("BAD")));
+
+    assertThat(forwarder.send(event).join()).isFalse();
+    verify(executorMock, never()).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void testMessageIsSentAsBinaryFrameWithHttp2() throws Exception {
+    when(configMock.http().transport()).thenReturn(HttpTransport.HTTP2);
+    forwarder = createForwarder();
+    ArgumentCaptor<byte[]> content = ArgumentCaptor.forClass(byte[].class);
+    when(httpSessionMock.post(
+            eq(BATCH_ENDPOINT), content.capture(), eq(ForwardedMessageCodec.MEDIA_TYPE)))
+        .thenReturn(completed(new HttpResult(SUCCESSFUL, EMPTY_MSG)));
+
+    assertThat(forwarder.evict("accounts", "key").join()).isTrue();
+
+    List<ForwardedMessage> messages =
+        ForwardedMessageCodec.decode(new ByteArrayInputStream(content.getValue()));
+    assertThat(messages).hasSize(1);
+    assertThat(messages.get(0).getType()).isEqualTo(Type.EVICT);
+    assertThat(messages.get(0).getId()).isEqualTo("accounts");
+  }
+
+  @Test
+  public void testStopShutsDownRetriesAndClient() {
+    forwarder.stop();
+    verify(executorMock).shutdownNow();
+    verify(httpSessionMock).stop();
+  }
+
+  private AsyncRestForwarder createForwarder() {
+    Gson gson = new Gson();
+    return new AsyncRestForwarder(
+        httpSessionMock,
+        PLUGIN_NAME,
+        configMock,
+        peersMock,
+        gson,
+        new CacheKeyCodecs(gson, DynamicMap.emptyMap()),
+        workQueueMock);
+  }
+
+  private void runScheduledTasksImmediately() {
+    when(executorMock.schedule(any(Runnable.class), anyLong(), any()))
+        .thenAnswer(
+            invocation -> {
+              invocation.<Runnable>getArgument(0).run();
+              return null;
+            });
+  }
+
+  private static CompletableFuture<HttpResult> completed(HttpResult result) {
+    return CompletableFuture.completedFuture(result);
+  }
+
+  private static CompletableFuture<HttpResult> failed(Throwable e) {
+    CompletableFuture<HttpResult> result = new CompletableFuture<>();
+    result.completeExceptionally(e);
+    return result;
+  }
+}
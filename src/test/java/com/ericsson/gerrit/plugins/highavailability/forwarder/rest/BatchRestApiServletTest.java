@@ -0,0 +1,313 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.SC_TOO_MANY_REQUESTS;
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
+import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheNotFoundException;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.IndexTask;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.Priority;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchRestApiServletTest {
+  private static final String BATCH_URI = "/plugins/high-availability/batch/1";
+  private static final String ERR_MSG = "some error";
+
+  @Mock private ForwardedMessageHandler handlerMock;
+  @Mock private ForwardedIndexingQueue queueMock;
+  @Mock private HttpServletRequest requestMock;
+  @Mock private HttpServletResponse responseMock;
+  private final Gson gson = new Gson();
+  private BatchRestApiServlet servlet;
+
+  @Before
+  public void setUp() {
+    servlet = new BatchRestApiServlet(handlerMock, queueMock, gson);
+    when(requestMock.getRequestURI()).thenReturn(BATCH_URI);
+  }
+
+  @Test
+  public void shouldHandleEveryMessageOfTheBatch() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.EVICT, "accounts", gson.toJsonTree("key")));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+
+    servlet.doPost(requestMock, responseMock);
+
+    InOrder inOrder = inOrder(handlerMock);
+    inOrder.verify(handlerMock).indexChanges(argThat(ids("foo~1")));
+    inOrder.verify(handlerMock).handle(argThat(m -> m.getType() == Type.EVICT));
+    verify(responseMock).setStatus(SC_NO_CONTENT);
+  }
+
+  @Test
+  public void shouldIndexConsecutiveChangesAtOnce() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~2", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.DELETE_CHANGE, "~3", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_CHANGE, "bar~4", gson.toJsonTree(new IndexEvent())));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+
+    servlet.doPost(requestMock, responseMock);
+
+    InOrder inOrder = inOrder(handlerMock);
+    inOrder.verify(handlerMock).indexChanges(argThat(ids("foo~1", "foo~2")));
+    inOrder.verify(handlerMock).handle(argThat(m -> m.getType() == Type.DELETE_CHANGE));
+    inOrder.verify(handlerMock).indexChanges(argThat(ids("bar~4")));
+    verify(responseMock).setStatus(SC_NO_CONTENT);
+  }
+
+  @Test
+  public void shouldReportEveryChangeAsFailedWhenIndexingChangesFails() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~2", gson.toJsonTree(new IndexEvent())));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+    doThrow(new IOException(ERR_MSG)).when(handlerMock).indexChanges(any());
+
+    servlet.doPost(requestMock, responseMock);
+
+    verify(responseMock).setIntHeader(HttpResponseHandler.PROCESSED_MESSAGES, 0);
+    verify(responseMock).sendError(eq(SC_CONFLICT), eq("message 1 of 2 of batch 1 failed"));
+  }
+
+  @Test
+  public void shouldHandleBinaryEncodedBatch() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_ACCOUNT, "1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.EVICT, "accounts", gson.toJsonTree("key")));
+    byte[] encoded = ForwardedMessageCodec.encode(batch);
+    when(requestMock.getContentType()).thenReturn(ForwardedMessageCodec.MEDIA_TYPE);
+    when(requestMock.getContentLengthLong()).thenReturn((long) encoded.length);
+    when(requestMock.getInputStream()).thenReturn(inputStream(encoded));
+
+    servlet.doPost(requestMock, responseMock);
+
+    ArgumentCaptor<ForwardedMessage> captor = ArgumentCaptor.forClass(ForwardedMessage.class);
+    verify(handlerMock, times(2)).handle(captor.capture());
+    assertThat(captor.getAllValues().get(0).getType()).isEqualTo(Type.INDEX_ACCOUNT);
+    assertThat(captor.getAllValues().get(1).getId()).isEqualTo("accounts");
+    verify(responseMock).setStatus(SC_NO_CONTENT);
+  }
+
+  @Test
+  public void shouldReportConflictWhenSomeMessagesFail() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_GROUP, "uuid", gson.toJsonTree(new IndexEvent())));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+    doThrow(new IOException(ERR_MSG)).when(handlerMock).handle(any());
+
+    servlet.doPost(requestMock, responseMock);
+
+    verify(responseMock).setIntHeader(HttpResponseHandler.PROCESSED_MESSAGES, 0);
+    verify(responseMock).sendError(eq(SC_CONFLICT), eq("message 1 of 1 of batch 1 failed"));
+  }
+
+  @Test
+  public void shouldStopAtFailedMessageAndReportProcessedOnes() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_GROUP, "uuid", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.EVICT, "accounts", gson.toJsonTree("key")));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+    doThrow(new IOException(ERR_MSG))
+        .when(handlerMock)
+        .handle(argThat(m -> m.getType() == Type.INDEX_GROUP));
+
+    servlet.doPost(requestMock, responseMock);
+
+    verify(handlerMock, never()).handle(argThat(m -> m.getType() == Type.EVICT));
+    verify(responseMock).setIntHeader(HttpResponseHandler.PROCESSED_MESSAGES, 1);
+    verify(responseMock).sendError(eq(SC_CONFLICT), eq("message 2 of 3 of batch 1 failed"));
+  }
+
+  @Test
+  public void shouldSkipMessagesWhichCanNeverBeProcessed() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.EVICT, "unknown", gson.toJsonTree("key")),
+            new ForwardedMessage(Type.INDEX_ACCOUNT, "1", gson.toJsonTree(new IndexEvent())));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+    doThrow(new CacheNotFoundException("gerrit", "unknown"))
+        .when(handlerMock)
+        .handle(argThat(m -> m.getType() == Type.EVICT));
+
+    servlet.doPost(requestMock, responseMock);
+
+    verify(handlerMock).handle(argThat(m -> m.getType() == Type.INDEX_ACCOUNT));
+    verify(responseMock).setStatus(SC_NO_CONTENT);
+  }
+
+  @Test
+  public void shouldQueueIndexingMessagesByPriority() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~2", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.DELETE_CHANGE, "~3", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_ACCOUNT, "1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.EVICT, "accounts", gson.toJsonTree("key")));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+    when(queueMock.isEnabled()).thenReturn(true);
+    ArgumentCaptor<IndexTask> taskCaptor = ArgumentCaptor.forClass(IndexTask.class);
+    when(queueMock.offer(any(), anyString(), taskCaptor.capture())).thenReturn(true);
+
+    servlet.doPost(requestMock, responseMock);
+
+    InOrder inOrder = inOrder(queueMock);
+    inOrder.verify(queueMock).offer(eq(Priority.BULK), anyString(), any());
+    inOrder.verify(queueMock).offer(eq(Priority.DELETE), anyString(), any());
+    inOrder.verify(queueMock).offer(eq(Priority.INTERACTIVE), anyString(), any());
+    verify(handlerMock).handle(argThat(m -> m.getType() == Type.EVICT));
+    verify(handlerMock, never()).indexChanges(any());
+    verify(responseMock).setStatus(SC_ACCEPTED);
+
+    for (IndexTask task : taskCaptor.getAllValues()) {
+      task.run();
+    }
+    verify(handlerMock).indexChanges(argThat(ids("foo~1", "foo~2")));
+    verify(handlerMock).index(argThat(m -> m.getType() == Type.DELETE_CHANGE));
+    verify(handlerMock).index(argThat(m -> m.getType() == Type.INDEX_ACCOUNT));
+  }
+
+  @Test
+  public void shouldAskToRetryRemainingMessagesWhenQueueIsFull() throws Exception {
+    List<ForwardedMessage> batch =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_GROUP, "uuid", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.INDEX_ACCOUNT, "1", gson.toJsonTree(new IndexEvent())),
+            new ForwardedMessage(Type.EVICT, "accounts", gson.toJsonTree("key")));
+    when(requestMock.getReader())
+        .thenReturn(new BufferedReader(new StringReader(gson.toJson(batch))));
+    when(queueMock.isEnabled()).thenReturn(true);
+    when(queueMock.offer(eq(Priority.INTERACTIVE), anyString(), any()))
+        .thenReturn(true)
+        .thenReturn(false);
+
+    servlet.doPost(requestMock, responseMock);
+
+    verify(handlerMock, never()).handle(any());
+    verify(responseMock).setIntHeader(HttpResponseHandler.PROCESSED_MESSAGES, 1);
+    verify(responseMock).setIntHeader(HttpResponseHandler.RETRY_AFTER, 1);
+    verify(responseMock).sendError(eq(SC_TOO_MANY_REQUESTS), anyString());
+  }
+
+  @Test
+  public void shouldReportBadRequestWhenBatchCannotBeRead() throws Exception {
+    doThrow(new IOException(ERR_MSG)).when(requestMock).getReader();
+    servlet.doPost(requestMock, responseMock);
+    verify(responseMock).sendError(SC_BAD_REQUEST, ERR_MSG);
+  }
+
+  @Test
+  public void shouldReportBadRequestWhenFrameIsLongerThanRequest() throws Exception {
+    byte[] encoded =
+        ForwardedMessageCodec.encode(
+            ImmutableList.of(new ForwardedMessage(Type.EVICT, "accounts", gson.toJsonTree("key"))));
+    when(requestMock.getContentType()).thenReturn(ForwardedMessageCodec.MEDIA_TYPE);
+    when(requestMock.getContentLengthLong()).thenReturn(encoded.length - 1L);
+    when(requestMock.getInputStream()).thenReturn(inputStream(encoded));
+
+    servlet.doPost(requestMock, responseMock);
+
+    verify(handlerMock, never()).handle(any());
+    verify(responseMock).sendError(eq(SC_BAD_REQUEST), anyString());
+  }
+
+  private static ArgumentMatcher<List<ForwardedMessage>> ids(String... ids) {
+    return messages ->
+        messages.stream()
+            .map(ForwardedMessage::getId)
+            .collect(Collectors.toList())
+            .equals(Arrays.asList(ids));
+  }
+
+  private static ServletInputStream inputStream(byte[] content) {
+    ByteArrayInputStream in = new ByteArrayInputStream(content);
+    return new ServletInputStream() {
+      @Override
+      public int read() {
+        return in.read();
+      }
+
+      @Override
+      public boolean isFinished() {
+        return in.available() == 0;
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setReadListener(ReadListener readListener) {}
+    };
+  }
+}
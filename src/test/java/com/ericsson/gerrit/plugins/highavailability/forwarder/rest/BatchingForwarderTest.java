@@ -0,0 +1,136 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchingForwarderTest {
+  private static final String PROJECT_NAME = "test/project";
+  private static final int CHANGE_NUMBER = 1;
+  private static final int MAX_SIZE = 2;
+  private static final int MAX_DELAY = 100;
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private RestForwarder restForwarderMock;
+  @Mock private WorkQueue workQueueMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Mock private ScheduledFuture<?> futureMock;
+  @Captor private ArgumentCaptor<List<ForwardedMessage>> batchCaptor;
+
+  private BatchingForwarder forwarder;
+
+  @Before
+  public void setUp() {
+    when(configMock.batch().maxSize()).thenReturn(MAX_SIZE);
+    when(configMock.batch().maxDelay()).thenReturn(MAX_DELAY);
+    when(workQueueMock.createQueue(1, "Forward-Batch")).thenReturn(executorMock);
+    Gson gson = new Gson();
+    forwarder =
+        new BatchingForwarder(
+            restForwarderMock,
+            configMock,
+            workQueueMock,
+            gson,
+            new CacheKeyCodecs(gson, DynamicMap.emptyMap()));
+  }
+
+  @Test
+  public void shouldForwardBatchWhenMaxSizeIsReached() {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+    when(restForwarderMock.forwardBatch(eq(1L), any())).thenReturn(true);
+
+    assertThat(forwarder.indexChange(PROJECT_NAME, CHANGE_NUMBER, new IndexEvent())).isTrue();
+    assertThat(forwarder.deleteChangeFromIndex(CHANGE_NUMBER, new IndexEvent())).isTrue();
+
+    verify(restForwarderMock).forwardBatch(eq(1L), batchCaptor.capture());
+    List<ForwardedMessage> batch = batchCaptor.getValue();
+    assertThat(batch).hasSize(2);
+    assertThat(batch.get(0).getType()).isEqualTo(Type.INDEX_CHANGE);
+    assertThat(batch.get(0).getId()).isEqualTo(PROJECT_NAME + "~" + CHANGE_NUMBER);
+    assertThat(batch.get(1).getType()).isEqualTo(Type.DELETE_CHANGE);
+    assertThat(batch.get(1).getId()).isEqualTo("~" + CHANGE_NUMBER);
+  }
+
+  @Test
+  public void shouldScheduleFlushWhenBatchIsNotFull() {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+
+    assertThat(forwarder.evict("accounts", "key")).isTrue();
+
+    verify(executorMock)
+        .schedule(any(Runnable.class), eq((long) MAX_DELAY), eq(TimeUnit.MILLISECONDS));
+    verify(restForwarderMock, never()).forwardBatch(anyLong(), any());
+
+    forwarder.flush();
+    verify(restForwarderMock).forwardBatch(eq(1L), batchCaptor.capture());
+    assertThat(batchCaptor.getValue()).hasSize(1);
+    assertThat(batchCaptor.getValue().get(0).getType()).isEqualTo(Type.EVICT);
+  }
+
+  @Test
+  public void shouldNotForwardEmptyBatch() {
+    forwarder.flush();
+    verify(restForwarderMock, never()).forwardBatch(anyLong(), any());
+  }
+
+  @Test
+  public void shouldFlushPendingMessagesOnStop() {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+
+    forwarder.indexAccount(2, new IndexEvent());
+    forwarder.stop();
+
+    verify(restForwarderMock).forwardBatch(eq(1L), batchCaptor.capture());
+    assertThat(batchCaptor.getValue().get(0).getType()).isEqualTo(Type.INDEX_ACCOUNT);
+    verify(executorMock).shutdown();
+  }
+
+  @Test
+  public void shouldForwardProjectListUpdatesWithoutBatching() {
+    when(restForwarderMock.addToProjectList(PROJECT_NAME)).thenReturn(true);
+    assertThat(forwarder.addToProjectList(PROJECT_NAME)).isTrue();
+    verify(restForwarderMock, never()).forwardBatch(anyLong(), any());
+  }
+}
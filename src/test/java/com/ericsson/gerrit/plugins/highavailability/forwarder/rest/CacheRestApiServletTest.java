@@ -22,8 +22,11 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheNotFoundException;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedCacheEvictionHandler;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gson.Gson;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -46,7 +49,9 @@ public class CacheRestApiServletTest {
   @Before
   public void setUp() {
     servlet =
-        new CacheRestApiServlet(forwardedCacheEvictionHandlerMock, new GsonParser(new Gson()));
+        new CacheRestApiServlet(
+            forwardedCacheEvictionHandlerMock,
+            new CacheKeyCodecs(new Gson(), DynamicMap.emptyMap()));
   }
 
   @Test
@@ -91,6 +96,35 @@ public class CacheRestApiServletTest {
     verifyResponseIsOK();
   }
 
+  @Test
+  public void flushCacheWhenKeyCannotBeDecoded() throws Exception {
+    when(requestMock.getPathInfo()).thenReturn("/my-plugin.my-cache");
+    when(requestMock.getReader()).thenReturn(readerMock);
+    when(readerMock.readLine()).thenReturn("{\"name\":\"abc\"}");
+
+    verifyResponseIsOK();
+    verify(forwardedCacheEvictionHandlerMock).flush("my-plugin.my-cache");
+  }
+
+  @Test
+  public void evictSeveralKeys() throws Exception {
+    when(requestMock.getPathInfo()).thenReturn("/" + Constants.PROJECTS + "/keys");
+    when(requestMock.getReader()).thenReturn(readerMock);
+    when(readerMock.readLine()).thenReturn("[\"abc\",\"def\",\"abc\"]");
+
+    verifyResponseIsOK();
+    verify(forwardedCacheEvictionHandlerMock)
+        .evictAll(Constants.PROJECTS, ImmutableSet.of("abc", "def"));
+  }
+
+  @Test
+  public void flushCache() throws Exception {
+    when(requestMock.getPathInfo()).thenReturn("/" + Constants.PROJECTS + "/flush");
+
+    verifyResponseIsOK();
+    verify(forwardedCacheEvictionHandlerMock).flush(Constants.PROJECTS);
+  }
+
   @Test
   public void badRequest() throws Exception {
     when(requestMock.getPathInfo()).thenReturn("/someCache");
@@ -128,13 +162,15 @@ public class CacheRestApiServletTest {
     }
     when(requestMock.getReader()).thenReturn(readerMock);
 
-    if (Constants.PROJECTS.equals(cacheName)) {
-      when(readerMock.readLine()).thenReturn("abc");
+    if (Constants.ACCOUNTS.equals(cacheName) || Constants.GROUPS.equals(cacheName)) {
+      when(readerMock.readLine()).thenReturn("{\"id\":1}");
     } else if (Constants.GROUPS_BYINCLUDE.equals(cacheName)
         || Constants.GROUPS_MEMBERS.equals(cacheName)) {
       when(readerMock.readLine()).thenReturn("{\"uuid\":\"abcd1234\"}");
-    } else {
+    } else if (Constants.PROJECT_LIST.equals(cacheName)) {
       when(readerMock.readLine()).thenReturn("{}");
+    } else {
+      when(readerMock.readLine()).thenReturn("abc");
     }
   }
 }
@@ -0,0 +1,129 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.TestEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ForwardedMessageCodecTest {
+  private final Gson gson = new Gson();
+
+  @Test
+  public void shouldDecodeEncodedMessages() throws Exception {
+    IndexEvent indexEvent = new IndexEvent();
+    indexEvent.eventCreatedOn = 1234567890;
+    indexEvent.targetSha = "f0e1d2c3";
+    List<ForwardedMessage> messages =
+        ImmutableList.of(
+            new ForwardedMessage(Type.INDEX_CHANGE, "foo~1", gson.toJsonTree(indexEvent)),
+            new ForwardedMessage(
+                Type.EVICT, "projects", gson.toJsonTree(ImmutableMap.of("project", "foo"))),
+            new ForwardedMessage(Type.EVENT, "test-event", gson.toJsonTree(new TestEvent())));
+
+    assertThat(gson.toJson(roundTrip(messages))).isEqualTo(gson.toJson(messages));
+  }
+
+  @Test
+  public void shouldDecodeEveryKindOfValue() throws Exception {
+    JsonArray numbers = new JsonArray();
+    numbers.add(0);
+    numbers.add(-1);
+    numbers.add(Long.MIN_VALUE);
+    numbers.add(Long.MAX_VALUE);
+    numbers.add(new BigDecimal("1.5"));
+    JsonObject payload = new JsonObject();
+    payload.add("numbers", numbers);
+    payload.addProperty("yes", true);
+    payload.addProperty("no", false);
+    payload.addProperty("text", "non-ascii \u00fc");
+    payload.add("nothing", JsonNull.INSTANCE);
+
+    ForwardedMessage decoded =
+        roundTrip(ImmutableList.of(new ForwardedMessage(Type.EVICT, "cache", payload))).get(0);
+
+    assertThat(decoded.getPayload()).isEqualTo(payload);
+  }
+
+  @Test
+  public void shouldDecodeEmptyInputAsNoMessages() throws Exception {
+    assertThat(ForwardedMessageCodec.decode(new ByteArrayInputStream(new byte[0]))).isEmpty();
+  }
+
+  @Test
+  public void shouldFailOnTruncatedInput() {
+    byte[] encoded =
+        ForwardedMessageCodec.encode(
+            ImmutableList.of(new ForwardedMessage(Type.EVICT, "cache", gson.toJsonTree("key"))));
+    byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+    assertThrows(
+        IOException.class, () -> ForwardedMessageCodec.decode(new ByteArrayInputStream(truncated)));
+  }
+
+  @Test
+  public void shouldFailOnInvalidMessageType() {
+    byte[] invalid = {3, (byte) 0xFF, 0, 0};
+    assertThrows(
+        IOException.class, () -> ForwardedMessageCodec.decode(new ByteArrayInputStream(invalid)));
+  }
+
+  @Test
+  public void shouldFailOnFrameLongerThanInput() {
+    byte[] encoded =
+        ForwardedMessageCodec.encode(
+            ImmutableList.of(new ForwardedMessage(Type.EVICT, "cache", gson.toJsonTree("key"))));
+    assertThrows(
+        IOException.class,
+        () ->
+            ForwardedMessageCodec.decode(
+                new ByteArrayInputStream(encoded), encoded.length - 1));
+  }
+
+  @Test
+  public void shouldFailOnHugeFrameLength() {
+    byte[] invalid = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0};
+    assertThrows(
+        IOException.class,
+        () -> ForwardedMessageCodec.decode(new ByteArrayInputStream(invalid), invalid.length));
+  }
+
+  @Test
+  public void shouldFailOnInvalidDecimal() {
+    byte[] invalid = {6, 0, 0, 4, 3, 'a', 'b', 'c'};
+    assertThrows(
+        IOException.class, () -> ForwardedMessageCodec.decode(new ByteArrayInputStream(invalid)));
+  }
+
+  private static List<ForwardedMessage> roundTrip(List<ForwardedMessage> messages)
+      throws IOException {
+    return ForwardedMessageCodec.decode(
+        new ByteArrayInputStream(ForwardedMessageCodec.encode(messages)));
+  }
+}
@@ -0,0 +1,187 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ForwardingJournalTest {
+  private static final String PEER = "http://peer:8080";
+  private static final String OTHER_PEER = "http://other-peer:8080";
+  private static final int SEGMENT_SIZE = 256;
+  private static final int MAX_SEGMENTS = 3;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  private Path dataDir;
+  private ForwardingJournal journal;
+
+  @Before
+  public void setUp() throws Exception {
+    when(configMock.journal().segmentSize()).thenReturn(SEGMENT_SIZE);
+    when(configMock.journal().maxSegments()).thenReturn(MAX_SEGMENTS);
+    dataDir = tempFolder.getRoot().toPath();
+    journal = openJournal();
+  }
+
+  @After
+  public void tearDown() {
+    journal.close();
+  }
+
+  @Test
+  public void shouldReadAppendedMessagesInOrder() throws Exception {
+    journal.append(message("1"));
+    journal.append(message("2"));
+
+    List<ForwardingJournal.Entry> entries = journal.read(journal.head(), 10);
+    assertThat(ids(entries)).containsExactly("1", "2").inOrder();
+    assertThat(entries.get(1).nextOffset()).isEqualTo(journal.tail());
+  }
+
+  @Test
+  public void shouldReadAtMostTheRequestedNumberOfMessages() throws Exception {
+    journal.append(message("1"));
+    journal.append(message("2"));
+    journal.append(message("3"));
+
+    List<ForwardingJournal.Entry> first = journal.read(journal.head(), 2);
+    assertThat(ids(first)).containsExactly("1", "2").inOrder();
+    assertThat(ids(journal.read(first.get(1).nextOffset(), 2))).containsExactly("3");
+  }
+
+  @Test
+  public void shouldReadMessagesAcrossSegments() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      journal.append(message(String.valueOf(i)));
+    }
+    assertThat(segmentFiles()).isGreaterThan(1);
+    assertThat(journal.read(journal.head(), 100)).hasSize(10);
+  }
+
+  @Test
+  public void shouldStartFromOldestMessageForUnknownPeer() throws Exception {
+    long offset = journal.append(message("1"));
+    assertThat(journal.ackedOffset(PEER)).isEqualTo(offset);
+  }
+
+  @Test
+  public void shouldRecoverMessagesAndAcknowledgedOffsetsAfterRestart() throws Exception {
+    journal.append(message("1"));
+    long second = journal.append(message("2"));
+    journal.ack(PEER, second);
+    journal.close();
+
+    journal = openJournal();
+    assertThat(journal.ackedOffset(PEER)).isEqualTo(second);
+    assertThat(ids(journal.read(journal.ackedOffset(PEER), 10))).containsExactly("2");
+
+    journal.append(message("3"));
+    assertThat(ids(journal.read(journal.ackedOffset(PEER), 10))).containsExactly("2", "3");
+  }
+
+  @Test
+  public void shouldDeleteSegmentsAcknowledgedByAllPeers() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      journal.append(message(String.valueOf(i)));
+    }
+    long tail = journal.tail();
+    journal.ack(PEER, tail);
+    journal.ack(OTHER_PEER, journal.head());
+
+    journal.trim(ImmutableSet.of(PEER, OTHER_PEER));
+    assertThat(journal.read(journal.head(), 10)).hasSize(6);
+
+    journal.ack(OTHER_PEER, tail);
+    journal.trim(ImmutableSet.of(PEER, OTHER_PEER));
+    assertThat(segmentFiles()).isEqualTo(1);
+    assertThat(journal.head()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void shouldNotKeepSegmentsForPeersWhichLeft() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      journal.append(message(String.valueOf(i)));
+    }
+    long tail = journal.tail();
+    journal.ack(PEER, tail);
+    journal.ack(OTHER_PEER, journal.head());
+
+    journal.trim(ImmutableSet.of(PEER));
+    assertThat(segmentFiles()).isEqualTo(1);
+
+    journal.close();
+    journal = openJournal();
+    assertThat(journal.ackedOffset(OTHER_PEER)).isEqualTo(journal.head());
+    assertThat(journal.ackedOffset(PEER)).isEqualTo(tail);
+  }
+
+  @Test
+  public void shouldDropOldestSegmentWhenJournalIsFull() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      journal.append(message(String.valueOf(i)));
+    }
+    assertThat(segmentFiles()).isEqualTo(MAX_SEGMENTS);
+    assertThat(journal.ackedOffset(PEER)).isEqualTo(journal.head());
+    assertThat(ids(journal.read(journal.head(), 100))).contains("19");
+    assertThat(ids(journal.read(journal.head(), 100))).doesNotContain("0");
+  }
+
+  private ForwardingJournal openJournal() throws Exception {
+    ForwardingJournal opened = new ForwardingJournal(dataDir, configMock, new Gson());
+    opened.open();
+    return opened;
+  }
+
+  private long segmentFiles() {
+    File[] files =
+        dataDir
+            .resolve(ForwardingJournal.JOURNAL_DIR)
+            .toFile()
+            .listFiles((dir, name) -> name.endsWith(ForwardingJournal.SEGMENT_SUFFIX));
+    return files.length;
+  }
+
+  private static ForwardedMessage message(String id) {
+    return new ForwardedMessage(Type.EVICT, id, new JsonPrimitive("key"));
+  }
+
+  private static List<String> ids(List<ForwardingJournal.Entry> entries) {
+    return entries.stream().map(e -> e.message().getId()).collect(Collectors.toList());
+  }
+}
@@ -23,12 +23,15 @@ import java.io.UnsupportedEncodingException;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
 import org.junit.Test;
 
 public class HttpResponseHandlerTest {
   private static final int ERROR = 400;
   private static final int NO_CONTENT = 204;
+  private static final int ACCEPTED = 202;
+  private static final int TOO_MANY_REQUESTS = 429;
   private static final String EMPTY_ENTITY = "";
   private static final String ERROR_ENTITY = "Error";
 
@@ -55,6 +58,28 @@ public class HttpResponseHandlerTest {
     assertThat(result.getMessage()).contains(ERROR_ENTITY);
   }
 
+  @Test
+  public void testIsSuccessfulWhenAccepted() throws Exception {
+    HttpResponse response = setupMocks(ACCEPTED, EMPTY_ENTITY);
+    assertThat(handler.handleResponse(response).isSuccessful()).isTrue();
+  }
+
+  @Test
+  public void testRetryAfterWhenTooManyRequests() throws Exception {
+    HttpResponse response = setupMocks(TOO_MANY_REQUESTS, ERROR_ENTITY);
+    when(response.getFirstHeader(HttpResponseHandler.RETRY_AFTER))
+        .thenReturn(new BasicHeader(HttpResponseHandler.RETRY_AFTER, "3"));
+    HttpResult result = handler.handleResponse(response);
+    assertThat(result.isSuccessful()).isFalse();
+    assertThat(result.getRetryAfter()).isEqualTo(3000);
+  }
+
+  @Test
+  public void testNoRetryAfterWhenHeaderIsInvalid() throws Exception {
+    assertThat(HttpResponseHandler.retryAfter(TOO_MANY_REQUESTS, "later")).isEqualTo(0);
+    assertThat(HttpResponseHandler.retryAfter(ERROR, "3")).isEqualTo(0);
+  }
+
   private static HttpResponse setupMocks(int httpCode, String entity)
       throws UnsupportedEncodingException {
     StatusLine status = mock(StatusLine.class);
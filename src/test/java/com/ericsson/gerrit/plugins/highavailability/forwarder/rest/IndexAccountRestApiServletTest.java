@@ -25,6 +25,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexAccountHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.google.gerrit.entities.Account;
 import java.io.IOException;
@@ -42,6 +43,7 @@ public class IndexAccountRestApiServletTest {
   private static final String IO_ERROR = "io-error";
 
   @Mock private ForwardedIndexAccountHandler handlerMock;
+  @Mock private ForwardedIndexingQueue queueMock;
   @Mock private HttpServletRequest requestMock;
   @Mock private HttpServletResponse responseMock;
 
@@ -50,7 +52,7 @@ public class IndexAccountRestApiServletTest {
 
   @Before
   public void setUpMocks() {
-    servlet = new IndexAccountRestApiServlet(handlerMock);
+    servlet = new IndexAccountRestApiServlet(handlerMock, queueMock);
     id = Account.id(ACCOUNT_NUMBER);
     when(requestMock.getRequestURI())
         .thenReturn("http://gerrit.com/index/account/" + ACCOUNT_NUMBER);
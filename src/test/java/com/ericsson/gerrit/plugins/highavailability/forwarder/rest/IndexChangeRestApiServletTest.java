@@ -14,16 +14,23 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.RETRY_AFTER;
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.SC_TOO_MANY_REQUESTS;
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexChangeHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.IndexTask;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue.Priority;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.google.gson.Gson;
 import java.io.IOException;
@@ -32,6 +39,8 @@ import javax.servlet.http.HttpServletResponse;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -44,14 +53,16 @@ public class IndexChangeRestApiServletTest {
   private static final String IO_ERROR = "io-error";
 
   @Mock private ForwardedIndexChangeHandler handlerMock;
+  @Mock private ForwardedIndexingQueue queueMock;
   @Mock private HttpServletRequest requestMock;
   @Mock private HttpServletResponse responseMock;
+  @Captor private ArgumentCaptor<IndexTask> taskCaptor;
 
   private IndexChangeRestApiServlet servlet;
 
   @Before
   public void setUpMocks() {
-    servlet = new IndexChangeRestApiServlet(handlerMock, new Gson());
+    servlet = new IndexChangeRestApiServlet(handlerMock, queueMock, new Gson());
     when(requestMock.getRequestURI())
         .thenReturn("http://gerrit.com/index/change/" + PROJECT_NAME_URL_ENC + "~" + CHANGE_NUMBER);
   }
@@ -88,4 +99,34 @@ public class IndexChangeRestApiServletTest {
     servlet.doPost(requestMock, responseMock);
     verify(responseMock).sendError(SC_CONFLICT, IO_ERROR);
   }
+
+  @Test
+  public void changeIsQueuedForIndexing() throws Exception {
+    when(queueMock.isEnabled()).thenReturn(true);
+    when(queueMock.offer(eq(Priority.INTERACTIVE), any(), taskCaptor.capture())).thenReturn(true);
+    servlet.doPost(requestMock, responseMock);
+    verify(responseMock).setStatus(SC_ACCEPTED);
+    verify(handlerMock, never()).index(any(), any(), any());
+
+    taskCaptor.getValue().run();
+    verify(handlerMock).index(eq(CHANGE_ID), eq(Operation.INDEX), any());
+  }
+
+  @Test
+  public void changeDeletionIsQueuedFirst() throws Exception {
+    when(queueMock.isEnabled()).thenReturn(true);
+    when(queueMock.offer(eq(Priority.DELETE), any(), any())).thenReturn(true);
+    servlet.doDelete(requestMock, responseMock);
+    verify(responseMock).setStatus(SC_ACCEPTED);
+  }
+
+  @Test
+  public void changeIsRefusedWhenQueueIsFull() throws Exception {
+    when(queueMock.isEnabled()).thenReturn(true);
+    when(queueMock.offer(any(), any(), any())).thenReturn(false);
+    servlet.doPost(requestMock, responseMock);
+    verify(responseMock).setIntHeader(RETRY_AFTER, AbstractIndexRestApiServlet.RETRY_AFTER_SECONDS);
+    verify(responseMock).sendError(eq(SC_TOO_MANY_REQUESTS), any());
+    verify(handlerMock, never()).index(any(), any(), any());
+  }
 }
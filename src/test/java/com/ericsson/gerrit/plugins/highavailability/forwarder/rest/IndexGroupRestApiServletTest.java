@@ -25,6 +25,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexGroupHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.google.gerrit.entities.AccountGroup;
 import java.io.IOException;
@@ -42,6 +43,7 @@ public class IndexGroupRestApiServletTest {
   private static final String UUID = "we235jdf92nfj2351";
 
   @Mock private ForwardedIndexGroupHandler handlerMock;
+  @Mock private ForwardedIndexingQueue queueMock;
   @Mock private HttpServletRequest requestMock;
   @Mock private HttpServletResponse responseMock;
 
@@ -50,7 +52,7 @@ public class IndexGroupRestApiServletTest {
 
   @Before
   public void setUpMocks() {
-    servlet = new IndexGroupRestApiServlet(handlerMock);
+    servlet = new IndexGroupRestApiServlet(handlerMock, queueMock);
     uuid = AccountGroup.uuid(UUID);
     when(requestMock.getRequestURI()).thenReturn("http://gerrit.com/index/group/" + UUID);
   }
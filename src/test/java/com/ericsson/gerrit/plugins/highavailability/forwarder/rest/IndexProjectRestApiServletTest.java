@@ -25,6 +25,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexProjectHandler;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingQueue;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.ForwardedIndexingHandler.Operation;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.restapi.Url;
@@ -43,6 +44,7 @@ public class IndexProjectRestApiServletTest {
   private static final String PROJECT_NAME = "test/project";
 
   @Mock private ForwardedIndexProjectHandler handlerMock;
+  @Mock private ForwardedIndexingQueue queueMock;
   @Mock private HttpServletRequest requestMock;
   @Mock private HttpServletResponse responseMock;
 
@@ -51,7 +53,7 @@ public class IndexProjectRestApiServletTest {
 
   @Before
   public void setUpMocks() {
-    servlet = new IndexProjectRestApiServlet(handlerMock);
+    servlet = new IndexProjectRestApiServlet(handlerMock, queueMock);
     nameKey = Project.nameKey(PROJECT_NAME);
     when(requestMock.getRequestURI())
         .thenReturn("http://gerrit.com/index/project/" + Url.encode(nameKey.get()));
@@ -0,0 +1,242 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.ForwardedMessage.Type;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import com.google.inject.Provider;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JournalingForwarderTest {
+  private static final String URL = "http://peer:8080";
+  private static final PeerInfo PEER = new PeerInfo(URL);
+  private static final String OTHER_URL = "http://other-peer:8080";
+  private static final PeerInfo OTHER_PEER = new PeerInfo(OTHER_URL);
+  private static final int RETRY_INTERVAL = 1000;
+  private static final long FROM = 10;
+  private static final long NEXT = 42;
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private RestForwarder restForwarderMock;
+  @Mock private ForwardingJournal journalMock;
+  @Mock private Provider<Set<PeerInfo>> peersMock;
+  @Mock private PeerDeliveryQueues queuesMock;
+  @Mock private WorkQueue workQueueMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Mock private ScheduledFuture<?> futureMock;
+  @Captor private ArgumentCaptor<ForwardedMessage> messageCaptor;
+
+  private JournalingForwarder forwarder;
+
+  @Before
+  public void setUp() {
+    when(configMock.journal().replayBatchSize()).thenReturn(2);
+    when(configMock.http().retryInterval()).thenReturn(RETRY_INTERVAL);
+    when(workQueueMock.createQueue(1, "Forward-Journal")).thenReturn(executorMock);
+    Gson gson = new Gson();
+    forwarder =
+        new JournalingForwarder(
+            restForwarderMock,
+            journalMock,
+            configMock,
+            peersMock,
+            queuesMock,
+            workQueueMock,
+            gson,
+            new CacheKeyCodecs(gson, DynamicMap.emptyMap()));
+  }
+
+  @Test
+  public void shouldJournalMessageAndScheduleReplay() throws Exception {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+
+    assertThat(forwarder.indexChange("project", 1, new IndexEvent())).isTrue();
+
+    verify(journalMock).append(messageCaptor.capture());
+    assertThat(messageCaptor.getValue().getType()).isEqualTo(Type.INDEX_CHANGE);
+    assertThat(messageCaptor.getValue().getId()).isEqualTo("project~1");
+    verify(executorMock).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldReportFailureWhenMessageCannotBeJournaled() throws Exception {
+    doThrow(new IOException()).when(journalMock).append(any());
+    assertThat(forwarder.evict("accounts", "key")).isFalse();
+    verify(executorMock, never()).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void shouldAcknowledgeReplayedMessages() throws Exception {
+    List<ForwardingJournal.Entry> entries = entries();
+    when(peersMock.get()).thenReturn(ImmutableSet.of(PEER));
+    replayInline(URL);
+    when(journalMock.ackedOffset(URL)).thenReturn(FROM).thenReturn(NEXT);
+    when(journalMock.read(FROM, 2)).thenReturn(entries.subList(0, 1));
+    when(restForwarderMock.tryForwardBatch(eq(PEER), eq(FROM), any()))
+        .thenReturn(new RestForwarder.BatchResult(1, 0));
+
+    forwarder.replay();
+
+    verify(journalMock).ack(URL, NEXT);
+    verify(journalMock).trim(ImmutableSet.of(URL));
+    verify(journalMock).read(NEXT, 2);
+    verify(executorMock, never()).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void shouldReplayAgainWhenMoreMessagesArePending() throws Exception {
+    when(peersMock.get()).thenReturn(ImmutableSet.of(PEER));
+    replayInline(URL);
+    when(journalMock.ackedOffset(URL)).thenReturn(FROM).thenReturn(NEXT + 10);
+    when(journalMock.read(FROM, 2)).thenReturn(entries());
+    when(restForwarderMock.tryForwardBatch(eq(PEER), eq(FROM), any()))
+        .thenReturn(new RestForwarder.BatchResult(2, 0));
+
+    forwarder.replay();
+
+    verify(journalMock).ack(URL, NEXT + 10);
+    verify(journalMock).read(NEXT + 10, 2);
+  }
+
+  @Test
+  public void shouldRetryPeerLaterWhenReplayFails() throws Exception {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+    when(peersMock.get()).thenReturn(ImmutableSet.of(PEER));
+    replayInline(URL);
+    when(journalMock.ackedOffset(URL)).thenReturn(FROM);
+    when(journalMock.read(FROM, 2)).thenReturn(entries());
+    when(restForwarderMock.tryForwardBatch(eq(PEER), eq(FROM), any()))
+        .thenReturn(new RestForwarder.BatchResult(0, 0));
+
+    forwarder.replay();
+    forwarder.replay();
+
+    verify(journalMock, never()).ack(any(), anyLong());
+    verify(restForwarderMock).tryForwardBatch(eq(PEER), eq(FROM), any());
+    verify(executorMock)
+        .schedule(any(Runnable.class), eq((long) RETRY_INTERVAL), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldRetryPeerAfterTheDelayItAskedFor() throws Exception {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+    when(peersMock.get()).thenReturn(ImmutableSet.of(PEER));
+    replayInline(URL);
+    when(journalMock.ackedOffset(URL)).thenReturn(FROM);
+    when(journalMock.read(FROM, 2)).thenReturn(entries());
+    long retryAfter = RETRY_INTERVAL * 10L;
+    when(restForwarderMock.tryForwardBatch(eq(PEER), eq(FROM), any()))
+        .thenReturn(new RestForwarder.BatchResult(0, retryAfter));
+
+    forwarder.replay();
+
+    verify(executorMock).schedule(any(Runnable.class), eq(retryAfter), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldAcknowledgeMessagesProcessedBeforeFailingOne() throws Exception {
+    doReturn(futureMock).when(executorMock).schedule(any(Runnable.class), anyLong(), any());
+    when(peersMock.get()).thenReturn(ImmutableSet.of(PEER));
+    replayInline(URL);
+    when(journalMock.ackedOffset(URL)).thenReturn(FROM);
+    when(journalMock.read(FROM, 2)).thenReturn(entries());
+    when(restForwarderMock.tryForwardBatch(eq(PEER), eq(FROM), any()))
+        .thenReturn(new RestForwarder.BatchResult(1, 0));
+
+    forwarder.replay();
+
+    verify(journalMock).ack(URL, NEXT);
+    verify(executorMock)
+        .schedule(any(Runnable.class), eq((long) RETRY_INTERVAL), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldNotHoldBackPeersWhileAnotherIsBeingReplayedTo() throws Exception {
+    when(peersMock.get()).thenReturn(ImmutableSet.of(PEER, OTHER_PEER));
+    when(queuesMock.submit(eq(URL), any())).thenReturn(new CompletableFuture<>());
+    replayInline(OTHER_URL);
+    when(journalMock.ackedOffset(OTHER_URL)).thenReturn(FROM).thenReturn(NEXT + 10);
+    when(journalMock.read(FROM, 2)).thenReturn(entries());
+    when(restForwarderMock.tryForwardBatch(eq(OTHER_PEER), eq(FROM), any()))
+        .thenReturn(new RestForwarder.BatchResult(2, 0));
+
+    forwarder.replay();
+    forwarder.replay();
+
+    verify(journalMock).ack(OTHER_URL, NEXT + 10);
+    verify(queuesMock).submit(eq(URL), any());
+    verify(restForwarderMock, never()).tryForwardBatch(eq(PEER), anyLong(), any());
+  }
+
+  @Test
+  public void shouldForwardProjectListUpdatesWithoutJournaling() throws Exception {
+    when(restForwarderMock.addToProjectList("project")).thenReturn(true);
+    assertThat(forwarder.addToProjectList("project")).isTrue();
+    verify(journalMock, never()).append(any());
+  }
+
+  private void replayInline(String url) {
+    when(queuesMock.submit(eq(url), any()))
+        .thenAnswer(
+            invocation -> {
+              invocation.getArgument(1, Runnable.class).run();
+              return CompletableFuture.completedFuture(null);
+            });
+  }
+
+  private static List<ForwardingJournal.Entry> entries() {
+    return ImmutableList.of(
+        new ForwardingJournal.Entry(
+            NEXT, new ForwardedMessage(Type.EVICT, "accounts", new JsonPrimitive("key"))),
+        new ForwardingJournal.Entry(
+            NEXT + 10, new ForwardedMessage(Type.EVICT, "accounts", new JsonPrimitive("key2"))));
+  }
+}
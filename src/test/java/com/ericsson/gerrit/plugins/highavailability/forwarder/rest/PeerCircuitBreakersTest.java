@@ -0,0 +1,209 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.PeerCircuitBreakers.CircuitBreaker;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.PeerCircuitBreakers.ParkedRequest;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.PeerCircuitBreakers.State;
+import com.google.common.collect.Range;
+import com.google.gerrit.server.git.WorkQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PeerCircuitBreakersTest {
+  private static final String PEER = "http://peer:8080";
+  private static final int THRESHOLD = 2;
+  private static final int RETRY_INTERVAL = 100;
+  private static final int MAX_RETRY_INTERVAL = 1000;
+  private static final long TIMEOUT_S = 5;
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private WorkQueue workQueueMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Captor private ArgumentCaptor<Runnable> halfOpenCaptor;
+
+  private CircuitBreaker breaker;
+  private PeerCircuitBreakers breakers;
+
+  @Before
+  public void setUp() {
+    when(configMock.http().circuitBreakerThreshold()).thenReturn(THRESHOLD);
+    when(configMock.http().maxParkedMessages()).thenReturn(2);
+    when(configMock.http().retryInterval()).thenReturn(RETRY_INTERVAL);
+    when(configMock.http().maxRetryInterval()).thenReturn(MAX_RETRY_INTERVAL);
+    when(workQueueMock.createQueue(1, "Forward-CircuitBreaker")).thenReturn(executorMock);
+    breakers = new PeerCircuitBreakers(configMock, workQueueMock);
+    breaker = breakers.forPeer(PEER);
+  }
+
+  @Test
+  public void shouldOpenAfterConsecutiveFailures() {
+    breaker.recordFailure();
+    breaker.recordSuccess();
+    breaker.recordFailure();
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+    breaker.recordFailure();
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    assertThat(breaker.acquire(new TestRequest())).isFalse();
+    verify(executorMock).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldProbeWithFirstParkedRequestWhenHalfOpen() throws Exception {
+    open();
+    TestRequest probe = new TestRequest();
+    TestRequest other = new TestRequest();
+    breaker.acquire(probe);
+    breaker.acquire(other);
+
+    halfOpenCaptor.getValue().run();
+
+    probe.resumed.get(TIMEOUT_S, TimeUnit.SECONDS);
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.acquire(new TestRequest())).isTrue();
+    assertThat(breaker.acquire(new TestRequest())).isFalse();
+    assertThat(other.resumed.isDone()).isFalse();
+  }
+
+  @Test
+  public void shouldResumeParkedRequestsWhenClosing() throws Exception {
+    open();
+    TestRequest parked = new TestRequest();
+    breaker.acquire(parked);
+
+    breaker.recordSuccess();
+
+    parked.resumed.get(TIMEOUT_S, TimeUnit.SECONDS);
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    assertThat(breaker.acquire(new TestRequest())).isTrue();
+  }
+
+  @Test
+  public void shouldReopenWhenProbeFails() {
+    open();
+    halfOpenCaptor.getValue().run();
+    assertThat(breaker.acquire(new TestRequest())).isTrue();
+
+    breaker.recordFailure();
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  public void shouldGiveUpOldestParkedRequestWhenFull() throws Exception {
+    open();
+    TestRequest oldest = new TestRequest();
+    TestRequest newest = new TestRequest();
+    breaker.acquire(oldest);
+    breaker.acquire(new TestRequest());
+    breaker.acquire(newest);
+
+    assertThat(oldest.givenUp.isDone()).isTrue();
+    breaker.recordSuccess();
+
+    newest.resumed.get(TIMEOUT_S, TimeUnit.SECONDS);
+    assertThat(oldest.resumed.isDone()).isFalse();
+    assertThat(newest.givenUp.isDone()).isFalse();
+  }
+
+  @Test
+  public void shouldGiveUpParkedRequestsPastTheirDeadlineWhenHalfOpen() throws Exception {
+    open();
+    TestRequest expired = new TestRequest();
+    expired.deadline = System.currentTimeMillis() - 1;
+    TestRequest probe = new TestRequest();
+    breaker.acquire(expired);
+    breaker.acquire(probe);
+
+    halfOpenCaptor.getValue().run();
+
+    assertThat(expired.givenUp.isDone()).isTrue();
+    assertThat(expired.resumed.isDone()).isFalse();
+    assertThat(probe.resumed.isDone()).isTrue();
+  }
+
+  @Test
+  public void shouldNeverOpenWhenDisabled() {
+    when(configMock.http().circuitBreakerThreshold()).thenReturn(0);
+    breaker = new PeerCircuitBreakers(configMock, workQueueMock).forPeer(PEER);
+    for (int i = 0; i < 10; i++) {
+      breaker.recordFailure();
+    }
+    assertThat(breaker.acquire(new TestRequest())).isTrue();
+    verify(executorMock, never()).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void shouldBackOffExponentiallyWithJitter() {
+    assertThat(breakers.retryDelay(1)).isIn(range(RETRY_INTERVAL));
+    assertThat(breakers.retryDelay(2)).isIn(range(2 * RETRY_INTERVAL));
+    assertThat(breakers.retryDelay(3)).isIn(range(4 * RETRY_INTERVAL));
+    assertThat(breakers.retryDelay(100)).isIn(range(MAX_RETRY_INTERVAL));
+  }
+
+  private void open() {
+    for (int i = 0; i < THRESHOLD; i++) {
+      breaker.recordFailure();
+    }
+    verify(executorMock).schedule(halfOpenCaptor.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+  }
+
+  private static Range<Long> range(long delay) {
+    return Range.closed(delay / 2, delay);
+  }
+
+  private static class TestRequest implements ParkedRequest {
+    final CompletableFuture<Void> resumed = new CompletableFuture<>();
+    final CompletableFuture<Void> givenUp = new CompletableFuture<>();
+    long deadline = Long.MAX_VALUE;
+
+    @Override
+    public void resume() {
+      resumed.complete(null);
+    }
+
+    @Override
+    public void giveUp() {
+      givenUp.complete(null);
+    }
+
+    @Override
+    public long deadline() {
+      return deadline;
+    }
+  }
+}
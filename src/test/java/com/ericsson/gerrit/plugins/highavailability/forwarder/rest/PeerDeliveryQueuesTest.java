@@ -0,0 +1,80 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
+
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Provider;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PeerDeliveryQueuesTest {
+  private static final String PEER = "http://peer:8080";
+  private static final String OTHER_PEER = "http://other-peer:8080";
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private WorkQueue workQueueMock;
+  @Mock private Provider<Set<PeerInfo>> peersMock;
+  @Mock private ScheduledExecutorService queueMock;
+  @Mock private ScheduledExecutorService otherQueueMock;
+
+  private PeerDeliveryQueues queues;
+
+  @Before
+  public void setUp() {
+    when(configMock.http().peerThreadPoolSize()).thenReturn(1);
+    when(workQueueMock.createQueue(1, "Forward-" + PEER)).thenReturn(queueMock);
+    when(peersMock.get()).thenReturn(ImmutableSet.of(new PeerInfo(PEER), new PeerInfo(OTHER_PEER)));
+    queues = new PeerDeliveryQueues(configMock, workQueueMock, peersMock);
+  }
+
+  @Test
+  public void shouldRemoveQueueOfPeerWhichLeft() {
+    when(workQueueMock.createQueue(1, "Forward-" + OTHER_PEER)).thenReturn(otherQueueMock);
+    queues.submit(PEER, () -> {});
+    queues.submit(OTHER_PEER, () -> {});
+
+    when(peersMock.get()).thenReturn(ImmutableSet.of(new PeerInfo(OTHER_PEER)));
+    queues.submit(OTHER_PEER, () -> {});
+
+    verify(queueMock).shutdown();
+    verify(otherQueueMock, never()).shutdown();
+    assertThrows(RejectedExecutionException.class, () -> queues.submit(PEER, () -> {}));
+  }
+
+  @Test
+  public void shouldNotCreateQueueOfUnknownPeer() {
+    assertThrows(
+        RejectedExecutionException.class, () -> queues.submit("http://unknown:8080", () -> {}));
+    verify(workQueueMock, never()).createQueue(1, "Forward-http://unknown:8080");
+  }
+}
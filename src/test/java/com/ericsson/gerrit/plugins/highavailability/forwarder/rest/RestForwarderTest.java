@@ -14,33 +14,60 @@
 
 package com.ericsson.gerrit.plugins.highavailability.forwarder.rest;
 
+import static com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.SC_TOO_MANY_REQUESTS;
 import static com.google.common.truth.Truth.assertThat;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.AckPolicy;
 import com.ericsson.gerrit.plugins.highavailability.cache.Constants;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheEvictionMetrics;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.CacheKeyCodecs;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.TestEvent;
 import com.ericsson.gerrit.plugins.highavailability.forwarder.rest.HttpResponseHandler.HttpResult;
 import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.gson.Gson;
 import com.google.inject.Provider;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 
 public class RestForwarderTest {
   private static final String URL = "http://fake.com";
@@ -53,6 +80,8 @@ public class RestForwarderTest {
   private static final String SUCCESS = "Success";
   private static final boolean SUCCESSFUL = true;
   private static final boolean FAILED = false;
+  private static final long TIMEOUT_MS = 5000;
+  private static final int MAX_RETRY_INTERVAL_MS = 60000;
 
   // Index
   private static final int CHANGE_NUMBER = 1;
@@ -75,6 +104,11 @@ public class RestForwarderTest {
   private static final String INDEX_GROUP_ENDPOINT =
       Joiner.on("/").join(URL, PLUGINS, PLUGIN_NAME, "index/group", UUID);
 
+  // Batch
+  private static final long BATCH_ID = 7;
+  private static final String BATCH_ENDPOINT =
+      Joiner.on("/").join(URL, PLUGINS, PLUGIN_NAME, "batch", BATCH_ID);
+
   // Event
   private static Event event = new TestEvent();
   private static final String EVENT_ENDPOINT =
@@ -82,20 +116,47 @@ public class RestForwarderTest {
 
   private RestForwarder forwarder;
   private HttpSession httpSessionMock;
+  private Configuration configMock;
+  private Provider<Set<PeerInfo>> peersMock;
+  private WorkQueue workQueueMock;
+  private CacheEvictionMetrics evictionMetricsMock;
+  private ScheduledExecutorService deliveryExecutor;
   private Gson gson = new Gson();
 
   @SuppressWarnings("unchecked")
   @Before
   public void setUp() {
     httpSessionMock = mock(HttpSession.class);
-    Configuration configMock = mock(Configuration.class, Answers.RETURNS_DEEP_STUBS);
+    configMock = mock(Configuration.class, Answers.RETURNS_DEEP_STUBS);
+    evictionMetricsMock = mock(CacheEvictionMetrics.class);
     when(configMock.http().maxTries()).thenReturn(3);
     when(configMock.http().retryInterval()).thenReturn(10);
-    Provider<Set<PeerInfo>> peersMock = mock(Provider.class);
+    peersMock = mock(Provider.class);
     when(peersMock.get()).thenReturn(ImmutableSet.of(new PeerInfo(URL)));
-    forwarder =
-        new RestForwarder(
-            httpSessionMock, PLUGIN_NAME, configMock, peersMock, gson); // TODO: Create provider
+    when(configMock.http().ackPolicy()).thenReturn(AckPolicy.ALL);
+    when(configMock.http().peerThreadPoolSize()).thenReturn(1);
+    workQueueMock = mock(WorkQueue.class);
+    deliveryExecutor = new ScheduledThreadPoolExecutor(2);
+    when(workQueueMock.createQueue(eq(1), anyString())).thenReturn(deliveryExecutor);
+    forwarder = createForwarder(); // TODO: Create provider
+  }
+
+  @After
+  public void tearDown() {
+    deliveryExecutor.shutdownNow();
+  }
+
+  private RestForwarder createForwarder() {
+    return new RestForwarder(
+        httpSessionMock,
+        PLUGIN_NAME,
+        configMock,
+        peersMock,
+        gson,
+        new CacheKeyCodecs(gson, DynamicMap.emptyMap()),
+        new PeerCircuitBreakers(configMock, workQueueMock),
+        new PeerDeliveryQueues(configMock, workQueueMock, peersMock),
+        evictionMetricsMock);
   }
 
   @Test
@@ -327,6 +388,7 @@ public class RestForwarderTest {
         .thenReturn(new HttpResult(true, SUCCESS));
 
     assertThat(forwarder.evict(Constants.PROJECT_LIST, new Object())).isTrue();
+    verify(evictionMetricsMock, times(2)).retried(Constants.PROJECT_LIST);
   }
 
   @Test
@@ -357,4 +419,173 @@ public class RestForwarderTest {
 
     assertThat(forwarder.evict(Constants.PROJECT_LIST, new Object())).isFalse();
   }
+
+  @Test
+  public void testBatchIsForwardedAgainFromFirstUnprocessedMessage() throws IOException {
+    List<ForwardedMessage> messages =
+        ImmutableList.of(
+            new ForwardedMessage(ForwardedMessage.Type.ADD_TO_PROJECT_LIST, PROJECT_TO_ADD, null),
+            new ForwardedMessage(
+                ForwardedMessage.Type.REMOVE_FROM_PROJECT_LIST, PROJECT_TO_DELETE, null));
+    ArgumentCaptor<byte[]> payloads = ArgumentCaptor.forClass(byte[].class);
+    when(httpSessionMock.post(
+            eq(BATCH_ENDPOINT), payloads.capture(), eq(ForwardedMessageCodec.MEDIA_TYPE)))
+        .thenReturn(new HttpResult(false, ERROR, 0, SC_CONFLICT, 1))
+        .thenReturn(new HttpResult(true, SUCCESS));
+
+    assertThat(forwarder.forwardBatch(BATCH_ID, messages)).isTrue();
+    assertThat(payloads.getAllValues()).hasSize(2);
+    List<ForwardedMessage> resent =
+        ForwardedMessageCodec.decode(new ByteArrayInputStream(payloads.getAllValues().get(1)));
+    assertThat(resent).hasSize(1);
+    assertThat(resent.get(0).getId()).isEqualTo(PROJECT_TO_DELETE);
+  }
+
+  @Test
+  public void testRejectedBatchIsNotForwardedAgain() throws IOException {
+    when(httpSessionMock.post(eq(BATCH_ENDPOINT), any(byte[].class), anyString()))
+        .thenReturn(new HttpResult(false, ERROR, 0, SC_BAD_REQUEST, -1));
+
+    assertThat(
+            forwarder.forwardBatch(
+                BATCH_ID,
+                ImmutableList.of(
+                    new ForwardedMessage(
+                        ForwardedMessage.Type.ADD_TO_PROJECT_LIST, PROJECT_TO_ADD, null))))
+        .isFalse();
+    verify(httpSessionMock).post(eq(BATCH_ENDPOINT), any(byte[].class), anyString());
+  }
+
+  @Test
+  public void testParkedMessagesAreReportedOnceForwarded() throws Exception {
+    ScheduledExecutorService breakerExecutor = openCircuitBreaker(10);
+    List<Thread> senders = Collections.synchronizedList(new ArrayList<>());
+    when(httpSessionMock.post(EVENT_ENDPOINT, event))
+        .thenAnswer(
+            invocation -> {
+              senders.add(Thread.currentThread());
+              return new HttpResult(SUCCESSFUL, EMPTY_MSG);
+            });
+
+    CompletableFuture<Boolean> parked = CompletableFuture.supplyAsync(() -> forwarder.send(event));
+    assertThat(parked.isDone()).isFalse();
+    ArgumentCaptor<Runnable> halfOpen = ArgumentCaptor.forClass(Runnable.class);
+    verify(breakerExecutor).schedule(halfOpen.capture(), anyLong(), any());
+    halfOpen.getValue().run();
+
+    assertThat(parked.get(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(senders).hasSize(1);
+    assertThat(senders.get(0).getName()).doesNotContain("ForkJoinPool");
+  }
+
+  @Test
+  public void testParkedMessageIsReportedAsFailedWhenGivenUp() throws Exception {
+    openCircuitBreaker(1);
+
+    CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> forwarder.send(event));
+    CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> forwarder.send(event));
+
+    assertThat(CompletableFuture.anyOf(first, second).get(TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isEqualTo(false);
+    assertThat(first.isDone() && second.isDone()).isFalse();
+    verify(httpSessionMock, never()).post(EVENT_ENDPOINT, event);
+  }
+
+  @Test
+  public void testRetriesAreGivenUpAfterRetryPeriodWhileCircuitIsOpen() throws Exception {
+    when(configMock.http().circuitBreakerThreshold()).thenReturn(1);
+    when(configMock.http().maxParkedMessages()).thenReturn(10);
+    when(configMock.http().maxTries()).thenReturn(2);
+    ScheduledExecutorService breakerExecutor = mock(ScheduledExecutorService.class);
+    when(workQueueMock.createQueue(1, "Forward-CircuitBreaker")).thenReturn(breakerExecutor);
+    forwarder = createForwarder();
+    doThrow(new IOException()).when(httpSessionMock).post(EVENT_ENDPOINT, event);
+
+    CompletableFuture<Boolean> parked = CompletableFuture.supplyAsync(() -> forwarder.send(event));
+    ArgumentCaptor<Runnable> halfOpen = ArgumentCaptor.forClass(Runnable.class);
+    verify(breakerExecutor, timeout(TIMEOUT_MS)).schedule(halfOpen.capture(), anyLong(), any());
+    Thread.sleep(100);
+    halfOpen.getValue().run();
+
+    assertThat(parked.get(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isFalse();
+  }
+
+  @Test
+  public void testServerErrorsOpenTheCircuit() throws Exception {
+    ScheduledExecutorService breakerExecutor = failOnce(SC_SERVICE_UNAVAILABLE);
+
+    verify(breakerExecutor).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void testOverloadedPeerOpensTheCircuit() throws Exception {
+    ScheduledExecutorService breakerExecutor = failOnce(SC_TOO_MANY_REQUESTS);
+
+    verify(breakerExecutor).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void testClientErrorsDoNotOpenTheCircuit() throws Exception {
+    ScheduledExecutorService breakerExecutor = failOnce(SC_NOT_FOUND);
+
+    verify(breakerExecutor, never()).schedule(any(Runnable.class), anyLong(), any());
+    when(httpSessionMock.post(EVENT_ENDPOINT, event))
+        .thenReturn(new HttpResult(SUCCESSFUL, EMPTY_MSG));
+    assertThat(forwarder.send(event)).isTrue();
+  }
+
+  /**
+   * Forward a message the peer fails to process once, with a circuit breaker opening on the first
+   * failure.
+   *
+   * @param status the HTTP status code the peer answers with.
+   * @return the executor of the circuit breaker, whose tasks are not run.
+   */
+  private ScheduledExecutorService failOnce(int status) throws IOException {
+    when(configMock.http().circuitBreakerThreshold()).thenReturn(1);
+    when(configMock.http().maxTries()).thenReturn(1);
+    ScheduledExecutorService breakerExecutor = mock(ScheduledExecutorService.class);
+    when(workQueueMock.createQueue(1, "Forward-CircuitBreaker")).thenReturn(breakerExecutor);
+    forwarder = createForwarder();
+    when(httpSessionMock.post(EVENT_ENDPOINT, event))
+        .thenReturn(new HttpResult(FAILED, ERROR, 0, status, -1));
+    assertThat(forwarder.send(event)).isFalse();
+    return breakerExecutor;
+  }
+
+  /**
+   * Open the circuit breaker of the peer with a message failing to be forwarded.
+   *
+   * @return the executor of the circuit breaker, whose tasks are not run.
+   */
+  private ScheduledExecutorService openCircuitBreaker(int maxParkedMessages) throws IOException {
+    when(configMock.http().circuitBreakerThreshold()).thenReturn(1);
+    when(configMock.http().maxParkedMessages()).thenReturn(maxParkedMessages);
+    when(configMock.http().maxRetryInterval()).thenReturn(MAX_RETRY_INTERVAL_MS);
+    ScheduledExecutorService breakerExecutor = mock(ScheduledExecutorService.class);
+    when(workQueueMock.createQueue(1, "Forward-CircuitBreaker")).thenReturn(breakerExecutor);
+    when(configMock.http().maxTries()).thenReturn(1);
+    forwarder = createForwarder();
+    doThrow(new IOException()).when(httpSessionMock).post(EVENT_ENDPOINT, event);
+    assertThat(forwarder.send(event)).isFalse();
+    when(configMock.http().maxTries()).thenReturn(3);
+    reset(httpSessionMock);
+    return breakerExecutor;
+  }
+
+  @Test
+  public void testAckPolicyDecidesOutcomeWhenSomePeersFail() throws IOException {
+    String otherUrl = "http://other.com";
+    when(peersMock.get()).thenReturn(ImmutableSet.of(new PeerInfo(URL), new PeerInfo(otherUrl)));
+    when(configMock.http().maxTries()).thenReturn(1);
+    when(httpSessionMock.post(EVENT_ENDPOINT, event))
+        .thenReturn(new HttpResult(SUCCESSFUL, EMPTY_MSG));
+    when(httpSessionMock.post(EVENT_ENDPOINT.replace(URL, otherUrl), event))
+        .thenReturn(new HttpResult(FAILED, ERROR));
+
+    assertThat(forwarder.send(event)).isFalse();
+
+    when(configMock.http().ackPolicy()).thenReturn(AckPolicy.ANY);
+    assertThat(forwarder.send(event)).isTrue();
+  }
 }
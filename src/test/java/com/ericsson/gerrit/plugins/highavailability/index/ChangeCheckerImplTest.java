@@ -0,0 +1,154 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.forwarder.IndexEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.BranchNameKey;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.CommentsUtil;
+import com.google.gerrit.server.change.ChangeFinder;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gerrit.server.util.time.TimeUtil;
+import java.util.Optional;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChangeCheckerImplTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("test/project");
+  private static final Change.Id ID = Change.id(123);
+  private static final String CHANGE_ID = PROJECT.get() + "~" + ID.get();
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final String BRANCH = "refs/heads/master";
+  private static final ObjectId META_ID =
+      ObjectId.fromString("0000000000000000000000000000000000000001");
+  private static final ObjectId NEW_META_ID =
+      ObjectId.fromString("0000000000000000000000000000000000000002");
+  private static final ObjectId BRANCH_ID =
+      ObjectId.fromString("0000000000000000000000000000000000000003");
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private GitRepositoryManager gitRepoMgrMock;
+  @Mock private CommentsUtil commentsUtilMock;
+  @Mock private ChangeFinder changeFinderMock;
+  @Mock private OneOffRequestContext oneOffCtxMock;
+  @Mock private ManualRequestContext ctxMock;
+  @Mock private ChangeNotes notesMock;
+  @Mock private Repository repoMock;
+  @Mock private RefDatabase refDbMock;
+  @Mock private Repository allUsersRepoMock;
+  @Mock private RefDatabase allUsersRefDbMock;
+
+  private Change change;
+
+  @Before
+  public void setUp() throws Exception {
+    change = new Change(null, ID, null, BranchNameKey.create(PROJECT, BRANCH), TimeUtil.nowTs());
+    when(oneOffCtxMock.open()).thenReturn(ctxMock);
+    when(changeFinderMock.findOne(CHANGE_ID)).thenReturn(notesMock);
+    when(notesMock.getChange()).thenReturn(change);
+    when(notesMock.getProjectName()).thenReturn(PROJECT);
+    when(commentsUtilMock.draftByChange(notesMock)).thenReturn(ImmutableList.of());
+    when(gitRepoMgrMock.openRepository(PROJECT)).thenReturn(repoMock);
+    when(repoMock.getRefDatabase()).thenReturn(refDbMock);
+    when(refDbMock.exactRef(BRANCH)).thenReturn(ref(BRANCH, BRANCH_ID));
+  }
+
+  @Test
+  public void shouldNotLoadChangeAgainUntilItIsUpdated() throws Exception {
+    ChangeCheckerCache cache = newCache(10);
+    when(gitRepoMgrMock.openRepository(ALL_USERS)).thenReturn(allUsersRepoMock);
+    when(allUsersRepoMock.getRefDatabase()).thenReturn(allUsersRefDbMock);
+    when(allUsersRefDbMock.getRefsByPrefix(RefNames.refsDraftCommentsPrefix(ID)))
+        .thenReturn(ImmutableList.of());
+    String metaRef = RefNames.changeMetaRef(ID);
+    when(refDbMock.exactRef(metaRef)).thenReturn(ref(metaRef, META_ID));
+    when(notesMock.getMetaId()).thenReturn(META_ID);
+
+    Optional<IndexEvent> event = newChecker(cache).newIndexEvent();
+    assertThat(event.isPresent()).isTrue();
+    assertThat(newChecker(cache).newIndexEvent().get().eventCreatedOn)
+        .isEqualTo(event.get().eventCreatedOn);
+    assertThat(newChecker(cache).newIndexEvent().get().targetSha).isEqualTo(BRANCH_ID.getName());
+    verify(changeFinderMock, times(1)).findOne(CHANGE_ID);
+
+    when(refDbMock.exactRef(metaRef)).thenReturn(ref(metaRef, NEW_META_ID));
+    when(notesMock.getMetaId()).thenReturn(NEW_META_ID);
+    newChecker(cache).newIndexEvent();
+    newChecker(cache).newIndexEvent();
+    verify(changeFinderMock, times(2)).findOne(CHANGE_ID);
+  }
+
+  @Test
+  public void shouldLoadChangeEveryTimeWhenCacheIsDisabled() throws Exception {
+    ChangeCheckerCache cache = newCache(0);
+
+    newChecker(cache).newIndexEvent();
+    newChecker(cache).newIndexEvent();
+    verify(changeFinderMock, times(2)).findOne(CHANGE_ID);
+    verify(gitRepoMgrMock, never()).openRepository(ALL_USERS);
+  }
+
+  @Test
+  public void shouldResolveTargetBranchOnce() throws Exception {
+    ChangeChecker checker = newChecker(newCache(0));
+
+    checker.newIndexEvent();
+    checker.toString();
+    checker.isChangeUpToDate(checker.newIndexEvent());
+    verify(refDbMock, times(1)).exactRef(BRANCH);
+    verify(changeFinderMock, times(1)).findOne(CHANGE_ID);
+  }
+
+  private ChangeCheckerCache newCache(int size) {
+    when(configMock.index().checkerCacheSize()).thenReturn(size);
+    return new ChangeCheckerCache(gitRepoMgrMock, ALL_USERS, configMock, new DisabledMetricMaker());
+  }
+
+  private ChangeChecker newChecker(ChangeCheckerCache cache) {
+    return new ChangeCheckerImpl(
+        gitRepoMgrMock, commentsUtilMock, changeFinderMock, oneOffCtxMock, cache, CHANGE_ID);
+  }
+
+  private static Ref ref(String name, ObjectId id) {
+    return new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, name, id);
+  }
+}
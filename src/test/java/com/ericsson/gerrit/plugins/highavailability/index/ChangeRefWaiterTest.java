@@ -0,0 +1,127 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.index;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChangeRefWaiterTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final String META_REF = "refs/changes/01/1/meta";
+  private static final String BRANCH = "refs/heads/master";
+  private static final ObjectId OLD_ID =
+      ObjectId.fromString("0000000000000000000000000000000000000001");
+  private static final ObjectId NEW_ID =
+      ObjectId.fromString("0000000000000000000000000000000000000002");
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  private Configuration configMock;
+
+  @Mock private GitRepositoryManager gitRepoMgrMock;
+  @Mock private WorkQueue workQueueMock;
+  @Mock private Repository repoMock;
+  @Mock private RefDatabase refDbMock;
+  @Mock private GitReferenceUpdatedListener.Event eventMock;
+
+  private ChangeRefWaiter waiter;
+
+  @Before
+  public void setUp() throws Exception {
+    when(gitRepoMgrMock.openRepository(PROJECT)).thenReturn(repoMock);
+    when(repoMock.getRefDatabase()).thenReturn(refDbMock);
+    waiter = new ChangeRefWaiter(gitRepoMgrMock, workQueueMock, configMock);
+  }
+
+  @Test
+  public void shouldCompleteWhenAwaitedRefIsUpdatedThroughThisNode() throws Exception {
+    currentRefs(ImmutableMap.of());
+    CompletableFuture<Void> updated = waiter.await(PROJECT, ImmutableList.of(META_REF, BRANCH));
+
+    when(eventMock.getProjectName()).thenReturn(PROJECT.get());
+    when(eventMock.getRefName()).thenReturn("refs/heads/other");
+    waiter.onGitReferenceUpdated(eventMock);
+    assertThat(updated.isDone()).isFalse();
+
+    when(eventMock.getRefName()).thenReturn(BRANCH);
+    waiter.onGitReferenceUpdated(eventMock);
+    assertThat(updated.isDone()).isTrue();
+  }
+
+  @Test
+  public void shouldCompleteWhenPollingFindsAwaitedRefUpdated() throws Exception {
+    currentRefs(ImmutableMap.of(META_REF, ref(META_REF, OLD_ID)));
+    CompletableFuture<Void> updated = waiter.await(PROJECT, ImmutableList.of(META_REF));
+
+    waiter.poll();
+    assertThat(updated.isDone()).isFalse();
+
+    currentRefs(ImmutableMap.of(META_REF, ref(META_REF, NEW_ID)));
+    waiter.poll();
+    assertThat(updated.isDone()).isTrue();
+  }
+
+  @Test
+  public void shouldCompleteWhenPollingFindsAwaitedRefCreated() throws Exception {
+    currentRefs(ImmutableMap.of());
+    CompletableFuture<Void> updated = waiter.await(PROJECT, ImmutableList.of(META_REF));
+
+    currentRefs(ImmutableMap.of(META_REF, ref(META_REF, NEW_ID)));
+    waiter.poll();
+    assertThat(updated.isDone()).isTrue();
+  }
+
+  @Test
+  public void shouldStopWaitingWhenCompletedByCaller() throws Exception {
+    currentRefs(ImmutableMap.of());
+    CompletableFuture<Void> updated = waiter.await(PROJECT, ImmutableList.of(META_REF));
+    updated.complete(null);
+
+    waiter.poll();
+    assertThat(updated.isDone()).isTrue();
+    assertThat(waiter.pendingWaiters()).isEqualTo(0);
+  }
+
+  private void currentRefs(Map<String, Ref> refs) throws IOException {
+    when(refDbMock.exactRef((String[]) any())).thenReturn(refs);
+  }
+
+  private static Ref ref(String name, ObjectId id) {
+    return new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, name, id);
+  }
+}
@@ -18,6 +18,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -35,11 +36,13 @@ import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.server.util.RequestContext;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.function.Consumer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -60,6 +63,7 @@ public class IndexEventHandlerTest {
   private Account.Id accountId;
   private AccountGroup.UUID accountGroupUUID;
   @Mock private RequestContext mockCtx;
+  @Mock private IndexForwardingMetrics metricsMock;
 
   private CurrentRequestContext currCtx =
       new CurrentRequestContext(null) {
@@ -82,33 +86,43 @@ public class IndexEventHandlerTest {
             PLUGIN_NAME,
             forwarder,
             changeCheckerFactoryMock,
-            currCtx);
+            currCtx,
+            metricsMock);
   }
 
   @Test
   public void shouldIndexInRemoteOnChangeIndexedEvent() throws Exception {
+    when(forwarder.indexChangeAsync(eq(PROJECT_NAME), eq(CHANGE_ID), any()))
+        .thenReturn(CompletableFuture.completedFuture(true));
     indexEventHandler.onChangeIndexed(PROJECT_NAME, changeId.get());
-    verify(forwarder).indexChange(eq(PROJECT_NAME), eq(CHANGE_ID), any());
+    verify(forwarder).indexChangeAsync(eq(PROJECT_NAME), eq(CHANGE_ID), any());
+    verify(metricsMock, never()).dropped();
   }
 
   @Test
   public void shouldIndexInRemoteOnAccountIndexedEvent() throws Exception {
+    when(forwarder.indexAccountAsync(eq(ACCOUNT_ID), any()))
+        .thenReturn(CompletableFuture.completedFuture(true));
     indexEventHandler.onAccountIndexed(accountId.get());
-    verify(forwarder).indexAccount(eq(ACCOUNT_ID), any());
+    verify(forwarder).indexAccountAsync(eq(ACCOUNT_ID), any());
   }
 
   @Test
   public void shouldDeleteFromIndexInRemoteOnChangeDeletedEvent() throws Exception {
+    when(forwarder.deleteChangeFromIndexAsync(eq(CHANGE_ID), any()))
+        .thenReturn(CompletableFuture.completedFuture(true));
     indexEventHandler.onChangeDeleted(changeId.get());
-    verify(forwarder).deleteChangeFromIndex(eq(CHANGE_ID), any());
+    verify(forwarder).deleteChangeFromIndexAsync(eq(CHANGE_ID), any());
     verifyZeroInteractions(
         changeCheckerMock); // Deleted changes should not be checked against NoteDb
   }
 
   @Test
   public void shouldIndexInRemoteOnGroupIndexedEvent() throws Exception {
+    when(forwarder.indexGroupAsync(eq(UUID), any()))
+        .thenReturn(CompletableFuture.completedFuture(true));
     indexEventHandler.onGroupIndexed(accountGroupUUID.get());
-    verify(forwarder).indexGroup(eq(UUID), any());
+    verify(forwarder).indexGroupAsync(eq(UUID), any());
   }
 
   @Test
@@ -142,7 +156,8 @@ public class IndexEventHandlerTest {
   public void duplicateChangeEventOfAQueuedEventShouldGetDiscarded() {
     ScheduledThreadPoolExecutor poolMock = mock(ScheduledThreadPoolExecutor.class);
     indexEventHandler =
-        new IndexEventHandler(poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx);
+        new IndexEventHandler(
+            poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx, metricsMock);
     indexEventHandler.onChangeIndexed(PROJECT_NAME, changeId.get());
     indexEventHandler.onChangeIndexed(PROJECT_NAME, changeId.get());
     verify(poolMock, times(1))
@@ -153,7 +168,8 @@ public class IndexEventHandlerTest {
   public void duplicateAccountEventOfAQueuedEventShouldGetDiscarded() {
     ScheduledThreadPoolExecutor poolMock = mock(ScheduledThreadPoolExecutor.class);
     indexEventHandler =
-        new IndexEventHandler(poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx);
+        new IndexEventHandler(
+            poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx, metricsMock);
     indexEventHandler.onAccountIndexed(accountId.get());
     indexEventHandler.onAccountIndexed(accountId.get());
     verify(poolMock, times(1)).execute(indexEventHandler.new IndexAccountTask(ACCOUNT_ID));
@@ -163,12 +179,77 @@ public class IndexEventHandlerTest {
   public void duplicateGroupEventOfAQueuedEventShouldGetDiscarded() {
     ScheduledThreadPoolExecutor poolMock = mock(ScheduledThreadPoolExecutor.class);
     indexEventHandler =
-        new IndexEventHandler(poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx);
+        new IndexEventHandler(
+            poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx, metricsMock);
     indexEventHandler.onGroupIndexed(accountGroupUUID.get());
     indexEventHandler.onGroupIndexed(accountGroupUUID.get());
     verify(poolMock, times(1)).execute(indexEventHandler.new IndexGroupTask(UUID));
   }
 
+  @Test
+  public void burstOfChangeEventsShouldBeForwardedOnceWithLatestEvent() throws Exception {
+    ScheduledThreadPoolExecutor poolMock = mock(ScheduledThreadPoolExecutor.class);
+    indexEventHandler =
+        new IndexEventHandler(
+            poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx, metricsMock);
+    IndexEvent older = indexEvent(100, "older");
+    IndexEvent latest = indexEvent(300, "latest");
+    when(changeCheckerMock.newIndexEvent())
+        .thenReturn(Optional.of(older))
+        .thenReturn(Optional.of(latest))
+        .thenReturn(Optional.of(indexEvent(200, "out-of-order")));
+
+    for (int i = 0; i < 3; i++) {
+      indexEventHandler.onChangeIndexed(PROJECT_NAME, changeId.get());
+    }
+
+    when(forwarder.indexChangeAsync(PROJECT_NAME, CHANGE_ID, latest))
+        .thenReturn(CompletableFuture.completedFuture(true));
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(poolMock).execute(task.capture());
+    verify(metricsMock, times(2)).coalesced();
+    task.getValue().run();
+    verify(forwarder).indexChangeAsync(PROJECT_NAME, CHANGE_ID, latest);
+  }
+
+  @Test
+  public void changeEventAfterForwardStartedShouldBeQueuedAgain() {
+    ScheduledThreadPoolExecutor poolMock = mock(ScheduledThreadPoolExecutor.class);
+    indexEventHandler =
+        new IndexEventHandler(
+            poolMock, PLUGIN_NAME, forwarder, changeCheckerFactoryMock, currCtx, metricsMock);
+    when(forwarder.indexChangeAsync(eq(PROJECT_NAME), eq(CHANGE_ID), any()))
+        .thenReturn(CompletableFuture.completedFuture(true));
+    indexEventHandler.onChangeIndexed(PROJECT_NAME, changeId.get());
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(poolMock).execute(task.capture());
+    task.getValue().run();
+
+    indexEventHandler.onChangeIndexed(PROJECT_NAME, changeId.get());
+
+    verify(poolMock, times(2)).execute(any());
+    verify(metricsMock, never()).coalesced();
+  }
+
+  @Test
+  public void failedForwardShouldBeCountedAsDropped() {
+    when(forwarder.indexAccountAsync(eq(ACCOUNT_ID), any()))
+        .thenReturn(CompletableFuture.completedFuture(false));
+    indexEventHandler.onAccountIndexed(accountId.get());
+    verify(metricsMock).dropped();
+  }
+
+  @Test
+  public void forwardInFlightShouldBeCountedAsDroppedOnceGivenUp() {
+    CompletableFuture<Boolean> forwarded = new CompletableFuture<>();
+    when(forwarder.indexAccountAsync(eq(ACCOUNT_ID), any())).thenReturn(forwarded);
+    indexEventHandler.onAccountIndexed(accountId.get());
+    verify(metricsMock, never()).dropped();
+
+    forwarded.complete(false);
+    verify(metricsMock).dropped();
+  }
+
   @Test
   public void testIndexChangeTaskToString() throws Exception {
     IndexChangeTask task =
@@ -265,4 +346,11 @@ public class IndexEventHandlerTest {
     assertThat(task.equals(differentGroupIdTask)).isFalse();
     assertThat(task.hashCode()).isNotEqualTo(differentGroupIdTask.hashCode());
   }
+
+  private static IndexEvent indexEvent(long eventCreatedOn, String targetSha) {
+    IndexEvent event = new IndexEvent();
+    event.eventCreatedOn = eventCreatedOn;
+    event.targetSha = targetSha;
+    return event;
+  }
 }
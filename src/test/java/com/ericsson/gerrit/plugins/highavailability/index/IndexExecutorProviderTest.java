@@ -15,11 +15,15 @@
 package com.ericsson.gerrit.plugins.highavailability.index;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.Configuration.ExecutorMode;
 import com.google.gerrit.server.git.WorkQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import org.junit.Before;
@@ -32,14 +36,16 @@ import org.mockito.junit.MockitoJUnitRunner;
 @RunWith(MockitoJUnitRunner.class)
 public class IndexExecutorProviderTest {
   @Mock private ScheduledThreadPoolExecutor executorMock;
+  private WorkQueue workQueueMock;
+  private Configuration configMock;
   private IndexExecutorProvider indexExecutorProvider;
 
   @Before
   public void setUp() throws Exception {
     executorMock = mock(ScheduledThreadPoolExecutor.class);
-    WorkQueue workQueueMock = mock(WorkQueue.class);
+    workQueueMock = mock(WorkQueue.class);
     when(workQueueMock.createQueue(4, "Forward-Index-Event")).thenReturn(executorMock);
-    Configuration configMock = mock(Configuration.class, Answers.RETURNS_DEEP_STUBS);
+    configMock = mock(Configuration.class, Answers.RETURNS_DEEP_STUBS);
     when(configMock.index().threadPoolSize()).thenReturn(4);
     indexExecutorProvider = new IndexExecutorProvider(workQueueMock, configMock);
   }
@@ -57,4 +63,18 @@ public class IndexExecutorProviderTest {
     verify(executorMock).shutdown();
     assertThat(indexExecutorProvider.get()).isNull();
   }
+
+  @Test
+  public void shouldCreateElasticExecutorWhenConfigured() throws Exception {
+    ScheduledThreadPoolExecutor elasticMock = mock(ScheduledThreadPoolExecutor.class);
+    when(configMock.forwarder().executor()).thenReturn(ExecutorMode.ELASTIC);
+    when(configMock.forwarder().maxThreads()).thenReturn(64);
+    when(workQueueMock.createQueue(64, "Forward-Index-Event", false)).thenReturn(elasticMock);
+
+    indexExecutorProvider = new IndexExecutorProvider(workQueueMock, configMock);
+
+    assertThat(indexExecutorProvider.get()).isEqualTo(elasticMock);
+    verify(elasticMock).setKeepAliveTime(anyLong(), eq(SECONDS));
+    verify(elasticMock).allowCoreThreadTimeOut(true);
+  }
 }
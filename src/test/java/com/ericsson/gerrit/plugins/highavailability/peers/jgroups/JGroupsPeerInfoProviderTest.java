@@ -0,0 +1,85 @@
+// Copyright (C) 2018 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ericsson.gerrit.plugins.highavailability.peers.jgroups;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Answers.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.when;
+
+import com.ericsson.gerrit.plugins.highavailability.Configuration;
+import com.ericsson.gerrit.plugins.highavailability.peers.PeerInfo;
+import com.google.common.collect.ImmutableList;
+import java.util.stream.Collectors;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JGroupsPeerInfoProviderTest {
+  private static final String PEER_URL = "http://peer:8080";
+  private static final String OTHER_PEER_URL = "http://other-peer:8080";
+
+  @Mock(answer = RETURNS_DEEP_STUBS)
+  private Configuration configurationMock;
+
+  @Mock private InetAddressFinder finderMock;
+  @Mock private MyUrlProvider myUrlProviderMock;
+
+  private Address peer = UUID.randomUUID();
+  private Address otherPeer = UUID.randomUUID();
+  private JGroupsPeerInfoProvider provider;
+
+  @Before
+  public void setUp() {
+    when(myUrlProviderMock.get()).thenReturn("http://myself:8080");
+    provider = new JGroupsPeerInfoProvider(configurationMock, finderMock, myUrlProviderMock);
+  }
+
+  @Test
+  public void shouldReturnAllMembers() {
+    provider.receive(new Message(null, peer, PEER_URL));
+    provider.receive(new Message(null, otherPeer, OTHER_PEER_URL));
+
+    assertThat(urls()).containsExactly(PEER_URL, OTHER_PEER_URL);
+  }
+
+  @Test
+  public void shouldNotDuplicateMemberSendingItsUrlAgain() {
+    provider.receive(new Message(null, peer, PEER_URL));
+    provider.receive(new Message(null, peer, PEER_URL));
+
+    assertThat(urls()).containsExactly(PEER_URL);
+  }
+
+  @Test
+  public void shouldRemoveMembersLeavingTheCluster() {
+    provider.receive(new Message(null, peer, PEER_URL));
+    provider.receive(new Message(null, otherPeer, OTHER_PEER_URL));
+
+    provider.viewAccepted(new View(otherPeer, 2, ImmutableList.of(otherPeer)));
+
+    assertThat(urls()).containsExactly(OTHER_PEER_URL);
+  }
+
+  private Iterable<String> urls() {
+    return provider.get().stream().map(PeerInfo::getDirectUrl).collect(Collectors.toList());
+  }
+}